@@ -0,0 +1,51 @@
+package org.metricshub.ssh;
+
+import java.io.InputStream;
+
+/**
+ * In-memory stand-in for the stdout of an sshlib session: the bytes are available by chunks of at
+ * most the size of an SSH packet, like in the window of a channel
+ */
+class ChannelInputStreamStandIn extends InputStream {
+
+	/**
+	 * Largest payload of the SSH packets sent by OpenSSH
+	 */
+	static final int PACKET_SIZE = 32768;
+
+	private final byte[] bytes;
+	private int position = 0;
+
+	ChannelInputStreamStandIn(final byte[] bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Makes all the bytes available again
+	 */
+	@Override
+	public void reset() {
+		position = 0;
+	}
+
+	@Override
+	public int available() {
+		return Math.min(bytes.length - position, PACKET_SIZE);
+	}
+
+	@Override
+	public int read() {
+		return position < bytes.length ? bytes[position++] & 0xff : -1;
+	}
+
+	@Override
+	public int read(final byte[] buffer, final int offset, final int length) {
+		if (position >= bytes.length) {
+			return -1;
+		}
+		final int count = Math.min(length, available());
+		System.arraycopy(bytes, position, buffer, offset, count);
+		position += count;
+		return count;
+	}
+}
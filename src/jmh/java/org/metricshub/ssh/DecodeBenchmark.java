@@ -0,0 +1,113 @@
+package org.metricshub.ssh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of the output of the commands: by {@link SshClient#read(int, int)}, by the listeners
+ * of {@link CommandOutputListener}, and when stdout and stderr are merged into the result of
+ * {@link SshClient#executeCommand(String, int)}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+	/**
+	 * Size of the output, in bytes
+	 */
+	private static final int SIZE = 64 * 1024;
+
+	/**
+	 * Size of the chunks passed to the listeners
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * ASCII output, or output with 2 and 3-byte characters
+	 */
+	@Param({ "ascii", "multibyte" })
+	String text;
+
+	private byte[] bytes;
+	private ChannelInputStreamStandIn stdout;
+	private final OutputDecoder decoder = new OutputDecoder(StandardCharsets.UTF_8);
+
+	@Setup
+	public void setUp() {
+		final String line = "ascii".equals(text)
+			? "/dev/sda1  41152736  21013540  18026096  54% /var/log\n"
+			: "Température du disque: 41 °C, 温度: 四十一度, état: défaillant\n";
+		final StringBuilder builder = new StringBuilder();
+		while (builder.length() < SIZE) {
+			builder.append(line);
+		}
+		bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+		stdout = new ChannelInputStreamStandIn(bytes);
+	}
+
+	/**
+	 * Reference: the whole output decoded at once
+	 */
+	@Benchmark
+	public String newString() {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Chunks decoded as they are passed to a {@link CommandOutputListener}
+	 */
+	@Benchmark
+	public int decodeChunks() {
+		int length = 0;
+		for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+			length += decoder.decode(bytes, offset, Math.min(CHUNK_SIZE, bytes.length - offset)).length();
+		}
+		return length + decoder.flush().length();
+	}
+
+	/**
+	 * Everything that is available in the session, as read by {@link SshClient#read(int, int)}
+	 */
+	@Benchmark
+	public String read() throws IOException {
+		stdout.reset();
+		while (SshClient.decodeBytes(stdout, decoder, 0) > 0) {
+			// Until the end of the stream
+		}
+		return decoder.take();
+	}
+
+	/**
+	 * stdout and stderr received in alternation, and merged in the result of the command
+	 */
+	@Benchmark
+	public String merge() throws IOException {
+		final CommandCapture capture = new CommandCapture(CapturePolicy.UNLIMITED);
+		final OutputStream stdoutSink = capture.getStdoutSink();
+		final OutputStream stderrSink = capture.getStderrSink();
+		for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+			final int length = Math.min(CHUNK_SIZE, bytes.length - offset);
+			(offset % (4 * CHUNK_SIZE) == 0 ? stderrSink : stdoutSink).write(bytes, offset, length);
+		}
+		final SshClient.CommandResult result = new SshClient.CommandResult();
+		capture.fill(result, StandardCharsets.UTF_8, true);
+		return result.result;
+	}
+}
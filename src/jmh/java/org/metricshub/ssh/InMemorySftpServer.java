@@ -0,0 +1,268 @@
+package org.metricshub.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory stand-in for the SFTP subsystem of a session, serving a tree of directories. The
+ * requests written to {@link #getStdin()} are answered right away in {@link #getStdout()}, with
+ * responses encoded in advance, so that only the client side is measured.
+ * <p>
+ * Only the requests needed to list directories are supported (OPENDIR, READDIR and CLOSE).
+ */
+class InMemorySftpServer {
+
+	/**
+	 * Number of entries per NAME response, like OpenSSH
+	 */
+	private static final int ENTRIES_PER_RESPONSE = 100;
+
+	private static final int SSH_FXP_INIT = 1;
+	private static final int SSH_FXP_VERSION = 2;
+	private static final int SSH_FXP_CLOSE = 4;
+	private static final int SSH_FXP_OPENDIR = 11;
+	private static final int SSH_FXP_READDIR = 12;
+	private static final int SSH_FXP_STATUS = 101;
+	private static final int SSH_FXP_HANDLE = 102;
+	private static final int SSH_FXP_NAME = 104;
+
+	private static final int SSH_FX_OK = 0;
+	private static final int SSH_FX_EOF = 1;
+	private static final int SSH_FX_NO_SUCH_FILE = 2;
+
+	private static final int ATTRIBUTES = 0x0000000F;
+
+	/**
+	 * The bodies of the NAME responses of each directory (after the type and the identifier)
+	 */
+	private final Map<String, List<byte[]>> listings = new HashMap<>();
+
+	/**
+	 * How many NAME responses of each open directory have been sent
+	 */
+	private final Map<String, Integer> openDirectories = new HashMap<>();
+
+	private final Pipe responses = new Pipe();
+	private final ByteArrayOutputStream requests = new ByteArrayOutputStream();
+
+	private final OutputStream stdin = new OutputStream() {
+		@Override
+		public void write(final int b) throws IOException {
+			requests.write(b);
+			processRequests();
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			requests.write(b, off, len);
+			processRequests();
+		}
+	};
+
+	/**
+	 * Creates a server with the specified directory, containing the specified number of
+	 * subdirectories, each with files (half of them <code>.log</code> files)
+	 *
+	 * @param root Path of the directory
+	 * @param directories Number of subdirectories
+	 * @param files Number of files in each subdirectory
+	 * @throws IOException never
+	 */
+	InMemorySftpServer(final String root, final int directories, final int files) throws IOException {
+		final List<byte[]> rootEntries = new ArrayList<>();
+		for (int i = 0; i < directories; i++) {
+			final String name = "app-" + i;
+			rootEntries.add(entry(name, 0040755, 4096));
+			final List<byte[]> fileEntries = new ArrayList<>();
+			fileEntries.add(entry(".", 0040755, 4096));
+			fileEntries.add(entry("..", 0040755, 4096));
+			for (int j = 0; j < files; j++) {
+				fileEntries.add(entry("file-" + j + (j % 2 == 0 ? ".log" : ".dat"), 0100644, 1000L * j));
+			}
+			listings.put(root + "/" + name, names(fileEntries));
+		}
+		listings.put(root, names(rootEntries));
+	}
+
+	/**
+	 * @return the stream the requests are written to
+	 */
+	OutputStream getStdin() {
+		return stdin;
+	}
+
+	/**
+	 * @return the stream the responses are read from
+	 */
+	InputStream getStdout() {
+		return responses;
+	}
+
+	/**
+	 * Encodes a directory entry: name, long name and attributes
+	 */
+	private static byte[] entry(final String name, final int permissions, final long size) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		writeString(out, name.getBytes(StandardCharsets.UTF_8));
+		writeString(out, ("-rw-r--r-- 1 root root " + size + " Jan 1 00:00 " + name).getBytes(StandardCharsets.UTF_8));
+		out.writeInt(ATTRIBUTES);
+		out.writeLong(size);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.writeInt(permissions);
+		out.writeInt(1700000000);
+		out.writeInt(1700000000);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Encodes the bodies of the NAME responses with the specified entries
+	 */
+	private static List<byte[]> names(final List<byte[]> entries) throws IOException {
+		final List<byte[]> bodies = new ArrayList<>();
+		for (int i = 0; i < entries.size(); i += ENTRIES_PER_RESPONSE) {
+			final List<byte[]> batch = entries.subList(i, Math.min(entries.size(), i + ENTRIES_PER_RESPONSE));
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(batch.size());
+			for (byte[] entry : batch) {
+				out.write(entry);
+			}
+			bodies.add(bytes.toByteArray());
+		}
+		return bodies;
+	}
+
+	private static void writeString(final DataOutputStream out, final byte[] value) throws IOException {
+		out.writeInt(value.length);
+		out.write(value);
+	}
+
+	/**
+	 * Answers the complete requests received so far
+	 */
+	private void processRequests() throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(requests.toByteArray());
+		while (buffer.remaining() >= 4 && buffer.remaining() >= 4 + buffer.getInt(buffer.position())) {
+			final int length = buffer.getInt();
+			final int end = buffer.position() + length;
+			final int type = buffer.get();
+			final int id = buffer.getInt();
+			switch (type) {
+				case SSH_FXP_INIT:
+					// The version takes the place of the identifier
+					respond(SSH_FXP_VERSION, 3, new byte[0]);
+					break;
+				case SSH_FXP_OPENDIR:
+					final String path = new String(readString(buffer), StandardCharsets.UTF_8);
+					if (listings.containsKey(path)) {
+						openDirectories.put(path, 0);
+						final ByteArrayOutputStream handle = new ByteArrayOutputStream();
+						writeString(new DataOutputStream(handle), path.getBytes(StandardCharsets.UTF_8));
+						respond(SSH_FXP_HANDLE, id, handle.toByteArray());
+					} else {
+						respondStatus(id, SSH_FX_NO_SUCH_FILE);
+					}
+					break;
+				case SSH_FXP_READDIR:
+					final String directory = new String(readString(buffer), StandardCharsets.UTF_8);
+					final int sent = openDirectories.get(directory);
+					final List<byte[]> bodies = listings.get(directory);
+					if (sent < bodies.size()) {
+						openDirectories.put(directory, sent + 1);
+						respond(SSH_FXP_NAME, id, bodies.get(sent));
+					} else {
+						respondStatus(id, SSH_FX_EOF);
+					}
+					break;
+				case SSH_FXP_CLOSE:
+					openDirectories.remove(new String(readString(buffer), StandardCharsets.UTF_8));
+					respondStatus(id, SSH_FX_OK);
+					break;
+				default:
+					throw new IOException("Unsupported SFTP request: " + type);
+			}
+			buffer.position(end);
+		}
+		final byte[] rest = Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+		requests.reset();
+		requests.write(rest);
+	}
+
+	private static byte[] readString(final ByteBuffer buffer) {
+		final byte[] value = new byte[buffer.getInt()];
+		buffer.get(value);
+		return value;
+	}
+
+	private void respond(final int type, final int id, final byte[] body) {
+		final ByteBuffer header = ByteBuffer.allocate(9);
+		header.putInt(5 + body.length).put((byte) type).putInt(id);
+		responses.write(header.array(), 0, 9);
+		responses.write(body, 0, body.length);
+	}
+
+	private void respondStatus(final int id, final int code) {
+		// Code, empty message and language tag
+		respond(SSH_FXP_STATUS, id, ByteBuffer.allocate(12).putInt(code).array());
+	}
+
+	/**
+	 * Bytes written by the server, read by the client
+	 */
+	private static class Pipe extends InputStream {
+
+		private byte[] bytes = new byte[64 * 1024];
+		private int start = 0;
+		private int end = 0;
+
+		void write(final byte[] b, final int off, final int len) {
+			if (end + len > bytes.length) {
+				// Move what hasn't been read to the beginning, and grow if needed
+				final int count = end - start;
+				final byte[] target = count + len > bytes.length ? new byte[Math.max(2 * bytes.length, count + len)] : bytes;
+				System.arraycopy(bytes, start, target, 0, count);
+				bytes = target;
+				start = 0;
+				end = count;
+			}
+			System.arraycopy(b, off, bytes, end, len);
+			end += len;
+		}
+
+		@Override
+		public int available() {
+			return end - start;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (start == end) {
+				throw new IOException("No response to read");
+			}
+			return bytes[start++] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (start == end) {
+				throw new IOException("No response to read");
+			}
+			final int count = Math.min(len, end - start);
+			System.arraycopy(bytes, start, b, off, count);
+			start += count;
+			return count;
+		}
+	}
+}
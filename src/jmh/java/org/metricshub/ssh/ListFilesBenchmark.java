@@ -0,0 +1,80 @@
+package org.metricshub.ssh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Recursive listing of a directory with {@link SshClient#listFiles(String, String, boolean)}: parsing
+ * of the SFTP responses, filtering, and building of the result, against an in-memory SFTP server
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListFilesBenchmark {
+
+	private static final String ROOT = "/var/log";
+
+	/**
+	 * Number of files in each of the 10 subdirectories
+	 */
+	@Param({ "100", "1000" })
+	int files;
+
+	/**
+	 * The mask of the files to list (all the files if empty)
+	 */
+	@Param({ "", "\\.log$" })
+	String mask;
+
+	private SftpChannel channel;
+	private RemoteFileFilter filter;
+
+	@Setup
+	public void setUp() throws IOException {
+		final InMemorySftpServer server = new InMemorySftpServer(ROOT, 10, files);
+		channel = new SftpChannel(null, server.getStdout(), server.getStdin(), null);
+		filter = new RemoteFileFilter().withNamePattern(mask);
+	}
+
+	@TearDown
+	public void tearDown() {
+		channel.close();
+	}
+
+	/**
+	 * The listing, as returned by {@link SshClient#listFiles(String, String, boolean)}
+	 */
+	@Benchmark
+	public String listFiles() throws IOException {
+		final StringBuilder resultBuilder = new StringBuilder();
+		new SftpDirectoryWalker(channel, filter, SshClient.DEFAULT_SFTP_LIST_WINDOW)
+			.walk(
+				ROOT,
+				channel.receiveHandle(channel.sendOpenDir(ROOT)),
+				(filePath, fileAttributes) ->
+					resultBuilder
+						.append(filePath)
+						.append(";")
+						.append(fileAttributes.mtime.toString())
+						.append(";")
+						.append(fileAttributes.size.toString())
+						.append("\n")
+			);
+		return resultBuilder.toString();
+	}
+}
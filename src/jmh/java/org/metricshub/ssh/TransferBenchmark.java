@@ -0,0 +1,88 @@
+package org.metricshub.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Copy of the output of a command (or of a file) from the session to an output stream, with
+ * {@link SshClient#transferBytes(java.io.InputStream, OutputStream, int)}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransferBenchmark {
+
+	@Param({ "1024", "1048576" })
+	int size;
+
+	private ChannelInputStreamStandIn input;
+	private ByteArrayOutputStream output;
+	private OutputStream discard;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		final byte[] bytes = new byte[size];
+		new Random(0).nextBytes(bytes);
+		input = new ChannelInputStreamStandIn(bytes);
+		output = new ByteArrayOutputStream(size);
+		discard =
+			new OutputStream() {
+				@Override
+				public void write(final int b) {
+					blackhole.consume(b);
+				}
+
+				@Override
+				public void write(final byte[] b, final int off, final int len) {
+					blackhole.consume(len);
+				}
+			};
+	}
+
+	/**
+	 * The whole output, into a buffer
+	 */
+	@Benchmark
+	public int transferAll() throws IOException {
+		input.reset();
+		output.reset();
+		int total = 0;
+		int count;
+		while ((count = SshClient.transferBytes(input, output, -1)) > 0) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * Reads of 4 KB at most, to a stream that discards everything
+	 */
+	@Benchmark
+	public int transferBySize() throws IOException {
+		input.reset();
+		int total = 0;
+		int count;
+		while ((count = SshClient.transferBytes(input, discard, 4096)) > 0) {
+			total += count;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,70 @@
+package org.metricshub.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Text written into the stdin of a session by {@link SshClient#write(String)}: line separators
+ * replaced by '\n', and encoding
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WriteBenchmark {
+
+	/**
+	 * Number of lines of the text
+	 */
+	@Param({ "1", "50" })
+	int lines;
+
+	@Param({ "UTF-8", "ISO-8859-1" })
+	String charsetName;
+
+	private String text;
+	private Charset charset;
+	private final ByteArrayOutputStream stdin = new ByteArrayOutputStream();
+
+	@Setup
+	public void setUp() {
+		final StringBuilder builder = new StringBuilder("echo 'Température du système'");
+		for (int i = 1; i < lines; i++) {
+			builder.append(i % 2 == 0 ? "\r\n" : "\n").append("df -k /var/log/app").append(i);
+		}
+		text = builder.toString();
+		charset = Charset.forName(charsetName);
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		stdin.reset();
+		SshClient.write(stdin, text, charset);
+		return stdin.size();
+	}
+
+	/**
+	 * Reference: encoding the text once, without looking for line separators
+	 */
+	@Benchmark
+	public int encodeOnly() throws IOException {
+		stdin.reset();
+		stdin.write(text.getBytes(charset));
+		return stdin.size();
+	}
+}
@@ -0,0 +1,171 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton that finds any number of literals in a text read one character at a time,
+ * in linear time whatever the number of literals.
+ * <p>
+ * The automaton is immutable: the state of a search is a simple <code>int</code> (0 initially),
+ * kept by the caller between two chunks of text.
+ */
+class AhoCorasick {
+
+	/**
+	 * The initial state
+	 */
+	static final int ROOT = 0;
+
+	/**
+	 * Characters of the transitions of each state (sorted), and their target states
+	 */
+	private final char[][] labels;
+	private final int[][] targets;
+
+	/**
+	 * Failure link of each state: the state of the longest proper suffix that is also in the trie
+	 */
+	private final int[] failures;
+
+	/**
+	 * Index of the first literal (in the order of the constructor) ending at each state, or -1
+	 */
+	private final int[] matches;
+
+	private final int[] lengths;
+
+	/**
+	 * Builds the automaton of the specified literals
+	 *
+	 * @param literals The literals (not empty)
+	 */
+	AhoCorasick(final String... literals) {
+		// Trie
+		final List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+		final List<Integer> ends = new ArrayList<>();
+		trie.add(new TreeMap<>());
+		ends.add(-1);
+		lengths = new int[literals.length];
+		for (int i = 0; i < literals.length; i++) {
+			final String literal = literals[i];
+			if (literal.isEmpty()) {
+				throw new IllegalArgumentException("Empty literal");
+			}
+			lengths[i] = literal.length();
+			int state = ROOT;
+			for (int j = 0; j < literal.length(); j++) {
+				Integer next = trie.get(state).get(literal.charAt(j));
+				if (next == null) {
+					next = trie.size();
+					trie.add(new TreeMap<>());
+					ends.add(-1);
+					trie.get(state).put(literal.charAt(j), next);
+				}
+				state = next;
+			}
+			if (ends.get(state) < 0) {
+				ends.set(state, i);
+			}
+		}
+
+		final int size = trie.size();
+		labels = new char[size][];
+		targets = new int[size][];
+		for (int state = 0; state < size; state++) {
+			final TreeMap<Character, Integer> transitions = trie.get(state);
+			labels[state] = new char[transitions.size()];
+			targets[state] = new int[transitions.size()];
+			int k = 0;
+			for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+				labels[state][k] = transition.getKey();
+				targets[state][k++] = transition.getValue();
+			}
+		}
+
+		// Failure links and matches, in breadth-first order so that the suffixes are done first
+		failures = new int[size];
+		matches = new int[size];
+		matches[ROOT] = -1;
+		final Queue<Integer> queue = new ArrayDeque<>();
+		for (int child : targets[ROOT]) {
+			failures[child] = ROOT;
+			matches[child] = ends.get(child);
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			final int state = queue.remove();
+			for (int k = 0; k < labels[state].length; k++) {
+				final int child = targets[state][k];
+				final int failure = next(failures[state], labels[state][k]);
+				failures[child] = failure;
+				matches[child] = firstOf(ends.get(child), matches[failure]);
+				queue.add(child);
+			}
+		}
+	}
+
+	private static int firstOf(final int a, final int b) {
+		return a < 0 ? b : b < 0 ? a : Math.min(a, b);
+	}
+
+	/**
+	 * @param state The current state
+	 * @param c The next character of the text
+	 * @return the state after the character
+	 */
+	int next(int state, final char c) {
+		while (true) {
+			final int k = Arrays.binarySearch(labels[state], c);
+			if (k >= 0) {
+				return targets[state][k];
+			}
+			if (state == ROOT) {
+				return ROOT;
+			}
+			state = failures[state];
+		}
+	}
+
+	/**
+	 * @param state A state
+	 * @return the index of the first literal (in the order of the constructor) that ends with the
+	 * text read so far, or -1
+	 */
+	int match(final int state) {
+		return matches[state];
+	}
+
+	/**
+	 * @param index The index of a literal
+	 * @return the length of the literal
+	 */
+	int length(final int index) {
+		return lengths[index];
+	}
+}
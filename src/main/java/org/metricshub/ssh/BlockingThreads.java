@@ -0,0 +1,225 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Session;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Creates the threads that spend most of their time blocked on the network: the stdin pump of
+ * {@link SshClient#interactiveSession(java.io.InputStream, java.io.OutputStream)} and the workers
+ * of {@link FleetExecutor}.
+ * <p>
+ * On Java 21 and later, the multi-release JAR creates virtual threads by default, so that thousands
+ * of blocked operations do not cost thousands of platform threads. On older versions, daemon platform
+ * threads are created. Use {@link #setThreadFactory(ThreadFactory)} to choose otherwise.
+ * <p>
+ * The SSH library waits on monitors, which blocks the carrier thread of a virtual thread before
+ * Java 24. On these versions, the waits of the virtual threads are replaced by polls that park the
+ * thread between two checks (see {@link #pollCondition(Session, int, long)}).
+ */
+public final class BlockingThreads {
+
+	/**
+	 * Creates daemon platform threads
+	 */
+	public static final ThreadFactory PLATFORM = runnable -> {
+		final Thread thread = new Thread(runnable);
+		thread.setDaemon(true);
+		return thread;
+	};
+
+	/**
+	 * Factory of virtual threads, null if not supported by this version of Java
+	 */
+	private static final ThreadFactory VIRTUAL = VirtualThreads.newThreadFactory();
+
+	/**
+	 * Conditions that can be checked without waiting on the monitor of the channel
+	 */
+	private static final int EXIT_CONDITIONS = ChannelCondition.EXIT_STATUS | ChannelCondition.EXIT_SIGNAL;
+
+	/**
+	 * Nanoseconds between two complete checks of the conditions of a channel, when polling
+	 */
+	static final long POLL_CHECK_PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Maximum nanoseconds between two polls of an idle channel
+	 */
+	static final long MAX_POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static volatile ThreadFactory threadFactory = VIRTUAL != null ? VIRTUAL : PLATFORM;
+
+	private BlockingThreads() {}
+
+	/**
+	 * @return whether this version of Java supports virtual threads
+	 */
+	public static boolean isVirtualThreadsAvailable() {
+		return VIRTUAL != null;
+	}
+
+	/**
+	 * @return the factory of the threads (virtual threads when available, daemon platform threads otherwise)
+	 */
+	public static ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	/**
+	 * Sets the factory of the threads created from now on. The threads must be daemons, unless the
+	 * application makes sure that the operations using them are over before exiting.
+	 *
+	 * @param threadFactory The factory of threads (e.g. {@link #PLATFORM})
+	 */
+	public static void setThreadFactory(final ThreadFactory threadFactory) {
+		BlockingThreads.threadFactory = Objects.requireNonNull(threadFactory, "threadFactory must not be null");
+	}
+
+	/**
+	 * Creates a new thread, which is not started
+	 *
+	 * @param name The name of the thread
+	 * @param task What the thread runs
+	 * @return the new thread
+	 */
+	static Thread newThread(final String name, final Runnable task) {
+		final Thread thread = threadFactory.newThread(task);
+		thread.setName(name);
+		return thread;
+	}
+
+	/**
+	 * Creates an executor running at most the specified number of tasks at the same time
+	 *
+	 * @param name The prefix of the name of the threads
+	 * @param threads The maximum number of tasks running at the same time
+	 * @return the new executor
+	 */
+	static ExecutorService newFixedThreadPool(final String name, final int threads) {
+		final ThreadFactory factory = threadFactory;
+		final AtomicInteger threadCount = new AtomicInteger();
+		return Executors.newFixedThreadPool(
+			threads,
+			runnable -> {
+				final Thread thread = factory.newThread(runnable);
+				thread.setName(name + "-" + threadCount.incrementAndGet());
+				return thread;
+			}
+		);
+	}
+
+	/**
+	 * Waits until the session meets at least one of the specified conditions, like
+	 * {@link Session#waitForCondition(int, long)}, without blocking the carrier thread
+	 * when called from a virtual thread.
+	 *
+	 * @param session The SSH session
+	 * @param conditions The bit mask of {@link ChannelCondition} values to wait for
+	 * @param timeout Timeout in milliseconds (0 to wait forever)
+	 * @return A bit mask specifying all current conditions that are true
+	 */
+	static int waitForCondition(final Session session, final int conditions, final long timeout) {
+		if (VirtualThreads.isPinnedByMonitorWait()) {
+			return pollCondition(session, conditions, timeout);
+		}
+		return session.waitForCondition(conditions, timeout);
+	}
+
+	/**
+	 * Waits until the session meets at least one of the specified conditions, by checking the
+	 * available data and the exit status of the session right away, then less and less often
+	 * (up to {@link #MAX_POLL_INTERVAL}) while the session stays idle, and parking the thread
+	 * in between.
+	 * <p>
+	 * The end of file and the closure of the session can only be checked on the monitor of
+	 * the channel, for 1 millisecond: once the exit status or signal has been received,
+	 * and every {@link #POLL_CHECK_PERIOD} otherwise. Like {@link Session#waitForCondition(int, long)},
+	 * an interruption doesn't stop the wait, and the interrupt status is kept.
+	 *
+	 * @param session The SSH session
+	 * @param conditions The bit mask of {@link ChannelCondition} values to wait for
+	 * @param timeout Timeout in milliseconds (0 to wait forever)
+	 * @return A bit mask specifying all current conditions that are true
+	 */
+	static int pollCondition(final Session session, final int conditions, final long timeout) {
+		final long startTime = System.nanoTime();
+		final long timeoutNanos = timeout > 0 ? TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+		long nextCheck = POLL_CHECK_PERIOD;
+		long interval = TimeUnit.MILLISECONDS.toNanos(1);
+		boolean interrupted = false;
+		try {
+			while (true) {
+				int state = 0;
+				boolean check = false;
+				try {
+					if (session.getStdout().available() > 0) {
+						state |= ChannelCondition.STDOUT_DATA;
+					}
+					if (session.getStderr().available() > 0) {
+						state |= ChannelCondition.STDERR_DATA;
+					}
+				} catch (IOException e) {
+					check = true;
+				}
+				if (session.getExitStatus() != null) {
+					state |= ChannelCondition.EXIT_STATUS;
+				}
+				if (session.getExitSignal() != null) {
+					state |= ChannelCondition.EXIT_SIGNAL;
+				}
+				if ((state & conditions) != 0) {
+					return state;
+				}
+
+				final long elapsed = System.nanoTime() - startTime;
+				if (check || (state & EXIT_CONDITIONS) != 0 || elapsed >= nextCheck) {
+					final int currentState = session.waitForCondition(conditions, 1);
+					if ((currentState & conditions) != 0) {
+						return currentState;
+					}
+					nextCheck = elapsed + POLL_CHECK_PERIOD;
+				}
+
+				if (elapsed >= timeoutNanos) {
+					return state | ChannelCondition.TIMEOUT;
+				}
+
+				LockSupport.parkNanos(Math.min(interval, timeoutNanos - elapsed));
+				interrupted |= Thread.interrupted();
+				interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of the byte buffers used to transfer data: the output of the commands, and the packets
+ * of SFTP reads.
+ * <p>
+ * Buffers are pooled by size class, from {@link #MIN_BUFFER_SIZE} to {@link #MAX_BUFFER_SIZE} by powers of 2
+ * (the SFTP servers choose the size of the read chunks, 64 KB with Apache MINA and 255 KB with OpenSSH).
+ * In each class, a thread starts looking for a buffer (or for a free slot) at a slot that depends on its
+ * identifier, so that concurrent transfers rarely compete for the same slots.
+ * <p>
+ * A buffer released while the pool already retains {@link #getMaxRetainedBytes()} is left to the garbage
+ * collector, so the memory kept by the pool is bounded, whatever the number of threads (including virtual
+ * threads, for which a thread-local buffer would be allocated again and again).
+ * <p>
+ * The statistics tell how often a buffer was found in the pool (hits) and how often one had to be
+ * allocated (misses). In steady state, the misses should stop growing.
+ */
+public final class BufferPool {
+
+	/**
+	 * Size of the smallest buffers, used to transfer the output of commands
+	 */
+	public static final int MIN_BUFFER_SIZE = 32 * 1024;
+
+	/**
+	 * Size of the largest pooled buffers, enough for the largest SFTP read chunk and its header
+	 */
+	public static final int MAX_BUFFER_SIZE = 512 * 1024;
+
+	/**
+	 * Default maximum number of bytes retained by the shared pool
+	 */
+	public static final long DEFAULT_MAX_RETAINED_BYTES = 8 * 1024 * 1024;
+
+	/**
+	 * Maximum number of slots of a size class
+	 */
+	static final int MAX_SLOTS = 64;
+
+	private static final BufferPool SHARED = new BufferPool(MIN_BUFFER_SIZE, MAX_BUFFER_SIZE, DEFAULT_MAX_RETAINED_BYTES);
+
+	private final int minBufferSize;
+	private final long maxRetainedBytes;
+	private final AtomicReferenceArray<byte[]>[] classes;
+	private final AtomicLong retainedBytes = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+
+	/**
+	 * Creates a pool
+	 *
+	 * @param minBufferSize Size of the smallest buffers (a power of 2)
+	 * @param maxBufferSize Size of the largest pooled buffers (a power of 2)
+	 * @param maxRetainedBytes Maximum number of bytes retained by the pool
+	 */
+	@SuppressWarnings("unchecked")
+	BufferPool(final int minBufferSize, final int maxBufferSize, final long maxRetainedBytes) {
+		if (minBufferSize <= 0 || Integer.bitCount(minBufferSize) != 1) {
+			throw new IllegalArgumentException("minBufferSize must be a power of 2: " + minBufferSize);
+		}
+		if (maxBufferSize < minBufferSize || Integer.bitCount(maxBufferSize) != 1) {
+			throw new IllegalArgumentException(
+				"maxBufferSize must be a power of 2, larger than minBufferSize: " + maxBufferSize
+			);
+		}
+		Utils.checkArgumentNotZeroOrNegative(maxRetainedBytes, "maxRetainedBytes");
+		this.minBufferSize = minBufferSize;
+		this.maxRetainedBytes = maxRetainedBytes;
+
+		classes = new AtomicReferenceArray[Integer.numberOfTrailingZeros(maxBufferSize / minBufferSize) + 1];
+		for (int i = 0; i < classes.length; i++) {
+			final long slots = Math.max(1, Math.min(MAX_SLOTS, maxRetainedBytes / ((long) minBufferSize << i)));
+			classes[i] = new AtomicReferenceArray<>((int) slots);
+		}
+	}
+
+	/**
+	 * @return the pool shared by all the clients
+	 */
+	public static BufferPool getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return the maximum number of bytes kept by the pool while no buffer is in use
+	 */
+	public long getMaxRetainedBytes() {
+		return maxRetainedBytes;
+	}
+
+	/**
+	 * Takes a buffer of the smallest size from the pool, or allocates a new one if none is available.
+	 * The buffer must be given back with {@link #release(byte[])} once no longer used.
+	 *
+	 * @return a buffer with undefined content
+	 */
+	byte[] acquire() {
+		return acquire(minBufferSize);
+	}
+
+	/**
+	 * Takes a buffer of at least the specified size from the pool, or allocates a new one if none
+	 * is available. Sizes beyond the largest size class are allocated with the exact size (and counted
+	 * as misses). The buffer must be given back with {@link #release(byte[])} once no longer used.
+	 *
+	 * @param size The minimum size of the buffer
+	 * @return a buffer of at least the specified size, with undefined content
+	 */
+	byte[] acquire(final int size) {
+		final int sizeClass = sizeClass(size);
+		if (sizeClass >= classes.length) {
+			misses.increment();
+			return new byte[size];
+		}
+
+		final AtomicReferenceArray<byte[]> slots = classes[sizeClass];
+		final int length = slots.length();
+		final int start = startSlot(length);
+		for (int n = 0; n < length; n++) {
+			final int i = (start + n) % length;
+			final byte[] buffer = slots.get(i);
+			if (buffer != null && slots.compareAndSet(i, buffer, null)) {
+				retainedBytes.addAndGet(-buffer.length);
+				hits.increment();
+				return buffer;
+			}
+		}
+		misses.increment();
+		return new byte[minBufferSize << sizeClass];
+	}
+
+	/**
+	 * Gives a buffer back to the pool. Any buffer whose size is one of the size classes of the pool
+	 * (a power of 2 between the smallest and the largest buffer sizes) is kept, whether it has been
+	 * allocated by the pool or not, so it must not be used by the caller anymore. The buffers of other
+	 * sizes (e.g. the larger buffers allocated with their exact size), and the buffers in excess, are
+	 * left to the garbage collector.
+	 *
+	 * @param buffer The buffer that is no longer used (may be null)
+	 */
+	void release(final byte[] buffer) {
+		if (buffer == null || buffer.length < minBufferSize || Integer.bitCount(buffer.length) != 1) {
+			return;
+		}
+		final int sizeClass = sizeClass(buffer.length);
+		if (sizeClass >= classes.length) {
+			return;
+		}
+
+		if (retainedBytes.addAndGet(buffer.length) <= maxRetainedBytes) {
+			final AtomicReferenceArray<byte[]> slots = classes[sizeClass];
+			final int length = slots.length();
+			final int start = startSlot(length);
+			for (int n = 0; n < length; n++) {
+				final int i = (start + n) % length;
+				if (slots.get(i) == null && slots.compareAndSet(i, null, buffer)) {
+					return;
+				}
+			}
+		}
+		retainedBytes.addAndGet(-buffer.length);
+		discarded.increment();
+	}
+
+	/**
+	 * @return the index of the smallest size class whose buffers can hold the specified size
+	 */
+	private int sizeClass(final int size) {
+		if (size <= minBufferSize) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros((size - 1) / minBufferSize);
+	}
+
+	private static int startSlot(final int slots) {
+		return (int) (Thread.currentThread().getId() % slots);
+	}
+
+	/**
+	 * @return a snapshot of the statistics of this pool
+	 */
+	public Statistics getStatistics() {
+		return new Statistics(hits.sum(), misses.sum(), discarded.sum(), retainedBytes.get());
+	}
+
+	/**
+	 * Statistics of the pool: buffers reused (hits) against buffers allocated (misses)
+	 */
+	public static final class Statistics {
+
+		private final long hits;
+		private final long misses;
+		private final long discarded;
+		private final long retainedBytes;
+
+		private Statistics(final long hits, final long misses, final long discarded, final long retainedBytes) {
+			this.hits = hits;
+			this.misses = misses;
+			this.discarded = discarded;
+			this.retainedBytes = retainedBytes;
+		}
+
+		/**
+		 * @return number of buffers taken from the pool
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return number of buffers allocated because none was available in the pool, or because
+		 * the requested size exceeds the largest size class
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return ratio of hits among all acquisitions (between 0 and 1)
+		 */
+		public double getHitRatio() {
+			final long acquisitions = hits + misses;
+			return acquisitions == 0 ? 0 : (double) hits / acquisitions;
+		}
+
+		/**
+		 * @return number of buffers released while the pool was full, and left to the garbage collector
+		 */
+		public long getDiscarded() {
+			return discarded;
+		}
+
+		/**
+		 * @return number of bytes currently retained by the pool
+		 */
+		public long getRetainedBytes() {
+			return retainedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"hits=%d, misses=%d, hitRatio=%.2f, discarded=%d, retainedBytes=%d",
+				hits,
+				misses,
+				getHitRatio(),
+				discarded,
+				retainedBytes
+			);
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Keeps the output of a command according to a {@link CapturePolicy}: the first bytes in a buffer
+ * that grows up to the head limit, the last bytes in a ring buffer that grows up to the tail limit,
+ * and only counts the bytes in between.
+ */
+class CaptureOutputStream extends OutputStream {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final byte[] EMPTY = new byte[0];
+
+	private final int headLimit;
+	private final int tailLimit;
+
+	private byte[] head = EMPTY;
+	private int headSize = 0;
+
+	/**
+	 * Ring buffer, whose oldest byte is at tailStart once it is full
+	 */
+	private byte[] tail = EMPTY;
+	private int tailStart = 0;
+	private int tailSize = 0;
+
+	private long totalBytes = 0;
+
+	/**
+	 * @param policy The capture policy
+	 */
+	CaptureOutputStream(final CapturePolicy policy) {
+		headLimit = policy.getHeadBytes();
+		tailLimit = policy.getTailBytes();
+	}
+
+	@Override
+	public void write(final int b) {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(final byte[] bytes, int offset, int length) {
+		totalBytes += length;
+
+		// The beginning
+		final int headLength = Math.min(length, headLimit - headSize);
+		if (headLength > 0) {
+			head = ensureCapacity(head, headSize + headLength, headLimit);
+			System.arraycopy(bytes, offset, head, headSize, headLength);
+			headSize += headLength;
+			offset += headLength;
+			length -= headLength;
+		}
+
+		if (length > 0 && tailLimit > 0) {
+			writeTail(bytes, offset, length);
+		}
+	}
+
+	private void writeTail(final byte[] bytes, int offset, int length) {
+		// Only the last bytes of a large chunk matter
+		if (length >= tailLimit) {
+			tail = ensureCapacity(tail, tailLimit, tailLimit);
+			System.arraycopy(bytes, offset + length - tailLimit, tail, 0, tailLimit);
+			tailStart = 0;
+			tailSize = tailLimit;
+			return;
+		}
+
+		// Not full yet: tailStart is 0 and the buffer grows
+		if (tailSize < tailLimit) {
+			tail = ensureCapacity(tail, Math.min(tailSize + length, tailLimit), tailLimit);
+			final int appended = Math.min(length, tailLimit - tailSize);
+			System.arraycopy(bytes, offset, tail, tailSize, appended);
+			tailSize += appended;
+			offset += appended;
+			length -= appended;
+		}
+
+		// Full: overwrite the oldest bytes
+		while (length > 0) {
+			final int copied = Math.min(length, tailLimit - tailStart);
+			System.arraycopy(bytes, offset, tail, tailStart, copied);
+			tailStart = (tailStart + copied) % tailLimit;
+			offset += copied;
+			length -= copied;
+		}
+	}
+
+	private static byte[] ensureCapacity(final byte[] buffer, final int capacity, final int limit) {
+		if (buffer.length >= capacity) {
+			return buffer;
+		}
+		final int newCapacity = (int) Math.min(limit, Math.max(capacity, Math.max(2L * buffer.length, INITIAL_CAPACITY)));
+		return Arrays.copyOf(buffer, newCapacity);
+	}
+
+	/**
+	 * @return the total number of bytes written, kept or not
+	 */
+	long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return whether some bytes have been dropped
+	 */
+	boolean isTruncated() {
+		return totalBytes > headSize + tailSize;
+	}
+
+	/**
+	 * @return the bytes kept: the beginning, then the end of the output (the internal buffer
+	 * when it has exactly the right size)
+	 */
+	byte[] toByteArray() {
+		if (tailSize == 0 && head.length == headSize) {
+			return head;
+		}
+		final byte[] bytes = Arrays.copyOf(head, headSize + tailSize);
+		final int firstPart = tailSize - tailStart;
+		System.arraycopy(tail, tailStart, bytes, headSize, firstPart);
+		System.arraycopy(tail, 0, bytes, headSize + firstPart, tailStart);
+		return bytes;
+	}
+}
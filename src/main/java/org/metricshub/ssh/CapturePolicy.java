@@ -0,0 +1,143 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.Objects;
+
+/**
+ * How much of the output of a command is kept in {@link SshClient.CommandResult#result}.
+ * <p>
+ * With a limit, the memory used by a command stays the same whatever the remote command prints:
+ * the beginning of stdout and stderr, their end, or both are kept, and the rest is only counted
+ * (see {@link SshClient.CommandResult#truncated} and {@link SshClient.CommandResult#totalBytes}).
+ * The limit applies to stdout and stderr separately.
+ */
+public final class CapturePolicy {
+
+	/**
+	 * Which part of the output is kept when it exceeds the limit
+	 */
+	public enum Retention {
+		/**
+		 * The first bytes
+		 */
+		HEAD,
+
+		/**
+		 * The last bytes
+		 */
+		TAIL,
+
+		/**
+		 * The first half of the limit from the beginning, the other half from the end
+		 */
+		HEAD_AND_TAIL
+	}
+
+	/**
+	 * Largest output that can be kept
+	 */
+	static final int MAX_BYTES = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The whole output is kept (the default)
+	 */
+	public static final CapturePolicy UNLIMITED = new CapturePolicy(MAX_BYTES, Retention.HEAD);
+
+	private final int maxBytes;
+	private final Retention retention;
+
+	/**
+	 * Creates a capture policy
+	 *
+	 * @param maxBytes Maximum number of bytes kept
+	 * @param retention Which part of the output is kept when it exceeds maxBytes
+	 */
+	public CapturePolicy(final int maxBytes, final Retention retention) {
+		Utils.checkArgumentNotZeroOrNegative(maxBytes, "maxBytes");
+		this.maxBytes = Math.min(maxBytes, MAX_BYTES);
+		this.retention = Objects.requireNonNull(retention, "retention");
+	}
+
+	/**
+	 * @param maxBytes Maximum number of bytes kept
+	 * @return a policy keeping the beginning of the output
+	 */
+	public static CapturePolicy head(final int maxBytes) {
+		return new CapturePolicy(maxBytes, Retention.HEAD);
+	}
+
+	/**
+	 * @param maxBytes Maximum number of bytes kept
+	 * @return a policy keeping the end of the output
+	 */
+	public static CapturePolicy tail(final int maxBytes) {
+		return new CapturePolicy(maxBytes, Retention.TAIL);
+	}
+
+	/**
+	 * @param maxBytes Maximum number of bytes kept
+	 * @return a policy keeping the beginning and the end of the output
+	 */
+	public static CapturePolicy headAndTail(final int maxBytes) {
+		return new CapturePolicy(maxBytes, Retention.HEAD_AND_TAIL);
+	}
+
+	/**
+	 * @return the maximum number of bytes kept
+	 */
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return which part of the output is kept when it exceeds the limit
+	 */
+	public Retention getRetention() {
+		return retention;
+	}
+
+	/**
+	 * @return the number of bytes kept from the beginning of the output
+	 */
+	int getHeadBytes() {
+		switch (retention) {
+			case HEAD:
+				return maxBytes;
+			case HEAD_AND_TAIL:
+				return maxBytes / 2;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * @return the number of bytes kept from the end of the output
+	 */
+	int getTailBytes() {
+		return maxBytes - getHeadBytes();
+	}
+
+	@Override
+	public String toString() {
+		return retention + "(" + maxBytes + ")";
+	}
+}
@@ -0,0 +1,280 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.Session;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import org.metricshub.ssh.SshClient.CommandChannel;
+import org.metricshub.ssh.SshClient.CommandResult;
+
+/**
+ * Runs several commands with a single channel: the commands are sent as one script to
+ * <code>/bin/sh</code>, which runs each command in a subshell between markers carrying its exit
+ * status, and kills it with a watchdog when it exceeds the timeout.
+ * <p>
+ * The markers are parsed as the output arrives, so the execution time of each command is measured
+ * when its end marker is received.
+ */
+class CommandBatch {
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	/**
+	 * Extra time (in milliseconds) given to the whole batch, on top of the timeouts of the commands
+	 */
+	static final long BATCH_MARGIN = 10000L;
+
+	/**
+	 * Script running a command (%2$s) between the markers (%1$s)
+	 */
+	private static final String SCRIPT_FORMAT =
+		"echo %1$s:B; echo %1$s:B >&2\n" +
+		"( %2$s\n) </dev/null\n" +
+		"__ssh_status=$?; echo \"\"; echo \"%1$s:E:$__ssh_status\"; echo \"\" >&2; echo %1$s:E >&2\n";
+
+	/**
+	 * Function killing a process and all its descendants, for the shells that cannot start a command
+	 * in its own process group (e.g. dash without a terminal). Each process is stopped before its
+	 * children are listed, so that it cannot fork new ones meanwhile.
+	 */
+	private static final String KILL_TREE_FUNCTION =
+		"__ssh_kill() { kill -STOP $1 2>/dev/null; " +
+		"for __ssh_child in `ps -e -o pid= -o ppid= | awk -v p=$1 '$2 == p { print $1 }'`; " +
+		"do __ssh_kill $__ssh_child; done; kill -9 $1 2>/dev/null; }\n";
+
+	/**
+	 * Script running a command (%2$s) between the markers (%1$s), with a watchdog that writes the
+	 * timeout marker and kills the command after %3$d seconds. The command runs in its own process
+	 * group when the shell supports job control, so that the watchdog kills its children (e.g. the
+	 * processes of a pipeline) with it, and they cannot write into the output of the next commands.
+	 */
+	private static final String SCRIPT_WITH_TIMEOUT_FORMAT =
+		"echo %1$s:B; echo %1$s:B >&2\n" +
+		"set -m 2>/dev/null\n" +
+		"( %2$s\n) </dev/null &\n" +
+		"__ssh_pid=$!\n" +
+		"set +m 2>/dev/null\n" +
+		"( sleep %3$d </dev/null >/dev/null 2>&1; echo %1$s:T; " +
+		"kill -9 -- -$__ssh_pid 2>/dev/null || __ssh_kill $__ssh_pid ) 2>/dev/null &\n" +
+		"__ssh_watchdog=$!\n" +
+		"wait $__ssh_pid 2>/dev/null\n" +
+		"__ssh_status=$?; kill $__ssh_watchdog 2>/dev/null\n" +
+		"echo \"\"; echo \"%1$s:E:$__ssh_status\"; echo \"\" >&2; echo %1$s:E >&2\n";
+
+	private final List<String> commands;
+	private final int timeout;
+	private final Charset charset;
+	private final String[] markers;
+	private final byte[][] stdoutEndMarkers;
+	private final byte[][] stderrEndMarkers;
+	private final long[] endTimes;
+
+	private final MarkerBuffer stdoutBuffer = new MarkerBuffer();
+	private final MarkerBuffer stderrBuffer = new MarkerBuffer();
+	private int nextStdoutEnd = 0;
+	private int nextStderrEnd = 0;
+	private int stdoutSearchPosition = 0;
+	private int stderrSearchPosition = 0;
+
+	/**
+	 * @param commands The commands
+	 * @param timeout Milliseconds after which each command is killed (0 for no timeout)
+	 * @param charset The charset of the remote system
+	 */
+	CommandBatch(final List<String> commands, final int timeout, final Charset charset) {
+		this.commands = commands;
+		this.timeout = timeout;
+		this.charset = charset;
+
+		final String batchId = "__SSH_" + Long.toHexString(RANDOM.nextLong() & Long.MAX_VALUE);
+		markers = new String[commands.size()];
+		stdoutEndMarkers = new byte[markers.length][];
+		stderrEndMarkers = new byte[markers.length][];
+		endTimes = new long[markers.length];
+		for (int i = 0; i < markers.length; i++) {
+			markers[i] = batchId + "_" + i;
+			stdoutEndMarkers[i] = ascii("\n" + markers[i] + ":E:");
+			stderrEndMarkers[i] = ascii("\n" + markers[i] + ":E\n");
+		}
+	}
+
+	/**
+	 * @return the script running all the commands
+	 */
+	String script() {
+		final StringBuilder script = new StringBuilder();
+		if (timeout > 0) {
+			script.append(KILL_TREE_FUNCTION);
+		}
+		for (int i = 0; i < markers.length; i++) {
+			if (timeout > 0) {
+				// sleep only supports seconds everywhere
+				final int seconds = (timeout + 999) / 1000;
+				script.append(String.format(SCRIPT_WITH_TIMEOUT_FORMAT, markers[i], commands.get(i), seconds));
+			} else {
+				script.append(String.format(SCRIPT_FORMAT, markers[i], commands.get(i)));
+			}
+		}
+		return script.toString();
+	}
+
+	/**
+	 * Runs the commands with the specified client
+	 *
+	 * @param sshClient The connected and authenticated client
+	 * @return one result per command
+	 * @throws IOException when there is a problem while communicating with the remote system
+	 */
+	List<CommandResult> run(final SshClient sshClient) throws IOException {
+		sshClient.checkIfConnected();
+		sshClient.checkIfAuthenticated();
+
+		final long startTime = System.currentTimeMillis();
+		final long deadline = timeout > 0
+			? startTime + (long) commands.size() * ((timeout + 999) / 1000 * 1000L) + BATCH_MARGIN
+			: Long.MAX_VALUE;
+
+		final CommandChannel commandChannel = sshClient.openCommandChannel(timeout > 0 ? deadline - startTime : 0);
+		if (commandChannel == null) {
+			return results(startTime);
+		}
+
+		try (CommandChannel channel = commandChannel) {
+			final Session session = channel.getSession();
+
+			// The script is sent on stdin: the login shell may not be a Bourne shell
+			session.execCommand("/bin/sh -s");
+			try (OutputStream stdin = session.getStdin()) {
+				stdin.write(script().getBytes(charset));
+			}
+
+			int condition = 0;
+			long currentTime;
+			while (
+				!isComplete() &&
+				!SshClient.hasEndOfFileSession(condition) &&
+				!SshClient.hasSessionClosed(condition) &&
+				(currentTime = System.currentTimeMillis()) < deadline
+			) {
+				condition = SshClient.waitForNewData(session, Math.min(deadline - currentTime, 5000));
+				SshClient.transferAllBytes(session.getStdout(), stdoutBuffer);
+				SshClient.transferAllBytes(session.getStderr(), stderrBuffer);
+				findEndMarkers(System.currentTimeMillis());
+			}
+		}
+
+		return results(startTime);
+	}
+
+	/**
+	 * @return whether the end markers of all the commands have been received
+	 */
+	private boolean isComplete() {
+		return nextStdoutEnd == markers.length && nextStderrEnd == markers.length;
+	}
+
+	/**
+	 * Looks for the end markers that have not been received yet, and remembers when they were received
+	 */
+	void findEndMarkers(final long time) {
+		// The searches resume where they stopped, so that the output is scanned only once
+		while (nextStdoutEnd < markers.length) {
+			final byte[] marker = stdoutEndMarkers[nextStdoutEnd];
+			final int index = stdoutBuffer.indexOf(marker, stdoutSearchPosition);
+			if (index < 0) {
+				stdoutSearchPosition = stdoutBuffer.resumePosition(marker, stdoutSearchPosition);
+				break;
+			}
+			stdoutSearchPosition = index;
+			if (stdoutBuffer.parseStatus(index + marker.length) == null) {
+				break;
+			}
+			endTimes[nextStdoutEnd++] = time;
+		}
+		while (nextStderrEnd < markers.length) {
+			final byte[] marker = stderrEndMarkers[nextStderrEnd];
+			final int index = stderrBuffer.indexOf(marker, stderrSearchPosition);
+			if (index < 0) {
+				stderrSearchPosition = stderrBuffer.resumePosition(marker, stderrSearchPosition);
+				break;
+			}
+			nextStderrEnd++;
+			stderrSearchPosition = index;
+		}
+	}
+
+	/**
+	 * Splits the output received so far into one result per command
+	 */
+	List<CommandResult> results(final long startTime) {
+		final List<CommandResult> results = new ArrayList<>(markers.length);
+		long previousEndTime = startTime;
+		int stdoutPosition = 0;
+		int stderrPosition = 0;
+
+		for (int i = 0; i < markers.length; i++) {
+			final CommandResult commandResult = new CommandResult();
+			results.add(commandResult);
+			final byte[] beginMarker = ascii(markers[i] + ":B\n");
+
+			final int stdoutStart = stdoutBuffer.indexAfter(beginMarker, stdoutPosition);
+			final int stdoutEnd = stdoutStart < 0 ? -1 : stdoutBuffer.indexOf(stdoutEndMarkers[i], stdoutStart);
+			final int stderrStart = stderrBuffer.indexAfter(beginMarker, stderrPosition);
+			final int stderrEnd = stderrStart < 0 ? -1 : stderrBuffer.indexOf(stderrEndMarkers[i], stderrStart);
+			if (stdoutEnd < 0 || stderrEnd < 0) {
+				// Not complete: the batch timed out, or the remote shell died
+				commandResult.success = false;
+				commandResult.result = stdoutStart < 0 ? "Not executed" : "Timeout (" + timeout / 1000 + " seconds)";
+				continue;
+			}
+
+			final byte[] timeoutMarker = ascii(markers[i] + ":T\n");
+			final boolean timedOut = stdoutBuffer.indexOf(timeoutMarker, stdoutStart, stdoutEnd) >= 0;
+			final byte[] stdoutBytes = stdoutBuffer.rangeWithout(stdoutStart, stdoutEnd, timeoutMarker);
+			final byte[] stderrBytes = stderrBuffer.range(stderrStart, stderrEnd);
+			commandResult.setOutput(stdoutBytes, stderrBytes, charset);
+			commandResult.totalBytes = stdoutBytes.length + stderrBytes.length;
+			commandResult.executionTime = (endTimes[i] - previousEndTime) / 1000f;
+			previousEndTime = endTimes[i];
+
+			if (timedOut) {
+				commandResult.success = false;
+				commandResult.result = "Timeout (" + timeout / 1000 + " seconds)";
+			} else {
+				commandResult.exitStatus = stdoutBuffer.parseStatus(stdoutEnd + stdoutEndMarkers[i].length);
+				commandResult.result = commandResult.getStdout() + commandResult.getStderr();
+			}
+			stdoutPosition = stdoutEnd;
+			stderrPosition = stderrEnd;
+		}
+		return results;
+	}
+
+	private static byte[] ascii(final String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+}
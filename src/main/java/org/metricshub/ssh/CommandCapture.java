@@ -0,0 +1,187 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.metricshub.ssh.SshClient.CommandResult;
+
+/**
+ * Captures stdout and stderr of a command in separate buffers (each one according to the
+ * {@link CapturePolicy}), and remembers how they were interleaved, so that the merged output
+ * of {@link CommandResult#result} can be rebuilt in the order it was received.
+ */
+class CommandCapture {
+
+	private final CaptureOutputStream stdout;
+	private final CaptureOutputStream stderr;
+
+	/**
+	 * Lengths of the successive runs of bytes received from the same stream: positive for stdout,
+	 * negative for stderr
+	 */
+	private int[] runs = new int[16];
+	private int runCount = 0;
+
+	/**
+	 * @param policy How much of each stream is kept
+	 */
+	CommandCapture(final CapturePolicy policy) {
+		stdout = new CaptureOutputStream(policy);
+		stderr = new CaptureOutputStream(policy);
+	}
+
+	/**
+	 * @return the stream stdout is written to
+	 */
+	OutputStream getStdoutSink() {
+		return new Sink(stdout, 1);
+	}
+
+	/**
+	 * @return the stream stderr is written to
+	 */
+	OutputStream getStderrSink() {
+		return new Sink(stderr, -1);
+	}
+
+	/**
+	 * @return the total number of bytes received on both streams
+	 */
+	long getTotalBytes() {
+		return stdout.getTotalBytes() + stderr.getTotalBytes();
+	}
+
+	/**
+	 * Sets the output of the specified result: stdout and stderr, and the merged output in result
+	 *
+	 * @param commandResult The result of the command
+	 * @param charset The charset of the output
+	 * @param merged Whether to set result with the merged output (false when the command timed out)
+	 */
+	void fill(final CommandResult commandResult, final Charset charset, final boolean merged) {
+		final byte[] stdoutBytes = stdout.toByteArray();
+		final byte[] stderrBytes = stderr.toByteArray();
+		commandResult.setOutput(stdoutBytes, stderrBytes, charset);
+		commandResult.totalBytes = getTotalBytes();
+
+		if (merged) {
+			commandResult.truncated = stdout.isTruncated() || stderr.isTruncated();
+			commandResult.result = merge(commandResult, charset);
+		}
+	}
+
+	/**
+	 * Interleaves stdout and stderr as they were received. When part of the output has been dropped,
+	 * the interleaving is lost and stderr follows stdout.
+	 * <p>
+	 * When only one stream has output, its decoded string is shared with {@link CommandResult#getStdout()}
+	 * or {@link CommandResult#getStderr()}. Otherwise, each run is decoded by the decoder of its stream,
+	 * so that a multi-byte character split by a run of the other stream is decoded properly.
+	 */
+	String merge(final CommandResult commandResult, final Charset charset) {
+		final byte[] stdoutBytes = commandResult.getStdoutBytes();
+		final byte[] stderrBytes = commandResult.getStderrBytes();
+		if (stderrBytes.length == 0) {
+			return commandResult.getStdout();
+		}
+		if (stdoutBytes.length == 0) {
+			return commandResult.getStderr();
+		}
+		if (runs == null || stdout.isTruncated() || stderr.isTruncated()) {
+			return commandResult.getStdout().concat(commandResult.getStderr());
+		}
+
+		final OutputDecoder stdoutDecoder = new OutputDecoder(charset);
+		final OutputDecoder stderrDecoder = new OutputDecoder(charset);
+		final StringBuilder builder = new StringBuilder(stdoutBytes.length + stderrBytes.length);
+		int stdoutPosition = 0;
+		int stderrPosition = 0;
+		for (int i = 0; i < runCount; i++) {
+			final int run = runs[i];
+			if (run > 0) {
+				stdoutDecoder.append(stdoutBytes, stdoutPosition, run);
+				stdoutDecoder.takeTo(builder);
+				stdoutPosition += run;
+			} else {
+				stderrDecoder.append(stderrBytes, stderrPosition, -run);
+				stderrDecoder.takeTo(builder);
+				stderrPosition -= run;
+			}
+		}
+		builder.append(stdoutDecoder.flush()).append(stderrDecoder.flush());
+		return builder.toString();
+	}
+
+	/**
+	 * Records a run of bytes received from a stream, merging it with the previous run of the same stream
+	 */
+	private void addRun(final int sign, final int length) {
+		// The interleaving is not needed anymore once part of the output has been dropped
+		if (runs == null) {
+			return;
+		}
+		if (stdout.isTruncated() || stderr.isTruncated()) {
+			runs = null;
+			return;
+		}
+
+		if (runCount > 0 && Integer.signum(runs[runCount - 1]) == sign) {
+			final long total = (long) runs[runCount - 1] + sign * length;
+			if (Math.abs(total) <= Integer.MAX_VALUE) {
+				runs[runCount - 1] = (int) total;
+				return;
+			}
+		}
+		if (runCount == runs.length) {
+			runs = Arrays.copyOf(runs, 2 * runCount);
+		}
+		runs[runCount++] = sign * length;
+	}
+
+	/**
+	 * Writes to the capture of a stream, and records the run
+	 */
+	private class Sink extends OutputStream {
+
+		private final CaptureOutputStream capture;
+		private final int sign;
+
+		Sink(final CaptureOutputStream capture, final int sign) {
+			this.capture = capture;
+			this.sign = sign;
+		}
+
+		@Override
+		public void write(final int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) {
+			if (length > 0) {
+				capture.write(bytes, offset, length);
+				addRun(sign, length);
+			}
+		}
+	}
+}
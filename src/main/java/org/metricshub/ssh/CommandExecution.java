@@ -0,0 +1,308 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Session;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import org.metricshub.ssh.SshClient.CommandChannel;
+import org.metricshub.ssh.SshClient.CommandResult;
+
+/**
+ * Execution of a command as a state machine that is driven by successive calls to
+ * {@link #poll(CommandScheduler)}, which never wait for the remote host: the session is opened
+ * and the command started by the threads of {@link CommandScheduler#start(java.util.concurrent.Callable)}.
+ * <p>
+ * The states are: waiting for a session, starting (opening the session and starting the command),
+ * running (reading the output until the end of file), waiting for the exit status, done (the future
+ * is complete).
+ */
+class CommandExecution {
+
+	/**
+	 * Milliseconds before the first check of the end of file while the command is running
+	 * (the exit status of the command triggers the check earlier)
+	 */
+	static final long EOF_CHECK_PERIOD = 1000L;
+
+	/**
+	 * Maximum milliseconds between two checks of the end of file while the command is running:
+	 * the period doubles after each check, up to the wait of the synchronous execution
+	 */
+	static final long MAX_EOF_CHECK_PERIOD = 5000L;
+
+	/**
+	 * Milliseconds to wait for the exit status after the end of file
+	 */
+	static final long EXIT_STATUS_TIMEOUT = 5000L;
+
+	private final SshClient sshClient;
+	private final String command;
+	private final int timeout;
+	private final long startTime;
+	private final long timeoutTime;
+	private final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+	private final CommandCapture capture;
+	private final OutputStream stdoutSink;
+	private final OutputStream stderrSink;
+
+	private volatile CommandChannel channel;
+	private Future<Void> start;
+	private boolean running = false;
+	private long nextEofCheck;
+	private long eofCheckPeriod = EOF_CHECK_PERIOD;
+	private long exitStatusDeadline = 0;
+	private long executionTime;
+
+	/**
+	 * Creates the execution of a command, which starts with the first call to {@link #poll(CommandScheduler)}
+	 *
+	 * @param sshClient The connected and authenticated client
+	 * @param command The command to be executed
+	 * @param timeout Milliseconds before the command is considered timed out (0 for no timeout)
+	 */
+	CommandExecution(final SshClient sshClient, final String command, final int timeout) {
+		this.sshClient = sshClient;
+		this.command = command;
+		this.timeout = timeout;
+		startTime = System.currentTimeMillis();
+		timeoutTime = timeout > 0 ? startTime + timeout : Long.MAX_VALUE;
+		capture = new CommandCapture(sshClient.getCapturePolicy());
+		stdoutSink = capture.getStdoutSink();
+		stderrSink = capture.getStderrSink();
+		future.whenComplete((result, error) -> close());
+	}
+
+	/**
+	 * @return the future of the result, which closes the session when completed or cancelled
+	 */
+	CompletableFuture<CommandResult> getFuture() {
+		return future;
+	}
+
+	/**
+	 * @return whether the execution is over (completed, failed or cancelled)
+	 */
+	boolean isDone() {
+		return future.isDone();
+	}
+
+	/**
+	 * Makes the execution progress as far as possible without waiting for the remote host
+	 *
+	 * @param scheduler The scheduler polling the execution, which starts the command and limits
+	 * the checks of the end of file
+	 * @return whether anything happened (new output, new state), in which case the execution
+	 * is likely to progress again soon
+	 */
+	boolean poll(final CommandScheduler scheduler) {
+		if (future.isDone()) {
+			return false;
+		}
+
+		try {
+			return step(System.currentTimeMillis(), scheduler);
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+			return true;
+		}
+	}
+
+	/**
+	 * Fails the execution, unless it is already over
+	 *
+	 * @param error The reason of the failure
+	 */
+	void abort(final Throwable error) {
+		future.completeExceptionally(error);
+	}
+
+	private boolean step(final long now, final CommandScheduler scheduler) throws IOException {
+		// Waiting for a session
+		if (start == null) {
+			if (now >= timeoutTime) {
+				completeWithTimeout();
+				return true;
+			}
+			final Semaphore permits = sshClient.tryAcquireCommandChannel();
+			if (permits == null) {
+				return false;
+			}
+			try {
+				start = scheduler.start(() -> start(permits));
+			} catch (RejectedExecutionException e) {
+				permits.release();
+				throw new IOException("The command scheduler is closed");
+			}
+			return false;
+		}
+
+		boolean progress = false;
+
+		// Starting
+		if (!running) {
+			if (!start.isDone()) {
+				if (now >= timeoutTime) {
+					completeWithTimeout();
+					return true;
+				}
+				return false;
+			}
+			checkStarted();
+			running = true;
+			scheduleEofCheck(now);
+			progress = true;
+		}
+
+		final Session session = channel.getSession();
+
+		// Running
+		if (exitStatusDeadline == 0) {
+			progress |= SshClient.transferAllBytes(session.getStdout(), stdoutSink) > 0;
+			progress |= SshClient.transferAllBytes(session.getStderr(), stderrSink) > 0;
+
+			if (!isEndOfFile(session, now, scheduler)) {
+				if (now >= timeoutTime) {
+					completeWithTimeout();
+					return true;
+				}
+				return progress;
+			}
+
+			// Read what came with the end of file
+			SshClient.transferAllBytes(session.getStdout(), stdoutSink);
+			SshClient.transferAllBytes(session.getStderr(), stderrSink);
+
+			if (now >= timeoutTime) {
+				completeWithTimeout();
+				return true;
+			}
+			executionTime = (now - startTime) / 1000;
+			exitStatusDeadline = now + EXIT_STATUS_TIMEOUT;
+			progress = true;
+		}
+
+		// Waiting for the exit status
+		final Integer exitStatus = session.getExitStatus();
+		if (exitStatus != null || now >= exitStatusDeadline) {
+			final CommandResult commandResult = new CommandResult();
+			commandResult.executionTime = executionTime;
+			commandResult.exitStatus = exitStatus;
+			capture.fill(commandResult, sshClient.getCharset(), true);
+			future.complete(commandResult);
+			return true;
+		}
+
+		return progress;
+	}
+
+	/**
+	 * Opens the session and starts the command, outside of the polling threads
+	 *
+	 * @param permits The semaphore from which the permit of the session has been acquired
+	 */
+	private Void start(final Semaphore permits) throws IOException {
+		final CommandChannel newChannel = sshClient.openCommandChannel(permits);
+		channel = newChannel;
+
+		// Over (cancelled, timed out) while the session was being opened
+		if (future.isDone()) {
+			newChannel.close();
+			return null;
+		}
+
+		newChannel.getSession().execCommand(command);
+		return null;
+	}
+
+	/**
+	 * Throws the error that prevented the session from being opened or the command from being started
+	 */
+	private void checkStarted() throws IOException {
+		try {
+			start.get();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException("Cannot start the command", cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while starting the command", e);
+		}
+	}
+
+	/**
+	 * Checks whether the remote host has sent the end of file, or closed the session. As this check
+	 * may block the polling thread for 1 millisecond, it is performed right away only once the command
+	 * has reported its exit status or signal. Otherwise, it is performed less and less often, and
+	 * within the budget shared with the other commands, so that thousands of running commands don't
+	 * keep the polling threads busy.
+	 */
+	private boolean isEndOfFile(final Session session, final long now, final CommandScheduler scheduler) {
+		if (session.getExitStatus() == null && session.getExitSignal() == null) {
+			if (now < nextEofCheck || !scheduler.tryEofCheck()) {
+				return false;
+			}
+			eofCheckPeriod = Math.min(2 * eofCheckPeriod, MAX_EOF_CHECK_PERIOD);
+			scheduleEofCheck(now);
+		}
+		final int condition = session.waitForCondition(ChannelCondition.EOF | ChannelCondition.CLOSED, 1);
+		return (condition & (ChannelCondition.EOF | ChannelCondition.CLOSED)) != 0;
+	}
+
+	/**
+	 * Schedules the next periodic check of the end of file, at a random time within the second half
+	 * of the current period, so that the commands started together are not checked together
+	 */
+	private void scheduleEofCheck(final long now) {
+		nextEofCheck = now + eofCheckPeriod / 2 + ThreadLocalRandom.current().nextLong(eofCheckPeriod / 2 + 1);
+	}
+
+	private void completeWithTimeout() {
+		final CommandResult commandResult = new CommandResult();
+		commandResult.success = false;
+		commandResult.result = "Timeout (" + timeout / 1000 + " seconds)";
+		capture.fill(commandResult, sshClient.getCharset(), false);
+		future.complete(commandResult);
+	}
+
+	/**
+	 * Closes the session (if any) and gives its slot back to the other commands
+	 */
+	private void close() {
+		final CommandChannel currentChannel = channel;
+		if (currentChannel != null) {
+			currentChannel.close();
+		}
+	}
+}
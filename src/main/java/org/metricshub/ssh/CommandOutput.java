@@ -0,0 +1,412 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Output of a command that is kept in memory up to a threshold, and in a temporary file beyond,
+ * with {@link SshClient#executeCommand(String, int, CommandOutput)}.
+ * <p>
+ * The temporary file is read through memory mappings, so reading a large output with
+ * {@link #getInputStream()}, {@link #asCharSequence()} or {@link #lines()} doesn't copy it
+ * back into the Java heap.
+ * <p>
+ * The temporary files are deleted when the output is closed:
+ * <pre>
+ * try (CommandOutput output = new CommandOutput()) {
+ * 	sshClient.executeCommand("find / -type f", 0, output);
+ * 	output.lines().filter(line -&gt; line.endsWith(".conf")).forEach(System.out::println);
+ * }
+ * </pre>
+ * The output must not be used by several threads at the same time.
+ */
+public class CommandOutput implements AutoCloseable {
+
+	/**
+	 * Default number of bytes kept in memory before spilling to a temporary file
+	 */
+	public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+	/**
+	 * Size of each mapping of the temporary file
+	 */
+	static final int SEGMENT_SIZE = 1 << 30;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final int memoryThreshold;
+	private final Path directory;
+	private Charset charset = StandardCharsets.UTF_8;
+
+	private byte[] memory = new byte[0];
+	private long size = 0;
+
+	private Path file;
+	private FileChannel fileChannel;
+	private List<MappedByteBuffer> segments;
+
+	private Path charsFile;
+	private CharSequence chars;
+
+	private boolean read = false;
+	private boolean closed = false;
+
+	/**
+	 * Creates an output kept in memory up to 1 MB, and in the default temporary directory beyond
+	 */
+	public CommandOutput() {
+		this(DEFAULT_MEMORY_THRESHOLD, Paths.get(System.getProperty("java.io.tmpdir")));
+	}
+
+	/**
+	 * Creates an output kept in memory up to the specified threshold, and in a temporary file beyond
+	 *
+	 * @param memoryThreshold Number of bytes kept in memory (0 to always use a temporary file)
+	 * @param directory The directory of the temporary files
+	 */
+	public CommandOutput(final int memoryThreshold, final Path directory) {
+		if (memoryThreshold < 0) {
+			throw new IllegalArgumentException("memoryThreshold=" + memoryThreshold + " must not be negative.");
+		}
+		this.memoryThreshold = memoryThreshold;
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the stream the command writes its output to
+	 */
+	OutputStream getSink() {
+		return new OutputStream() {
+			@Override
+			public void write(final int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+				append(bytes, offset, length);
+			}
+		};
+	}
+
+	/**
+	 * Appends the specified bytes to the output
+	 */
+	void append(final byte[] bytes, final int offset, final int length) throws IOException {
+		checkNotClosed();
+		if (read) {
+			throw new IllegalStateException("The output has already been read");
+		}
+
+		if (file == null && size + length <= memoryThreshold) {
+			if (size + length > memory.length) {
+				final long capacity = Math.max(size + length, 2L * memory.length + INITIAL_CAPACITY);
+				memory = Arrays.copyOf(memory, (int) Math.min(memoryThreshold, capacity));
+			}
+			System.arraycopy(bytes, offset, memory, (int) size, length);
+		} else {
+			if (file == null) {
+				spill();
+			}
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+			while (buffer.hasRemaining()) {
+				fileChannel.write(buffer);
+			}
+		}
+		size += length;
+	}
+
+	/**
+	 * Moves the output from memory to a new temporary file
+	 */
+	private void spill() throws IOException {
+		file = Files.createTempFile(directory, "ssh-output-", ".tmp");
+		fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		final ByteBuffer buffer = ByteBuffer.wrap(memory, 0, (int) size);
+		while (buffer.hasRemaining()) {
+			fileChannel.write(buffer);
+		}
+		memory = null;
+	}
+
+	/**
+	 * @param charset The charset of the output, used to decode it
+	 */
+	void setCharset(final Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * @return the number of bytes of output
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return whether the output has been written to a temporary file
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * @return the charset used to decode the output (the charset of the SSH client)
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Reads the output as bytes. No more output can be written to this object once it has been read.
+	 *
+	 * @return a new stream of the bytes of the output
+	 * @throws IOException when the temporary file cannot be mapped
+	 */
+	public InputStream getInputStream() throws IOException {
+		checkNotClosed();
+		read = true;
+		if (file == null) {
+			return new ByteArrayInputStream(memory, 0, (int) size);
+		}
+
+		final List<ByteBuffer> buffers = new ArrayList<>();
+		for (MappedByteBuffer segment : mapSegments()) {
+			buffers.add(segment.duplicate());
+		}
+		return new ByteBuffersInputStream(buffers);
+	}
+
+	/**
+	 * Reads the output as text
+	 *
+	 * @return a new reader of the output, decoded with {@link #getCharset()}
+	 * @throws IOException when the temporary file cannot be mapped
+	 */
+	public Reader newReader() throws IOException {
+		return new InputStreamReader(getInputStream(), charset);
+	}
+
+	/**
+	 * Reads the output line by line. The lines are decoded as they are read.
+	 *
+	 * @return the lines of the output (<code>lines().iterator()</code> for an iterator)
+	 * @throws IOException when the temporary file cannot be mapped
+	 */
+	public Stream<String> lines() throws IOException {
+		return new BufferedReader(newReader()).lines();
+	}
+
+	/**
+	 * Returns the output as a sequence of characters. A spilled output is decoded (once) into another
+	 * temporary file of UTF-16 characters, which is memory-mapped: it is not copied into the Java heap.
+	 *
+	 * @return the text of the output
+	 * @throws IOException when the temporary files cannot be written or mapped, or when the output
+	 * exceeds 1 billion characters
+	 */
+	public CharSequence asCharSequence() throws IOException {
+		checkNotClosed();
+		read = true;
+		if (chars == null) {
+			if (file == null) {
+				chars = new String(memory, 0, (int) size, charset);
+			} else {
+				chars = decodeToFile();
+			}
+		}
+		return chars;
+	}
+
+	/**
+	 * Decodes the output into a temporary file of UTF-16 characters, and maps it
+	 */
+	private CharBuffer decodeToFile() throws IOException {
+		charsFile = Files.createTempFile(directory, "ssh-output-", ".chars");
+		try (
+			FileChannel charsChannel = FileChannel.open(
+				charsFile,
+				StandardOpenOption.READ,
+				StandardOpenOption.WRITE
+			);
+			Reader reader = newReader()
+		) {
+			final char[] buffer = new char[8192];
+			final ByteBuffer bytes = ByteBuffer.allocate(2 * buffer.length);
+			long charCount = 0;
+			int charsRead;
+			while ((charsRead = reader.read(buffer)) >= 0) {
+				charCount += charsRead;
+				if (charCount > Integer.MAX_VALUE / 2) {
+					throw new IOException("The output is too large to be viewed as a CharSequence");
+				}
+				bytes.clear();
+				bytes.asCharBuffer().put(buffer, 0, charsRead);
+				bytes.limit(2 * charsRead);
+				while (bytes.hasRemaining()) {
+					charsChannel.write(bytes);
+				}
+			}
+			return charsChannel.map(FileChannel.MapMode.READ_ONLY, 0, 2 * charCount).asCharBuffer();
+		}
+	}
+
+	/**
+	 * Maps the temporary file, in segments of 1 GB
+	 */
+	private List<MappedByteBuffer> mapSegments() throws IOException {
+		if (segments == null) {
+			final List<MappedByteBuffer> mappedSegments = new ArrayList<>();
+			for (long position = 0; position < size; position += SEGMENT_SIZE) {
+				mappedSegments.add(
+					fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position))
+				);
+			}
+			segments = mappedSegments;
+		}
+		return segments;
+	}
+
+	private void checkNotClosed() {
+		if (closed) {
+			throw new IllegalStateException("The output is closed");
+		}
+	}
+
+	/**
+	 * Releases the memory and deletes the temporary files. On systems that cannot delete a file while
+	 * it is mapped (Windows), the files are deleted when the JVM exits.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		memory = null;
+		segments = null;
+		chars = null;
+		try {
+			if (fileChannel != null) {
+				fileChannel.close();
+			}
+		} finally {
+			delete(file);
+			delete(charsFile);
+		}
+	}
+
+	private static void delete(final Path path) {
+		if (path != null) {
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				path.toFile().deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Reads a sequence of byte buffers
+	 */
+	private static class ByteBuffersInputStream extends InputStream {
+
+		private final List<ByteBuffer> buffers;
+		private int current = 0;
+
+		ByteBuffersInputStream(final List<ByteBuffer> buffers) {
+			this.buffers = buffers;
+		}
+
+		/**
+		 * @return the buffer with remaining bytes, or null at the end
+		 */
+		private ByteBuffer buffer() {
+			while (current < buffers.size()) {
+				final ByteBuffer buffer = buffers.get(current);
+				if (buffer.hasRemaining()) {
+					return buffer;
+				}
+				current++;
+			}
+			return null;
+		}
+
+		@Override
+		public int read() {
+			final ByteBuffer buffer = buffer();
+			return buffer == null ? -1 : buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) {
+			if (length == 0) {
+				return 0;
+			}
+			final ByteBuffer buffer = buffer();
+			if (buffer == null) {
+				return -1;
+			}
+			final int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public long skip(final long n) {
+			long skipped = 0;
+			ByteBuffer buffer;
+			while (skipped < n && (buffer = buffer()) != null) {
+				final int count = (int) Math.min(n - skipped, buffer.remaining());
+				buffer.position(buffer.position() + count);
+				skipped += count;
+			}
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			final ByteBuffer buffer = buffer();
+			return buffer == null ? 0 : buffer.remaining();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+
+/**
+ * Receives the output of a command as it arrives, with
+ * {@link SshClient#executeCommand(String, int, CommandOutputListener)}.
+ * <p>
+ * The listener is called by the thread executing the command. Nothing more is read from the
+ * SSH channel while the listener is busy, so a slow listener makes the remote host pause the
+ * command once the channel window is full, instead of piling up the output in memory.
+ * <p>
+ * Throwing an exception stops the command (e.g. <code>tail -f</code> or <code>vmstat 1</code>).
+ */
+@FunctionalInterface
+public interface CommandOutputListener {
+	/**
+	 * The output streams of a command
+	 */
+	enum Stream {
+		STDOUT,
+		STDERR
+	}
+
+	/**
+	 * Called with the text decoded from each chunk of output. A multi-byte character is never split
+	 * across 2 calls, but a line may be.
+	 *
+	 * @param stream The stream the text comes from
+	 * @param text The text
+	 * @throws IOException to stop the command
+	 */
+	void onOutput(Stream stream, String text) throws IOException;
+
+	/**
+	 * Called once, when the output ends (end of file, timeout or failure of the command)
+	 *
+	 * @throws IOException when the end of the output cannot be processed
+	 */
+	default void onEnd() throws IOException {}
+
+	/**
+	 * Receives complete lines of output
+	 */
+	@FunctionalInterface
+	interface LineListener {
+		/**
+		 * Called with each line of output
+		 *
+		 * @param stream The stream the line comes from
+		 * @param line The line, without its terminator (<code>\n</code> or <code>\r\n</code>)
+		 * @throws IOException to stop the command
+		 */
+		void onLine(Stream stream, String line) throws IOException;
+	}
+
+	/**
+	 * Creates a listener that splits the output of each stream into lines. The last line is delivered
+	 * at the end of the output, even without terminator.
+	 *
+	 * @param lineListener The listener of the lines
+	 * @return a new listener, for a single command
+	 */
+	static CommandOutputListener lines(final LineListener lineListener) {
+		return new LineSplitter(lineListener);
+	}
+}
@@ -0,0 +1,270 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.metricshub.ssh.SshClient.CommandResult;
+
+/**
+ * Drives the commands started with {@link SshClient#executeCommandAsync(String, int, CommandScheduler)}
+ * with a small, fixed number of threads.
+ * <p>
+ * Instead of blocking a thread per command until the remote process ends, each running command is
+ * polled for new output: right away when it made progress, then less and less often (up to the
+ * maximum poll interval) while it stays idle. A few threads can then keep thousands of commands
+ * in flight. Opening the session and starting the command, which wait for the remote host,
+ * run on separate threads created by {@link BlockingThreads}.
+ * <p>
+ * {@link #getShared()} returns a scheduler shared by the whole JVM, whose threads are daemons.
+ * Other schedulers must be closed when no longer needed.
+ */
+public class CommandScheduler implements AutoCloseable {
+
+	/**
+	 * Default number of threads polling the commands
+	 */
+	public static final int DEFAULT_THREADS = 2;
+
+	/**
+	 * Default maximum time (in milliseconds) between two polls of an idle command
+	 */
+	public static final long DEFAULT_MAX_POLL_INTERVAL = 100L;
+
+	/**
+	 * Maximum number of periodic checks of the end of file per second and per thread: each check
+	 * may block the thread for 1 millisecond, so they take 10% of the time of the threads at most
+	 */
+	static final int EOF_CHECKS_PER_THREAD = 100;
+
+	/**
+	 * Maximum number of commands whose session is being opened, or which are being started,
+	 * at the same time: each of these operations waits for a reply of the remote host
+	 */
+	static final int STARTING_COMMANDS = 32;
+
+	private static final AtomicInteger SCHEDULER_COUNT = new AtomicInteger();
+
+	private final ScheduledThreadPoolExecutor executor;
+	private final ThreadPoolExecutor starter;
+	private final long maxPollInterval;
+	private final int maxEofChecks;
+	private final boolean shared;
+	private final Set<CommandExecution> executions = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed = false;
+
+	/**
+	 * The second (of {@link System#nanoTime()}) of the last check of the end of file,
+	 * and the number of checks performed during this second
+	 */
+	private long eofCheckSecond;
+	private int eofChecks;
+
+	/**
+	 * Lazily creates the shared scheduler
+	 */
+	private static class SharedHolder {
+
+		private static final CommandScheduler INSTANCE = new CommandScheduler(
+			DEFAULT_THREADS,
+			DEFAULT_MAX_POLL_INTERVAL,
+			true
+		);
+	}
+
+	/**
+	 * Creates a scheduler with the default number of threads and poll interval
+	 */
+	public CommandScheduler() {
+		this(DEFAULT_THREADS, DEFAULT_MAX_POLL_INTERVAL);
+	}
+
+	/**
+	 * Creates a scheduler
+	 *
+	 * @param threads Number of threads polling the commands
+	 * @param maxPollInterval Maximum time (in milliseconds) between two polls of an idle command,
+	 * i.e. the maximum delay before noticing new output or the end of a command
+	 */
+	public CommandScheduler(final int threads, final long maxPollInterval) {
+		this(threads, maxPollInterval, false);
+	}
+
+	private CommandScheduler(final int threads, final long maxPollInterval, final boolean shared) {
+		Utils.checkArgumentNotZeroOrNegative(threads, "threads");
+		Utils.checkArgumentNotZeroOrNegative(maxPollInterval, "maxPollInterval");
+
+		this.maxPollInterval = maxPollInterval;
+		this.shared = shared;
+		maxEofChecks = threads * EOF_CHECKS_PER_THREAD;
+
+		final int schedulerId = SCHEDULER_COUNT.incrementAndGet();
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor =
+			new ScheduledThreadPoolExecutor(
+				threads,
+				runnable -> {
+					final Thread thread = new Thread(
+						runnable,
+						"CommandScheduler-" + schedulerId + "-" + threadCount.incrementAndGet()
+					);
+					thread.setDaemon(true);
+					return thread;
+				}
+			);
+		executor.setRemoveOnCancelPolicy(true);
+
+		final AtomicInteger starterCount = new AtomicInteger();
+		starter =
+			new ThreadPoolExecutor(
+				STARTING_COMMANDS,
+				STARTING_COMMANDS,
+				60L,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				runnable ->
+					BlockingThreads.newThread(
+						"CommandScheduler-" + schedulerId + "-start-" + starterCount.incrementAndGet(),
+						runnable
+					)
+			);
+		starter.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return the scheduler shared by the whole JVM, which cannot be closed
+	 */
+	public static CommandScheduler getShared() {
+		return SharedHolder.INSTANCE;
+	}
+
+	/**
+	 * @return the number of commands that are not complete yet (waiting for a session or running)
+	 */
+	public int getPendingCommands() {
+		return (int) executions.stream().filter(execution -> !execution.isDone()).count();
+	}
+
+	/**
+	 * Starts driving the specified execution
+	 *
+	 * @param execution The command execution
+	 * @return the future of the result of the command
+	 * @throws IllegalStateException when the scheduler is closed
+	 */
+	CompletableFuture<CommandResult> submit(final CommandExecution execution) {
+		if (closed) {
+			throw new IllegalStateException("The command scheduler is closed");
+		}
+
+		executions.add(execution);
+		execution.getFuture().whenComplete((result, error) -> executions.remove(execution));
+		schedule(execution, 0L);
+		return execution.getFuture();
+	}
+
+	/**
+	 * Runs an operation that waits for the remote host (opening a session, starting a command)
+	 * outside of the polling threads
+	 *
+	 * @param task The operation
+	 * @return the future of the operation, checked by the next polls
+	 * @throws RejectedExecutionException when the scheduler is closed
+	 */
+	<T> Future<T> start(final Callable<T> task) {
+		return starter.submit(task);
+	}
+
+	/**
+	 * Takes one of the periodic checks of the end of file allowed during the current second
+	 * (see {@link #EOF_CHECKS_PER_THREAD}), shared by all the commands of the scheduler
+	 *
+	 * @return whether the check can be performed now
+	 */
+	synchronized boolean tryEofCheck() {
+		final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+		if (second != eofCheckSecond) {
+			eofCheckSecond = second;
+			eofChecks = 0;
+		}
+		if (eofChecks >= maxEofChecks) {
+			return false;
+		}
+		eofChecks++;
+		return true;
+	}
+
+	/**
+	 * Polls the execution after the specified delay, and again until it is over
+	 */
+	private void schedule(final CommandExecution execution, final long delay) {
+		try {
+			executor.schedule(
+				() -> {
+					final boolean progress = execution.poll(this);
+					if (!execution.isDone()) {
+						schedule(execution, progress ? 0L : Math.min(Math.max(2 * delay, 1L), maxPollInterval));
+					}
+				},
+				delay,
+				TimeUnit.MILLISECONDS
+			);
+		} catch (RejectedExecutionException e) {
+			execution.abort(new IOException("The command scheduler is closed"));
+		}
+	}
+
+	/**
+	 * Stops the threads, and fails the commands that are not complete yet (their sessions are closed)
+	 *
+	 * @throws IllegalStateException when closing the shared scheduler
+	 */
+	@Override
+	public void close() {
+		if (shared) {
+			throw new IllegalStateException("The shared command scheduler cannot be closed");
+		}
+
+		closed = true;
+		starter.shutdownNow();
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		final IOException error = new IOException("The command scheduler is closed");
+		for (CommandExecution execution : executions) {
+			execution.abort(error);
+		}
+	}
+}
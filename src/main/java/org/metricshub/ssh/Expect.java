@@ -0,0 +1,366 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Waits for prompts in the output of an interactive session (see {@link SshClient#openTerminal()}),
+ * and sends the answers, like the <code>expect</code> command.
+ * <p>
+ * The output is matched incrementally: each character is examined once by the automaton of the
+ * literals, and each line once by the regular expressions (the line being received is examined
+ * again only from where the previous search stopped), so that a scripted session with hundreds of
+ * prompts runs in a time proportional to its output. The text that follows a match is kept for the
+ * next call to {@link #expect(ExpectPatterns, long)}.
+ * <pre>
+ * Expect expect = new Expect(sshClient);
+ * expect.expect(prompts, 5000);
+ * expect.send("su -\n");
+ * Expect.Result result = expect.expect(new ExpectPatterns().withRegexes("[Pp]assword: *$"), 5000);
+ * </pre>
+ * An Expect is not thread-safe.
+ */
+public final class Expect {
+
+	/**
+	 * How a call to {@link Expect#expect(ExpectPatterns, long, long)} ended
+	 */
+	public enum Outcome {
+		/**
+		 * One of the patterns has been found
+		 */
+		MATCH,
+
+		/**
+		 * None of the patterns has been found before the timeout. The text is kept for the next call.
+		 */
+		TIMEOUT,
+
+		/**
+		 * Nothing has been received during the idle timeout (e.g. the output of a command is complete,
+		 * but its prompt is unknown)
+		 */
+		IDLE,
+
+		/**
+		 * The end of the output has been reached, or the session is closed
+		 */
+		CLOSED
+	}
+
+	/**
+	 * The result of a call to {@link Expect#expect(ExpectPatterns, long, long)}
+	 */
+	public static final class Result {
+
+		private final Outcome outcome;
+		private final int index;
+		private final String before;
+		private final String match;
+
+		Result(final Outcome outcome, final int index, final String before, final String match) {
+			this.outcome = outcome;
+			this.index = index;
+			this.before = before;
+			this.match = match;
+		}
+
+		/**
+		 * @return how the call ended
+		 */
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		/**
+		 * @return whether one of the patterns has been found
+		 */
+		public boolean isMatch() {
+			return outcome == Outcome.MATCH;
+		}
+
+		/**
+		 * @return the index of the pattern that has been found (see {@link ExpectPatterns#get(int)}), or -1
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return the text received before the match, or all the text received if nothing matched
+		 */
+		public String getBefore() {
+			return before;
+		}
+
+		/**
+		 * @return the text that matched the pattern, or null if nothing matched
+		 */
+		public String getMatch() {
+			return match;
+		}
+
+		@Override
+		public String toString() {
+			return outcome + (index >= 0 ? " #" + index + " " + match : "");
+		}
+	}
+
+	private final SshClient sshClient;
+
+	/**
+	 * The text received. The characters before {@link #start} have been returned already, except
+	 * the last one, kept for <code>^</code> and other look-behinds.
+	 */
+	private final StringBuilder buffer = new StringBuilder();
+	private int start = 0;
+
+	/**
+	 * The patterns of the previous search, whose state is valid for the next one
+	 */
+	private ExpectPatterns patterns = null;
+	private Matcher[] matchers = null;
+
+	/**
+	 * Where the search of literals stopped, and the state of the automaton there
+	 */
+	private int literalPosition = 0;
+	private int literalState = AhoCorasick.ROOT;
+
+	/**
+	 * The beginning of the line being searched by the regular expressions, and where their previous
+	 * search stopped
+	 */
+	private int regexLineStart = 0;
+	private int regexPosition = 0;
+
+	/**
+	 * Creates an Expect reading the session of the specified client, which must be opened already
+	 *
+	 * @param sshClient The SSH client, with an opened session (typically a terminal)
+	 */
+	public Expect(final SshClient sshClient) {
+		this.sshClient = Objects.requireNonNull(sshClient, "sshClient must not be null");
+	}
+
+	/**
+	 * Write the specified text into the session (see {@link SshClient#write(String)})
+	 *
+	 * @param text The text to write
+	 * @throws IOException When an I/O error occurred.
+	 */
+	public void send(final String text) throws IOException {
+		sshClient.write(text);
+	}
+
+	/**
+	 * Wait until one of the patterns is found in the output of the session
+	 *
+	 * @param patterns The patterns to wait for
+	 * @param timeout Timeout in milliseconds
+	 * @return the result, with the pattern found and the text before it
+	 * @throws IOException When an I/O error occurred.
+	 */
+	public Result expect(final ExpectPatterns patterns, final long timeout) throws IOException {
+		return expect(patterns, timeout, 0);
+	}
+
+	/**
+	 * Wait until one of the patterns is found in the output of the session, or until nothing is
+	 * received during the specified idle timeout.
+	 * <p>
+	 * When several patterns are found, the one that ends first in the output wins, and the pattern
+	 * with the lowest index for the same end. After a match, the next call starts right after it.
+	 * After an idle timeout or the end of the output, the text received is returned by
+	 * {@link Result#getBefore()} and won't be returned again; after a timeout, it is kept.
+	 *
+	 * @param patterns The patterns to wait for
+	 * @param timeout Timeout in milliseconds
+	 * @param idleTimeout The longest time without receiving anything, in milliseconds (0 for no limit)
+	 * @return the result, with the pattern found and the text before it
+	 * @throws IOException When an I/O error occurred.
+	 */
+	public Result expect(final ExpectPatterns patterns, final long timeout, final long idleTimeout)
+		throws IOException {
+		Objects.requireNonNull(patterns, "patterns must not be null");
+		Utils.checkArgumentNotZeroOrNegative(timeout, "timeout");
+		if (idleTimeout < 0) {
+			throw new IllegalArgumentException("idleTimeout must not be negative");
+		}
+
+		if (patterns != this.patterns) {
+			setPatterns(patterns);
+		}
+
+		// The text kept from the previous call may match already
+		Result result = search();
+		if (result != null) {
+			return result;
+		}
+
+		final long now = System.nanoTime();
+		final long deadline = now + TimeUnit.MILLISECONDS.toNanos(timeout);
+		long lastData = now;
+		while (true) {
+			final long current = System.nanoTime();
+			long wait = deadline - current;
+			if (wait <= 0) {
+				return new Result(Outcome.TIMEOUT, -1, buffer.substring(start), null);
+			}
+			if (idleTimeout > 0) {
+				final long idle = lastData + TimeUnit.MILLISECONDS.toNanos(idleTimeout) - current;
+				if (idle <= 0) {
+					return consumeAll(Outcome.IDLE);
+				}
+				wait = Math.min(wait, idle);
+			}
+
+			final int bytesRead = sshClient.readTo(buffer, Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+			if (bytesRead < 0) {
+				return consumeAll(Outcome.CLOSED);
+			}
+			if (bytesRead > 0) {
+				lastData = System.nanoTime();
+				result = search();
+				if (result != null) {
+					return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Start searching the specified patterns from the first character that hasn't been returned yet
+	 */
+	private void setPatterns(final ExpectPatterns patterns) {
+		this.patterns = patterns;
+		final Pattern[] regexes = patterns.getRegexes();
+		matchers = new Matcher[regexes.length];
+		for (int i = 0; i < regexes.length; i++) {
+			matchers[i] = regexes[i].matcher(buffer).useTransparentBounds(true).useAnchoringBounds(false);
+		}
+		restartAt(start);
+	}
+
+	private void restartAt(final int position) {
+		literalPosition = position;
+		literalState = AhoCorasick.ROOT;
+		regexLineStart = position;
+		regexPosition = position;
+	}
+
+	/**
+	 * Search the patterns in the text received since the previous search
+	 *
+	 * @return the result of the match that ends first, or null if no pattern has been found
+	 */
+	private Result search() {
+		// Literals
+		int index = -1;
+		int matchStart = 0;
+		int matchEnd = Integer.MAX_VALUE;
+		final AhoCorasick automaton = patterns.getAutomaton();
+		if (automaton != null) {
+			final int length = buffer.length();
+			int state = literalState;
+			int position = literalPosition;
+			while (position < length) {
+				state = automaton.next(state, buffer.charAt(position++));
+				final int literal = automaton.match(state);
+				if (literal >= 0) {
+					index = patterns.getLiteralIndex(literal);
+					matchEnd = position;
+					matchStart = position - automaton.length(literal);
+					break;
+				}
+			}
+			literalState = state;
+			literalPosition = position;
+		}
+
+		// Regular expressions, line by line, up to the end of the literal found
+		if (matchers.length > 0) {
+			final int length = buffer.length();
+			while (regexPosition < length && regexLineStart < matchEnd) {
+				final int newline = buffer.indexOf("\n", regexPosition);
+				final int lineEnd = newline < 0 ? length : newline;
+				final int from = Math.max(regexLineStart, regexPosition - ExpectPatterns.MAX_REGEX_MATCH);
+				for (int i = 0; i < matchers.length; i++) {
+					final Matcher matcher = matchers[i].reset(buffer).region(from, lineEnd);
+					if (matcher.find()) {
+						final int regexIndex = patterns.getRegexIndex(i);
+						if (matcher.end() < matchEnd || (matcher.end() == matchEnd && regexIndex < index)) {
+							index = regexIndex;
+							matchStart = matcher.start();
+							matchEnd = matcher.end();
+						}
+					}
+				}
+				if (newline < 0) {
+					regexPosition = length;
+				} else if (index < 0 || matchEnd > newline) {
+					regexLineStart = newline + 1;
+					regexPosition = newline + 1;
+				} else {
+					// Found in this line: the next lines cannot end first
+					break;
+				}
+			}
+		}
+
+		if (index < 0) {
+			return null;
+		}
+		final Result result = new Result(
+			Outcome.MATCH,
+			index,
+			buffer.substring(start, matchStart),
+			buffer.substring(matchStart, matchEnd)
+		);
+		consume(matchEnd);
+		return result;
+	}
+
+	/**
+	 * @return a result with all the text received, which won't be returned again
+	 */
+	private Result consumeAll(final Outcome outcome) {
+		final Result result = new Result(outcome, -1, buffer.substring(start), null);
+		consume(buffer.length());
+		return result;
+	}
+
+	/**
+	 * Drop the text before the specified position (except its last character), and restart the
+	 * search there
+	 */
+	private void consume(final int position) {
+		final int drop = Math.max(0, position - 1);
+		buffer.delete(0, drop);
+		start = position - drop;
+		restartAt(start);
+	}
+}
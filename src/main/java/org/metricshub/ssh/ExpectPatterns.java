@@ -0,0 +1,186 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * The patterns that {@link Expect} waits for: literals and regular expressions, identified by their
+ * index, in the order they were added.
+ * <p>
+ * The patterns are immutable: each <code>with...()</code> method returns new patterns, and the same
+ * patterns can be used by any number of sessions. All the literals are searched at the same time
+ * by an Aho-Corasick automaton, built on first use, so adding prompts doesn't slow down the search.
+ * <p>
+ * The regular expressions are matched within a line (a match cannot contain a new line), and their
+ * matches cannot be longer than 4096 characters. <code>^</code> and <code>$</code> match at the
+ * beginning and at the end of the lines, and <code>$</code> also matches at the end of the text
+ * received so far, like a prompt waiting for input.
+ * <pre>
+ * ExpectPatterns prompts = new ExpectPatterns()
+ * 	.withLiterals("$ ", "# ")
+ * 	.withRegexes("[Pp]assword: *$");
+ * </pre>
+ */
+public final class ExpectPatterns {
+
+	/**
+	 * The maximum length of the matches of the regular expressions
+	 */
+	static final int MAX_REGEX_MATCH = 4096;
+
+	private static final String[] NO_STRINGS = new String[0];
+	private static final Pattern[] NO_PATTERNS = new Pattern[0];
+	private static final int[] NO_INDEXES = new int[0];
+
+	/**
+	 * The source of each pattern, by index
+	 */
+	private String[] sources = NO_STRINGS;
+
+	private String[] literals = NO_STRINGS;
+	private int[] literalIndexes = NO_INDEXES;
+	private Pattern[] regexes = NO_PATTERNS;
+	private int[] regexIndexes = NO_INDEXES;
+
+	/**
+	 * The automaton of the literals, built on first use
+	 */
+	private volatile AhoCorasick automaton = null;
+
+	/**
+	 * Creates empty patterns
+	 */
+	public ExpectPatterns() {}
+
+	/**
+	 * @param literals Literals to wait for (not empty), each with its own index
+	 * @return new patterns
+	 */
+	public ExpectPatterns withLiterals(final String... literals) {
+		final ExpectPatterns copy = copy();
+		for (String literal : literals) {
+			Objects.requireNonNull(literal, "literal must not be null");
+			if (literal.isEmpty()) {
+				throw new IllegalArgumentException("literal must not be empty");
+			}
+			copy.literals = append(copy.literals, literal);
+			copy.literalIndexes = append(copy.literalIndexes, copy.sources.length);
+			copy.sources = append(copy.sources, literal);
+		}
+		return copy;
+	}
+
+	/**
+	 * @param regexes Regular expressions to wait for, each with its own index
+	 * @return new patterns
+	 * @throws java.util.regex.PatternSyntaxException If a regular expression is invalid
+	 */
+	public ExpectPatterns withRegexes(final String... regexes) {
+		final ExpectPatterns copy = copy();
+		for (String regex : regexes) {
+			Objects.requireNonNull(regex, "regex must not be null");
+			copy.regexes = append(copy.regexes, Pattern.compile(regex, Pattern.MULTILINE));
+			copy.regexIndexes = append(copy.regexIndexes, copy.sources.length);
+			copy.sources = append(copy.sources, regex);
+		}
+		return copy;
+	}
+
+	private ExpectPatterns copy() {
+		final ExpectPatterns copy = new ExpectPatterns();
+		copy.sources = sources;
+		copy.literals = literals;
+		copy.literalIndexes = literalIndexes;
+		copy.regexes = regexes;
+		copy.regexIndexes = regexIndexes;
+		return copy;
+	}
+
+	private static <T> T[] append(final T[] array, final T element) {
+		final T[] result = Arrays.copyOf(array, array.length + 1);
+		result[array.length] = element;
+		return result;
+	}
+
+	private static int[] append(final int[] array, final int element) {
+		final int[] result = Arrays.copyOf(array, array.length + 1);
+		result[array.length] = element;
+		return result;
+	}
+
+	/**
+	 * @return the number of patterns
+	 */
+	public int size() {
+		return sources.length;
+	}
+
+	/**
+	 * @param index The index of a pattern
+	 * @return the literal or the regular expression
+	 */
+	public String get(final int index) {
+		return sources[index];
+	}
+
+	/**
+	 * @return the automaton of the literals, or null if there is no literal
+	 */
+	AhoCorasick getAutomaton() {
+		if (literals.length == 0) {
+			return null;
+		}
+		AhoCorasick result = automaton;
+		if (result == null) {
+			result = new AhoCorasick(literals);
+			automaton = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @param literal The index of a literal in the automaton
+	 * @return the index of the pattern
+	 */
+	int getLiteralIndex(final int literal) {
+		return literalIndexes[literal];
+	}
+
+	Pattern[] getRegexes() {
+		return regexes;
+	}
+
+	/**
+	 * @param regex The index of a regular expression in {@link #getRegexes()}
+	 * @return the index of the pattern
+	 */
+	int getRegexIndex(final int regex) {
+		return regexIndexes[regex];
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(sources);
+	}
+}
@@ -0,0 +1,518 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.metricshub.ssh.SshClient.CommandResult;
+
+/**
+ * Runs the same command on many hosts: connects, authenticates and executes the command on each
+ * host, with
+ * <ul>
+ * <li>a global limit on the number of hosts processed at the same time,</li>
+ * <li>a limit on the rate of new connections, so that thousands of hosts don't get their TCP
+ * connection and key exchange at the same time,</li>
+ * <li>a deadline per host, covering the connection, the authentication and the command.</li>
+ * </ul>
+ * The result of each host is sent to a listener as soon as the host is done, and a summary
+ * with latency percentiles is returned once all hosts are done:
+ * <pre>
+ * try (FleetExecutor fleetExecutor = new FleetExecutor(200, 50, StandardCharsets.UTF_8)) {
+ * 	FleetExecutor.Summary summary = fleetExecutor.execute(targets, "uptime", 30000, System.out::println);
+ * 	System.out.println(summary);
+ * }
+ * </pre>
+ */
+public class FleetExecutor implements AutoCloseable {
+
+	/**
+	 * Default maximum number of hosts processed at the same time
+	 */
+	public static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+	/**
+	 * Default maximum number of new connections per second
+	 */
+	public static final double DEFAULT_CONNECTION_RATE = 20;
+
+	private static final AtomicInteger EXECUTOR_COUNT = new AtomicInteger();
+
+	private final ExecutorService executor;
+	private final ScheduledExecutorService watchdog;
+	private final TokenBucket connectionRate;
+	private final Charset charset;
+	private volatile SshMetricsListener metricsListener = null;
+
+	/**
+	 * Creates an executor with the default limits, for remote systems using UTF-8
+	 */
+	public FleetExecutor() {
+		this(DEFAULT_MAX_CONCURRENCY, DEFAULT_CONNECTION_RATE, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates an executor
+	 *
+	 * @param maxConcurrency Maximum number of hosts processed at the same time (i.e. number of threads)
+	 * @param connectionRate Maximum number of new connections per second (with bursts of up to one
+	 * second worth of connections)
+	 * @param charset Charset used on the remote systems
+	 */
+	public FleetExecutor(final int maxConcurrency, final double connectionRate, final Charset charset) {
+		Utils.checkArgumentNotZeroOrNegative(maxConcurrency, "maxConcurrency");
+		this.connectionRate = new TokenBucket(connectionRate, (int) Math.max(1, connectionRate));
+		this.charset = charset;
+
+		final String name = "FleetExecutor-" + EXECUTOR_COUNT.incrementAndGet();
+		executor = BlockingThreads.newFixedThreadPool(name, maxConcurrency);
+
+		// Aborts the connections of the hosts that exceed their deadline, as the authentication
+		// has no timeout of its own
+		watchdog =
+			Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, name + "-watchdog");
+				thread.setDaemon(true);
+				return thread;
+			});
+	}
+
+	/**
+	 * Runs the command on all the specified hosts, and waits until all of them are done
+	 *
+	 * @param targets The hosts and their credentials
+	 * @param command The command to execute
+	 * @param hostTimeout Milliseconds allowed to each host to connect, authenticate and execute
+	 * the command (0 for no timeout). Waiting for the connection rate limit is not included.
+	 * @param listener Receives the result of each host as soon as it is done (called by the current
+	 * thread, one result at a time), may be null
+	 * @return the summary of the execution
+	 * @throws InterruptedException when interrupted while waiting for the hosts (the hosts that are
+	 * not done yet are abandoned)
+	 */
+	public Summary execute(
+		final List<Target> targets,
+		final String command,
+		final int hostTimeout,
+		final Consumer<HostResult> listener
+	) throws InterruptedException {
+		final long startTime = System.nanoTime();
+		final CompletionService<HostResult> completionService = new ExecutorCompletionService<>(executor);
+		final Future<?>[] futures = new Future<?>[targets.size()];
+		for (int i = 0; i < futures.length; i++) {
+			final Target target = targets.get(i);
+			futures[i] = completionService.submit(() -> execute(target, command, hostTimeout));
+		}
+
+		final long[] latencies = new long[futures.length];
+		int succeeded = 0;
+		int timedOut = 0;
+		try {
+			for (int i = 0; i < futures.length; i++) {
+				final HostResult hostResult = take(completionService);
+				latencies[i] = hostResult.getLatency();
+				if (hostResult.isSuccess()) {
+					succeeded++;
+				} else if (hostResult.isTimedOut()) {
+					timedOut++;
+				}
+				if (listener != null) {
+					listener.accept(hostResult);
+				}
+			}
+		} catch (InterruptedException | RuntimeException e) {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+
+		Arrays.sort(latencies);
+		return new Summary(
+			futures.length,
+			succeeded,
+			timedOut,
+			(System.nanoTime() - startTime) / 1000000L,
+			latencies
+		);
+	}
+
+	private static HostResult take(final CompletionService<HostResult> completionService)
+		throws InterruptedException {
+		try {
+			return completionService.take().get();
+		} catch (ExecutionException e) {
+			// execute(Target, ...) doesn't throw
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Connects, authenticates and executes the command on one host
+	 */
+	HostResult execute(final Target target, final String command, final int hostTimeout) throws InterruptedException {
+		connectionRate.acquire();
+
+		final long startTime = System.nanoTime();
+		final long deadline = hostTimeout > 0 ? startTime + hostTimeout * 1000000L : Long.MAX_VALUE;
+		Step step = Step.CONNECT;
+		Future<?> deadlineAbort = null;
+		try (SshClient sshClient = createClient(target.hostname)) {
+			// Past the deadline, the connection is aborted, which makes the pending operation fail
+			if (hostTimeout > 0) {
+				deadlineAbort = watchdog.schedule(sshClient::abort, hostTimeout, TimeUnit.MILLISECONDS);
+			}
+			sshClient.connect(hostTimeout, target.port);
+
+			step = Step.AUTHENTICATE;
+			if (!SshClientPool.authenticate(sshClient, target.username, target.password, target.privateKeyFile)) {
+				throw new IOException(
+					String.format("Failed to authenticate as %s on %s:%d", target.username, target.hostname, target.port)
+				);
+			}
+
+			step = Step.EXECUTE;
+			final long remaining = (deadline - System.nanoTime()) / 1000000L;
+			if (remaining <= 0) {
+				return new HostResult(target, step, null, null, true, System.nanoTime() - startTime);
+			}
+			final CommandResult commandResult = sshClient.executeCommand(
+				command,
+				hostTimeout > 0 ? (int) remaining : 0
+			);
+			return new HostResult(target, null, commandResult, null, !commandResult.success, System.nanoTime() - startTime);
+		} catch (IOException | RuntimeException e) {
+			final boolean timedOut = System.nanoTime() >= deadline;
+			return new HostResult(target, step, null, e, timedOut, System.nanoTime() - startTime);
+		} finally {
+			if (deadlineAbort != null) {
+				deadlineAbort.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Creates a new (not connected) SSH client.
+	 *
+	 * @param hostname Hostname of the SSH server
+	 * @return a new {@link SshClient}
+	 */
+	SshClient createClient(final String hostname) {
+		final SshClient client = new SshClient(hostname, charset);
+		client.setMetricsListener(metricsListener);
+		return client;
+	}
+
+	/**
+	 * Set the listener that receives the timing of the operations of the clients created from now on
+	 *
+	 * @param metricsListener The listener (e.g. {@link SshMetrics}), or null to not time the operations
+	 */
+	public void setMetricsListener(final SshMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * Stops the threads. The hosts being processed are abandoned.
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		watchdog.shutdownNow();
+	}
+
+	/**
+	 * The steps of the processing of a host
+	 */
+	public enum Step {
+		CONNECT,
+		AUTHENTICATE,
+		EXECUTE
+	}
+
+	/**
+	 * A host, and the credentials to use on it
+	 */
+	public static final class Target {
+
+		private final String hostname;
+		private final int port;
+		private final String username;
+		private final char[] password;
+		private final File privateKeyFile;
+
+		/**
+		 * Creates a target. The authentication uses the private key if specified, otherwise the password
+		 * if specified, otherwise no password at all.
+		 *
+		 * @param hostname Hostname of the SSH server
+		 * @param port Port of the SSH server
+		 * @param username Username to authenticate with
+		 * @param password Password (or passphrase of the private key), may be null
+		 * @param privateKeyFile Private key file, may be null
+		 */
+		public Target(
+			final String hostname,
+			final int port,
+			final String username,
+			final char[] password,
+			final File privateKeyFile
+		) {
+			this.hostname = hostname;
+			this.port = port;
+			this.username = username;
+			this.password = password;
+			this.privateKeyFile = privateKeyFile;
+		}
+
+		/**
+		 * @return the hostname of the SSH server
+		 */
+		public String getHostname() {
+			return hostname;
+		}
+
+		/**
+		 * @return the port of the SSH server
+		 */
+		public int getPort() {
+			return port;
+		}
+
+		/**
+		 * @return the username to authenticate with
+		 */
+		public String getUsername() {
+			return username;
+		}
+
+		@Override
+		public String toString() {
+			return hostname + ":" + port;
+		}
+	}
+
+	/**
+	 * The outcome of the command on one host
+	 */
+	public static final class HostResult {
+
+		private final Target target;
+		private final Step failedStep;
+		private final CommandResult commandResult;
+		private final Exception error;
+		private final boolean timedOut;
+		private final long latencyNanos;
+
+		private HostResult(
+			final Target target,
+			final Step failedStep,
+			final CommandResult commandResult,
+			final Exception error,
+			final boolean timedOut,
+			final long latencyNanos
+		) {
+			this.target = target;
+			this.failedStep = failedStep;
+			this.commandResult = commandResult;
+			this.error = error;
+			this.timedOut = timedOut;
+			this.latencyNanos = latencyNanos;
+		}
+
+		/**
+		 * @return the host
+		 */
+		public Target getTarget() {
+			return target;
+		}
+
+		/**
+		 * @return whether the command has been executed in time (whatever its exit status)
+		 */
+		public boolean isSuccess() {
+			return failedStep == null && !timedOut;
+		}
+
+		/**
+		 * @return the step that failed or timed out, or null if the command has been executed
+		 */
+		public Step getFailedStep() {
+			return failedStep;
+		}
+
+		/**
+		 * @return the result of the command, or null if it could not be executed
+		 */
+		public CommandResult getCommandResult() {
+			return commandResult;
+		}
+
+		/**
+		 * @return the error that prevented the execution of the command, or null
+		 */
+		public Exception getError() {
+			return error;
+		}
+
+		/**
+		 * @return whether the host exceeded its deadline
+		 */
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+
+		/**
+		 * @return milliseconds spent on this host (connection, authentication and command)
+		 */
+		public long getLatency() {
+			return latencyNanos / 1000000L;
+		}
+
+		@Override
+		public String toString() {
+			if (isSuccess()) {
+				return target + ": exit status " + commandResult.exitStatus + " (" + getLatency() + " ms)";
+			}
+			return (
+				target +
+				": " +
+				(timedOut ? "timed out" : "failed") +
+				(failedStep == null ? "" : " (" + failedStep + ")") +
+				(error == null ? "" : ": " + error.getMessage())
+			);
+		}
+	}
+
+	/**
+	 * Summary of the execution of a command on all hosts
+	 */
+	public static final class Summary {
+
+		private final int total;
+		private final int succeeded;
+		private final int timedOut;
+		private final long elapsed;
+		private final long[] sortedLatencies;
+
+		/**
+		 * Creates a summary
+		 *
+		 * @param total Number of hosts
+		 * @param succeeded Number of hosts on which the command has been executed in time
+		 * @param timedOut Number of hosts that exceeded their deadline
+		 * @param elapsed Milliseconds spent on all the hosts
+		 * @param sortedLatencies Milliseconds spent on each host, in ascending order
+		 */
+		Summary(
+			final int total,
+			final int succeeded,
+			final int timedOut,
+			final long elapsed,
+			final long[] sortedLatencies
+		) {
+			this.total = total;
+			this.succeeded = succeeded;
+			this.timedOut = timedOut;
+			this.elapsed = elapsed;
+			this.sortedLatencies = sortedLatencies;
+		}
+
+		/**
+		 * @return number of hosts
+		 */
+		public int getTotal() {
+			return total;
+		}
+
+		/**
+		 * @return number of hosts on which the command has been executed in time
+		 */
+		public int getSucceeded() {
+			return succeeded;
+		}
+
+		/**
+		 * @return number of hosts that exceeded their deadline
+		 */
+		public int getTimedOut() {
+			return timedOut;
+		}
+
+		/**
+		 * @return number of hosts that failed (connection, authentication or communication errors)
+		 */
+		public int getFailed() {
+			return total - succeeded - timedOut;
+		}
+
+		/**
+		 * @return milliseconds taken by the whole execution
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * Get a percentile of the latency of the hosts (nearest rank), successful or not
+		 *
+		 * @param percentile The percentile, between 0 and 100
+		 * @return the latency in milliseconds, or 0 if there is no host
+		 */
+		public long getLatencyPercentile(final double percentile) {
+			if (sortedLatencies.length == 0) {
+				return 0;
+			}
+			final int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+			return sortedLatencies[Math.min(Math.max(rank, 1), sortedLatencies.length) - 1];
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"%d hosts in %d ms: %d succeeded, %d failed, %d timed out, latency p50=%d ms p90=%d ms p99=%d ms max=%d ms",
+				total,
+				elapsed,
+				succeeded,
+				getFailed(),
+				timedOut,
+				getLatencyPercentile(50),
+				getLatencyPercentile(90),
+				getLatencyPercentile(99),
+				getLatencyPercentile(100)
+			);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, with log-linear buckets (like HdrHistogram):
+ * the values below 128 have their own bucket, and each power of 2 above is split into 64 buckets,
+ * so that any value is known within 1/64 (1.6%), in 2560 counters (20 KB).
+ * <p>
+ * Recording a value is a single atomic increment, plus the update of the total and the maximum.
+ * Values above 2^45 ns (about 9.8 hours) are counted as 2^45 ns.
+ */
+final class LatencyHistogram {
+
+	/**
+	 * Number of buckets per power of 2 (above the linear range)
+	 */
+	private static final int SUB_BUCKETS = 64;
+
+	/**
+	 * Values below this limit have their own bucket
+	 */
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+	/**
+	 * Highest value that is recorded accurately
+	 */
+	static final long MAX_VALUE = (1L << 45) - 1;
+
+	/**
+	 * Number of buckets
+	 */
+	static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value
+	 *
+	 * @param value The value (negative values are counted as 0)
+	 */
+	void record(final long value) {
+		final long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+		counts.incrementAndGet(indexOf(clamped));
+		total.add(clamped);
+		long current;
+		while (clamped > (current = max.get()) && !max.compareAndSet(current, clamped)) {
+			// Another thread recorded a value meanwhile: try again
+		}
+	}
+
+	/**
+	 * @return a copy of the counts of the buckets (not atomic with the values recorded meanwhile)
+	 */
+	long[] getCounts() {
+		final long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the sum of the values recorded
+	 */
+	long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * @return the highest value recorded
+	 */
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Get the bucket of the specified value
+	 *
+	 * @param value A value between 0 and {@link #MAX_VALUE}
+	 * @return the index of its bucket
+	 */
+	static int indexOf(final long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+
+		// Keep the 7 most significant bits: the highest one gives the power of 2 (shift), and the
+		// 6 following ones the bucket within this power of 2
+		final int shift = 57 - Long.numberOfLeadingZeros(value);
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Get the highest value counted in the specified bucket
+	 *
+	 * @param index The index of the bucket
+	 * @return the highest value of the bucket
+	 */
+	static long highestValueOf(final int index) {
+		if (index < LINEAR_LIMIT) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		final long subBucket = index - shift * SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Get the value at the specified percentile (nearest rank) of the specified counts
+	 *
+	 * @param counts The counts of the buckets, as returned by {@link #getCounts()}
+	 * @param percentile The percentile, between 0 and 100
+	 * @param max The highest value recorded, so that no percentile exceeds it
+	 * @return the highest value of the bucket of the percentile, or 0 if nothing has been recorded
+	 */
+	static long valueAtPercentile(final long[] counts, final double percentile, final long max) {
+		long count = 0;
+		for (long bucketCount : counts) {
+			count += bucketCount;
+		}
+		if (count == 0) {
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long cumulated = 0;
+		for (int i = 0; i < counts.length; i++) {
+			cumulated += counts[i];
+			if (cumulated >= rank) {
+				return Math.min(highestValueOf(i), max);
+			}
+		}
+		return max;
+	}
+}
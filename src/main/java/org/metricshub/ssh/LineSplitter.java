@@ -0,0 +1,74 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import org.metricshub.ssh.CommandOutputListener.LineListener;
+import org.metricshub.ssh.CommandOutputListener.Stream;
+
+/**
+ * Splits the output of each stream of a command into lines
+ */
+class LineSplitter implements CommandOutputListener {
+
+	private final LineListener lineListener;
+	private final StringBuilder[] partialLines = { new StringBuilder(), new StringBuilder() };
+
+	LineSplitter(final LineListener lineListener) {
+		this.lineListener = lineListener;
+	}
+
+	@Override
+	public void onOutput(final Stream stream, final String text) throws IOException {
+		final StringBuilder partialLine = partialLines[stream.ordinal()];
+		int start = 0;
+		int end;
+		while ((end = text.indexOf('\n', start)) >= 0) {
+			final String line;
+			if (partialLine.length() > 0) {
+				partialLine.append(text, start, end);
+				line = stripCarriageReturn(partialLine.toString());
+				partialLine.setLength(0);
+			} else {
+				line = stripCarriageReturn(text.substring(start, end));
+			}
+			lineListener.onLine(stream, line);
+			start = end + 1;
+		}
+		partialLine.append(text, start, text.length());
+	}
+
+	@Override
+	public void onEnd() throws IOException {
+		for (Stream stream : Stream.values()) {
+			final StringBuilder partialLine = partialLines[stream.ordinal()];
+			if (partialLine.length() > 0) {
+				final String line = partialLine.toString();
+				partialLine.setLength(0);
+				lineListener.onLine(stream, line);
+			}
+		}
+	}
+
+	private static String stripCarriageReturn(final String line) {
+		return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+	}
+}
@@ -0,0 +1,74 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes the bytes written to this stream and sends the text to a {@link CommandOutputListener}
+ */
+class ListenerOutputStream extends OutputStream {
+
+	private final CommandOutputListener listener;
+	private final CommandOutputListener.Stream stream;
+	private final OutputDecoder decoder;
+
+	/**
+	 * @param listener The listener receiving the text
+	 * @param stream The output stream of the command whose bytes are written to this stream
+	 * @param charset The charset of the bytes
+	 */
+	ListenerOutputStream(
+		final CommandOutputListener listener,
+		final CommandOutputListener.Stream stream,
+		final Charset charset
+	) {
+		this.listener = listener;
+		this.stream = stream;
+		this.decoder = new OutputDecoder(charset);
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+		deliver(decoder.decode(bytes, offset, length));
+	}
+
+	/**
+	 * Sends what remains of an incomplete character at the end of the output
+	 */
+	@Override
+	public void close() throws IOException {
+		deliver(decoder.flush());
+	}
+
+	private void deliver(final String text) throws IOException {
+		if (!text.isEmpty()) {
+			listener.onOutput(stream, text);
+		}
+	}
+}
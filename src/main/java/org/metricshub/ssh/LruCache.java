@@ -0,0 +1,77 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Small thread-safe cache that keeps the most recently used entries
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ */
+class LruCache<K, V> {
+
+	private final Map<K, V> map;
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param maxSize Maximum number of entries kept in the cache
+	 */
+	LruCache(final int maxSize) {
+		Utils.checkArgumentNotZeroOrNegative(maxSize, "maxSize");
+		map =
+			new LinkedHashMap<K, V>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+					return size() > maxSize;
+				}
+			};
+	}
+
+	/**
+	 * Get the value associated to the specified key, computing it if it's not in the cache
+	 *
+	 * @param key The key
+	 * @param compute How to compute the value when it's not in the cache
+	 * @return the value
+	 */
+	synchronized V get(final K key, final Function<K, V> compute) {
+		V value = map.get(key);
+		if (value == null) {
+			value = compute.apply(key);
+			map.put(key, value);
+		}
+		return value;
+	}
+
+	/**
+	 * @return the number of entries in the cache
+	 */
+	synchronized int size() {
+		return map.size();
+	}
+}
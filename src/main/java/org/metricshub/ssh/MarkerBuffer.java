@@ -0,0 +1,113 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Output received from a remote shell, in which the markers written around the commands
+ * are searched without copying it
+ */
+class MarkerBuffer extends ByteArrayOutputStream {
+
+	/**
+	 * @return the position of the first occurrence of the pattern at or after from (and before end), or -1
+	 */
+	int indexOf(final byte[] pattern, final int from, final int end) {
+		final int last = Math.min(count, end) - pattern.length;
+		for (int i = Math.max(from, 0); i <= last; i++) {
+			int j = 0;
+			while (j < pattern.length && buf[i + j] == pattern[j]) {
+				j++;
+			}
+			if (j == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the position of the first occurrence of the pattern at or after from, or -1
+	 */
+	int indexOf(final byte[] pattern, final int from) {
+		return indexOf(pattern, from, count);
+	}
+
+	/**
+	 * @return the position right after the first occurrence of the pattern at or after from, or -1
+	 */
+	int indexAfter(final byte[] pattern, final int from) {
+		final int index = indexOf(pattern, from);
+		return index < 0 ? -1 : index + pattern.length;
+	}
+
+	/**
+	 * Get where to resume the search of a pattern that has not been found between from and the end
+	 * of what has been received so far: only its last bytes can be the beginning of the pattern.
+	 *
+	 * @return the position from which to search the pattern once more bytes are received
+	 */
+	int resumePosition(final byte[] pattern, final int from) {
+		return Math.max(from, count - pattern.length + 1);
+	}
+
+	/**
+	 * @return the exit status written at the specified position and terminated by a new line,
+	 * or null if the new line hasn't been received yet
+	 */
+	Integer parseStatus(final int position) {
+		int value = 0;
+		for (int i = position; i < count; i++) {
+			if (buf[i] == '\n') {
+				return value;
+			}
+			if (buf[i] >= '0' && buf[i] <= '9') {
+				value = value * 10 + buf[i] - '0';
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return a copy of the bytes between start (or the beginning if negative) and end
+	 * (or the end if negative)
+	 */
+	byte[] range(final int start, final int end) {
+		return Arrays.copyOfRange(buf, Math.max(start, 0), end < 0 ? count : end);
+	}
+
+	/**
+	 * @return a copy of the bytes between start and end, without the first occurrence of the pattern
+	 * (if any)
+	 */
+	byte[] rangeWithout(final int start, final int end, final byte[] pattern) {
+		final int index = indexOf(pattern, start, end);
+		if (index < 0) {
+			return range(start, end);
+		}
+		final byte[] bytes = new byte[end - start - pattern.length];
+		System.arraycopy(buf, start, bytes, 0, index - start);
+		System.arraycopy(buf, index + pattern.length, bytes, index - start, end - index - pattern.length);
+		return bytes;
+	}
+}
@@ -0,0 +1,186 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes a stream of bytes received in chunks, keeping the incomplete multi-byte sequence
+ * at the end of a chunk until the next one.
+ * <p>
+ * The characters are decoded into a buffer that is reused from one chunk to the next, and that
+ * can accumulate several chunks before being turned into a string (see {@link #append(byte[], int, int)}
+ * and {@link #take()}).
+ * <p>
+ * Malformed and unmappable sequences are replaced, like with <code>new String(bytes, charset)</code>.
+ */
+class OutputDecoder {
+
+	/**
+	 * Longest incomplete sequence kept between two chunks (enough for UTF-8, GB18030, etc.)
+	 */
+	private static final int MAX_PENDING_BYTES = 16;
+
+	/**
+	 * Initial capacity of the character buffer
+	 */
+	private static final int INITIAL_CHARS = 1024;
+
+	/**
+	 * Capacity beyond which the character buffer is not kept once taken
+	 */
+	private static final int MAX_RETAINED_CHARS = 64 * 1024;
+
+	private final CharsetDecoder decoder;
+	private final ByteBuffer pending = ByteBuffer.allocate(MAX_PENDING_BYTES);
+	private CharBuffer chars = CharBuffer.allocate(INITIAL_CHARS);
+
+	/**
+	 * Creates a decoder for the specified charset
+	 *
+	 * @param charset The charset of the bytes
+	 */
+	OutputDecoder(final Charset charset) {
+		decoder =
+			charset
+				.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Decodes the specified chunk
+	 *
+	 * @param bytes The buffer
+	 * @param offset Offset of the chunk in the buffer
+	 * @param length Length of the chunk
+	 * @return the characters that could be decoded, possibly an empty string
+	 */
+	String decode(final byte[] bytes, final int offset, final int length) {
+		append(bytes, offset, length);
+		return take();
+	}
+
+	/**
+	 * Decodes the specified chunk, and adds its characters to the ones decoded since the last
+	 * call to {@link #take()} or {@link #takeTo(StringBuilder)}
+	 *
+	 * @param bytes The buffer
+	 * @param offset Offset of the chunk in the buffer
+	 * @param length Length of the chunk
+	 */
+	void append(final byte[] bytes, final int offset, final int length) {
+		final ByteBuffer input = ByteBuffer.wrap(bytes, offset, length);
+
+		// Complete the sequence left over by the previous chunk, byte per byte
+		while (pending.position() > 0 && input.hasRemaining()) {
+			pending.put(input.get());
+			pending.flip();
+			decode(pending, false);
+			pending.compact();
+			if (pending.position() == 0) {
+				break;
+			}
+			if (!pending.hasRemaining()) {
+				// Too long to ever be decoded: the decoder replaces it
+				pending.flip();
+				decode(pending, true);
+				decoder.reset();
+				pending.clear();
+				break;
+			}
+		}
+
+		decode(input, false);
+
+		// Keep the incomplete sequence at the end of the chunk for next time
+		if (input.hasRemaining()) {
+			pending.put(input);
+		}
+	}
+
+	/**
+	 * @return the characters decoded since the last call (possibly an empty string)
+	 */
+	String take() {
+		final String result = new String(chars.array(), 0, chars.position());
+		clearChars();
+		return result;
+	}
+
+	/**
+	 * Adds the characters decoded since the last call to the specified builder
+	 *
+	 * @param builder Where to add the characters
+	 */
+	void takeTo(final StringBuilder builder) {
+		builder.append(chars.array(), 0, chars.position());
+		clearChars();
+	}
+
+	private void clearChars() {
+		if (chars.capacity() > MAX_RETAINED_CHARS) {
+			chars = CharBuffer.allocate(INITIAL_CHARS);
+		} else {
+			chars.clear();
+		}
+	}
+
+	/**
+	 * Decodes the incomplete sequence left over at the end of the stream (if any), and resets the decoder
+	 *
+	 * @return the remaining characters (replacement characters, or an empty string)
+	 */
+	String flush() {
+		pending.flip();
+		decode(pending, true);
+		pending.clear();
+		while (decoder.flush(chars).isOverflow()) {
+			growChars(1);
+		}
+		decoder.reset();
+		return take();
+	}
+
+	private void decode(final ByteBuffer input, final boolean endOfInput) {
+		while (true) {
+			final CoderResult result = decoder.decode(input, chars, endOfInput);
+			if (!result.isOverflow()) {
+				return;
+			}
+			growChars(input.remaining());
+		}
+	}
+
+	private void growChars(final int remainingBytes) {
+		final CharBuffer larger = CharBuffer.allocate(
+			chars.capacity() + Math.max(chars.capacity(), (int) (remainingBytes * decoder.maxCharsPerByte()) + 1)
+		);
+		chars.flip();
+		larger.put(chars);
+		chars = larger;
+	}
+}
@@ -0,0 +1,150 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.regex.Pattern;
+
+/**
+ * Glob on a relative path, where <code>*</code> matches any part of a file or directory name,
+ * <code>?</code> matches any single character of a name, and <code>**</code> (as a whole path
+ * element) matches any number of directories, e.g. <code>app-*&#47;**&#47;*.log</code>, or any
+ * file below when it's the last element.
+ * <p>
+ * Besides matching file paths, a glob tells whether a directory may contain matching files,
+ * so that the directories that cannot are not walked at all.
+ */
+class PathGlob {
+
+	private static final String ANY_DIRECTORIES = "**";
+	private static final Pattern SEPARATOR = Pattern.compile("/+");
+
+	private final String glob;
+
+	/**
+	 * The elements of the glob, null for <code>**</code>
+	 */
+	private final Pattern[] elements;
+
+	/**
+	 * Compiles the specified glob
+	 *
+	 * @param glob The glob, with '/' as separator
+	 */
+	PathGlob(final String glob) {
+		this.glob = glob;
+		final String[] parts = split(glob);
+		elements = new Pattern[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			elements[i] = ANY_DIRECTORIES.equals(parts[i]) ? null : Pattern.compile(toRegex(parts[i]));
+		}
+	}
+
+	/**
+	 * @param path A relative path, split on '/'
+	 * @return whether the path matches the glob
+	 */
+	boolean matches(final String[] path) {
+		return matches(0, path, 0);
+	}
+
+	/**
+	 * @param directory A relative directory path, split on '/'
+	 * @return whether files under this directory may match the glob
+	 */
+	boolean mayContainMatches(final String[] directory) {
+		int i = 0;
+		for (String name : directory) {
+			if (i < elements.length && elements[i] == null) {
+				return true;
+			}
+			if (i >= elements.length - 1) {
+				// The remaining element of the glob is for the file name
+				return false;
+			}
+			if (!elements[i].matcher(name).matches()) {
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+
+	private boolean matches(final int element, final String[] path, final int name) {
+		if (element == elements.length) {
+			return name == path.length;
+		}
+		if (elements[element] == null) {
+			if (element == elements.length - 1) {
+				// Trailing "**": any file below
+				return name < path.length;
+			}
+
+			// "**": skip zero or more directories
+			for (int skip = name; skip < path.length; skip++) {
+				if (matches(element + 1, path, skip)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return (
+			name < path.length && elements[element].matcher(path[name]).matches() && matches(element + 1, path, name + 1)
+		);
+	}
+
+	/**
+	 * Split a relative path on '/', ignoring the leading, trailing and duplicate separators
+	 *
+	 * @param path The path
+	 * @return the names of the path
+	 */
+	static String[] split(final String path) {
+		return SEPARATOR.splitAsStream(path).filter(name -> !name.isEmpty()).toArray(String[]::new);
+	}
+
+	/**
+	 * Convert a glob element (without '/') into a regular expression
+	 */
+	private static String toRegex(final String element) {
+		final StringBuilder regex = new StringBuilder();
+		final StringBuilder literal = new StringBuilder();
+		for (char c : element.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return regex.toString();
+	}
+
+	@Override
+	public String toString() {
+		return glob;
+	}
+}
@@ -0,0 +1,90 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import java.io.IOException;
+
+/**
+ * Attributes of a remote file, as returned by {@link SshClient#readFileAttributes(java.util.List, boolean)},
+ * or the error that prevented from reading them.
+ */
+public final class RemoteFileAttributes {
+
+	private final String path;
+	private final SFTPv3FileAttributes attributes;
+	private final String canonicalPath;
+	private final IOException error;
+
+	RemoteFileAttributes(
+		final String path,
+		final SFTPv3FileAttributes attributes,
+		final String canonicalPath,
+		final IOException error
+	) {
+		this.path = path;
+		this.attributes = attributes;
+		this.canonicalPath = canonicalPath;
+		this.error = error;
+	}
+
+	/**
+	 * @return the path of the file, as requested
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return whether the attributes (and the canonical path, if requested) could be read
+	 */
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * @return the attributes of the file (following symbolic links), or null if they couldn't be read
+	 */
+	public SFTPv3FileAttributes getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @return the absolute path of the file, without "..", "." or symbolic links, or null if it was
+	 *         not requested or couldn't be resolved
+	 */
+	public String getCanonicalPath() {
+		return canonicalPath;
+	}
+
+	/**
+	 * @return why the attributes or the canonical path couldn't be read (typically an {@link SftpException}
+	 *         for a missing file, or a permission issue), or null
+	 */
+	public IOException getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return error == null ? path : path + ": " + error.getMessage();
+	}
+}
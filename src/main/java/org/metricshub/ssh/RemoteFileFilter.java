@@ -0,0 +1,306 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the files listed by {@link SshClient#listFiles(String, RemoteFileFilter, RemoteFileVisitor)},
+ * based on their name, path, attributes and depth.
+ * <p>
+ * The filters are immutable: each <code>with...()</code> method returns a new filter, and the same
+ * filter can be used for any number of listings. The patterns and globs are compiled once, and kept
+ * in a cache shared by all filters.
+ * <p>
+ * The filter is applied while the directories are being read, and the directories that cannot
+ * contain any matching file (because of the depth or the path globs) are not read at all.
+ * <pre>
+ * RemoteFileFilter filter = new RemoteFileFilter()
+ * 	.withPathGlobs("app-*&#47;**&#47;*.log")
+ * 	.withMinMtime(lastPoll)
+ * 	.withMinSize(1);
+ * </pre>
+ */
+public final class RemoteFileFilter {
+
+	/**
+	 * Types of the files that can be listed
+	 */
+	public enum FileType {
+		REGULAR,
+		BLOCK_DEVICE,
+		CHARACTER_DEVICE,
+		SOCKET;
+
+		/**
+		 * @param permissions The permissions of a file (including the type bits)
+		 * @return the type of the file, or null if it's not a listable file (directory, link, FIFO)
+		 */
+		static FileType of(final int permissions) {
+			switch (permissions & S_IFMT) {
+				case 0100000:
+					return REGULAR;
+				case 0060000:
+					return BLOCK_DEVICE;
+				case 0020000:
+					return CHARACTER_DEVICE;
+				case 0140000:
+					return SOCKET;
+				default:
+					return null;
+			}
+		}
+	}
+
+	/**
+	 * Mask of the type bits in the permissions
+	 */
+	static final int S_IFMT = 0170000;
+
+	/**
+	 * Type bits of a directory
+	 */
+	static final int S_IFDIR = 0040000;
+
+	/**
+	 * Compiled name patterns and path globs, shared by all the filters
+	 */
+	private static final LruCache<String, Pattern> NAME_PATTERNS = new LruCache<>(256);
+
+	private static final LruCache<String, PathGlob> PATH_GLOBS = new LruCache<>(256);
+
+	private Pattern namePattern = null;
+	private PathGlob[] pathGlobs = null;
+	private EnumSet<FileType> types = EnumSet.allOf(FileType.class);
+	private int permissions = 0;
+	private Long minMtime = null;
+	private Long maxMtime = null;
+	private Long minSize = null;
+	private Long maxSize = null;
+	private int minDepth = 1;
+	private int maxDepth = SftpDirectoryWalker.MAX_DEPTH;
+
+	/**
+	 * Creates a filter that accepts all the files (regular, block, character and socket files)
+	 * up to 15 levels deep
+	 */
+	public RemoteFileFilter() {}
+
+	private RemoteFileFilter copy() {
+		final RemoteFileFilter copy = new RemoteFileFilter();
+		copy.namePattern = namePattern;
+		copy.pathGlobs = pathGlobs;
+		copy.types = types;
+		copy.permissions = permissions;
+		copy.minMtime = minMtime;
+		copy.maxMtime = maxMtime;
+		copy.minSize = minSize;
+		copy.maxSize = maxSize;
+		copy.minDepth = minDepth;
+		copy.maxDepth = maxDepth;
+		return copy;
+	}
+
+	/**
+	 * @param regex A regular expression that the name of the files must contain (case-insensitive),
+	 *              or null to accept any name
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withNamePattern(final String regex) {
+		final RemoteFileFilter copy = copy();
+		copy.namePattern =
+			regex == null || regex.isEmpty()
+				? null
+				: NAME_PATTERNS.get(regex, key -> Pattern.compile(key, Pattern.CASE_INSENSITIVE));
+		return copy;
+	}
+
+	/**
+	 * @param globs Globs that the path of the files, relative to the listed directory, must match
+	 *              (at least one of them), with '/' as separator. <code>*</code> matches any part of a
+	 *              name, <code>?</code> any single character, and <code>**</code> any number of
+	 *              directories. No glob to accept any path.
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withPathGlobs(final String... globs) {
+		final RemoteFileFilter copy = copy();
+		copy.pathGlobs =
+			globs == null || globs.length == 0
+				? null
+				: Arrays.stream(globs).map(glob -> PATH_GLOBS.get(glob, PathGlob::new)).toArray(PathGlob[]::new);
+		return copy;
+	}
+
+	/**
+	 * @param fileTypes The types of the files to accept
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withTypes(final FileType... fileTypes) {
+		final RemoteFileFilter copy = copy();
+		copy.types = EnumSet.noneOf(FileType.class);
+		copy.types.addAll(Arrays.asList(fileTypes));
+		return copy;
+	}
+
+	/**
+	 * @param permissions Permission bits that the files must have (e.g. 0111 for files executable
+	 *                    by everybody)
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withPermissions(final int permissions) {
+		final RemoteFileFilter copy = copy();
+		copy.permissions = permissions & 07777;
+		return copy;
+	}
+
+	/**
+	 * @param minMtime Oldest modification time of the files (in seconds since Epoch, inclusive)
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withMinMtime(final long minMtime) {
+		final RemoteFileFilter copy = copy();
+		copy.minMtime = minMtime;
+		return copy;
+	}
+
+	/**
+	 * @param maxMtime Newest modification time of the files (in seconds since Epoch, inclusive)
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withMaxMtime(final long maxMtime) {
+		final RemoteFileFilter copy = copy();
+		copy.maxMtime = maxMtime;
+		return copy;
+	}
+
+	/**
+	 * @param minSize Minimum size of the files (in bytes, inclusive)
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withMinSize(final long minSize) {
+		final RemoteFileFilter copy = copy();
+		copy.minSize = minSize;
+		return copy;
+	}
+
+	/**
+	 * @param maxSize Maximum size of the files (in bytes, inclusive)
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withMaxSize(final long maxSize) {
+		final RemoteFileFilter copy = copy();
+		copy.maxSize = maxSize;
+		return copy;
+	}
+
+	/**
+	 * @param minDepth Minimum depth of the files (1 for the files of the listed directory)
+	 * @param maxDepth Maximum depth of the files, up to 15
+	 *                 (1 to list the files of the listed directory only)
+	 * @return a new filter
+	 */
+	public RemoteFileFilter withDepth(final int minDepth, final int maxDepth) {
+		Utils.checkArgumentNotZeroOrNegative(minDepth, "minDepth");
+		Utils.checkArgumentNotZeroOrNegative(maxDepth, "maxDepth");
+		final RemoteFileFilter copy = copy();
+		copy.minDepth = minDepth;
+		copy.maxDepth = Math.min(maxDepth, SftpDirectoryWalker.MAX_DEPTH);
+		return copy;
+	}
+
+	/**
+	 * Whether the files of the specified directory may be accepted, i.e. whether it is worth
+	 * reading the directory
+	 *
+	 * @param directory Path of the directory, relative to the listed directory, split on '/'
+	 * @return false if no file in the directory or its subdirectories can be accepted
+	 */
+	boolean shouldWalk(final String[] directory) {
+		if (directory.length + 1 > maxDepth) {
+			return false;
+		}
+		if (pathGlobs == null) {
+			return true;
+		}
+		for (PathGlob glob : pathGlobs) {
+			if (glob.mayContainMatches(directory)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether the specified file is accepted
+	 *
+	 * @param directory Path of the directory of the file, relative to the listed directory, split on '/'
+	 * @param name Name of the file
+	 * @param attributes Attributes of the file
+	 * @return whether the file is accepted
+	 */
+	boolean accepts(final String[] directory, final String name, final SFTPv3FileAttributes attributes) {
+		if (attributes.permissions == null) {
+			return false;
+		}
+		final FileType type = FileType.of(attributes.permissions);
+		if (type == null || !types.contains(type)) {
+			return false;
+		}
+		final int depth = directory.length + 1;
+		if (depth < minDepth || depth > maxDepth) {
+			return false;
+		}
+		if ((attributes.permissions & permissions) != permissions) {
+			return false;
+		}
+		if (!isBetween(attributes.mtime, minMtime, maxMtime) || !isBetween(attributes.size, minSize, maxSize)) {
+			return false;
+		}
+		if (namePattern != null && !namePattern.matcher(name).find()) {
+			return false;
+		}
+		return pathGlobs == null || matchesPathGlobs(directory, name);
+	}
+
+	private boolean matchesPathGlobs(final String[] directory, final String name) {
+		final String[] path = Arrays.copyOf(directory, directory.length + 1);
+		path[directory.length] = name;
+		for (PathGlob glob : pathGlobs) {
+			if (glob.matches(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isBetween(final Long value, final Long min, final Long max) {
+		if (min == null && max == null) {
+			return true;
+		}
+		if (value == null) {
+			return false;
+		}
+		return (min == null || value >= min) && (max == null || value <= max);
+	}
+}
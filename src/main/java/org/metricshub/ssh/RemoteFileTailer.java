@@ -0,0 +1,383 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import com.trilead.ssh2.sftp.ErrorCodes;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Follows remote files (typically logs) through the SFTP channel of an {@link SshClient},
+ * returning only the bytes appended since the previous poll.
+ * <p>
+ * The remote files are kept open between polls. Each poll checks (in a single round trip)
+ * whether the path still designates the open file. As SFTP version 3 doesn't expose inode
+ * numbers, a file is considered replaced (rotated) when the attributes of the path are not
+ * consistent with the attributes of the open file: smaller size, older or newer modification
+ * time, different owner or permissions. When the file has been rotated, the end of the
+ * previous file is read before the new file is read from its beginning. When the open file
+ * is found smaller than the current offset, it has been truncated and is read again from its
+ * beginning.
+ * <pre>
+ * try (RemoteFileTailer tailer = new RemoteFileTailer(sshClient, false)) {
+ * 	while (...) {
+ * 		RemoteFileTailer.TailResult result = tailer.poll("/var/log/messages");
+ * 		process(result.getContent());
+ * 	}
+ * }
+ * </pre>
+ */
+public class RemoteFileTailer implements AutoCloseable {
+
+	private final SshClient sshClient;
+	private final boolean fromEnd;
+
+	/**
+	 * State of each remote file being followed
+	 */
+	private final Map<String, TailState> states = new HashMap<>();
+
+	/**
+	 * Offsets set with {@link #setOffset(String, long)} for files that are not open yet
+	 */
+	private final Map<String, Long> initialOffsets = new HashMap<>();
+
+	/**
+	 * Creates a tailer on the specified client
+	 *
+	 * @param sshClient The connected and authenticated SSH client
+	 * @param fromEnd Whether the first poll of a file starts at its end (like <code>tail -f</code>)
+	 *                or at its beginning
+	 */
+	public RemoteFileTailer(final SshClient sshClient, final boolean fromEnd) {
+		this.sshClient = sshClient;
+		this.fromEnd = fromEnd;
+	}
+
+	/**
+	 * Read what has been appended to the specified remote file since the previous poll
+	 *
+	 * @param remoteFilePath Path of the file on the remote host
+	 * @return The new content, decoded with the charset of the SSH client, with details about rotation
+	 * @throws IOException when the file cannot be read (e.g. it doesn't exist on the first poll)
+	 * @throws IllegalStateException when the client hasn't been properly authenticated first
+	 */
+	public TailResult poll(final String remoteFilePath) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final TailResult result = poll(remoteFilePath, out);
+		final Charset charset = sshClient.getCharset();
+		result.content = charset != null ? new String(out.toByteArray(), charset) : out.toString();
+		return result;
+	}
+
+	/**
+	 * Write what has been appended to the specified remote file since the previous poll to the
+	 * specified stream.
+	 *
+	 * @param remoteFilePath Path of the file on the remote host
+	 * @param out Where to write the new content (not closed)
+	 * @return Details about the poll (bytes read, rotation, truncation)
+	 * @throws IOException when the file cannot be read (e.g. it doesn't exist on the first poll)
+	 * @throws IllegalStateException when the client hasn't been properly authenticated first
+	 */
+	public synchronized TailResult poll(final String remoteFilePath, final OutputStream out) throws IOException {
+		sshClient.checkIfAuthenticated();
+
+		final SftpChannel channel = sshClient.getSftpChannel();
+		final TailResult result = new TailResult();
+		TailState state = states.get(remoteFilePath);
+
+		if (state == null || state.channel != channel) {
+			// First poll, or the previous channel broke (with our handle): open the file
+			final long previousOffset = state != null ? state.offset : -1;
+			state = open(channel, remoteFilePath);
+			if (previousOffset >= 0) {
+				state.offset = previousOffset;
+			}
+			if (state.attributes.size != null && state.attributes.size < state.offset) {
+				// We can't tell between rotation and truncation here
+				result.truncated = true;
+				state.offset = 0;
+			}
+		} else {
+			// Compare the attributes of the path with the attributes of the open file, before and after
+			// (in a single round trip), so that a file growing in the meantime is not mistaken for a new file
+			final int before = channel.sendFstat(state.handle);
+			final int current = channel.sendStat(remoteFilePath);
+			final int after = channel.sendFstat(state.handle);
+			final SFTPv3FileAttributes[] attributes = receiveAttributesIfExist(channel, before, current, after);
+			final SFTPv3FileAttributes handleBefore = attributes[0];
+			final SFTPv3FileAttributes pathAttributes = attributes[1];
+			final SFTPv3FileAttributes handleAfter = attributes[2];
+
+			// Some servers stat the path of the handle instead of the open file, which then
+			// cannot be told from the path, and may even be reported missing
+			if (handleBefore != null && pathAttributes != null && handleAfter != null) {
+				result.rotated = !isSameFile(handleBefore, pathAttributes, handleAfter);
+			}
+			if (!result.rotated && handleAfter != null && handleAfter.size != null && handleAfter.size < state.offset) {
+				result.truncated = true;
+				state.offset = 0;
+			}
+		}
+
+		// Read what's new in the open file
+		result.bytesRead = readNewBytes(state, out);
+
+		if (result.rotated) {
+			// We've read the end of the previous file, now read the new one from its beginning
+			closeQuietly(state);
+			state = open(channel, remoteFilePath);
+			state.offset = 0;
+			result.bytesRead += readNewBytes(state, out);
+		}
+
+		result.offset = state.offset;
+		return result;
+	}
+
+	/**
+	 * @param remoteFilePath Path of the file on the remote host
+	 * @return the offset from which the next poll will read the specified file, or -1 if unknown
+	 */
+	public synchronized long getOffset(final String remoteFilePath) {
+		final TailState state = states.get(remoteFilePath);
+		if (state != null) {
+			return state.offset;
+		}
+		return initialOffsets.getOrDefault(remoteFilePath, -1L);
+	}
+
+	/**
+	 * Set the offset from which the next poll will read the specified file, typically to resume
+	 * following a file after a restart.
+	 *
+	 * @param remoteFilePath Path of the file on the remote host
+	 * @param offset The offset
+	 */
+	public synchronized void setOffset(final String remoteFilePath, final long offset) {
+		final TailState state = states.get(remoteFilePath);
+		if (state != null) {
+			state.offset = offset;
+		} else {
+			initialOffsets.put(remoteFilePath, offset);
+		}
+	}
+
+	/**
+	 * Stop following the specified file, and close it
+	 *
+	 * @param remoteFilePath Path of the file on the remote host
+	 */
+	public synchronized void forget(final String remoteFilePath) {
+		initialOffsets.remove(remoteFilePath);
+		final TailState state = states.remove(remoteFilePath);
+		if (state != null) {
+			closeQuietly(state);
+		}
+	}
+
+	/**
+	 * Close all the remote files
+	 */
+	@Override
+	public synchronized void close() {
+		for (TailState state : states.values()) {
+			closeQuietly(state);
+		}
+		states.clear();
+	}
+
+	private TailState open(final SftpChannel channel, final String remoteFilePath) throws IOException {
+		final byte[] handle = channel.openFileRO(remoteFilePath);
+		final SFTPv3FileAttributes attributes;
+		try {
+			attributes = channel.fstat(handle);
+		} catch (IOException e) {
+			channel.closeFile(handle);
+			throw e;
+		}
+
+		final TailState state = new TailState(channel, handle, attributes);
+		final Long initialOffset = initialOffsets.remove(remoteFilePath);
+		if (initialOffset != null) {
+			state.offset = initialOffset;
+		} else if (fromEnd && attributes.size != null) {
+			state.offset = attributes.size;
+		}
+		states.put(remoteFilePath, state);
+		return state;
+	}
+
+	/**
+	 * Read the open file from the current offset to its end, updating the offset as the data is written
+	 */
+	private long readNewBytes(final TailState state, final OutputStream out) throws IOException {
+		return state.channel.read(
+			state.handle,
+			state.offset,
+			-1,
+			sshClient.getSftpReadWindow(),
+			(buffer, offset, length) -> {
+				out.write(buffer, offset, length);
+				state.offset += length;
+			}
+		);
+	}
+
+	/**
+	 * Receive the replies to several STAT/FSTAT requests. All the replies are consumed, even when
+	 * one of them is an error, so that none is left pending on the channel.
+	 *
+	 * @param channel The SFTP channel
+	 * @param ids The request ids
+	 * @return the attributes, in the same order as the ids (null for the files that don't exist)
+	 * @throws IOException the first error (other than a missing file)
+	 */
+	private static SFTPv3FileAttributes[] receiveAttributesIfExist(final SftpChannel channel, final int... ids)
+		throws IOException {
+		final SFTPv3FileAttributes[] attributes = new SFTPv3FileAttributes[ids.length];
+		IOException error = null;
+		for (int i = 0; i < ids.length; i++) {
+			try {
+				attributes[i] = channel.receiveAttributes(ids[i]);
+			} catch (SftpException e) {
+				if (e.getServerErrorCode() != ErrorCodes.SSH_FX_NO_SUCH_FILE && error == null) {
+					error = e;
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+		return attributes;
+	}
+
+	/**
+	 * Check whether the attributes of a path are consistent with the attributes of the open file,
+	 * taken just before and just after.
+	 *
+	 * @param before Attributes of the open file before
+	 * @param path Attributes of the path
+	 * @param after Attributes of the open file after
+	 * @return whether the path designates the open file
+	 */
+	static boolean isSameFile(
+		final SFTPv3FileAttributes before,
+		final SFTPv3FileAttributes path,
+		final SFTPv3FileAttributes after
+	) {
+		return (
+			isBetween(before.size, path.size, after.size) &&
+			isBetween(before.mtime, path.mtime, after.mtime) &&
+			Objects.equals(after.uid, path.uid) &&
+			Objects.equals(after.gid, path.gid) &&
+			Objects.equals(after.permissions, path.permissions)
+		);
+	}
+
+	private static boolean isBetween(final Long low, final Long value, final Long high) {
+		if (low == null || value == null || high == null) {
+			return true;
+		}
+		return low <= value && value <= high;
+	}
+
+	private static void closeQuietly(final TailState state) {
+		try {
+			state.channel.closeFile(state.handle);
+		} catch (IOException e) {
+			// The handle is lost anyway
+		}
+	}
+
+	/**
+	 * A remote file being followed
+	 */
+	private static final class TailState {
+
+		private final SftpChannel channel;
+		private final byte[] handle;
+		private final SFTPv3FileAttributes attributes;
+		private long offset = 0;
+
+		private TailState(final SftpChannel channel, final byte[] handle, final SFTPv3FileAttributes attributes) {
+			this.channel = channel;
+			this.handle = handle;
+			this.attributes = attributes;
+		}
+	}
+
+	/**
+	 * Result of a poll
+	 */
+	public static final class TailResult {
+
+		private long bytesRead = 0;
+		private long offset = 0;
+		private boolean rotated = false;
+		private boolean truncated = false;
+		private String content = null;
+
+		/**
+		 * @return the number of new bytes read
+		 */
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		/**
+		 * @return the offset from which the next poll will read the file
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return whether the file has been replaced by a new one since the previous poll
+		 *         (the result contains the end of the previous file, then the new file)
+		 */
+		public boolean isRotated() {
+			return rotated;
+		}
+
+		/**
+		 * @return whether the file has been truncated since the previous poll (the result contains
+		 *         the file from its beginning)
+		 */
+		public boolean isTruncated() {
+			return truncated;
+		}
+
+		/**
+		 * @return the new content, or null if it was written to a stream
+		 */
+		public String getContent() {
+			return content;
+		}
+	}
+}
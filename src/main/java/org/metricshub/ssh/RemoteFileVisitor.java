@@ -0,0 +1,41 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import java.io.IOException;
+
+/**
+ * Receives the files found while listing a remote directory, as they are found.
+ *
+ * @see SshClient#listFiles(String, String, boolean, RemoteFileVisitor)
+ */
+@FunctionalInterface
+public interface RemoteFileVisitor {
+	/**
+	 * Process the specified file
+	 *
+	 * @param path The path of the file on the remote host
+	 * @param attributes The attributes of the file (size, modification time, permissions, etc.)
+	 * @throws IOException to stop the listing
+	 */
+	void visitFile(String path, SFTPv3FileAttributes attributes) throws IOException;
+}
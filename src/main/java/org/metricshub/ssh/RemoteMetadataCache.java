@@ -0,0 +1,434 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of the attributes and directory listings read by {@link SshClient}, so that
+ * the monitors that check the same remote paths within seconds of each other don't hit the
+ * network every time.
+ * <p>
+ * Each entry expires after its own time-to-live, given by a {@link TtlPolicy}. When the cache is
+ * full, the least recently used entries are evicted. The entries related to a path are invalidated
+ * when the file is removed with {@link SshClient#removeFile(String)}, and can be invalidated
+ * explicitly with {@link #invalidate(String)}.
+ * <p>
+ * A cache can be shared by several clients: the entries are kept per hostname and port.
+ * <pre>
+ * sshClient.setMetadataCache(new RemoteMetadataCache(10000, 5000, 30000));
+ * </pre>
+ */
+public class RemoteMetadataCache {
+
+	/**
+	 * Default maximum number of entries in the cache
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	/**
+	 * Default time-to-live (in milliseconds) of the entries
+	 */
+	public static final long DEFAULT_TTL = 5000L;
+
+	/**
+	 * Gives the time-to-live of each entry of the cache
+	 */
+	@FunctionalInterface
+	public interface TtlPolicy {
+		/**
+		 * @param path The path of the file, or of the listed directory
+		 * @param listing Whether the entry is a directory listing (or the attributes of a file)
+		 * @return the time-to-live of the entry in milliseconds (0 or less to not cache it)
+		 */
+		long getTtl(String path, boolean listing);
+	}
+
+	private final int maxEntries;
+	private final TtlPolicy ttlPolicy;
+
+	private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * Creates a cache of {@value #DEFAULT_MAX_ENTRIES} entries, which expire after {@value #DEFAULT_TTL} milliseconds
+	 */
+	public RemoteMetadataCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL, DEFAULT_TTL);
+	}
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param maxEntries Maximum number of entries in the cache
+	 * @param attributesTtl Time-to-live of the attributes of a file, in milliseconds
+	 * @param listingTtl Time-to-live of a directory listing, in milliseconds
+	 */
+	public RemoteMetadataCache(final int maxEntries, final long attributesTtl, final long listingTtl) {
+		this(maxEntries, (path, listing) -> listing ? listingTtl : attributesTtl);
+	}
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param maxEntries Maximum number of entries in the cache
+	 * @param ttlPolicy Gives the time-to-live of each entry, e.g. based on its path
+	 */
+	public RemoteMetadataCache(final int maxEntries, final TtlPolicy ttlPolicy) {
+		Utils.checkArgumentNotZeroOrNegative(maxEntries, "maxEntries");
+		this.maxEntries = maxEntries;
+		this.ttlPolicy = Objects.requireNonNull(ttlPolicy, "ttlPolicy");
+	}
+
+	/**
+	 * Invalidate the attributes of the specified file, and the listings of the directories that
+	 * contain it (directly or not), on all hosts
+	 *
+	 * @param path The path of the file or directory
+	 */
+	public void invalidate(final String path) {
+		invalidate(null, path);
+	}
+
+	/**
+	 * Invalidate all the entries
+	 */
+	public synchronized void invalidateAll() {
+		invalidations.addAndGet(entries.size());
+		entries.clear();
+	}
+
+	/**
+	 * @return the hit and miss counters of the cache
+	 */
+	public synchronized Statistics getStatistics() {
+		return new Statistics(
+			hits.get(),
+			misses.get(),
+			expirations.get(),
+			evictions.get(),
+			invalidations.get(),
+			entries.size()
+		);
+	}
+
+	/**
+	 * Invalidate the entries related to the specified path
+	 *
+	 * @param scope The host of the entries (hostname:port), or null for all hosts
+	 * @param path The path of the file or directory
+	 */
+	synchronized void invalidate(final String scope, final String path) {
+		final String normalizedPath = normalize(path);
+		final Iterator<Key> iterator = entries.keySet().iterator();
+		while (iterator.hasNext()) {
+			final Key key = iterator.next();
+			if ((scope == null || scope.equals(key.scope)) && key.isAffectedBy(normalizedPath)) {
+				iterator.remove();
+				invalidations.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Get the cached attributes of the specified file
+	 *
+	 * @param scope The host (hostname:port)
+	 * @param path The path of the file
+	 * @param canonicalize Whether the canonical path is needed
+	 * @return the attributes, or null if not cached
+	 */
+	synchronized RemoteFileAttributes getAttributes(final String scope, final String path, final boolean canonicalize) {
+		Object value = canonicalize ? null : get(new Key(scope, path, Boolean.FALSE));
+		if (value == null) {
+			value = get(new Key(scope, path, Boolean.TRUE));
+		}
+		return count((RemoteFileAttributes) value);
+	}
+
+	/**
+	 * Cache the attributes of a file (unless an error prevented from reading them)
+	 *
+	 * @param scope The host (hostname:port)
+	 * @param attributes The attributes
+	 * @param canonicalize Whether the canonical path has been resolved
+	 */
+	void putAttributes(final String scope, final RemoteFileAttributes attributes, final boolean canonicalize) {
+		if (attributes.isSuccess()) {
+			put(new Key(scope, attributes.getPath(), canonicalize), attributes, false);
+		}
+	}
+
+	/**
+	 * Get the cached listing of the specified directory
+	 *
+	 * @param scope The host (hostname:port)
+	 * @param path The path of the directory
+	 * @param filter The filter of the listing
+	 * @return the files, or null if not cached
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized List<ListedFile> getListing(final String scope, final String path, final RemoteFileFilter filter) {
+		return count((List<ListedFile>) get(new Key(scope, path, filter)));
+	}
+
+	/**
+	 * Cache the listing of a directory
+	 *
+	 * @param scope The host (hostname:port)
+	 * @param path The path of the directory
+	 * @param filter The filter of the listing
+	 * @param files The files
+	 */
+	void putListing(final String scope, final String path, final RemoteFileFilter filter, final List<ListedFile> files) {
+		put(new Key(scope, path, filter), Collections.unmodifiableList(files), true);
+	}
+
+	/**
+	 * @return the current time in milliseconds (overridden in tests)
+	 */
+	long now() {
+		return System.nanoTime() / 1000000L;
+	}
+
+	private <T> T count(final T value) {
+		(value != null ? hits : misses).incrementAndGet();
+		return value;
+	}
+
+	private Object get(final Key key) {
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiresAt - now() <= 0) {
+			entries.remove(key);
+			expirations.incrementAndGet();
+			return null;
+		}
+		return entry.value;
+	}
+
+	private void put(final Key key, final Object value, final boolean listing) {
+		final long ttl = ttlPolicy.getTtl(key.path, listing);
+		if (ttl <= 0) {
+			return;
+		}
+		synchronized (this) {
+			entries.put(key, new Entry(value, now() + ttl));
+			if (entries.size() > maxEntries) {
+				final Iterator<Key> iterator = entries.keySet().iterator();
+				iterator.next();
+				iterator.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Remove the trailing '/' of a path (but keep "/")
+	 */
+	static String normalize(final String path) {
+		int end = path.length();
+		while (end > 1 && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		return path.substring(0, end);
+	}
+
+	/**
+	 * A file of a cached directory listing
+	 */
+	static final class ListedFile {
+
+		final String path;
+		final SFTPv3FileAttributes attributes;
+
+		ListedFile(final String path, final SFTPv3FileAttributes attributes) {
+			this.path = path;
+			this.attributes = attributes;
+		}
+	}
+
+	private static final class Entry {
+
+		private final Object value;
+		private final long expiresAt;
+
+		private Entry(final Object value, final long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * Key of an entry: host, path, and either whether the canonical path has been resolved (for
+	 * attributes), or the filter (for listings, compared by identity)
+	 */
+	private static final class Key {
+
+		private final String scope;
+		private final String path;
+		private final Object variant;
+
+		private Key(final String scope, final String path, final Object variant) {
+			this.scope = scope;
+			this.path = normalize(path);
+			this.variant = variant;
+		}
+
+		/**
+		 * @param changedPath A path that has changed (normalized)
+		 * @return whether this entry may be affected by a change of the specified path
+		 */
+		private boolean isAffectedBy(final String changedPath) {
+			if (path.equals(changedPath) || changedPath.startsWith(path.equals("/") ? "/" : path + "/")) {
+				// This file or directory, or a directory listing that may contain it
+				return true;
+			}
+
+			// The attributes of a file in a removed directory
+			return path.startsWith(changedPath.equals("/") ? "/" : changedPath + "/");
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key) other;
+			return scope.equals(key.scope) && path.equals(key.path) && variant.equals(key.variant);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(scope, path, variant);
+		}
+	}
+
+	/**
+	 * Counters of the cache
+	 */
+	public static final class Statistics {
+
+		private final long hits;
+		private final long misses;
+		private final long expirations;
+		private final long evictions;
+		private final long invalidations;
+		private final int size;
+
+		private Statistics(
+			final long hits,
+			final long misses,
+			final long expirations,
+			final long evictions,
+			final long invalidations,
+			final int size
+		) {
+			this.hits = hits;
+			this.misses = misses;
+			this.expirations = expirations;
+			this.evictions = evictions;
+			this.invalidations = invalidations;
+			this.size = size;
+		}
+
+		/**
+		 * @return number of lookups served from the cache
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return number of lookups that required a request to the remote host
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return ratio of hits among all lookups (between 0 and 1)
+		 */
+		public double getHitRatio() {
+			final long lookups = hits + misses;
+			return lookups == 0 ? 0 : (double) hits / lookups;
+		}
+
+		/**
+		 * @return number of entries found expired
+		 */
+		public long getExpirations() {
+			return expirations;
+		}
+
+		/**
+		 * @return number of entries evicted because the cache was full
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return number of entries invalidated (explicitly, or because a file was removed)
+		 */
+		public long getInvalidations() {
+			return invalidations;
+		}
+
+		/**
+		 * @return number of entries in the cache
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"hits=%d, misses=%d, hitRatio=%.2f, expirations=%d, evictions=%d, invalidations=%d, size=%d",
+				hits,
+				misses,
+				getHitRatio(),
+				expirations,
+				evictions,
+				invalidations,
+				size
+			);
+		}
+	}
+}
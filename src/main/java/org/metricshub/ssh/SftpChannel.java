@@ -0,0 +1,897 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.Connection;
+import com.trilead.ssh2.SFTPv3DirectoryEntry;
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import com.trilead.ssh2.Session;
+import com.trilead.ssh2.packets.TypesReader;
+import com.trilead.ssh2.packets.TypesWriter;
+import com.trilead.ssh2.sftp.ErrorCodes;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SFTP (version 3) channel on an SSH connection.
+ * <p>
+ * Unlike sshlib's SFTPv3Client, which waits for the response of each request before sending
+ * the next one, this channel tags each request with an identifier and matches the responses
+ * by identifier, so that several requests can be in flight at the same time. This is what
+ * makes pipelined reads possible.
+ * <p>
+ * Requests can be sent by several threads at the same time.
+ */
+class SftpChannel implements AutoCloseable {
+
+	/**
+	 * Chunk size every SFTP server must accept
+	 */
+	static final int DEFAULT_CHUNK_SIZE = 32768;
+
+	/**
+	 * Upper limit of the chunk size, even if the server accepts more
+	 */
+	static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+	/**
+	 * Upper limit of the size of an SFTP packet we accept to receive
+	 */
+	private static final int MAX_PACKET_SIZE = MAX_CHUNK_SIZE + 1024 * 1024;
+
+	// Packet types (see draft-ietf-secsh-filexfer-02)
+	private static final int SSH_FXP_INIT = 1;
+	private static final int SSH_FXP_VERSION = 2;
+	private static final int SSH_FXP_OPEN = 3;
+	private static final int SSH_FXP_CLOSE = 4;
+	private static final int SSH_FXP_READ = 5;
+	private static final int SSH_FXP_LSTAT = 7;
+	private static final int SSH_FXP_FSTAT = 8;
+	private static final int SSH_FXP_OPENDIR = 11;
+	private static final int SSH_FXP_READDIR = 12;
+	private static final int SSH_FXP_REMOVE = 13;
+	private static final int SSH_FXP_REALPATH = 16;
+	private static final int SSH_FXP_STAT = 17;
+	private static final int SSH_FXP_STATUS = 101;
+	private static final int SSH_FXP_HANDLE = 102;
+	private static final int SSH_FXP_DATA = 103;
+	private static final int SSH_FXP_NAME = 104;
+	private static final int SSH_FXP_ATTRS = 105;
+	private static final int SSH_FXP_EXTENDED = 200;
+	private static final int SSH_FXP_EXTENDED_REPLY = 201;
+
+	// Attribute flags
+	private static final int SSH_FILEXFER_ATTR_SIZE = 0x00000001;
+	private static final int SSH_FILEXFER_ATTR_UIDGID = 0x00000002;
+	private static final int SSH_FILEXFER_ATTR_PERMISSIONS = 0x00000004;
+	private static final int SSH_FILEXFER_ATTR_ACMODTIME = 0x00000008;
+	private static final int SSH_FILEXFER_ATTR_EXTENDED = 0x80000000;
+
+	private static final int SSH_FXF_READ = 0x00000001;
+
+	private static final int SSH_FX_OK = 0;
+	private static final int SSH_FX_EOF = 1;
+
+	/**
+	 * OpenSSH extension that tells the maximum length of a read request
+	 */
+	private static final String LIMITS_EXTENSION = "limits@openssh.com";
+
+	private final Session session;
+	private final DataInputStream input;
+	private final OutputStream output;
+	private final Charset charset;
+
+	private final Object writeLock = new Object();
+	private final Object readLock = new Object();
+
+	/**
+	 * Responses received while waiting for the response to another request
+	 */
+	private final Map<Integer, Reply> pendingReplies = new HashMap<>();
+
+	private int nextRequestId = 1;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private volatile boolean closed = false;
+
+	/**
+	 * Opens a new session on the specified connection, starts the SFTP subsystem and negotiates
+	 * the protocol version.
+	 *
+	 * @param connection An authenticated SSH connection
+	 * @param charset Charset of the file names on the remote system (UTF-8 if null)
+	 * @throws IOException when the SFTP subsystem cannot be started
+	 */
+	SftpChannel(final Connection connection, final Charset charset) throws IOException {
+		this(startSubSystem(connection.openSession()), charset);
+	}
+
+	private SftpChannel(final Session session, final Charset charset) throws IOException {
+		this(session, session.getStdout(), session.getStdin(), charset);
+	}
+
+	/**
+	 * Negotiates the protocol version with the SFTP server on the other end of the specified streams
+	 *
+	 * @param session The SSH session of the streams, closed with the channel (null if none)
+	 * @param stdout The output of the SFTP server
+	 * @param stdin The input of the SFTP server
+	 * @param charset Charset of the file names on the remote system (UTF-8 if null)
+	 * @throws IOException when the version cannot be negotiated
+	 */
+	SftpChannel(final Session session, final InputStream stdout, final OutputStream stdin, final Charset charset)
+		throws IOException {
+		this.charset = charset != null ? charset : StandardCharsets.UTF_8;
+		this.session = session;
+		input = new DataInputStream(new BufferedInputStream(stdout, DEFAULT_CHUNK_SIZE));
+		output = stdin;
+		try {
+			init();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts the SFTP subsystem on the specified session, or closes it if the subsystem cannot start
+	 */
+	private static Session startSubSystem(final Session session) throws IOException {
+		try {
+			session.startSubSystem("sftp");
+			return session;
+		} catch (IOException e) {
+			session.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Negotiates the version 3 of the protocol, and the largest chunk size the server accepts
+	 */
+	private void init() throws IOException {
+		final TypesWriter tw = new TypesWriter();
+		tw.writeUINT32(0);
+		tw.writeByte(SSH_FXP_INIT);
+		tw.writeUINT32(3);
+		send(tw);
+
+		// The version takes the place of the request identifier
+		final Reply versionReply = readReply();
+		boolean hasLimits = false;
+		try {
+			if (versionReply.type != SSH_FXP_VERSION) {
+				throw new IOException("The SFTP server did not answer with its version");
+			}
+			if (versionReply.id != 3) {
+				throw new IOException("Unsupported SFTP protocol version: " + versionReply.id);
+			}
+
+			final TypesReader tr = versionReply.reader;
+			while (tr.remain() > 0) {
+				final String extension = tr.readString();
+				tr.readByteString();
+				hasLimits |= LIMITS_EXTENSION.equals(extension);
+			}
+		} finally {
+			versionReply.release();
+		}
+
+		if (hasLimits) {
+			final int id = nextRequestId();
+			final TypesWriter request = newRequest(SSH_FXP_EXTENDED, id);
+			request.writeString(LIMITS_EXTENSION);
+			send(request);
+
+			final Reply reply = receive(id);
+			try {
+				if (reply.type == SSH_FXP_EXTENDED_REPLY) {
+					reply.reader.readUINT64(); // max packet length
+					final long maxReadLength = reply.reader.readUINT64();
+					if (maxReadLength > 0) {
+						chunkSize = (int) Math.min(maxReadLength, MAX_CHUNK_SIZE);
+					}
+				}
+			} finally {
+				reply.release();
+			}
+		}
+	}
+
+	/**
+	 * @return the size of the chunks requested in each read request
+	 */
+	int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Retrieve the attributes of the specified file, following symbolic links
+	 *
+	 * @param path Path of the file on the remote system
+	 * @return the attributes of the file
+	 * @throws IOException when the file doesn't exist or cannot be accessed
+	 */
+	SFTPv3FileAttributes stat(final String path) throws IOException {
+		return receiveAttributes(sendStat(path));
+	}
+
+	/**
+	 * Send a STAT request without waiting for the response
+	 *
+	 * @param path Path of the file on the remote system
+	 * @return the identifier of the request, to be passed to {@link #receiveAttributes(int)}
+	 * @throws IOException when the channel is broken
+	 */
+	int sendStat(final String path) throws IOException {
+		return sendPathRequest(SSH_FXP_STAT, path);
+	}
+
+	/**
+	 * Retrieve the attributes of the specified file, not following symbolic links
+	 *
+	 * @param path Path of the file on the remote system
+	 * @return the attributes of the file
+	 * @throws IOException when the file doesn't exist or cannot be accessed
+	 */
+	SFTPv3FileAttributes lstat(final String path) throws IOException {
+		return receiveAttributes(sendPathRequest(SSH_FXP_LSTAT, path));
+	}
+
+	/**
+	 * Retrieve the attributes of an open file
+	 *
+	 * @param handle The handle of the open file
+	 * @return the attributes of the file
+	 * @throws IOException when the request fails
+	 */
+	SFTPv3FileAttributes fstat(final byte[] handle) throws IOException {
+		return receiveAttributes(sendFstat(handle));
+	}
+
+	/**
+	 * Send an FSTAT request without waiting for the response
+	 *
+	 * @param handle The handle of the open file
+	 * @return the identifier of the request, to be passed to {@link #receiveAttributes(int)}
+	 * @throws IOException when the channel is broken
+	 */
+	int sendFstat(final byte[] handle) throws IOException {
+		return sendHandleRequest(SSH_FXP_FSTAT, handle);
+	}
+
+	/**
+	 * Resolve the specified path into an absolute path without "..", "." or symbolic links
+	 *
+	 * @param path Path on the remote system
+	 * @return the canonical path
+	 * @throws IOException when the path doesn't exist
+	 */
+	String canonicalPath(final String path) throws IOException {
+		return receiveCanonicalPath(sendRealPath(path));
+	}
+
+	/**
+	 * Send a REALPATH request without waiting for the response
+	 *
+	 * @param path Path on the remote system
+	 * @return the identifier of the request, to be passed to {@link #receiveCanonicalPath(int)}
+	 * @throws IOException when the channel is broken
+	 */
+	int sendRealPath(final String path) throws IOException {
+		return sendPathRequest(SSH_FXP_REALPATH, path);
+	}
+
+	/**
+	 * Wait for the response to a REALPATH request
+	 *
+	 * @param id The identifier of the request
+	 * @return the canonical path
+	 * @throws IOException when the request failed or the channel is broken
+	 */
+	String receiveCanonicalPath(final int id) throws IOException {
+		final Reply reply = receive(id);
+		try {
+			if (reply.type != SSH_FXP_NAME) {
+				throw unexpectedReply(reply);
+			}
+			if (reply.reader.readUINT32() != 1) {
+				throw new IOException("The SFTP server returned an invalid answer to REALPATH");
+			}
+			return reply.reader.readString(charset.name());
+		} finally {
+			reply.release();
+		}
+	}
+
+	/**
+	 * List the entries of the specified directory (including "." and "..")
+	 *
+	 * @param path Path of the directory on the remote system
+	 * @return the entries of the directory
+	 * @throws IOException when the directory doesn't exist or cannot be read
+	 */
+	List<SFTPv3DirectoryEntry> ls(final String path) throws IOException {
+		final byte[] handle = receiveHandle(sendOpenDir(path));
+		try {
+			final List<SFTPv3DirectoryEntry> entries = new ArrayList<>();
+			List<SFTPv3DirectoryEntry> batch;
+			while ((batch = receiveDirectoryEntries(sendReadDir(handle))) != null) {
+				entries.addAll(batch);
+			}
+			return entries;
+		} finally {
+			closeFile(handle);
+		}
+	}
+
+	/**
+	 * Send an OPENDIR request without waiting for the response
+	 *
+	 * @param path Path of the directory on the remote system
+	 * @return the identifier of the request, to be passed to {@link #receiveHandle(int)}
+	 * @throws IOException when the channel is broken
+	 */
+	int sendOpenDir(final String path) throws IOException {
+		return sendPathRequest(SSH_FXP_OPENDIR, path);
+	}
+
+	/**
+	 * Send a READDIR request without waiting for the response
+	 *
+	 * @param handle The handle of the open directory
+	 * @return the identifier of the request, to be passed to {@link #receiveDirectoryEntries(int)}
+	 * @throws IOException when the channel is broken
+	 */
+	int sendReadDir(final byte[] handle) throws IOException {
+		return sendHandleRequest(SSH_FXP_READDIR, handle);
+	}
+
+	/**
+	 * Wait for the response to a READDIR request
+	 *
+	 * @param id The identifier of the request
+	 * @return the next entries of the directory, or null if all the entries have been read
+	 * @throws IOException when the request failed or the channel is broken
+	 */
+	List<SFTPv3DirectoryEntry> receiveDirectoryEntries(final int id) throws IOException {
+		final Reply reply = receive(id);
+		try {
+			if (isEndOfFile(reply)) {
+				return null;
+			}
+			if (reply.type != SSH_FXP_NAME) {
+				throw unexpectedReply(reply);
+			}
+			final int count = reply.reader.readUINT32();
+			final List<SFTPv3DirectoryEntry> entries = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				final SFTPv3DirectoryEntry entry = new SFTPv3DirectoryEntry();
+				entry.filename = reply.reader.readString(charset.name());
+				entry.longEntry = reply.reader.readString(charset.name());
+				entry.attributes = readAttributes(reply.reader);
+				entries.add(entry);
+			}
+			return entries;
+		} finally {
+			reply.release();
+		}
+	}
+
+	/**
+	 * Remove the specified file
+	 *
+	 * @param path Path of the file on the remote system
+	 * @throws IOException when the file cannot be removed
+	 */
+	void rm(final String path) throws IOException {
+		receiveStatus(sendPathRequest(SSH_FXP_REMOVE, path));
+	}
+
+	/**
+	 * Open the specified file for reading
+	 *
+	 * @param path Path of the file on the remote system
+	 * @return the handle of the open file
+	 * @throws IOException when the file doesn't exist or cannot be read
+	 */
+	byte[] openFileRO(final String path) throws IOException {
+		final int id = nextRequestId();
+		final TypesWriter tw = newRequest(SSH_FXP_OPEN, id);
+		writeString(tw, path);
+		tw.writeUINT32(SSH_FXF_READ);
+		tw.writeUINT32(0); // no attributes
+		send(tw);
+		return receiveHandle(id);
+	}
+
+	/**
+	 * Close an open file or directory
+	 *
+	 * @param handle The handle of the file
+	 * @throws IOException when the request fails
+	 */
+	void closeFile(final byte[] handle) throws IOException {
+		receiveStatus(sendClose(handle));
+	}
+
+	/**
+	 * Send a CLOSE request without waiting for the response
+	 *
+	 * @param handle The handle of the file or directory
+	 * @return the identifier of the request, to be passed to {@link #receiveStatus(int)}
+	 * @throws IOException when the channel is broken
+	 */
+	int sendClose(final byte[] handle) throws IOException {
+		return sendHandleRequest(SSH_FXP_CLOSE, handle);
+	}
+
+	/**
+	 * Read a chunk of an open file
+	 *
+	 * @param handle The handle of the open file
+	 * @param offset Where to read from
+	 * @param buffer Where to store the data
+	 * @param bufferOffset Where to store the data in buffer
+	 * @param length How many bytes to read (at most)
+	 * @return the number of bytes read, or -1 if the end of the file has been reached
+	 * @throws IOException when the request fails
+	 */
+	int read(final byte[] handle, final long offset, final byte[] buffer, final int bufferOffset, final int length)
+		throws IOException {
+		final Reply reply = receive(sendRead(handle, offset, length));
+		try {
+			if (isEndOfFile(reply)) {
+				return -1;
+			}
+			return copyData(reply, buffer, bufferOffset, length);
+		} finally {
+			reply.release();
+		}
+	}
+
+	/**
+	 * Receives the data of an open file
+	 */
+	@FunctionalInterface
+	interface ChunkConsumer {
+		/**
+		 * Process the specified chunk of data. The buffer is reused once this method returns:
+		 * the data must be copied if it is needed later.
+		 *
+		 * @param buffer The buffer containing the data
+		 * @param offset Where the data starts in the buffer
+		 * @param length The number of bytes
+		 * @throws IOException When the data cannot be processed
+		 */
+		void accept(byte[] buffer, int offset, int length) throws IOException;
+	}
+
+	/**
+	 * Read an open file with up to <code>window</code> read requests in flight at the same time,
+	 * and pass the data in order to the specified consumer.
+	 *
+	 * @param handle The handle of the open file
+	 * @param offset Where to start reading from
+	 * @param length How many bytes to read, or -1 to read up to the end of the file
+	 * @param window Maximum number of read requests in flight
+	 * @param consumer What to do with the data
+	 * @return the number of bytes read
+	 * @throws IOException when a request fails, or the consumer fails
+	 */
+	long read(final byte[] handle, final long offset, final long length, final int window, final ChunkConsumer consumer)
+		throws IOException {
+		Utils.checkArgumentNotZeroOrNegative(window, "window");
+
+		final long end = length < 0 ? Long.MAX_VALUE : offset + length;
+		final Deque<ReadRequest> inFlight = new ArrayDeque<>();
+		long nextOffset = offset;
+		long total = 0;
+		boolean endOfFile = false;
+
+		try {
+			while (true) {
+				// Fill the window
+				while (!endOfFile && inFlight.size() < window && nextOffset < end) {
+					final int chunkLength = (int) Math.min(chunkSize, end - nextOffset);
+					inFlight.add(new ReadRequest(sendRead(handle, nextOffset, chunkLength), nextOffset, chunkLength));
+					nextOffset += chunkLength;
+				}
+
+				// Process the responses in order
+				final ReadRequest request = inFlight.poll();
+				if (request == null) {
+					return total;
+				}
+
+				final Reply reply = receive(request.id);
+				final int dataLength;
+				try {
+					if (endOfFile || isEndOfFile(reply)) {
+						// Nothing beyond that point: simply consume the remaining responses
+						endOfFile = true;
+						continue;
+					}
+
+					dataLength = dataLength(reply, request.length);
+					consumer.accept(reply.packet, reply.dataOffset(), dataLength);
+					total += dataLength;
+				} finally {
+					reply.release();
+				}
+
+				if (dataLength < request.length) {
+					// Short read: ask for the missing part before anything else
+					final long missingOffset = request.offset + dataLength;
+					final int missingLength = request.length - dataLength;
+					final int missingId = sendRead(handle, missingOffset, missingLength);
+					inFlight.addFirst(new ReadRequest(missingId, missingOffset, missingLength));
+				}
+			}
+		} finally {
+			// Consume the responses we won't use, so they don't pile up
+			for (ReadRequest request : inFlight) {
+				try {
+					discard(request.id);
+				} catch (IOException e) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return whether the channel is still usable
+	 */
+	boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Closes the channel (and its SSH session)
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if (session != null) {
+			session.close();
+		}
+	}
+
+	private int sendRead(final byte[] handle, final long offset, final int length) throws IOException {
+		final int id = nextRequestId();
+		final TypesWriter tw = newRequest(SSH_FXP_READ, id);
+		tw.writeString(handle, 0, handle.length);
+		tw.writeUINT64(offset);
+		tw.writeUINT32(length);
+		send(tw);
+		return id;
+	}
+
+	private int sendPathRequest(final int type, final String path) throws IOException {
+		final int id = nextRequestId();
+		final TypesWriter tw = newRequest(type, id);
+		writeString(tw, path);
+		send(tw);
+		return id;
+	}
+
+	private int sendHandleRequest(final int type, final byte[] handle) throws IOException {
+		final int id = nextRequestId();
+		final TypesWriter tw = newRequest(type, id);
+		tw.writeString(handle, 0, handle.length);
+		send(tw);
+		return id;
+	}
+
+	private synchronized int nextRequestId() {
+		return nextRequestId++;
+	}
+
+	private void writeString(final TypesWriter tw, final String value) {
+		final byte[] bytes = value.getBytes(charset);
+		tw.writeString(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Creates a request, with room for the length of the packet, which is set when sent
+	 */
+	private static TypesWriter newRequest(final int type, final int id) {
+		final TypesWriter tw = new TypesWriter();
+		tw.writeUINT32(0);
+		tw.writeByte(type);
+		tw.writeUINT32(id);
+		return tw;
+	}
+
+	private void send(final TypesWriter tw) throws IOException {
+		tw.writeUINT32(tw.length() - 4, 0);
+		synchronized (writeLock) {
+			output.write(tw.getBytes());
+			output.flush();
+		}
+	}
+
+	/**
+	 * Wait for the response to the specified request. Responses to other requests received in
+	 * the meantime are kept for their own receiver.
+	 *
+	 * @param id The identifier of the request
+	 * @return the response
+	 * @throws IOException when the channel is broken
+	 */
+	Reply receive(final int id) throws IOException {
+		synchronized (readLock) {
+			Reply reply = pendingReplies.remove(id);
+			while (reply == null) {
+				final Reply next = readReply();
+				if (next.id == id) {
+					reply = next;
+				} else {
+					pendingReplies.put(next.id, next);
+				}
+			}
+			return reply;
+		}
+	}
+
+	/**
+	 * Wait for the response to a request, and discard it
+	 *
+	 * @param id The identifier of the request
+	 * @throws IOException when the channel is broken
+	 */
+	void discard(final int id) throws IOException {
+		receive(id).release();
+	}
+
+	/**
+	 * Read the next packet, into a buffer of the shared {@link BufferPool} (when large enough)
+	 */
+	private Reply readReply() throws IOException {
+		byte[] packet = null;
+		try {
+			final int length = input.readInt();
+			if (length <= 0 || length > MAX_PACKET_SIZE) {
+				throw new IOException("Invalid SFTP packet length: " + length);
+			}
+			packet = BufferPool.getShared().acquire(length);
+			input.readFully(packet, 0, length);
+			return new Reply(packet, length);
+		} catch (IOException e) {
+			BufferPool.getShared().release(packet);
+			closed = true;
+			if (e instanceof EOFException) {
+				throw new IOException("The SFTP channel has been closed by the server", e);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Wait for the response to a STAT, LSTAT or FSTAT request
+	 *
+	 * @param id The identifier of the request
+	 * @return the attributes of the file
+	 * @throws IOException when the request failed or the channel is broken
+	 */
+	SFTPv3FileAttributes receiveAttributes(final int id) throws IOException {
+		final Reply reply = receive(id);
+		try {
+			if (reply.type != SSH_FXP_ATTRS) {
+				throw unexpectedReply(reply);
+			}
+			return readAttributes(reply.reader);
+		} finally {
+			reply.release();
+		}
+	}
+
+	/**
+	 * Wait for the response to an OPEN or OPENDIR request
+	 *
+	 * @param id The identifier of the request
+	 * @return the handle of the open file or directory
+	 * @throws IOException when the request failed or the channel is broken
+	 */
+	byte[] receiveHandle(final int id) throws IOException {
+		final Reply reply = receive(id);
+		try {
+			if (reply.type != SSH_FXP_HANDLE) {
+				throw unexpectedReply(reply);
+			}
+			return reply.reader.readByteString();
+		} finally {
+			reply.release();
+		}
+	}
+
+	/**
+	 * Wait for the response to a request that only returns a status
+	 *
+	 * @param id The identifier of the request
+	 * @throws IOException when the request failed or the channel is broken
+	 */
+	void receiveStatus(final int id) throws IOException {
+		final Reply reply = receive(id);
+		try {
+			if (reply.type != SSH_FXP_STATUS || reply.statusCode != SSH_FX_OK) {
+				throw unexpectedReply(reply);
+			}
+		} finally {
+			reply.release();
+		}
+	}
+
+	/**
+	 * @return the length of the data in a DATA response, checking it against the requested length
+	 */
+	private static int dataLength(final Reply reply, final int requestedLength) throws IOException {
+		if (reply.type != SSH_FXP_DATA) {
+			throw unexpectedReply(reply);
+		}
+		final int dataLength = reply.reader.readUINT32();
+		if (dataLength < 0 || dataLength > requestedLength || dataLength > reply.reader.remain()) {
+			throw new IOException("The SFTP server returned an invalid amount of data: " + dataLength);
+		}
+		return dataLength;
+	}
+
+	private static int copyData(final Reply reply, final byte[] buffer, final int bufferOffset, final int length)
+		throws IOException {
+		final int dataLength = dataLength(reply, length);
+		System.arraycopy(reply.packet, reply.dataOffset(), buffer, bufferOffset, dataLength);
+		return dataLength;
+	}
+
+	private static boolean isEndOfFile(final Reply reply) {
+		return reply.type == SSH_FXP_STATUS && reply.statusCode == SSH_FX_EOF;
+	}
+
+	/**
+	 * Read file attributes as encoded in the version 3 of the protocol
+	 *
+	 * @param tr Where to read the attributes from
+	 * @return the attributes
+	 * @throws IOException when the attributes are malformed
+	 */
+	static SFTPv3FileAttributes readAttributes(final TypesReader tr) throws IOException {
+		final SFTPv3FileAttributes attributes = new SFTPv3FileAttributes();
+		final int flags = tr.readUINT32();
+		if ((flags & SSH_FILEXFER_ATTR_SIZE) != 0) {
+			attributes.size = tr.readUINT64();
+		}
+		if ((flags & SSH_FILEXFER_ATTR_UIDGID) != 0) {
+			attributes.uid = tr.readUINT32();
+			attributes.gid = tr.readUINT32();
+		}
+		if ((flags & SSH_FILEXFER_ATTR_PERMISSIONS) != 0) {
+			attributes.permissions = tr.readUINT32();
+		}
+		if ((flags & SSH_FILEXFER_ATTR_ACMODTIME) != 0) {
+			attributes.atime = tr.readUINT32() & 0xffffffffL;
+			attributes.mtime = tr.readUINT32() & 0xffffffffL;
+		}
+		if ((flags & SSH_FILEXFER_ATTR_EXTENDED) != 0) {
+			final int count = tr.readUINT32();
+			for (int i = 0; i < count; i++) {
+				tr.readByteString();
+				tr.readByteString();
+			}
+		}
+		return attributes;
+	}
+
+	/**
+	 * @return the exception to throw for an error status or an unexpected response
+	 */
+	private static IOException unexpectedReply(final Reply reply) {
+		if (reply.type == SSH_FXP_STATUS) {
+			return new SftpException(reply.statusMessage, reply.statusCode);
+		}
+		return new IOException("Unexpected SFTP response type: " + reply.type);
+	}
+
+	/**
+	 * A response of the SFTP server, whose packet may be larger than the response itself. Once the
+	 * response has been processed, {@link #release()} gives its packet back to the pool.
+	 */
+	static final class Reply {
+
+		private final byte[] packet;
+		private final int type;
+		private final int id;
+		private final TypesReader reader;
+
+		/**
+		 * Code and message of a STATUS response (parsed once, as they are read from the packet)
+		 */
+		private final int statusCode;
+		private final String statusMessage;
+
+		private Reply(final byte[] packet, final int length) throws IOException {
+			this.packet = packet;
+			reader = new TypesReader(packet, 0, length);
+			type = reader.readByte();
+			id = reader.readUINT32();
+			if (type == SSH_FXP_STATUS) {
+				statusCode = reader.readUINT32();
+				statusMessage = reader.remain() > 0 ? reader.readString() : "";
+			} else {
+				statusCode = -1;
+				statusMessage = null;
+			}
+		}
+
+		/**
+		 * Gives the packet back to the pool: the response must not be used anymore
+		 */
+		void release() {
+			BufferPool.getShared().release(packet);
+		}
+
+		/**
+		 * @return where the data starts in the packet of a DATA response (type, id and length first)
+		 */
+		private int dataOffset() {
+			return 9;
+		}
+	}
+
+	/**
+	 * A read request in flight
+	 */
+	private static final class ReadRequest {
+
+		private final int id;
+		private final long offset;
+		private final int length;
+
+		private ReadRequest(final int id, final long offset, final int length) {
+			this.id = id;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Describes an SFTP status code
+	 *
+	 * @param code The SFTP status code
+	 * @return the symbolic name and description of the status code
+	 */
+	static String describe(final int code) {
+		final String[] description = ErrorCodes.getDescription(code);
+		return description != null ? description[0] + " (" + description[1] + ")" : "UNKNOWN (" + code + ")";
+	}
+}
@@ -0,0 +1,259 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.SFTPv3DirectoryEntry;
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Walks a remote directory tree on an SFTP channel, with several directories being opened and
+ * read at the same time, and passes the files to a {@link RemoteFileVisitor} as soon as they are
+ * received.
+ * <p>
+ * Directories are read in parallel (up to <code>window</code> at a time), so the files are not
+ * visited in depth-first order: the entries of a directory are visited in the order they are
+ * returned by the server, interleaved with the entries of the other directories being read.
+ * <p>
+ * Symbolic links are ignored, only the files accepted by the {@link RemoteFileFilter} are visited,
+ * and the directories that the filter rules out are not read at all. The tree is never walked
+ * deeper than {@link #MAX_DEPTH} levels.
+ */
+class SftpDirectoryWalker {
+
+	/**
+	 * Maximum depth of the walk (the specified directory being level 1)
+	 */
+	static final int MAX_DEPTH = 15;
+
+	private final SftpChannel channel;
+	private final RemoteFileFilter filter;
+	private final int window;
+
+	/**
+	 * Directories found, waiting to be opened
+	 */
+	private final Deque<Directory> pendingDirectories = new ArrayDeque<>();
+
+	/**
+	 * Directories being opened, read or closed
+	 */
+	private final List<Directory> activeDirectories = new ArrayList<>();
+
+	/**
+	 * Requests sent, in the order of their responses to be processed
+	 */
+	private final Deque<Request> inFlight = new ArrayDeque<>();
+
+	/**
+	 * Creates a walker
+	 *
+	 * @param channel The SFTP channel
+	 * @param filter The files to visit, and the directories to walk
+	 * @param window Maximum number of directories being read at the same time
+	 */
+	SftpDirectoryWalker(final SftpChannel channel, final RemoteFileFilter filter, final int window) {
+		Utils.checkArgumentNotZeroOrNegative(window, "window");
+		this.channel = channel;
+		this.filter = filter;
+		this.window = window;
+	}
+
+	/**
+	 * Walk the specified directory, which has already been opened
+	 *
+	 * @param remoteDirectoryPath Path of the directory on the remote host
+	 * @param handle Handle of the open directory (closed by the walk)
+	 * @param visitor What to do with the files found
+	 * @throws IOException when a directory cannot be read, or the visitor fails
+	 */
+	void walk(final String remoteDirectoryPath, final byte[] handle, final RemoteFileVisitor visitor)
+		throws IOException {
+		final Directory root = new Directory(remoteDirectoryPath, new String[0]);
+		root.handle = handle;
+		activeDirectories.add(root);
+
+		try {
+			sendReadDir(root);
+
+			while (true) {
+				// Open more directories, while there is room in the window
+				while (activeDirectories.size() < window && !pendingDirectories.isEmpty()) {
+					final Directory directory = pendingDirectories.poll();
+					activeDirectories.add(directory);
+					inFlight.add(new Request(RequestType.OPEN, channel.sendOpenDir(directory.path), directory));
+				}
+
+				final Request request = inFlight.poll();
+				if (request == null) {
+					return;
+				}
+
+				final Directory directory = request.directory;
+				switch (request.type) {
+					case OPEN:
+						directory.handle = channel.receiveHandle(request.id);
+						sendReadDir(directory);
+						break;
+					case READ:
+						final List<SFTPv3DirectoryEntry> entries = channel.receiveDirectoryEntries(request.id);
+						if (entries == null) {
+							// All the entries have been read
+							inFlight.add(new Request(RequestType.CLOSE, channel.sendClose(directory.handle), directory));
+							directory.handle = null;
+						} else {
+							// Ask for the next entries before processing these ones
+							sendReadDir(directory);
+							processEntries(directory, entries, visitor);
+						}
+						break;
+					default:
+						activeDirectories.remove(directory);
+						channel.receiveStatus(request.id);
+						break;
+				}
+			}
+		} finally {
+			cleanUp();
+		}
+	}
+
+	private void sendReadDir(final Directory directory) throws IOException {
+		inFlight.add(new Request(RequestType.READ, channel.sendReadDir(directory.handle), directory));
+	}
+
+	private void processEntries(
+		final Directory directory,
+		final List<SFTPv3DirectoryEntry> entries,
+		final RemoteFileVisitor visitor
+	) throws IOException {
+		for (SFTPv3DirectoryEntry file : entries) {
+			final String filename = file.filename.trim();
+
+			if (filename.equals(".") || filename.equals("..")) {
+				continue;
+			}
+
+			final SFTPv3FileAttributes fileAttributes = file.attributes;
+			if (fileAttributes.permissions == null) {
+				continue;
+			}
+
+			if ((fileAttributes.permissions & RemoteFileFilter.S_IFMT) == RemoteFileFilter.S_IFDIR) {
+				// Directory: walk it only if it may contain accepted files
+				final String[] relativePath = Arrays.copyOf(directory.relativePath, directory.relativePath.length + 1);
+				relativePath[directory.relativePath.length] = filename;
+				if (filter.shouldWalk(relativePath)) {
+					pendingDirectories.add(new Directory(directory.path + "/" + filename, relativePath));
+				}
+			} else if (filter.accepts(directory.relativePath, filename, fileAttributes)) {
+				// Regular/Block/Character/Socket files (symbolic links are ignored)
+				visitor.visitFile(directory.path + "/" + filename, fileAttributes);
+			}
+		}
+	}
+
+	/**
+	 * After a failure, consume the responses of the requests in flight, and close the directories
+	 * that are still open.
+	 */
+	private void cleanUp() {
+		for (Request request : inFlight) {
+			try {
+				if (request.type == RequestType.OPEN) {
+					request.directory.handle = channel.receiveHandle(request.id);
+				} else {
+					channel.discard(request.id);
+				}
+			} catch (SftpException e) {
+				// This request failed too
+			} catch (IOException e) {
+				// The channel is broken
+				return;
+			}
+		}
+		inFlight.clear();
+
+		for (Directory directory : activeDirectories) {
+			if (directory.handle != null) {
+				try {
+					channel.closeFile(directory.handle);
+				} catch (SftpException e) {
+					// Nothing we can do about this handle
+				} catch (IOException e) {
+					return;
+				}
+			}
+		}
+		activeDirectories.clear();
+		pendingDirectories.clear();
+	}
+
+	private enum RequestType {
+		OPEN,
+		READ,
+		CLOSE
+	}
+
+	/**
+	 * A directory to read
+	 */
+	private static final class Directory {
+
+		/**
+		 * Path of the directory, without trailing '/'
+		 */
+		private final String path;
+
+		/**
+		 * Path of the directory relative to the walked directory, split on '/'
+		 */
+		private final String[] relativePath;
+
+		private byte[] handle;
+
+		private Directory(final String path, final String[] relativePath) {
+			this.path = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+			this.relativePath = relativePath;
+		}
+	}
+
+	/**
+	 * A request in flight
+	 */
+	private static final class Request {
+
+		private final RequestType type;
+		private final int id;
+		private final Directory directory;
+
+		private Request(final RequestType type, final int id, final Directory directory) {
+			this.type = type;
+			this.id = id;
+			this.directory = directory;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+
+/**
+ * Error reported by the SFTP server (e.g. no such file, permission denied).
+ * <p>
+ * Unlike other {@link IOException}s, this doesn't mean the SFTP channel is broken.
+ */
+public class SftpException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String serverErrorMessage;
+	private final int serverErrorCode;
+
+	/**
+	 * Creates an exception for the specified SFTP status
+	 *
+	 * @param serverErrorMessage The error message sent by the server
+	 * @param serverErrorCode The SFTP status code (see com.trilead.ssh2.sftp.ErrorCodes)
+	 */
+	public SftpException(final String serverErrorMessage, final int serverErrorCode) {
+		super(
+			serverErrorMessage == null || serverErrorMessage.isEmpty()
+				? SftpChannel.describe(serverErrorCode)
+				: serverErrorMessage + " - " + SftpChannel.describe(serverErrorCode)
+		);
+		this.serverErrorMessage = serverErrorMessage;
+		this.serverErrorCode = serverErrorCode;
+	}
+
+	/**
+	 * @return the error message sent by the server
+	 */
+	public String getServerErrorMessage() {
+		return serverErrorMessage;
+	}
+
+	/**
+	 * @return the SFTP status code (see com.trilead.ssh2.sftp.ErrorCodes)
+	 */
+	public int getServerErrorCode() {
+		return serverErrorCode;
+	}
+}
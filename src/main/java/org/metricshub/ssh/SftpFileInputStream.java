@@ -0,0 +1,168 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream on a remote file open on an SFTP channel.
+ * <p>
+ * Nothing is fetched until the stream is read. Then, each time the local buffer is
+ * empty, it is filled with pipelined read requests (a few chunks at a time).
+ */
+class SftpFileInputStream extends InputStream {
+
+	/**
+	 * Upper limit of the local buffer
+	 */
+	private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+	private final SftpChannel channel;
+	private final byte[] handle;
+	private final int window;
+	private final byte[] buffer;
+
+	/**
+	 * Offset in the remote file of the next byte to fetch
+	 */
+	private long remoteOffset;
+
+	private int bufferPosition = 0;
+	private int bufferLimit = 0;
+	private boolean endOfFile = false;
+	private boolean closed = false;
+
+	/**
+	 * Creates a stream on a remote file. The stream takes ownership of the handle, which is
+	 * closed with the stream.
+	 *
+	 * @param channel The SFTP channel on which the file is open
+	 * @param handle The handle of the remote file
+	 * @param offset Where to start reading the file from
+	 * @param window Maximum number of read requests in flight
+	 */
+	SftpFileInputStream(final SftpChannel channel, final byte[] handle, final long offset, final int window) {
+		this.channel = channel;
+		this.handle = handle;
+		this.remoteOffset = offset;
+		this.window = window;
+		final int chunkSize = channel.getChunkSize();
+		buffer = new byte[(int) Math.max(chunkSize, Math.min((long) chunkSize * window, MAX_BUFFER_SIZE))];
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureData()) {
+			return -1;
+		}
+		return buffer[bufferPosition++] & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] destination, final int offset, final int length) throws IOException {
+		if (offset < 0 || length < 0 || length > destination.length - offset) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (length == 0) {
+			return 0;
+		}
+		if (!ensureData()) {
+			return -1;
+		}
+		final int count = Math.min(length, bufferLimit - bufferPosition);
+		System.arraycopy(buffer, bufferPosition, destination, offset, count);
+		bufferPosition += count;
+		return count;
+	}
+
+	/**
+	 * Skipping doesn't fetch anything: the next read simply starts further in the remote file
+	 */
+	@Override
+	public long skip(final long n) throws IOException {
+		checkIfOpen();
+		if (n <= 0) {
+			return 0;
+		}
+		final int buffered = bufferLimit - bufferPosition;
+		if (n <= buffered) {
+			bufferPosition += (int) n;
+		} else {
+			remoteOffset += n - buffered;
+			bufferPosition = bufferLimit;
+		}
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		checkIfOpen();
+		return bufferLimit - bufferPosition;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			channel.closeFile(handle);
+		}
+	}
+
+	/**
+	 * Fill the buffer if it is empty
+	 *
+	 * @return false if the end of the file has been reached
+	 */
+	private boolean ensureData() throws IOException {
+		checkIfOpen();
+		if (bufferPosition < bufferLimit) {
+			return true;
+		}
+		if (endOfFile) {
+			return false;
+		}
+
+		bufferPosition = 0;
+		bufferLimit = 0;
+		channel.read(
+			handle,
+			remoteOffset,
+			buffer.length,
+			window,
+			(data, dataOffset, length) -> {
+				System.arraycopy(data, dataOffset, buffer, bufferLimit, length);
+				bufferLimit += length;
+			}
+		);
+		remoteOffset += bufferLimit;
+
+		// Less than requested means we reached the end of the file
+		endOfFile = bufferLimit < buffer.length;
+		return bufferLimit > 0;
+	}
+
+	private void checkIfOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+}
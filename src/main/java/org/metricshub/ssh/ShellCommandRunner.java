@@ -0,0 +1,264 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Session;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import org.metricshub.ssh.SshClient.CommandChannel;
+import org.metricshub.ssh.SshClient.CommandResult;
+
+/**
+ * Runs commands one after the other in the same remote shell, instead of opening a new channel
+ * (and forking a new login shell) for each command like {@link SshClient#executeCommand(String, int)}.
+ * <p>
+ * Each command is framed by markers, unique to the runner and the command, which the shell echoes
+ * on stdout and stderr before and after the command, with its exit status. The runner splits the
+ * output back into one {@link CommandResult} per command:
+ * <pre>
+ * try (ShellCommandRunner runner = new ShellCommandRunner(sshClient)) {
+ * 	CommandResult uname = runner.run("uname -a", 30000);
+ * 	CommandResult df = runner.run("df -k", 30000);
+ * }
+ * </pre>
+ * The commands must be complete commands for a Bourne-compatible shell (sh, ksh, bash), and their
+ * standard input is <code>/dev/null</code>. The shell keeps its state between commands (current
+ * directory, variables). No terminal is requested, so stderr stays separate from stdout and the
+ * shell displays no prompt.
+ * <p>
+ * When a command times out, or exits the shell, the shell is closed and a new one is started for
+ * the next command.
+ */
+public class ShellCommandRunner implements AutoCloseable {
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	/**
+	 * Script running a command (%2$s) between the markers (%1$s)
+	 */
+	private static final String SCRIPT_FORMAT =
+		"echo %1$s:B; echo %1$s:B >&2\n" +
+		"{ %2$s\n} </dev/null\n" +
+		"__ssh_status=$?; echo \"\"; echo \"%1$s:E:$__ssh_status\"; echo \"\" >&2; echo %1$s:E >&2\n";
+
+	private final SshClient sshClient;
+	private final String shell;
+	private final String runnerId;
+	private long commandCount = 0;
+
+	private CommandChannel channel;
+	private OutputStream stdin;
+	private final MarkerBuffer stdoutBuffer = new MarkerBuffer();
+	private final MarkerBuffer stderrBuffer = new MarkerBuffer();
+
+	/**
+	 * Creates a runner using the login shell of the user (which must be Bourne-compatible)
+	 *
+	 * @param sshClient The connected and authenticated client
+	 */
+	public ShellCommandRunner(final SshClient sshClient) {
+		this(sshClient, null);
+	}
+
+	/**
+	 * Creates a runner using the specified shell
+	 *
+	 * @param sshClient The connected and authenticated client
+	 * @param shell Path of the Bourne-compatible shell that replaces the login shell (e.g. /bin/ksh),
+	 * or null to use the login shell
+	 */
+	public ShellCommandRunner(final SshClient sshClient, final String shell) {
+		this.sshClient = sshClient;
+		this.shell = shell;
+		runnerId = Long.toHexString(RANDOM.nextLong() & Long.MAX_VALUE);
+	}
+
+	/**
+	 * Runs the specified command in the shell, which is started if needed
+	 *
+	 * @param command The command
+	 * @param timeout Milliseconds after which the command is considered failed (0 for no timeout),
+	 * in which case the shell is closed
+	 * @return the result of the command, with stdout followed by stderr in result
+	 * @throws IllegalStateException when the client is not connected and authenticated
+	 * @throws IOException when there is a problem while communicating with the remote system
+	 */
+	public synchronized CommandResult run(final String command, final int timeout) throws IOException {
+		final long startTime = System.currentTimeMillis();
+		final long timeoutTime = timeout > 0 ? startTime + timeout : Long.MAX_VALUE;
+
+		if (channel == null) {
+			start(timeout);
+			if (channel == null) {
+				return timeoutResult(timeout);
+			}
+		}
+
+		final String marker = "__SSH_" + runnerId + "_" + (++commandCount);
+		final byte[] beginMarker = ascii(marker + ":B\n");
+		final byte[] stdoutEndMarker = ascii("\n" + marker + ":E:");
+		final byte[] stderrEndMarker = ascii("\n" + marker + ":E\n");
+
+		try {
+			stdin.write(script(command, marker).getBytes(sshClient.getCharset()));
+			stdin.flush();
+
+			final Session session = channel.getSession();
+			int stdoutStart = -1;
+			int stdoutEnd = -1;
+			int stderrStart = -1;
+			int stderrEnd = -1;
+			Integer exitStatus = null;
+			boolean endOfFile = false;
+
+			// Where the searches resume, so that the output is scanned only once, however many chunks it comes in
+			int stdoutSearch = 0;
+			int stderrSearch = 0;
+
+			while (exitStatus == null || stderrEnd < 0) {
+				// Look for the markers in what has been received since the previous search
+				if (stdoutStart < 0) {
+					stdoutStart = stdoutBuffer.indexAfter(beginMarker, stdoutSearch);
+					stdoutSearch =
+						stdoutStart < 0 ? stdoutBuffer.resumePosition(beginMarker, stdoutSearch) : stdoutStart;
+				}
+				if (stdoutStart >= 0 && stdoutEnd < 0) {
+					stdoutEnd = stdoutBuffer.indexOf(stdoutEndMarker, stdoutSearch);
+					stdoutSearch = stdoutBuffer.resumePosition(stdoutEndMarker, stdoutSearch);
+				}
+				if (stdoutEnd >= 0 && exitStatus == null) {
+					exitStatus = stdoutBuffer.parseStatus(stdoutEnd + stdoutEndMarker.length);
+				}
+				if (stderrStart < 0) {
+					stderrStart = stderrBuffer.indexAfter(beginMarker, stderrSearch);
+					stderrSearch =
+						stderrStart < 0 ? stderrBuffer.resumePosition(beginMarker, stderrSearch) : stderrStart;
+				}
+				if (stderrStart >= 0 && stderrEnd < 0) {
+					stderrEnd = stderrBuffer.indexOf(stderrEndMarker, stderrSearch);
+					stderrSearch = stderrBuffer.resumePosition(stderrEndMarker, stderrSearch);
+				}
+				if ((exitStatus != null && stderrEnd >= 0) || endOfFile) {
+					break;
+				}
+
+				final long currentTime = System.currentTimeMillis();
+				if (currentTime >= timeoutTime) {
+					close();
+					return timeoutResult(timeout);
+				}
+
+				// Read more
+				final int condition = SshClient.waitForNewData(session, Math.min(timeoutTime - currentTime, 5000));
+				SshClient.transferAllBytes(session.getStdout(), stdoutBuffer);
+				SshClient.transferAllBytes(session.getStderr(), stderrBuffer);
+				endOfFile = SshClient.hasEndOfFileSession(condition) || SshClient.hasSessionClosed(condition);
+			}
+
+			final CommandResult commandResult = new CommandResult();
+			commandResult.executionTime = (System.currentTimeMillis() - startTime) / 1000;
+			final byte[] stdoutBytes = stdoutBuffer.range(stdoutStart, stdoutEnd);
+			final byte[] stderrBytes = stderrBuffer.range(stderrStart, stderrEnd);
+			commandResult.setOutput(stdoutBytes, stderrBytes, sshClient.getCharset());
+			commandResult.totalBytes = stdoutBytes.length + stderrBytes.length;
+			commandResult.result = commandResult.getStdout() + commandResult.getStderr();
+
+			if (exitStatus != null && stderrEnd >= 0) {
+				commandResult.exitStatus = exitStatus;
+				stdoutBuffer.reset();
+				stderrBuffer.reset();
+			} else {
+				// The command exited the shell
+				BlockingThreads.waitForCondition(session, ChannelCondition.EXIT_STATUS, 5000);
+				commandResult.exitStatus = session.getExitStatus();
+				close();
+			}
+			return commandResult;
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a session and starts the shell
+	 */
+	private void start(final int timeout) throws IOException {
+		sshClient.checkIfConnected();
+		sshClient.checkIfAuthenticated();
+
+		final CommandChannel newChannel = sshClient.openCommandChannel(timeout);
+		if (newChannel == null) {
+			return;
+		}
+		try {
+			newChannel.getSession().startShell();
+			stdin = newChannel.getSession().getStdin();
+			if (shell != null) {
+				stdin.write(("exec " + shell + "\n").getBytes(sshClient.getCharset()));
+			}
+		} catch (IOException | RuntimeException e) {
+			newChannel.close();
+			throw e;
+		}
+		channel = newChannel;
+		stdoutBuffer.reset();
+		stderrBuffer.reset();
+	}
+
+	/**
+	 * Builds the script that runs the command between the markers. The output of the command is
+	 * followed by an empty line, so that the end marker is always at the beginning of a line.
+	 *
+	 * @param command The command
+	 * @param marker The marker of the command
+	 * @return the script
+	 */
+	static String script(final String command, final String marker) {
+		return String.format(SCRIPT_FORMAT, marker, command);
+	}
+
+	private static CommandResult timeoutResult(final int timeout) {
+		final CommandResult commandResult = new CommandResult();
+		commandResult.success = false;
+		commandResult.result = "Timeout (" + timeout / 1000 + " seconds)";
+		return commandResult;
+	}
+
+	private static byte[] ascii(final String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Closes the shell. The next command starts a new one.
+	 */
+	@Override
+	public synchronized void close() {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+			stdin = null;
+		}
+	}
+}
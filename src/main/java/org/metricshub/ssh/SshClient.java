@@ -29,10 +29,7 @@ import com.trilead.ssh2.ChannelCondition;
 import com.trilead.ssh2.Connection;
 import com.trilead.ssh2.InteractiveCallback;
 import com.trilead.ssh2.SCPClient;
-import com.trilead.ssh2.SFTPv3Client;
-import com.trilead.ssh2.SFTPv3DirectoryEntry;
 import com.trilead.ssh2.SFTPv3FileAttributes;
-import com.trilead.ssh2.SFTPv3FileHandle;
 import com.trilead.ssh2.Session;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
@@ -40,13 +37,36 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.metricshub.ssh.SshMetricsListener.Operation;
+import org.metricshub.ssh.SshMetricsListener.Outcome;
 
 /**
  * SSH Client that lets you perform basic SSH operations
@@ -62,13 +82,50 @@ import java.util.regex.Pattern;
  */
 public class SshClient implements AutoCloseable {
 
-	private static final Pattern DEFAULT_MASK_PATTERN = Pattern.compile(".*");
+	/**
+	 * Filters of {@link #listFiles(String, String, boolean)}, by mask
+	 */
+	private static final LruCache<String, RemoteFileFilter> LIST_FILES_FILTERS = new LruCache<>(64);
+
+	/**
+	 * Default number of SFTP read requests in flight when reading a file
+	 */
+	public static final int DEFAULT_SFTP_READ_WINDOW = 16;
+
+	/**
+	 * Default number of directories read at the same time when listing files
+	 */
+	public static final int DEFAULT_SFTP_LIST_WINDOW = 8;
 
-	private static final int READ_BUFFER_SIZE = 8192;
+	/**
+	 * Default maximum number of commands running at the same time on the connection
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_CHANNELS = 8;
+
+	/**
+	 * Maximum number of files whose attributes are being read at the same time
+	 */
+	private static final int STAT_WINDOW = 64;
+
+	/**
+	 * Maximum size of a file read into a String
+	 */
+	private static final long MAX_STRING_FILE_SIZE = Integer.MAX_VALUE - 8;
 
 	private String hostname;
+	private int port = 22;
 	private Connection sshConnection = null;
 
+	/**
+	 * Socket of the connection, which {@link #abort()} closes without waiting for the operations in progress
+	 */
+	private volatile Socket socket = null;
+
+	/**
+	 * When the key exchange started, once the socket is connected (only used by the thread that connects)
+	 */
+	private long keyExchangeStart = 0;
+
 	private Charset charset = null;
 
 	/**
@@ -76,6 +133,53 @@ public class SshClient implements AutoCloseable {
 	 */
 	private Session sshSession = null;
 
+	/**
+	 * Decoders of stdout and stderr of the session, which keep the incomplete multi-byte
+	 * sequences between two calls to {@link #read(int, int)} (or to {@link Expect})
+	 */
+	private OutputDecoder stdoutDecoder = null;
+	private OutputDecoder stderrDecoder = null;
+
+	/**
+	 * SFTP channel shared by all SFTP operations, opened on first use and closed when we disconnect
+	 */
+	private SftpChannel sftpChannel = null;
+
+	/**
+	 * Lock that serializes the SFTP operations on the shared SFTP channel
+	 */
+	private final Object sftpLock = new Object();
+
+	/**
+	 * Maximum number of SFTP read requests in flight when reading a file
+	 */
+	private int sftpReadWindow = DEFAULT_SFTP_READ_WINDOW;
+
+	/**
+	 * Maximum number of directories read at the same time when listing files
+	 */
+	private int sftpListWindow = DEFAULT_SFTP_LIST_WINDOW;
+
+	/**
+	 * How much of the output of the commands is kept
+	 */
+	private volatile CapturePolicy capturePolicy = CapturePolicy.UNLIMITED;
+
+	/**
+	 * Limits the number of sessions opened at the same time by executeCommand() and interactiveSession()
+	 */
+	private volatile Semaphore channelPermits = new Semaphore(DEFAULT_MAX_CONCURRENT_CHANNELS, true);
+
+	/**
+	 * Cache of the file attributes and directory listings (none by default)
+	 */
+	private volatile RemoteMetadataCache metadataCache = null;
+
+	/**
+	 * Receives the timing of the operations (none by default)
+	 */
+	private volatile SshMetricsListener metricsListener = null;
+
 	/**
 	 * Creates an SSHClient to connect to the specified hostname
 	 *
@@ -133,8 +237,65 @@ public class SshClient implements AutoCloseable {
 	 * @throws IOException when connection fails or when the server does not respond (SocketTimeoutException)
 	 */
 	public void connect(final int timeout, final int port) throws IOException {
+		final SshMetricsListener listener = metricsListener;
+
+		this.port = port;
+		socket = null;
 		sshConnection = new Connection(hostname, port);
-		sshConnection.connect(null, timeout, timeout);
+		sshConnection.setProxyData((host, socketPort, timeoutMs) -> openSocket(listener, host, socketPort, timeoutMs));
+		try {
+			sshConnection.connect(null, timeout, timeout);
+		} catch (IOException | RuntimeException e) {
+			// Once the TCP connection is established (and reported), only the key exchange can fail
+			final Socket connectedSocket = socket;
+			if (connectedSocket != null && connectedSocket.isConnected()) {
+				report(listener, Operation.KEY_EXCHANGE, keyExchangeStart, 0, 0, outcomeOf(e));
+			}
+			throw e;
+		}
+		report(listener, Operation.KEY_EXCHANGE, keyExchangeStart, 0, 0, Outcome.SUCCESS);
+	}
+
+	/**
+	 * Opens the socket of the connection like the SSH library does, but keeps it so that
+	 * {@link #abort()} can close it, and times the TCP connection apart from the key exchange
+	 * that follows
+	 */
+	private Socket openSocket(
+		final SshMetricsListener listener,
+		final String host,
+		final int port,
+		final int connectTimeout
+	) throws IOException {
+		final long start = listener != null ? System.nanoTime() : 0;
+		final Socket newSocket = new Socket();
+		socket = newSocket;
+		try {
+			newSocket.connect(new InetSocketAddress(InetAddress.getByName(host), port), connectTimeout);
+			newSocket.setSoTimeout(0);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.CONNECT_TCP, start, 0, 0, outcomeOf(e));
+			throw e;
+		}
+		report(listener, Operation.CONNECT_TCP, start, 0, 0, Outcome.SUCCESS);
+		keyExchangeStart = listener != null ? System.nanoTime() : 0;
+		return newSocket;
+	}
+
+	/**
+	 * Closes the network connection right away, from any thread. Unlike {@link #close()}, this doesn't
+	 * wait for the operation in progress on the connection (e.g. an authentication that the server never
+	 * answers), which fails with an {@link IOException} instead. The client must still be closed.
+	 */
+	void abort() {
+		final Socket currentSocket = socket;
+		if (currentSocket != null) {
+			try {
+				currentSocket.close();
+			} catch (IOException e) {
+				// Closed anyway
+			}
+		}
 	}
 
 	/**
@@ -147,6 +308,7 @@ public class SshClient implements AutoCloseable {
 	 */
 	@Deprecated
 	public void disconnect() {
+		closeSftpChannel();
 		if (sshSession != null) {
 			sshSession.close();
 		}
@@ -163,6 +325,7 @@ public class SshClient implements AutoCloseable {
 	 */
 	@Override
 	public void close() {
+		closeSftpChannel();
 		if (sshSession != null) {
 			sshSession.close();
 		}
@@ -200,6 +363,22 @@ public class SshClient implements AutoCloseable {
 	 * @throws IOException
 	 */
 	public boolean authenticate(String username, File privateKeyFile, char[] password) throws IOException {
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
+
+		final boolean authenticated;
+		try {
+			authenticated = authenticateWithPublicKey(username, privateKeyFile, password);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.AUTHENTICATE_PUBLIC_KEY, start, 0, 0, outcomeOf(e));
+			throw e;
+		}
+		report(listener, Operation.AUTHENTICATE_PUBLIC_KEY, start, 0, 0, outcomeOf(authenticated));
+		return authenticated;
+	}
+
+	private boolean authenticateWithPublicKey(final String username, final File privateKeyFile, final char[] password)
+		throws IOException {
 		if (sshConnection.isAuthMethodAvailable(username, "publickey")) {
 			return sshConnection.authenticateWithPublicKey(
 				username,
@@ -234,6 +413,21 @@ public class SshClient implements AutoCloseable {
 	 * @throws IOException
 	 */
 	public boolean authenticate(String username, char[] password) throws IOException {
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
+
+		final boolean authenticated;
+		try {
+			authenticated = authenticateWithPassword(username, password);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.AUTHENTICATE_PASSWORD, start, 0, 0, outcomeOf(e));
+			throw e;
+		}
+		report(listener, Operation.AUTHENTICATE_PASSWORD, start, 0, 0, outcomeOf(authenticated));
+		return authenticated;
+	}
+
+	private boolean authenticateWithPassword(final String username, final char[] password) throws IOException {
 		// Is the "password" method available? If yes, try it first
 		// Using normal login & password
 		if (
@@ -287,7 +481,18 @@ public class SshClient implements AutoCloseable {
 	 * @throws IOException
 	 */
 	public boolean authenticate(String username) throws IOException {
-		return sshConnection.authenticateWithNone(username);
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
+
+		final boolean authenticated;
+		try {
+			authenticated = sshConnection.authenticateWithNone(username);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.AUTHENTICATE_NONE, start, 0, 0, outcomeOf(e));
+			throw e;
+		}
+		report(listener, Operation.AUTHENTICATE_NONE, start, 0, 0, outcomeOf(authenticated));
+		return authenticated;
 	}
 
 	/**
@@ -299,14 +504,13 @@ public class SshClient implements AutoCloseable {
 	 * @throws IOException
 	 */
 	public String readFileAttributes(String filePath) throws IOException {
-		// Sanity check
-		checkIfAuthenticated();
-
-		// Create the SFTP client
-		SFTPv3Client sftpClient = new SFTPv3Client(sshConnection);
-
-		// Read the file attributes
-		SFTPv3FileAttributes fileAttributes = sftpClient.stat(filePath);
+		// Read the file attributes and its canonical path (in a single round trip)
+		final RemoteFileAttributes remoteFileAttributes = readFileAttributes(Collections.singletonList(filePath), true)
+			.get(0);
+		if (!remoteFileAttributes.isSuccess()) {
+			throw remoteFileAttributes.getError();
+		}
+		SFTPv3FileAttributes fileAttributes = remoteFileAttributes.getAttributes();
 
 		// Determine the file type
 		String fileType;
@@ -337,86 +541,129 @@ public class SshClient implements AutoCloseable {
 			.append("\t")
 			.append(fileAttributes.gid.toString())
 			.append("\t")
-			.append(sftpClient.canonicalPath(filePath));
-
-		// Deallocate
-		sftpClient.close();
+			.append(remoteFileAttributes.getCanonicalPath());
 
 		// Return
 		return pslFileResult.toString();
 	}
 
-	private StringBuilder listSubDirectory(
-		SFTPv3Client sftpClient,
-		String remoteDirectoryPath,
-		Pattern fileMaskPattern,
-		boolean includeSubfolders,
-		Integer depth,
-		StringBuilder resultBuilder
-	) throws IOException {
-		if (depth <= 15) {
-			@SuppressWarnings("unchecked")
-			Vector<SFTPv3DirectoryEntry> pathContents = sftpClient.ls(remoteDirectoryPath);
+	/**
+	 * Read the attributes of the specified files on the connected system. The STAT (and REALPATH)
+	 * requests for the different files are sent without waiting for the responses, so reading the
+	 * attributes of many files costs a few round trips only.
+	 *
+	 * @param filePaths Paths to the files on the remote system
+	 * @param canonicalize Whether to resolve the canonical path of each file as well
+	 * @return the attributes of each file, in the same order as the paths. A file that doesn't exist
+	 *         (or can't be accessed) doesn't make the others fail: its error is reported in its entry.
+	 * @throws IOException When something bad happens while communicating with the remote host
+	 * @throws IllegalStateException If called while not yet connected
+	 */
+	public List<RemoteFileAttributes> readFileAttributes(final List<String> filePaths, final boolean canonicalize)
+		throws IOException {
+		checkIfAuthenticated();
 
-			// Fix the remoteDirectoryPath (without the last '/')
-			if (remoteDirectoryPath.endsWith("/")) {
-				remoteDirectoryPath = remoteDirectoryPath.substring(0, remoteDirectoryPath.lastIndexOf("/"));
-			}
+		final RemoteMetadataCache cache = metadataCache;
+		if (cache == null) {
+			return withSftpChannel(channel -> readFileAttributes(channel, filePaths, canonicalize));
+		}
 
-			depth++;
-			for (SFTPv3DirectoryEntry file : pathContents) {
-				String filename = file.filename.trim();
+		// Only read the attributes that are not in the cache
+		final String scope = getCacheScope();
+		final RemoteFileAttributes[] result = new RemoteFileAttributes[filePaths.size()];
+		final List<String> missingPaths = new ArrayList<>();
+		for (int i = 0; i < result.length; i++) {
+			result[i] = cache.getAttributes(scope, filePaths.get(i), canonicalize);
+			if (result[i] == null) {
+				missingPaths.add(filePaths.get(i));
+			}
+		}
 
-				if (filename.equals(".") || filename.equals("..")) {
-					continue;
+		if (!missingPaths.isEmpty()) {
+			final Iterator<RemoteFileAttributes> missing = withSftpChannel(channel ->
+					readFileAttributes(channel, missingPaths, canonicalize)
+				)
+				.iterator();
+			for (int i = 0; i < result.length; i++) {
+				if (result[i] == null) {
+					result[i] = missing.next();
+					cache.putAttributes(scope, result[i], canonicalize);
 				}
+			}
+		}
+
+		return Arrays.asList(result);
+	}
+
+	private static List<RemoteFileAttributes> readFileAttributes(
+		final SftpChannel sftpChannel,
+		final List<String> filePaths,
+		final boolean canonicalize
+	) throws IOException {
+		final List<RemoteFileAttributes> result = new ArrayList<>(filePaths.size());
+		final Deque<int[]> inFlight = new ArrayDeque<>();
+		final Iterator<String> pathIterator = filePaths.iterator();
+		int next = 0;
 
-				SFTPv3FileAttributes fileAttributes = file.attributes;
-				String filePath = remoteDirectoryPath + "/" + filename;
+		try {
+			while (true) {
+				// Send the requests, while there is room in the window
+				while (inFlight.size() < STAT_WINDOW && pathIterator.hasNext()) {
+					final String filePath = pathIterator.next();
+					final int statId = sftpChannel.sendStat(filePath);
+					final int realPathId = canonicalize ? sftpChannel.sendRealPath(filePath) : -1;
+					inFlight.add(new int[] { statId, realPathId });
+				}
 
-				if ((fileAttributes.permissions & 0120000) == 0120000) {
-					// Symbolic link
-					continue;
+				final int[] ids = inFlight.poll();
+				if (ids == null) {
+					return result;
 				}
 
-				// CHECKSTYLE:OFF
-				if (
-					((fileAttributes.permissions & 0100000) == 0100000) ||
-					((fileAttributes.permissions & 0060000) == 0060000) ||
-					((fileAttributes.permissions & 0020000) == 0020000) ||
-					((fileAttributes.permissions & 0140000) == 0140000)
-				) {
-					// Regular/Block/Character/Socket files
-					final Matcher m = fileMaskPattern.matcher(filename);
-					if (m.find()) {
-						resultBuilder
-							.append(filePath)
-							.append(";")
-							.append(fileAttributes.mtime.toString())
-							.append(";")
-							.append(fileAttributes.size.toString())
-							.append("\n");
+				final String filePath = filePaths.get(next++);
+				SFTPv3FileAttributes attributes = null;
+				String canonicalPath = null;
+				IOException error = null;
+				try {
+					attributes = sftpChannel.receiveAttributes(ids[0]);
+				} catch (SftpException e) {
+					error = e;
+				}
+				if (canonicalize) {
+					try {
+						canonicalPath = sftpChannel.receiveCanonicalPath(ids[1]);
+					} catch (SftpException e) {
+						if (error == null) {
+							error = e;
+						}
 					}
-					continue;
 				}
-				// CHECKSTYLE:ON
-
-				if ((fileAttributes.permissions & 0040000) == 0040000) {
-					// Directory
-					if (includeSubfolders) {
-						resultBuilder =
-							listSubDirectory(sftpClient, filePath, fileMaskPattern, includeSubfolders, depth, resultBuilder);
+				result.add(new RemoteFileAttributes(filePath, attributes, canonicalPath, error));
+			}
+		} finally {
+			// If the channel broke, consume what we can of the responses we won't use
+			drain:
+			for (int[] ids : inFlight) {
+				for (int id : ids) {
+					if (id >= 0) {
+						try {
+							sftpChannel.discard(id);
+						} catch (IOException e) {
+							break drain;
+						}
 					}
 				}
 			}
 		}
-
-		return resultBuilder;
 	}
 
 	/**
 	 * List the content of the specified directory through the SSH connection
 	 * (using SCP)
+	 * <p>
+	 * The files are listed in depth-first order (the files of a subdirectory right where the subdirectory
+	 * is found), with the entries of each directory sorted by name, whatever the order in which the
+	 * directories read in parallel are received.
 	 *
 	 * @param remoteDirectoryPath The path to the directory to list on the remote host
 	 * @param regExpFileMask A regular expression that listed files must match with to be listed
@@ -428,28 +675,154 @@ public class SshClient implements AutoCloseable {
 	 */
 	public String listFiles(String remoteDirectoryPath, String regExpFileMask, boolean includeSubfolders)
 		throws IOException {
-		checkIfAuthenticated();
+		final List<RemoteMetadataCache.ListedFile> files = new ArrayList<>();
+		listFiles(
+			remoteDirectoryPath,
+			regExpFileMask,
+			includeSubfolders,
+			(filePath, fileAttributes) -> files.add(new RemoteMetadataCache.ListedFile(filePath, fileAttributes))
+		);
+		files.sort((file1, file2) -> compareDepthFirst(file1.path, file2.path));
+
+		final StringBuilder resultBuilder = new StringBuilder();
+		for (RemoteMetadataCache.ListedFile file : files) {
+			resultBuilder
+				.append(file.path)
+				.append(";")
+				.append(file.attributes.mtime.toString())
+				.append(";")
+				.append(file.attributes.size.toString())
+				.append("\n");
+		}
+		return resultBuilder.toString();
+	}
 
-		// Create an SFTP Client
-		SFTPv3Client sftpClient = new SFTPv3Client(sshConnection);
+	/**
+	 * Compare two paths name by name, so that the files of a directory come right after the files
+	 * whose name sorts before the directory (e.g. "/a/b/c" before "/a/b-c")
+	 */
+	static int compareDepthFirst(final String path1, final String path2) {
+		final int length = Math.min(path1.length(), path2.length());
+		for (int i = 0; i < length; i++) {
+			final char c1 = path1.charAt(i);
+			final char c2 = path2.charAt(i);
+			if (c1 != c2) {
+				if (c1 == '/') {
+					return -1;
+				}
+				if (c2 == '/') {
+					return 1;
+				}
+				return c1 - c2;
+			}
+		}
+		return path1.length() - path2.length();
+	}
 
-		// Prepare the Pattern for fileMask
-		Pattern fileMaskPattern;
-		if (regExpFileMask != null && !regExpFileMask.isEmpty()) {
-			fileMaskPattern = Pattern.compile(regExpFileMask, Pattern.CASE_INSENSITIVE);
-		} else {
-			fileMaskPattern = DEFAULT_MASK_PATTERN;
+	/**
+	 * List the content of the specified directory through the SSH connection (using SFTP), and pass
+	 * each file to the specified visitor as soon as it is received. Several directories are read at
+	 * the same time (see {@link #setSftpListWindow(int)}), so the files are not visited in a
+	 * depth-first order.
+	 *
+	 * @param remoteDirectoryPath The path to the directory to list on the remote host
+	 * @param regExpFileMask A regular expression that listed files must match with to be listed
+	 * @param includeSubfolders Whether to parse subdirectories as well
+	 * @param visitor What to do with each file found
+	 *
+	 * @throws IOException When something bad happens while communicating with the remote host, or the visitor fails
+	 * @throws IllegalStateException If called while not yet connected
+	 */
+	public void listFiles(
+		final String remoteDirectoryPath,
+		final String regExpFileMask,
+		final boolean includeSubfolders,
+		final RemoteFileVisitor visitor
+	) throws IOException {
+		// Filters are cached, so that the mask is not compiled again on every poll
+		final RemoteFileFilter filter = LIST_FILES_FILTERS.get(
+			(includeSubfolders ? "R" : "N") + (regExpFileMask != null ? regExpFileMask : ""),
+			key ->
+				new RemoteFileFilter()
+					.withNamePattern(regExpFileMask)
+					.withDepth(1, includeSubfolders ? SftpDirectoryWalker.MAX_DEPTH : 1)
+		);
+		listFiles(remoteDirectoryPath, filter, visitor);
+	}
+
+	/**
+	 * List the files of the specified directory and its subdirectories that match the specified filter,
+	 * through the SSH connection (using SFTP), and pass each file to the specified visitor as soon as
+	 * it is received. The directories that the filter rules out are not read at all.
+	 *
+	 * @param remoteDirectoryPath The path to the directory to list on the remote host
+	 * @param filter The files to list
+	 * @param visitor What to do with each file found
+	 *
+	 * @throws IOException When something bad happens while communicating with the remote host, or the visitor fails
+	 * @throws IllegalStateException If called while not yet connected
+	 */
+	public void listFiles(
+		final String remoteDirectoryPath,
+		final RemoteFileFilter filter,
+		final RemoteFileVisitor visitor
+	) throws IOException {
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
+
+		try {
+			listFilesCached(remoteDirectoryPath, filter, visitor);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.LIST_FILES, start, 0, 0, outcomeOf(e));
+			throw e;
 		}
+		report(listener, Operation.LIST_FILES, start, 0, 0, Outcome.SUCCESS);
+	}
+
+	private void listFilesCached(
+		final String remoteDirectoryPath,
+		final RemoteFileFilter filter,
+		final RemoteFileVisitor visitor
+	) throws IOException {
+		checkIfAuthenticated();
 
-		// Read the directory listing
-		StringBuilder resultBuilder = new StringBuilder();
-		listSubDirectory(sftpClient, remoteDirectoryPath, fileMaskPattern, includeSubfolders, 1, resultBuilder);
+		final RemoteMetadataCache cache = metadataCache;
+		if (cache == null) {
+			walk(remoteDirectoryPath, filter, visitor);
+			return;
+		}
 
-		// Close the SFTP client
-		sftpClient.close();
+		final String scope = getCacheScope();
+		final List<RemoteMetadataCache.ListedFile> cachedFiles = cache.getListing(scope, remoteDirectoryPath, filter);
+		if (cachedFiles != null) {
+			for (RemoteMetadataCache.ListedFile file : cachedFiles) {
+				visitor.visitFile(file.path, file.attributes);
+			}
+			return;
+		}
 
-		// Update the response
-		return resultBuilder.toString();
+		// Only complete listings are cached
+		final List<RemoteMetadataCache.ListedFile> files = new ArrayList<>();
+		walk(
+			remoteDirectoryPath,
+			filter,
+			(filePath, fileAttributes) -> {
+				files.add(new RemoteMetadataCache.ListedFile(filePath, fileAttributes));
+				visitor.visitFile(filePath, fileAttributes);
+			}
+		);
+		cache.putListing(scope, remoteDirectoryPath, filter, files);
+	}
+
+	private void walk(final String remoteDirectoryPath, final RemoteFileFilter filter, final RemoteFileVisitor visitor)
+		throws IOException {
+		// Open the directory (on a new channel if the shared one is broken), then walk the tree:
+		// once files have been visited, the walk cannot be replayed on another channel
+		final RemoteFile directory = withSftpChannel(channel ->
+			new RemoteFile(channel, channel.receiveHandle(channel.sendOpenDir(remoteDirectoryPath)))
+		);
+		final SftpDirectoryWalker walker = new SftpDirectoryWalker(directory.channel, filter, sftpListWindow);
+		walker.walk(remoteDirectoryPath, directory.handle, visitor);
 	}
 
 	/**
@@ -465,15 +838,35 @@ public class SshClient implements AutoCloseable {
 	 *
 	 * @throws IOException
 	 *             when something gets wrong while reading the file (we get
-	 *             disconnected, for example, or we couldn't read the file)
+	 *             disconnected, for example, or we couldn't read the file), or
+	 *             when the file is too large to fit in a String (use
+	 *             {@link #readFile(String, long, long, OutputStream)} instead)
 	 * @throws IllegalStateException
 	 *             when the session hasn't been properly authenticated first
 	 */
 	public String readFile(String remoteFilePath, Long readOffset, Integer readSize) throws IOException {
-		checkIfAuthenticated();
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
+
+		final ByteArrayOutputStream content;
+		try {
+			content = readFileContent(remoteFilePath, readOffset, readSize);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.READ_FILE, start, 0, 0, outcomeOf(e));
+			throw e;
+		}
+		report(listener, Operation.READ_FILE, start, content.size(), 0, Outcome.SUCCESS);
+
+		// Metricshub Collection format
+		return content.toString();
+	}
 
-		// Create an SFTP Client
-		SFTPv3Client sftpClient = new SFTPv3Client(sshConnection);
+	private ByteArrayOutputStream readFileContent(
+		final String remoteFilePath,
+		final Long readOffset,
+		final Integer readSize
+	) throws IOException {
+		checkIfAuthenticated();
 
 		// Where do we read from (offset)?
 		long offset = 0; // from the beginning by default
@@ -482,66 +875,238 @@ public class SshClient implements AutoCloseable {
 		}
 
 		// Open the remote file
-		SFTPv3FileHandle handle = sftpClient.openFileRO(remoteFilePath);
-
-		// How much data to read?
-		int remainingBytes;
-		if (readSize == null) {
-			// If size was not specified, we read the file entirely
-			SFTPv3FileAttributes attributes = sftpClient.fstat(handle);
-			if (attributes == null) {
-				throw new IOException("Couldn't find file " + remoteFilePath + " and get its attributes");
+		final RemoteFile remoteFile = openRemoteFile(remoteFilePath);
+		try {
+			// How much data to read?
+			long remainingBytes;
+			if (readSize == null) {
+				// If size was not specified, we read the file entirely
+				SFTPv3FileAttributes attributes = remoteFile.channel.fstat(remoteFile.handle);
+				if (attributes == null || attributes.size == null) {
+					throw new IOException("Couldn't find file " + remoteFilePath + " and get its attributes");
+				}
+				remainingBytes = Math.max(attributes.size - offset, 0);
+				if (remainingBytes > MAX_STRING_FILE_SIZE) {
+					throw new IOException(
+						String.format(
+							"%s is too large to be read into a String (%d bytes). Read it as a stream instead.",
+							remoteFilePath,
+							remainingBytes
+						)
+					);
+				}
+			} else {
+				remainingBytes = readSize;
 			}
-			remainingBytes = (int) (attributes.size - offset);
-			if (remainingBytes < 0) {
-				remainingBytes = 0;
+
+			// Read the remote file, with several read requests in flight (the data is reassembled in order),
+			// into a buffer of the exact size when known
+			final ByteArrayOutputStream out = readSize == null
+				? new ByteArrayOutputStream((int) remainingBytes)
+				: new ByteArrayOutputStream();
+			if (remainingBytes > 0) {
+				remoteFile.read(offset, remainingBytes, out::write);
 			}
-		} else {
-			remainingBytes = readSize;
+			remoteFile.close();
+			return out;
+		} catch (IOException | RuntimeException e) {
+			remoteFile.closeQuietly();
+			throw e;
 		}
+	}
 
-		// Read the remote file
-		OutputStream out = new ByteArrayOutputStream();
-		byte[] readBuffer = new byte[READ_BUFFER_SIZE];
-		int bytesRead;
-		int bufferSize;
+	/**
+	 * Read the specified file over the SSH session that was established, and write its content
+	 * to the specified stream as it arrives (whatever the size of the file, only a few chunks are
+	 * kept in memory).
+	 *
+	 * @param remoteFilePath Path to the file to be read on the remote host
+	 * @param offset Offset to read from
+	 * @param size Amount of bytes to be read, or a negative value to read up to the end of the file
+	 * @param out Where to write the content of the file (not closed)
+	 * @return The number of bytes read
+	 * @throws IOException when something gets wrong while reading the file or writing to out
+	 * @throws IllegalStateException when the session hasn't been properly authenticated first
+	 */
+	public long readFile(final String remoteFilePath, final long offset, final long size, final OutputStream out)
+		throws IOException {
+		return readFile(remoteFilePath, offset, size, out::write);
+	}
 
-		// Loop until there is nothing else to read
-		while (remainingBytes > 0) {
-			// Read by chunk of 8192 bytes. However, if there is less to read,
-			// well, read less.
-			if (remainingBytes < READ_BUFFER_SIZE) {
-				bufferSize = remainingBytes;
-			} else {
-				bufferSize = READ_BUFFER_SIZE;
+	/**
+	 * Read the specified file over the SSH session that was established, and write its content
+	 * to the specified channel as it arrives (whatever the size of the file, only a few chunks are
+	 * kept in memory).
+	 *
+	 * @param remoteFilePath Path to the file to be read on the remote host
+	 * @param offset Offset to read from
+	 * @param size Amount of bytes to be read, or a negative value to read up to the end of the file
+	 * @param out Where to write the content of the file (not closed)
+	 * @return The number of bytes read
+	 * @throws IOException when something gets wrong while reading the file or writing to out
+	 * @throws IllegalStateException when the session hasn't been properly authenticated first
+	 */
+	public long readFile(final String remoteFilePath, final long offset, final long size, final WritableByteChannel out)
+		throws IOException {
+		return readFile(
+			remoteFilePath,
+			offset,
+			size,
+			(buffer, bufferOffset, length) -> {
+				final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, bufferOffset, length);
+				while (byteBuffer.hasRemaining()) {
+					out.write(byteBuffer);
+				}
 			}
+		);
+	}
 
-			// Read and store that in our buffer
-			bytesRead = sftpClient.read(handle, offset, readBuffer, 0, bufferSize);
-
-			// If we already reached the end of the file, exit (probably, we
-			// were asked to read more than what is available)
-			if (bytesRead < 0) {
-				break;
+	/**
+	 * Copy the specified remote file (or part of it) to a local file, which is created or
+	 * overwritten. The content is first written to a temporary file in the same directory, which
+	 * replaces the local file once the transfer is complete: if the transfer fails, the local file
+	 * is left untouched.
+	 *
+	 * @param remoteFilePath Path to the file to be read on the remote host
+	 * @param offset Offset to read from
+	 * @param size Amount of bytes to be read, or a negative value to read up to the end of the file
+	 * @param localFile The local file to write
+	 * @return The number of bytes read
+	 * @throws IOException when something gets wrong while reading the file or writing the local file
+	 * @throws IllegalStateException when the session hasn't been properly authenticated first
+	 */
+	public long readFile(final String remoteFilePath, final long offset, final long size, final Path localFile)
+		throws IOException {
+		final Path partFile = localFile.resolveSibling(
+			localFile.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".part"
+		);
+		final long total;
+		try {
+			try (
+				FileChannel fileChannel = FileChannel.open(partFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)
+			) {
+				total = readFile(remoteFilePath, offset, size, fileChannel);
+			}
+			moveReplacing(partFile, localFile);
+		} catch (IOException | RuntimeException e) {
+			try {
+				Files.deleteIfExists(partFile);
+			} catch (IOException deleteError) {
+				e.addSuppressed(deleteError);
 			}
+			throw e;
+		}
+		return total;
+	}
+
+	/**
+	 * Move a file over another one, atomically if the file system supports it
+	 */
+	private static void moveReplacing(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
 
-			// Write our buffer to the result stream
-			out.write(readBuffer, 0, bytesRead);
+	private long readFile(
+		final String remoteFilePath,
+		final long offset,
+		final long size,
+		final SftpChannel.ChunkConsumer consumer
+	) throws IOException {
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
 
-			// Keep counting!
-			remainingBytes -= bytesRead;
-			offset += bytesRead;
+		final long total;
+		try {
+			total = readChunks(remoteFilePath, offset, size, consumer);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.READ_FILE, start, 0, 0, outcomeOf(e));
+			throw e;
 		}
+		report(listener, Operation.READ_FILE, start, total, 0, Outcome.SUCCESS);
+		return total;
+	}
 
-		// File read complete
-		// Close the remote file
-		sftpClient.closeFile(handle);
+	private long readChunks(
+		final String remoteFilePath,
+		final long offset,
+		final long size,
+		final SftpChannel.ChunkConsumer consumer
+	) throws IOException {
+		checkIfAuthenticated();
 
-		// Close the SFTP client
-		sftpClient.close();
+		final RemoteFile remoteFile = openRemoteFile(remoteFilePath);
+		final long total;
+		try {
+			total = size != 0 ? remoteFile.read(offset, size, consumer) : 0;
+		} catch (IOException | RuntimeException e) {
+			remoteFile.closeQuietly();
+			throw e;
+		}
+		remoteFile.close();
+		return total;
+	}
 
-		// Metricshub Collection format
-		return out.toString();
+	/**
+	 * Open the specified remote file as a stream. The content of the file is fetched as it is
+	 * read, a few chunks at a time. The stream must be closed to release the remote file handle.
+	 *
+	 * @param remoteFilePath Path to the file to be read on the remote host
+	 * @param offset Offset to start reading from
+	 * @return An InputStream on the content of the remote file
+	 * @throws IOException when the file cannot be opened
+	 * @throws IllegalStateException when the session hasn't been properly authenticated first
+	 */
+	public InputStream openFileInputStream(final String remoteFilePath, final long offset) throws IOException {
+		checkIfAuthenticated();
+
+		final RemoteFile remoteFile = openRemoteFile(remoteFilePath);
+		return new SftpFileInputStream(remoteFile.channel, remoteFile.handle, offset, sftpReadWindow);
+	}
+
+	/**
+	 * Open the specified file for reading on the shared SFTP channel (which is opened again if broken)
+	 *
+	 * @param remoteFilePath Path to the file to be read on the remote host
+	 * @return the open file
+	 * @throws IOException when the file cannot be opened
+	 */
+	private RemoteFile openRemoteFile(final String remoteFilePath) throws IOException {
+		return withSftpChannel(channel -> new RemoteFile(channel, channel.openFileRO(remoteFilePath)));
+	}
+
+	/**
+	 * A file open for reading on an SFTP channel
+	 */
+	private final class RemoteFile {
+
+		private final SftpChannel channel;
+		private final byte[] handle;
+
+		private RemoteFile(final SftpChannel channel, final byte[] handle) {
+			this.channel = channel;
+			this.handle = handle;
+		}
+
+		private long read(final long offset, final long size, final SftpChannel.ChunkConsumer consumer)
+			throws IOException {
+			return channel.read(handle, offset, size, sftpReadWindow, consumer);
+		}
+
+		private void close() throws IOException {
+			channel.closeFile(handle);
+		}
+
+		private void closeQuietly() {
+			try {
+				channel.closeFile(handle);
+			} catch (IOException e) {
+				// Already failing, and there's nothing we can do about the handle
+			}
+		}
 	}
 
 	/**
@@ -554,15 +1119,34 @@ public class SshClient implements AutoCloseable {
 	public void removeFile(String[] remoteFilePathArray) throws IOException {
 		checkIfAuthenticated();
 
-		// Create an SFTP Client
-		SFTPv3Client sftpClient = null;
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
 		try {
-			sftpClient = new SFTPv3Client(sshConnection);
+			removeFiles(remoteFilePathArray);
+			report(listener, Operation.REMOVE_FILE, start, 0, 0, Outcome.SUCCESS);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.REMOVE_FILE, start, 0, 0, outcomeOf(e));
+			throw e;
+		} finally {
+			final RemoteMetadataCache cache = metadataCache;
+			if (cache != null) {
+				final String scope = getCacheScope();
+				for (String remoteFilePath : remoteFilePathArray) {
+					cache.invalidate(scope, remoteFilePath);
+				}
+			}
+		}
+	}
 
+	private void removeFiles(final String[] remoteFilePathArray) throws IOException {
+		try {
 			// Remove the files
-			for (String remoteFilePath : remoteFilePathArray) {
-				sftpClient.rm(remoteFilePath);
-			}
+			withSftpChannel(channel -> {
+				for (String remoteFilePath : remoteFilePathArray) {
+					channel.rm(remoteFilePath);
+				}
+				return null;
+			});
 		} catch (IOException e) {
 			// Okay, we got an issue here with the SFTP client
 			// We're going to try again but with a good old "rm" command...
@@ -572,7 +1156,7 @@ public class SshClient implements AutoCloseable {
 				for (String remoteFilePath : remoteFilePathArray) {
 					rmSession = sshConnection.openSession();
 					rmSession.execCommand("/usr/bin/rm -f \"" + remoteFilePath + "\"");
-					rmSession.waitForCondition(ChannelCondition.CLOSED | ChannelCondition.EOF, 5000);
+					BlockingThreads.waitForCondition(rmSession, ChannelCondition.CLOSED | ChannelCondition.EOF, 5000);
 				}
 			} catch (IOException e1) {
 				throw e1;
@@ -581,11 +1165,6 @@ public class SshClient implements AutoCloseable {
 					rmSession.close();
 				}
 			}
-		} finally {
-			// Close the SFTP client
-			if (sftpClient != null) {
-				sftpClient.close();
-			}
 		}
 	}
 
@@ -629,6 +1208,80 @@ public class SshClient implements AutoCloseable {
 		 * The result of the command (stdout and stderr is merged into result)
 		 */
 		public String result = "";
+
+		/**
+		 * Whether part of the output has been dropped from result, according to the
+		 * {@link CapturePolicy}
+		 */
+		public boolean truncated = false;
+
+		/**
+		 * The number of bytes of output of the command, whether they have been kept in result or not
+		 */
+		public long totalBytes = 0;
+
+		/**
+		 * The output of the command, when executed with {@link SshClient#executeCommand(String, int, CommandOutput)}
+		 * (result is empty then)
+		 */
+		public CommandOutput output = null;
+
+		private byte[] stdoutBytes = new byte[0];
+		private byte[] stderrBytes = new byte[0];
+		private Charset outputCharset = StandardCharsets.UTF_8;
+		private String stdout;
+		private String stderr;
+
+		/**
+		 * Set stdout and stderr of the command
+		 *
+		 * @param stdoutBytes The bytes of stdout
+		 * @param stderrBytes The bytes of stderr
+		 * @param charset The charset used to decode them
+		 */
+		void setOutput(final byte[] stdoutBytes, final byte[] stderrBytes, final Charset charset) {
+			this.stdoutBytes = stdoutBytes;
+			this.stderrBytes = stderrBytes;
+			this.outputCharset = charset;
+			stdout = null;
+			stderr = null;
+		}
+
+		/**
+		 * @return the bytes of stdout, as kept according to the {@link CapturePolicy}
+		 * (not a copy: the array must not be modified)
+		 */
+		public byte[] getStdoutBytes() {
+			return stdoutBytes;
+		}
+
+		/**
+		 * @return the bytes of stderr, as kept according to the {@link CapturePolicy}
+		 * (not a copy: the array must not be modified)
+		 */
+		public byte[] getStderrBytes() {
+			return stderrBytes;
+		}
+
+		/**
+		 * @return stdout, decoded on the first call
+		 */
+		public String getStdout() {
+			if (stdout == null) {
+				stdout = new String(stdoutBytes, outputCharset);
+			}
+			return stdout;
+		}
+
+		/**
+		 * @return stderr, decoded on the first call
+		 */
+		public String getStderr() {
+			if (stderr == null) {
+				stderr = new String(stderrBytes, outputCharset);
+			}
+			return stderr;
+		}
 	}
 
 	/**
@@ -653,30 +1306,196 @@ public class SshClient implements AutoCloseable {
 	 * @throws IOException when there is a problem while communicating with the remote system
 	 */
 	public CommandResult executeCommand(String command, int timeout) throws IOException {
-		openSession();
+		return executeCommand(command, timeout, capturePolicy);
+	}
+
+	/**
+	 * Executes a command through the SSH connection, keeping only part of its output when it exceeds
+	 * the limit of the specified capture policy
+	 *
+	 * @param command	The command to be executed
+	 * @param timeout	Milliseconds after which the command is considered failed
+	 * @param capturePolicy	How much of the output is kept in the result
+	 * @return a CommandResult object with the result of the execution
+	 * @throws IllegalStateException when the connection is not established first
+	 * @throws IOException when there is a problem while communicating with the remote system
+	 */
+	public CommandResult executeCommand(String command, int timeout, CapturePolicy capturePolicy)
+		throws IOException {
+		// Output to separate byte streams
+		final CommandCapture capture = new CommandCapture(capturePolicy);
+		final CommandResult commandResult = runCommand(
+			command,
+			timeout,
+			capture.getStdoutSink(),
+			capture.getStderrSink()
+		);
+
+		// Stringify the merged streams (unless timed out)
+		capture.fill(commandResult, charset, commandResult.success);
+		return commandResult;
+	}
 
-		InputStream stdout = sshSession.getStdout();
-		InputStream stderr = sshSession.getStderr();
-		// DO NOT request for a PTY, as Trilead SSH's execCommand() would get stuck on AIX...
-		//sshSession.requestPTY("dumb", 10000, 24, 640, 480, new byte[] {53, 0, 0, 0, 0, 0}); // request for a wiiiiide terminal
+	/**
+	 * Executes a command through the SSH connection, and writes its output to the specified
+	 * {@link CommandOutput}, which is kept in memory up to a threshold and in a temporary file beyond.
+	 * <p>
+	 * Use this method for commands whose output can be very large (package inventories, etc.).
+	 * The caller is responsible for closing the output, which deletes the temporary file.
+	 *
+	 * @param command	The command to be executed
+	 * @param timeout	Milliseconds after which the command is considered failed (0 for no timeout)
+	 * @param output	Where the output (stdout and stderr) is written
+	 * @return a CommandResult object with the exit status of the command, and the output
+	 * in {@link CommandResult#output}
+	 * @throws IllegalStateException when the connection is not established first
+	 * @throws IOException when there is a problem while communicating with the remote system,
+	 * or writing the temporary file
+	 */
+	public CommandResult executeCommand(String command, int timeout, CommandOutput output) throws IOException {
+		output.setCharset(charset);
+		final OutputStream sink = output.getSink();
+		final CommandResult commandResult = runCommand(command, timeout, sink, sink);
+		commandResult.output = output;
+		commandResult.totalBytes = output.size();
+		return commandResult;
+	}
+
+	/**
+	 * Executes a command through the SSH connection, and sends its output to the specified listener
+	 * as it arrives, instead of keeping it in memory.
+	 * <p>
+	 * The listener is called by the current thread, and nothing more is read from the SSH channel
+	 * while it is busy: once the channel window is full, the remote host pauses the command until
+	 * the listener catches up. The listener can stop a command that never ends (e.g. <code>tail -f</code>)
+	 * by throwing an exception, which is thrown back by this method.
+	 *
+	 * @param command	The command to be executed
+	 * @param timeout	Milliseconds after which the command is considered failed (0 for no timeout)
+	 * @param listener	The listener receiving the output of the command
+	 * @return a CommandResult object with the exit status of the command, but with an empty result
+	 * (unless the command timed out)
+	 * @throws IllegalStateException when the connection is not established first
+	 * @throws IOException when there is a problem while communicating with the remote system,
+	 * or thrown by the listener
+	 */
+	public CommandResult executeCommand(String command, int timeout, CommandOutputListener listener)
+		throws IOException {
+		final ListenerOutputStream stdout = new ListenerOutputStream(
+			listener,
+			CommandOutputListener.Stream.STDOUT,
+			charset
+		);
+		final ListenerOutputStream stderr = new ListenerOutputStream(
+			listener,
+			CommandOutputListener.Stream.STDERR,
+			charset
+		);
+		final CommandResult commandResult;
+		try {
+			commandResult = runCommand(command, timeout, stdout, stderr);
+		} catch (IOException | RuntimeException e) {
+			// The output also ends with the failure: deliver what remains, without hiding the failure
+			try {
+				endOutput(stdout, stderr, listener);
+			} catch (IOException | RuntimeException endError) {
+				e.addSuppressed(endError);
+			}
+			throw e;
+		}
+		endOutput(stdout, stderr, listener);
+		return commandResult;
+	}
+
+	/**
+	 * Deliver the end of the output of a command to its listener
+	 */
+	private static void endOutput(
+		final ListenerOutputStream stdout,
+		final ListenerOutputStream stderr,
+		final CommandOutputListener listener
+	) throws IOException {
+		stdout.close();
+		stderr.close();
+		listener.onEnd();
+	}
+
+	/**
+	 * Executes a command through the SSH connection, and writes its stdout and stderr to the specified streams
+	 *
+	 * @param command	The command to be executed
+	 * @param timeout	Milliseconds after which the command is considered failed (0 for no timeout)
+	 * @param stdoutSink	Where stdout is written
+	 * @param stderrSink	Where stderr is written (may be the same as stdoutSink)
+	 * @return a CommandResult object with the execution time and exit status, with the "timed out"
+	 * result if applicable
+	 * @throws IllegalStateException when the connection is not established first
+	 * @throws IOException when there is a problem while communicating with the remote system
+	 */
+	private CommandResult runCommand(
+		final String command,
+		final int timeout,
+		final OutputStream stdoutSink,
+		final OutputStream stderrSink
+	) throws IOException {
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
+
+		final CommandResult commandResult;
+		try {
+			commandResult = runCommandOnChannel(command, timeout, stdoutSink, stderrSink);
+		} catch (IOException | RuntimeException e) {
+			if (listener != null) {
+				report(listener, Operation.EXECUTE_COMMAND, start, 0, command.getBytes(charset).length, outcomeOf(e));
+			}
+			throw e;
+		}
+		if (listener != null) {
+			report(listener, Operation.EXECUTE_COMMAND, start, commandResult, command.getBytes(charset).length);
+		}
+		return commandResult;
+	}
+
+	private CommandResult runCommandOnChannel(
+		final String command,
+		final int timeout,
+		final OutputStream stdoutSink,
+		final OutputStream stderrSink
+	) throws IOException {
+		checkIfConnected();
+		checkIfAuthenticated();
 
 		// Initialization
 		CommandResult commandResult = new CommandResult();
 
-		// Output to a byte stream
-		try (ByteArrayOutputStream output = new ByteArrayOutputStream()) {
-			// Time to be remembered
-			long startTime = System.currentTimeMillis();
-			long timeoutTime;
-			if (timeout > 0) {
-				timeoutTime = startTime + timeout;
-			} else {
-				// If no timeout, we use the max long value for the time when we're supposed to stop
-				timeoutTime = Long.MAX_VALUE;
-			}
+		// Time to be remembered
+		long startTime = System.currentTimeMillis();
+		long timeoutTime;
+		if (timeout > 0) {
+			timeoutTime = startTime + timeout;
+		} else {
+			// If no timeout, we use the max long value for the time when we're supposed to stop
+			timeoutTime = Long.MAX_VALUE;
+		}
+
+		// Each execution has its own session (channel), so several commands can run at the same time
+		// on this connection, up to maxConcurrentChannels
+		final CommandChannel commandChannel = openCommandChannel(timeout);
+		if (commandChannel == null) {
+			commandResult.success = false;
+			commandResult.result = "Timeout (" + timeout / 1000 + " seconds)";
+			return commandResult;
+		}
+
+		try (CommandChannel channel = commandChannel) {
+			final Session session = channel.session;
+			InputStream stdout = session.getStdout();
+			InputStream stderr = session.getStderr();
+			// DO NOT request for a PTY, as Trilead SSH's execCommand() would get stuck on AIX...
+			//session.requestPTY("dumb", 10000, 24, 640, 480, new byte[] {53, 0, 0, 0, 0, 0}); // request for a wiiiiide terminal
 
 			// Run the command
-			sshSession.execCommand(command);
+			session.execCommand(command);
 
 			int waitForCondition = 0;
 			long currentTime;
@@ -687,15 +1506,15 @@ public class SshClient implements AutoCloseable {
 				((currentTime = System.currentTimeMillis()) < timeoutTime)
 			) {
 				// Wait for new data (timeout = 5 seconds)
-				waitForCondition = waitForNewData(Math.min(timeoutTime - currentTime, 5000));
+				waitForCondition = waitForNewData(session, Math.min(timeoutTime - currentTime, 5000));
 
 				// Print available data (if any)
 				if (hasStdoutData(waitForCondition)) {
-					transferAllBytes(stdout, output);
+					commandResult.totalBytes += transferAllBytes(stdout, stdoutSink);
 				}
 
 				if (hasStderrData(waitForCondition)) {
-					transferAllBytes(stderr, output);
+					commandResult.totalBytes += transferAllBytes(stderr, stderrSink);
 				}
 			}
 			// CHECKSTYLE:ON
@@ -715,13 +1534,10 @@ public class SshClient implements AutoCloseable {
 				commandResult.executionTime = (currentTime - startTime) / 1000;
 
 				// Read exit status, when available
-				waitForCondition = sshSession.waitForCondition(ChannelCondition.EXIT_STATUS, 5000);
+				waitForCondition = BlockingThreads.waitForCondition(session, ChannelCondition.EXIT_STATUS, 5000);
 				if ((waitForCondition & ChannelCondition.EXIT_STATUS) != 0) {
-					commandResult.exitStatus = sshSession.getExitStatus();
+					commandResult.exitStatus = session.getExitStatus();
 				}
-
-				// Stringify the stdout stream
-				commandResult.result = new String(output.toByteArray(), charset);
 			}
 		}
 
@@ -729,6 +1545,82 @@ public class SshClient implements AutoCloseable {
 		return commandResult;
 	}
 
+	/**
+	 * Executes several commands through a single SSH channel: the commands are sent as one script to
+	 * <code>/bin/sh</code> on the remote host, which runs them one after the other, each one in its
+	 * own subshell with stdin from <code>/dev/null</code>.
+	 * <p>
+	 * The failure or the timeout of a command doesn't prevent the following commands from running:
+	 * a command that exceeds the timeout is killed, and its result is "timed out".
+	 * The execution time of each command is measured when the end of its output is received.
+	 *
+	 * @param commands	The commands to be executed, for a Bourne-compatible shell
+	 * @param timeout	Milliseconds after which each command is killed (0 for no timeout),
+	 * rounded up to the second
+	 * @return one CommandResult per command, in the same order, with stdout followed by stderr in result
+	 * @throws IllegalStateException when the connection is not established first
+	 * @throws IOException when there is a problem while communicating with the remote system
+	 */
+	public List<CommandResult> executeCommands(final List<String> commands, final int timeout) throws IOException {
+		if (commands.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return new CommandBatch(commands, timeout, charset).run(this);
+	}
+
+	/**
+	 * Executes a command through the SSH connection, without blocking the calling thread.
+	 * <p>
+	 * The command is driven by the shared {@link CommandScheduler}, whose few threads poll
+	 * all the running commands, so thousands of commands can be in flight at the same time.
+	 * The returned future completes with the same result as {@link #executeCommand(String, int)},
+	 * including when the command times out. Cancelling the future closes the session.
+	 *
+	 * @param command	The command to be executed
+	 * @param timeout	Milliseconds before the command is considered timed out (0 for no timeout)
+	 * @return a future of the result of the command
+	 * @throws IllegalStateException when the connection is not established first
+	 */
+	public CompletableFuture<CommandResult> executeCommandAsync(final String command, final int timeout) {
+		return executeCommandAsync(command, timeout, CommandScheduler.getShared());
+	}
+
+	/**
+	 * Executes a command through the SSH connection, without blocking the calling thread.
+	 *
+	 * @param command	The command to be executed
+	 * @param timeout	Milliseconds before the command is considered timed out (0 for no timeout)
+	 * @param scheduler	The scheduler driving the execution of the command
+	 * @return a future of the result of the command
+	 * @throws IllegalStateException when the connection is not established first
+	 * @see #executeCommandAsync(String, int)
+	 */
+	public CompletableFuture<CommandResult> executeCommandAsync(
+		final String command,
+		final int timeout,
+		final CommandScheduler scheduler
+	) {
+		checkIfConnected();
+		checkIfAuthenticated();
+
+		final SshMetricsListener listener = metricsListener;
+		if (listener == null) {
+			return scheduler.submit(new CommandExecution(this, command, timeout));
+		}
+
+		final long start = System.nanoTime();
+		final int commandBytes = command.getBytes(charset).length;
+		final CompletableFuture<CommandResult> future = scheduler.submit(new CommandExecution(this, command, timeout));
+		future.whenComplete((commandResult, error) -> {
+			if (error != null) {
+				report(listener, Operation.EXECUTE_COMMAND, start, 0, commandBytes, outcomeOf(error));
+			} else {
+				report(listener, Operation.EXECUTE_COMMAND, start, commandResult, commandBytes);
+			}
+		});
+		return future;
+	}
+
 	/**
 	 * Starts an interactive session.
 	 *
@@ -739,56 +1631,145 @@ public class SshClient implements AutoCloseable {
 	 * @throws InterruptedException when a thread is interrupted
 	 */
 	public void interactiveSession(InputStream in, OutputStream out) throws IOException, InterruptedException {
-		openSession();
-
-		openTerminal();
+		checkIfConnected();
+		checkIfAuthenticated();
 
-		// Pipe specified InputStream to SSH's stdin -- use a separate thread
-		BufferedReader inputReader = new BufferedReader(new InputStreamReader(in));
-		OutputStream outputWriter = sshSession.getStdin();
-		Thread stdinPipeThread = new Thread() {
-			@Override
-			public void run() {
-				try {
-					String line;
-					while ((line = inputReader.readLine()) != null) {
-						outputWriter.write(line.getBytes());
-						outputWriter.write('\n');
+		try (CommandChannel channel = openCommandChannel(0)) {
+			final Session session = channel.session;
+			startTerminal(session);
+
+			// Pipe specified InputStream to SSH's stdin -- use a separate thread
+			BufferedReader inputReader = new BufferedReader(new InputStreamReader(in));
+			OutputStream outputWriter = session.getStdin();
+			final Thread stdinPipeThread = BlockingThreads.newThread(
+				"SshClient-stdin",
+				() -> {
+					try {
+						String line;
+						while ((line = inputReader.readLine()) != null) {
+							outputWriter.write(line.getBytes());
+							outputWriter.write('\n');
+						}
+					} catch (Exception e) {
+						// Things ended up badly. Exit thread.
 					}
-				} catch (Exception e) {
-					// Things ended up badly. Exit thread.
+					// End of the input stream. We need to exit.
+					// Let's close the session so the main thread exits nicely.
+					session.close();
+				}
+			);
+			stdinPipeThread.start();
+
+			// Now, pipe stdout and stderr to specified OutputStream
+			InputStream stdout = session.getStdout();
+			InputStream stderr = session.getStderr();
+
+			int waitForCondition = 0;
+			while (!hasSessionClosed(waitForCondition) && !hasEndOfFileSession(waitForCondition)) {
+				// Wait for new data (timeout = 5 seconds)
+				waitForCondition = waitForNewData(session, 5000L);
+
+				// Print available data (if any)
+				if (hasStdoutData(waitForCondition)) {
+					transferAllBytes(stdout, out);
+				}
+
+				if (hasStderrData(waitForCondition)) {
+					transferAllBytes(stderr, out);
 				}
-				// End of the input stream. We need to exit.
-				// Let's close the session so the main thread exits nicely.
-				sshSession.close();
 			}
-		};
-		stdinPipeThread.setDaemon(true);
-		stdinPipeThread.start();
-
-		// Now, pipe stdout and stderr to specified OutputStream
-		InputStream stdout = sshSession.getStdout();
-		InputStream stderr = sshSession.getStderr();
-
-		int waitForCondition = 0;
-		while (!hasSessionClosed(waitForCondition) && !hasEndOfFileSession(waitForCondition)) {
-			// Wait for new data (timeout = 5 seconds)
-			waitForCondition = waitForNewData(5000L);
-
-			// Print available data (if any)
-			if (hasStdoutData(waitForCondition)) {
-				transferAllBytes(stdout, out);
+
+			// Attempt to interrupt the stdinPipeThread thread
+			// (may be useless if we're reading a blocking InputStream like System.in)
+			if (stdinPipeThread.isAlive()) {
+				stdinPipeThread.interrupt();
 			}
+		}
+	}
 
-			if (hasStderrData(waitForCondition)) {
-				transferAllBytes(stderr, out);
+	/**
+	 * Open a new session on the connection for a single command, once the number of sessions
+	 * opened by the other commands is below the limit.
+	 *
+	 * @param timeout Milliseconds to wait for the other commands to release a session (0 to wait forever)
+	 * @return the new session, or null if none could be opened before the timeout
+	 * @throws IOException when the session cannot be opened, or the thread is interrupted while waiting
+	 */
+	CommandChannel openCommandChannel(final long timeout) throws IOException {
+		final Semaphore permits = channelPermits;
+		try {
+			if (timeout > 0) {
+				if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+					return null;
+				}
+			} else {
+				permits.acquire();
 			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for an SSH channel");
 		}
 
-		// Attempt to interrupt the stdinPipeThread thread
-		// (may be useless if we're reading a blocking InputStream like System.in)
-		if (stdinPipeThread.isAlive()) {
-			stdinPipeThread.interrupt();
+		return openCommandChannel(permits);
+	}
+
+	/**
+	 * Reserve a session for a single command, only if the number of sessions opened by the other
+	 * commands is below the limit. The session is then opened with {@link #openCommandChannel(Semaphore)},
+	 * or the permit released.
+	 *
+	 * @return the semaphore from which a permit has been acquired, or null if the limit is reached
+	 */
+	Semaphore tryAcquireCommandChannel() {
+		final Semaphore permits = channelPermits;
+		return permits.tryAcquire() ? permits : null;
+	}
+
+	/**
+	 * Open a new session on the connection, with a permit already acquired from the specified semaphore
+	 * (released if the session cannot be opened)
+	 *
+	 * @param permits The semaphore from which the permit has been acquired
+	 * @return the new session
+	 * @throws IOException when the session cannot be opened
+	 */
+	CommandChannel openCommandChannel(final Semaphore permits) throws IOException {
+		try {
+			return new CommandChannel(getSshConnection().openSession(), permits);
+		} catch (IOException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * A session opened for a single command, which gives its slot back to the other commands when closed
+	 */
+	static final class CommandChannel implements AutoCloseable {
+
+		private final Session session;
+		private final Semaphore permits;
+		private boolean closed = false;
+
+		private CommandChannel(final Session session, final Semaphore permits) {
+			this.session = session;
+			this.permits = permits;
+		}
+
+		/**
+		 * @return the SSH session
+		 */
+		Session getSession() {
+			return session;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!closed) {
+				closed = true;
+				session.close();
+				permits.release();
+			}
 		}
 	}
 
@@ -805,11 +1786,311 @@ public class SshClient implements AutoCloseable {
 		throws IOException {
 		checkIfAuthenticated();
 
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
+
 		// Create the SCP client
 		SCPClient scpClient = new SCPClient(sshConnection);
 
 		// Copy the file
-		scpClient.put(localFilePath, remoteFilename, remoteDirectory, fileMode);
+		try {
+			scpClient.put(localFilePath, remoteFilename, remoteDirectory, fileMode);
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.SCP, start, 0, 0, outcomeOf(e));
+			throw e;
+		}
+		if (listener != null) {
+			report(listener, Operation.SCP, start, 0, new File(localFilePath).length(), Outcome.SUCCESS);
+		}
+	}
+
+	/**
+	 * An operation to be performed on the shared SFTP channel
+	 *
+	 * @param <T> The type of the result of the operation
+	 */
+	@FunctionalInterface
+	interface SftpOperation<T> {
+		/**
+		 * Perform the operation
+		 *
+		 * @param sftpChannel The SFTP channel to use
+		 * @return the result of the operation
+		 * @throws IOException When an I/O error occurred.
+		 */
+		T run(SftpChannel sftpChannel) throws IOException;
+	}
+
+	/**
+	 * Run the specified operation on the shared SFTP channel, which is opened if needed.
+	 * <p>
+	 * If the operation fails on a channel that was opened by a previous operation (e.g. it has
+	 * been closed by the server in the meantime), the channel is opened again and the operation
+	 * is retried once. Errors reported by the SFTP server ({@link SftpException}) leave the channel as is.
+	 *
+	 * @param <T> The type of the result of the operation
+	 * @param operation The operation to perform
+	 * @return the result of the operation
+	 * @throws IOException When an I/O error occurred.
+	 */
+	<T> T withSftpChannel(final SftpOperation<T> operation) throws IOException {
+		synchronized (sftpLock) {
+			final boolean reused = sftpChannel != null;
+			if (!reused) {
+				sftpChannel = createSftpChannel();
+			}
+
+			try {
+				return operation.run(sftpChannel);
+			} catch (SftpException e) {
+				throw e;
+			} catch (IOException e) {
+				closeSftpChannel();
+				if (!reused) {
+					throw e;
+				}
+			}
+
+			// The shared channel was broken: retry once on a new one
+			sftpChannel = createSftpChannel();
+			try {
+				return operation.run(sftpChannel);
+			} catch (SftpException e) {
+				throw e;
+			} catch (IOException e) {
+				closeSftpChannel();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Open a new SFTP channel.
+	 *
+	 * @return a new {@link SftpChannel}
+	 * @throws IOException When the SFTP subsystem cannot be started.
+	 */
+	SftpChannel createSftpChannel() throws IOException {
+		return new SftpChannel(getSshConnection(), charset);
+	}
+
+	/**
+	 * Get the shared SFTP channel, opened again if it is broken. Unlike {@link #withSftpChannel(SftpOperation)},
+	 * the operations performed on the returned channel are not serialized with the other SFTP operations.
+	 *
+	 * @return the shared SFTP channel
+	 * @throws IOException When the SFTP subsystem cannot be started.
+	 */
+	SftpChannel getSftpChannel() throws IOException {
+		synchronized (sftpLock) {
+			if (sftpChannel != null && !sftpChannel.isOpen()) {
+				closeSftpChannel();
+			}
+			if (sftpChannel == null) {
+				sftpChannel = createSftpChannel();
+			}
+			return sftpChannel;
+		}
+	}
+
+	/**
+	 * @return the maximum number of SFTP read requests in flight when reading a file
+	 */
+	int getSftpReadWindow() {
+		return sftpReadWindow;
+	}
+
+	/**
+	 * @return the charset used on the remote server
+	 */
+	Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Close the shared SFTP channel, if open.
+	 */
+	private void closeSftpChannel() {
+		synchronized (sftpLock) {
+			if (sftpChannel != null) {
+				sftpChannel.close();
+				sftpChannel = null;
+			}
+		}
+	}
+
+	/**
+	 * Set the maximum number of SFTP read requests in flight when reading a file. The higher,
+	 * the less reading a file suffers from the network latency.
+	 *
+	 * @param sftpReadWindow Maximum number of read requests in flight (16 by default)
+	 */
+	public void setSftpReadWindow(final int sftpReadWindow) {
+		Utils.checkArgumentNotZeroOrNegative(sftpReadWindow, "sftpReadWindow");
+		this.sftpReadWindow = sftpReadWindow;
+	}
+
+	/**
+	 * Set the maximum number of directories read at the same time when listing files. The higher,
+	 * the less listing a large tree suffers from the network latency.
+	 *
+	 * @param sftpListWindow Maximum number of directories read at the same time (8 by default)
+	 */
+	public void setSftpListWindow(final int sftpListWindow) {
+		Utils.checkArgumentNotZeroOrNegative(sftpListWindow, "sftpListWindow");
+		this.sftpListWindow = sftpListWindow;
+	}
+
+	/**
+	 * Set the maximum number of commands running at the same time on the connection, each one
+	 * in its own SSH session (channel). The other commands wait for a session to be closed.
+	 * The SSH servers also limit the number of sessions per connection (10 by default with OpenSSH,
+	 * see <code>MaxSessions</code>), including the session used for SFTP.
+	 *
+	 * @param maxConcurrentChannels Maximum number of commands running at the same time (8 by default)
+	 */
+	public void setMaxConcurrentChannels(final int maxConcurrentChannels) {
+		Utils.checkArgumentNotZeroOrNegative(maxConcurrentChannels, "maxConcurrentChannels");
+		channelPermits = new Semaphore(maxConcurrentChannels, true);
+	}
+
+	/**
+	 * Set how much of the output of the commands is kept in {@link CommandResult#result}, by
+	 * {@link #executeCommand(String, int)} and {@link #executeCommandAsync(String, int)}.
+	 * By default, the whole output is kept.
+	 *
+	 * @param capturePolicy The capture policy (e.g. <code>CapturePolicy.tail(1024 * 1024)</code>)
+	 */
+	public void setCapturePolicy(final CapturePolicy capturePolicy) {
+		this.capturePolicy = Objects.requireNonNull(capturePolicy, "capturePolicy");
+	}
+
+	/**
+	 * @return how much of the output of the commands is kept
+	 */
+	public CapturePolicy getCapturePolicy() {
+		return capturePolicy;
+	}
+
+	/**
+	 * Set the cache in front of {@link #readFileAttributes(String)} and {@link #listFiles(String, String, boolean)}
+	 * (and their variants). The same cache can be shared by several clients.
+	 *
+	 * @param metadataCache The cache, or null to read the attributes and listings from the remote host every time
+	 */
+	public void setMetadataCache(final RemoteMetadataCache metadataCache) {
+		this.metadataCache = metadataCache;
+	}
+
+	/**
+	 * @return the cache in front of the file attributes and directory listings, or null
+	 */
+	public RemoteMetadataCache getMetadataCache() {
+		return metadataCache;
+	}
+
+	/**
+	 * Set the listener that receives the timing of the operations performed by this client (connection,
+	 * authentication, commands, file transfers, etc.). The same listener can be shared by several clients.
+	 *
+	 * @param metricsListener The listener (e.g. {@link SshMetrics}), or null to not time the operations
+	 */
+	public void setMetricsListener(final SshMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * @return the listener that receives the timing of the operations, or null
+	 */
+	public SshMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * Closes the session (and terminal) opened with {@link #openSession()}, and restores the default
+	 * settings, so that {@link SshClientPool} can hand out the client again as if it were new. The connection,
+	 * the authentication and the shared SFTP channel are kept.
+	 *
+	 * @param metricsListener The listener of the operations of the next borrower
+	 */
+	void resetForReuse(final SshMetricsListener metricsListener) {
+		if (sshSession != null) {
+			sshSession.close();
+			sshSession = null;
+		}
+		stdoutDecoder = null;
+		stderrDecoder = null;
+		sftpReadWindow = DEFAULT_SFTP_READ_WINDOW;
+		sftpListWindow = DEFAULT_SFTP_LIST_WINDOW;
+		channelPermits = new Semaphore(DEFAULT_MAX_CONCURRENT_CHANNELS, true);
+		capturePolicy = CapturePolicy.UNLIMITED;
+		metadataCache = null;
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * Report an operation to the specified listener
+	 *
+	 * @param listener The listener, or null (nothing is reported then)
+	 * @param operation The operation
+	 * @param start When the operation started, as given by {@link System#nanoTime()}
+	 * @param bytesIn The number of bytes received
+	 * @param bytesOut The number of bytes sent
+	 * @param outcome How the operation ended
+	 */
+	private void report(
+		final SshMetricsListener listener,
+		final Operation operation,
+		final long start,
+		final long bytesIn,
+		final long bytesOut,
+		final Outcome outcome
+	) {
+		if (listener == null) {
+			return;
+		}
+		try {
+			listener.onOperation(hostname, operation, System.nanoTime() - start, bytesIn, bytesOut, outcome);
+		} catch (RuntimeException e) {
+			// The metrics must not break the operations
+		}
+	}
+
+	/**
+	 * Report a command that completed or timed out to the specified listener
+	 */
+	private void report(
+		final SshMetricsListener listener,
+		final Operation operation,
+		final long start,
+		final CommandResult commandResult,
+		final long bytesOut
+	) {
+		final Outcome outcome = commandResult.success ? Outcome.SUCCESS : Outcome.TIMEOUT;
+		report(listener, operation, start, commandResult.totalBytes, bytesOut, outcome);
+	}
+
+	/**
+	 * @param error The exception that ended an operation
+	 * @return whether the operation timed out or failed
+	 */
+	private static Outcome outcomeOf(final Throwable error) {
+		return error instanceof InterruptedIOException ? Outcome.TIMEOUT : Outcome.FAILURE;
+	}
+
+	/**
+	 * @param authenticated Whether the authentication worked
+	 * @return the outcome of the authentication
+	 */
+	private static Outcome outcomeOf(final boolean authenticated) {
+		return authenticated ? Outcome.SUCCESS : Outcome.FAILURE;
+	}
+
+	/**
+	 * @return the key of the entries of this host in the metadata cache
+	 */
+	private String getCacheScope() {
+		return hostname + ":" + port;
 	}
 
 	/**
@@ -821,8 +2102,19 @@ public class SshClient implements AutoCloseable {
 		checkIfConnected();
 		checkIfAuthenticated();
 
+		final SshMetricsListener listener = metricsListener;
+		final long start = listener != null ? System.nanoTime() : 0;
+
 		// Open a shell session
-		sshSession = getSshConnection().openSession();
+		try {
+			sshSession = getSshConnection().openSession();
+		} catch (IOException | RuntimeException e) {
+			report(listener, Operation.OPEN_SESSION, start, 0, 0, outcomeOf(e));
+			throw e;
+		}
+		report(listener, Operation.OPEN_SESSION, start, 0, 0, Outcome.SUCCESS);
+		stdoutDecoder = null;
+		stderrDecoder = null;
 	}
 
 	/**
@@ -836,8 +2128,18 @@ public class SshClient implements AutoCloseable {
 		checkIfAuthenticated();
 		checkIfSessionOpened();
 
-		getSshSession().requestPTY("dumb", 10000, 24, 640, 480, new byte[] { 53, 0, 0, 0, 0, 0 });
-		getSshSession().startShell();
+		startTerminal(getSshSession());
+	}
+
+	/**
+	 * Request a wiiiiide terminal with no ECHO on the specified session, and start a shell
+	 *
+	 * @param session The SSH session
+	 * @throws IOException When an I/O error occurred.
+	 */
+	private static void startTerminal(final Session session) throws IOException {
+		session.requestPTY("dumb", 10000, 24, 640, 480, new byte[] { 53, 0, 0, 0, 0, 0 });
+		session.startShell();
 	}
 
 	/**
@@ -860,6 +2162,18 @@ public class SshClient implements AutoCloseable {
 		final OutputStream outputStream = getSshSession().getStdin();
 		Utils.checkNonNullField(outputStream, "Stdin");
 
+		write(outputStream, text, charset);
+	}
+
+	/**
+	 * Write the specified text, with '\n' as line separator, into the specified stream, and flush it
+	 *
+	 * @param outputStream The stdin of the session
+	 * @param text The text to be written
+	 * @param charset The charset of the text
+	 * @throws IOException When an I/O error occurred.
+	 */
+	static void write(final OutputStream outputStream, final String text, final Charset charset) throws IOException {
 		// Replace "\n" string with write of '\n' character.
 		final String[] split = text.split("\\R", -1);
 		if (split.length == 1) {
@@ -881,6 +2195,9 @@ public class SshClient implements AutoCloseable {
 
 	/**
 	 * Read the stdout and stderr from the SSH session.
+	 * <p>
+	 * A multi-byte character whose bytes are split between two reads (because of the size limit,
+	 * or because they arrived separately) is returned entirely by the read that gets its last byte.
 	 *
 	 * @param size The buffer size of stdout and/or stderr to be read. (If less than 0 all data)
 	 * @param timeout Timeout in seconds
@@ -902,30 +2219,118 @@ public class SshClient implements AutoCloseable {
 		Utils.checkNonNullField(stdout, "stdout");
 		Utils.checkNonNullField(stderr, "stderr");
 
-		try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-			// Wait for new data
-			final int waitForCondition = waitForNewData(timeout * 1000L);
+		createDecoders();
 
-			final boolean stdoutData = hasStdoutData(waitForCondition);
-			final boolean stderrData = hasStderrData(waitForCondition);
+		// Wait for new data
+		final int waitForCondition = waitForNewData(timeout * 1000L);
 
-			// read stdout
-			int stdoutRead = 0;
-			if (stdoutData) {
-				stdoutRead = transferBytes(stdout, byteArrayOutputStream, size);
-				if (size > 0 && stdoutRead >= size) {
-					return Optional.of(new String(byteArrayOutputStream.toByteArray(), charset));
-				}
+		final boolean stdoutData = hasStdoutData(waitForCondition);
+		final boolean stderrData = hasStderrData(waitForCondition);
+
+		// read stdout
+		int stdoutRead = 0;
+		if (stdoutData) {
+			stdoutRead = decodeBytes(stdout, stdoutDecoder, size);
+			if (size > 0 && stdoutRead >= size) {
+				return Optional.of(stdoutDecoder.take());
 			}
+		}
 
-			// If still bytes to read or no stdout, read stderr
-			if (stderrData) {
-				transferBytes(stderr, byteArrayOutputStream, size - stdoutRead);
+		// If still bytes to read or no stdout, read stderr
+		if (stderrData) {
+			decodeBytes(stderr, stderrDecoder, size - stdoutRead);
+			if (!stdoutData) {
+				return Optional.of(stderrDecoder.take());
 			}
+			final StringBuilder builder = new StringBuilder();
+			stdoutDecoder.takeTo(builder);
+			stderrDecoder.takeTo(builder);
+			return Optional.of(builder.toString());
+		}
+
+		return stdoutData ? Optional.of(stdoutDecoder.take()) : Optional.empty();
+	}
 
-			return stdoutData || stderrData
-				? Optional.of(new String(byteArrayOutputStream.toByteArray(), charset))
-				: Optional.empty();
+	/**
+	 * Wait for the output of the SSH session, and add everything that is available (stdout, then
+	 * stderr) to the specified builder, with the same decoders as {@link #read(int, int)}.
+	 *
+	 * @param builder Where to add the output
+	 * @param timeout Timeout in milliseconds
+	 * @return the number of bytes read, or -1 if nothing was read because the end of the output has
+	 * been reached, or the session is closed
+	 * @throws IOException When an I/O error occurred.
+	 */
+	int readTo(final StringBuilder builder, final long timeout) throws IOException {
+		Utils.checkArgumentNotZeroOrNegative(timeout, "timeout");
+
+		checkIfConnected();
+		checkIfAuthenticated();
+		checkIfSessionOpened();
+
+		Utils.checkNonNullField(charset, "charset");
+
+		final InputStream stdout = getSshSession().getStdout();
+		final InputStream stderr = getSshSession().getStderr();
+		Utils.checkNonNullField(stdout, "stdout");
+		Utils.checkNonNullField(stderr, "stderr");
+
+		createDecoders();
+
+		final int waitForCondition = waitForNewData(timeout);
+		int bytesRead = 0;
+		if (hasStdoutData(waitForCondition)) {
+			bytesRead += decodeBytes(stdout, stdoutDecoder, 0);
+			stdoutDecoder.takeTo(builder);
+		}
+		if (hasStderrData(waitForCondition)) {
+			bytesRead += decodeBytes(stderr, stderrDecoder, 0);
+			stderrDecoder.takeTo(builder);
+		}
+		if (bytesRead == 0 && (hasEndOfFileSession(waitForCondition) || hasSessionClosed(waitForCondition))) {
+			return -1;
+		}
+		return bytesRead;
+	}
+
+	/**
+	 * Create the decoders of stdout and stderr of the session, if not done already
+	 */
+	private void createDecoders() {
+		if (stdoutDecoder == null) {
+			stdoutDecoder = new OutputDecoder(charset);
+			stderrDecoder = new OutputDecoder(charset);
+		}
+	}
+
+	/**
+	 * Read the available bytes (up to the specified size) from the input stream, through a buffer
+	 * of the shared {@link BufferPool}, and decode them with the specified decoder.
+	 *
+	 * @param inputStream The input stream
+	 * @param decoder The decoder accumulating the characters
+	 * @param size The maximum number of bytes to read (all the available bytes if negative or zero)
+	 * @return The number of bytes read
+	 * @throws IOException When an I/O error occurred.
+	 */
+	static int decodeBytes(final InputStream inputStream, final OutputDecoder decoder, final int size)
+		throws IOException {
+		final BufferPool bufferPool = BufferPool.getShared();
+		final byte[] buffer = bufferPool.acquire();
+		try {
+			int total = 0;
+			int bytesRead;
+			while (
+				(size <= 0 || total < size) &&
+				inputStream.available() > 0 &&
+				(bytesRead = inputStream.read(buffer, 0, size > 0 ? Math.min(buffer.length, size - total) : buffer.length)) > 0
+			) {
+				decoder.append(buffer, 0, bytesRead);
+				total += bytesRead;
+			}
+			return total;
+		} finally {
+			bufferPool.release(buffer);
 		}
 	}
 
@@ -990,7 +2395,20 @@ public class SshClient implements AutoCloseable {
 	 * @return A bit mask specifying all current conditions that are true
 	 */
 	int waitForNewData(final long timeout) {
-		return sshSession.waitForCondition(
+		return waitForNewData(sshSession, timeout);
+	}
+
+	/**
+	 * Wait until the specified session contains at least one of the conditions: stdout data,
+	 * stderr data, end of file, session closed.
+	 *
+	 * @param session The SSH session
+	 * @param timeout Timeout in milliseconds
+	 * @return A bit mask specifying all current conditions that are true
+	 */
+	static int waitForNewData(final Session session, final long timeout) {
+		return BlockingThreads.waitForCondition(
+			session,
 			ChannelCondition.STDOUT_DATA | ChannelCondition.STDERR_DATA | ChannelCondition.EOF | ChannelCondition.CLOSED,
 			timeout
 		);
@@ -1046,25 +2464,48 @@ public class SshClient implements AutoCloseable {
 	 */
 	static int transferBytes(final InputStream inputStream, final OutputStream outputStream, final int size)
 		throws IOException {
-		final int bufferSize = size > 0 && size < READ_BUFFER_SIZE ? size : READ_BUFFER_SIZE;
-		final byte[] buffer = new byte[bufferSize];
-
-		int total = 0;
-		int bytesRead = 0;
+		// Nothing to read: don't even take a buffer
+		if (inputStream.available() <= 0) {
+			return 0;
+		}
 
-		while (inputStream.available() > 0 && (bytesRead = inputStream.read(buffer)) > 0) {
-			final int bytesCopy = Math.min(bytesRead, READ_BUFFER_SIZE);
+		final BufferPool bufferPool = BufferPool.getShared();
+		final byte[] buffer = bufferPool.acquire();
+		try {
+			int total = 0;
+			int bytesRead = 0;
 
-			outputStream.write(Arrays.copyOf(buffer, bytesCopy));
-			outputStream.flush();
+			while (
+				inputStream.available() > 0 &&
+				(bytesRead = inputStream.read(buffer, 0, size > 0 ? Math.min(buffer.length, size - total) : buffer.length)) > 0
+			) {
+				outputStream.write(buffer, 0, bytesRead);
+				outputStream.flush();
 
-			total += bytesRead;
+				total += bytesRead;
 
-			if (size > 0 && total >= size) {
-				return total;
+				if (size > 0 && total >= size) {
+					return total;
+				}
 			}
+			return total;
+		} finally {
+			bufferPool.release(buffer);
 		}
-		return total;
+	}
+
+	/**
+	 * @return the hostname of the SSH server this client connects to
+	 */
+	public String getHostname() {
+		return hostname;
+	}
+
+	/**
+	 * @return the port of the SSH server this client connects (or is connected) to
+	 */
+	public int getPort() {
+		return port;
 	}
 
 	Connection getSshConnection() {
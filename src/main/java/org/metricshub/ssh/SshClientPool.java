@@ -0,0 +1,774 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of connected and authenticated {@link SshClient} instances.
+ * <p>
+ * Borrowing a client for a host that was already used recently returns the same
+ * SSH connection, instead of paying for the TCP connection, the key exchange and
+ * the authentication again. Clients are keyed by hostname, port, username and a
+ * fingerprint of the credentials (the credentials themselves are never kept).
+ * <p>
+ * Borrowed clients are handed out as a {@link Lease}, which gives the client back
+ * to the pool when closed:
+ * <pre>
+ * try (SshClientPool.Lease lease = pool.borrow(hostname, 22, username, password, null, 30000)) {
+ * 	CommandResult result = lease.getClient().executeCommand("uname");
+ * }
+ * </pre>
+ * When the client is given back, the session opened with {@link SshClient#openSession()} is closed,
+ * and the settings of the client (capture policy, metadata cache, windows, etc.) are restored to their
+ * defaults: the next borrower gets the client as if it were new.
+ * <p>
+ * <b>Never</b> call {@link SshClient#close()} on a pooled client: use {@link Lease#invalidate()}
+ * when the connection must not be reused.
+ */
+public class SshClientPool implements AutoCloseable {
+
+	/**
+	 * Default maximum number of connections per host (hostname and port)
+	 */
+	public static final int DEFAULT_MAX_PER_HOST = 4;
+
+	/**
+	 * Default time (in milliseconds) after which an unused connection is closed
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 300000L;
+
+	/**
+	 * Default time (in milliseconds) after which a connection is closed, used or not
+	 */
+	public static final long DEFAULT_MAX_LIFETIME = 1800000L;
+
+	private final Charset charset;
+	private final int maxPerHost;
+	private final long idleTimeout;
+	private final long maxLifetime;
+	private volatile boolean validateOnBorrow = true;
+	private volatile SshMetricsListener metricsListener = null;
+	private volatile boolean closed = false;
+
+	private final Map<String, HostPool> hostPools = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService evictionScheduler;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong hitNanos = new AtomicLong();
+	private final AtomicLong missNanos = new AtomicLong();
+	private final AtomicLong maxBorrowNanos = new AtomicLong();
+
+	/**
+	 * Creates a pool with the default limits, for remote systems using UTF-8
+	 */
+	public SshClientPool() {
+		this(DEFAULT_MAX_PER_HOST, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_LIFETIME, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates a pool of SSH clients
+	 *
+	 * @param maxPerHost Maximum number of connections (borrowed or idle) to the same hostname and port
+	 * @param idleTimeout Milliseconds after which an idle connection is closed
+	 * @param maxLifetime Milliseconds after which a connection is closed, whether it is used or not
+	 * @param charset Charset used on the remote servers
+	 */
+	public SshClientPool(final int maxPerHost, final long idleTimeout, final long maxLifetime, final Charset charset) {
+		Utils.checkArgumentNotZeroOrNegative(maxPerHost, "maxPerHost");
+		Utils.checkArgumentNotZeroOrNegative(idleTimeout, "idleTimeout");
+		Utils.checkArgumentNotZeroOrNegative(maxLifetime, "maxLifetime");
+
+		this.maxPerHost = maxPerHost;
+		this.idleTimeout = idleTimeout;
+		this.maxLifetime = maxLifetime;
+		this.charset = charset;
+
+		// Sweep expired connections in the background, so that idle connections to hosts
+		// that are never borrowed again don't keep their listener thread running forever
+		final long sweepPeriod = Math.max(1000L, Math.min(idleTimeout, maxLifetime) / 2);
+		evictionScheduler =
+			Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "SshClientPool-evictor");
+				thread.setDaemon(true);
+				return thread;
+			});
+		evictionScheduler.scheduleWithFixedDelay(this::evictExpired, sweepPeriod, sweepPeriod, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Whether idle connections are checked with a round trip to the server before being handed out
+	 * (true by default)
+	 *
+	 * @param validateOnBorrow true to validate the connections on borrow
+	 */
+	public void setValidateOnBorrow(final boolean validateOnBorrow) {
+		this.validateOnBorrow = validateOnBorrow;
+	}
+
+	/**
+	 * Borrow a connected and authenticated SSH client from the pool, or create a new one if
+	 * no idle client matches the specified host and credentials.
+	 * <p>
+	 * The authentication uses the private key if specified, otherwise the password if specified,
+	 * otherwise no password at all.
+	 *
+	 * @param hostname Hostname of the SSH server
+	 * @param port Port of the SSH server
+	 * @param username Username to authenticate with
+	 * @param password Password (or passphrase of the private key), may be null
+	 * @param privateKeyFile Private key file, may be null
+	 * @param timeout Milliseconds to wait for a free slot and to connect (0 means no timeout)
+	 * @return A {@link Lease} on the client, to be closed once done
+	 * @throws IOException when the connection or the authentication fails, or no slot was freed in time
+	 * @throws IllegalStateException when the pool has been closed
+	 */
+	public Lease borrow(
+		final String hostname,
+		final int port,
+		final String username,
+		final char[] password,
+		final File privateKeyFile,
+		final int timeout
+	) throws IOException {
+		checkIfOpen();
+
+		final long startTime = System.nanoTime();
+		final long deadline = timeout > 0 ? startTime + TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+
+		final Key key = new Key(hostname, port, username, fingerprint(password, privateKeyFile));
+		final HostPool hostPool = hostPools.computeIfAbsent(hostname + ":" + port, k -> new HostPool());
+
+		while (true) {
+			final List<PooledClient> toClose = new ArrayList<>();
+			PooledClient pooledClient;
+			synchronized (hostPool) {
+				hostPool.removeExpired(System.currentTimeMillis(), toClose);
+				pooledClient = hostPool.takeIdle(key);
+				if (pooledClient == null) {
+					if (hostPool.total >= maxPerHost) {
+						// Make room by closing an idle connection that was opened with other credentials
+						final PooledClient victim = hostPool.takeAnyIdle();
+						if (victim != null) {
+							toClose.add(victim);
+							hostPool.total--;
+						}
+					}
+
+					if (hostPool.total < maxPerHost) {
+						// Reserve the slot for the connection we're about to open
+						hostPool.total++;
+					} else {
+						waitForSlot(hostPool, deadline, key);
+						continue;
+					}
+				}
+			}
+			closeAll(toClose);
+
+			if (pooledClient != null) {
+				// Reuse an idle connection, provided it's still alive
+				if (validateOnBorrow && !isAlive(pooledClient.client)) {
+					validationFailures.incrementAndGet();
+					discard(hostPool, pooledClient);
+					continue;
+				}
+				hits.incrementAndGet();
+				recordBorrowTime(hitNanos, startTime);
+				return new Lease(hostPool, pooledClient);
+			}
+
+			// Nothing to reuse: open a new connection in the slot we reserved
+			final SshClient client = createClient(hostname);
+			try {
+				client.connect(timeout, port);
+				if (!authenticate(client, username, password, privateKeyFile)) {
+					throw new IOException(String.format("Failed to authenticate as %s on %s:%d", username, hostname, port));
+				}
+			} catch (IOException | RuntimeException e) {
+				client.close();
+				releaseSlot(hostPool);
+				throw e;
+			}
+			misses.incrementAndGet();
+			recordBorrowTime(missNanos, startTime);
+			return new Lease(hostPool, new PooledClient(key, client));
+		}
+	}
+
+	/**
+	 * Wait until a connection is given back to the host pool, or the deadline is reached.
+	 * Must be called while holding the lock on hostPool.
+	 */
+	private void waitForSlot(final HostPool hostPool, final long deadline, final Key key) throws IOException {
+		final long remainingNanos = deadline - System.nanoTime();
+		if (remainingNanos <= 0) {
+			throw new IOException(
+				String.format("Timed out waiting for a free connection to %s:%d (%d max)", key.hostname, key.port, maxPerHost)
+			);
+		}
+		try {
+			TimeUnit.NANOSECONDS.timedWait(hostPool, remainingNanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a free connection to " + key.hostname);
+		}
+		checkIfOpen();
+	}
+
+	/**
+	 * Creates a new (not connected) SSH client.
+	 *
+	 * @param hostname Hostname of the SSH server
+	 * @return a new {@link SshClient}
+	 */
+	SshClient createClient(final String hostname) {
+		final SshClient client = new SshClient(hostname, charset);
+		client.setMetricsListener(metricsListener);
+		return client;
+	}
+
+	/**
+	 * Set the listener that receives the timing of the operations of the clients created from now on
+	 *
+	 * @param metricsListener The listener (e.g. {@link SshMetrics}), or null to not time the operations
+	 */
+	public void setMetricsListener(final SshMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * Authenticate the specified client with the private key, the password or no password at all.
+	 */
+	static boolean authenticate(
+		final SshClient client,
+		final String username,
+		final char[] password,
+		final File privateKeyFile
+	) throws IOException {
+		if (privateKeyFile != null) {
+			return client.authenticate(username, privateKeyFile, password);
+		} else if (password != null && password.length > 0) {
+			return client.authenticate(username, password);
+		}
+		return client.authenticate(username);
+	}
+
+	/**
+	 * Check whether the connection of the specified client still responds.
+	 *
+	 * @param client The client to check
+	 * @return whether the server answered our ping
+	 */
+	static boolean isAlive(final SshClient client) {
+		try {
+			client.getSshConnection().ping();
+			return true;
+		} catch (IOException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the idle connections that exceeded their idle timeout or their maximum lifetime.
+	 * This is done periodically in the background, but can be triggered manually.
+	 */
+	public void evictExpired() {
+		final long now = System.currentTimeMillis();
+		for (HostPool hostPool : hostPools.values()) {
+			final List<PooledClient> toClose = new ArrayList<>();
+			synchronized (hostPool) {
+				hostPool.removeExpired(now, toClose);
+			}
+			closeAll(toClose);
+		}
+	}
+
+	private void recordBorrowTime(final AtomicLong counter, final long startTime) {
+		final long elapsed = System.nanoTime() - startTime;
+		counter.addAndGet(elapsed);
+		maxBorrowNanos.accumulateAndGet(elapsed, Math::max);
+	}
+
+	/**
+	 * Gives a client back to the pool, or closes it if it must not be reused.
+	 */
+	private void giveBack(final HostPool hostPool, final PooledClient pooledClient) {
+		// Nothing of the lease must leak to the next borrower (in particular, an open session
+		// would be overwritten, and never closed, by the next call to openSession())
+		pooledClient.client.resetForReuse(pooledClient.metricsListener);
+
+		final long now = System.currentTimeMillis();
+		synchronized (hostPool) {
+			if (!closed && now - pooledClient.createdAt < maxLifetime) {
+				pooledClient.lastUsedAt = now;
+				hostPool.idle.computeIfAbsent(pooledClient.key, k -> new ArrayDeque<>()).push(pooledClient);
+				hostPool.notifyAll();
+				return;
+			}
+		}
+		evictions.incrementAndGet();
+		discard(hostPool, pooledClient);
+	}
+
+	/**
+	 * Closes a client that was taken out of the pool and frees its slot.
+	 */
+	private void discard(final HostPool hostPool, final PooledClient pooledClient) {
+		pooledClient.client.close();
+		releaseSlot(hostPool);
+	}
+
+	private static void releaseSlot(final HostPool hostPool) {
+		synchronized (hostPool) {
+			hostPool.total--;
+			hostPool.notifyAll();
+		}
+	}
+
+	private static void closeAll(final List<PooledClient> pooledClients) {
+		for (PooledClient pooledClient : pooledClients) {
+			pooledClient.client.close();
+		}
+	}
+
+	/**
+	 * Computes a fingerprint (SHA-256) of the credentials, so that connections authenticated with
+	 * different credentials are never mixed up, without keeping the credentials in memory.
+	 *
+	 * @param password The password (may be null)
+	 * @param privateKeyFile The private key file (may be null)
+	 * @return the hexadecimal fingerprint
+	 */
+	static String fingerprint(final char[] password, final File privateKeyFile) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+		}
+
+		if (password != null) {
+			final ByteBuffer passwordBytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+			digest.update(passwordBytes);
+			Arrays.fill(passwordBytes.array(), (byte) 0);
+		}
+		digest.update((byte) 0);
+		if (privateKeyFile != null) {
+			// A modified key file must not match the connections opened with its previous content
+			digest.update(
+				String
+					.format("%s|%d|%d", privateKeyFile.getAbsolutePath(), privateKeyFile.lastModified(), privateKeyFile.length())
+					.getBytes(StandardCharsets.UTF_8)
+			);
+		}
+
+		final StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * @return a snapshot of the statistics of this pool
+	 */
+	public Statistics getStatistics() {
+		int idle = 0;
+		int total = 0;
+		for (HostPool hostPool : hostPools.values()) {
+			synchronized (hostPool) {
+				idle += hostPool.idleCount();
+				total += hostPool.total;
+			}
+		}
+		return new Statistics(
+			hits.get(),
+			misses.get(),
+			validationFailures.get(),
+			evictions.get(),
+			hitNanos.get(),
+			missNanos.get(),
+			maxBorrowNanos.get(),
+			idle,
+			total - idle
+		);
+	}
+
+	/**
+	 * Closes all the idle connections. Connections that are currently borrowed will be closed
+	 * when their lease is closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		evictionScheduler.shutdownNow();
+		for (HostPool hostPool : hostPools.values()) {
+			final List<PooledClient> toClose = new ArrayList<>();
+			synchronized (hostPool) {
+				for (Deque<PooledClient> deque : hostPool.idle.values()) {
+					toClose.addAll(deque);
+					hostPool.total -= deque.size();
+				}
+				hostPool.idle.clear();
+				hostPool.notifyAll();
+			}
+			closeAll(toClose);
+		}
+	}
+
+	private void checkIfOpen() {
+		if (closed) {
+			throw new IllegalStateException("The SSH client pool is closed");
+		}
+	}
+
+	/**
+	 * Identifies the connections that can be shared: same host, same port, same user, same credentials
+	 */
+	static final class Key {
+
+		private final String hostname;
+		private final int port;
+		private final String username;
+		private final String credentialFingerprint;
+
+		Key(final String hostname, final int port, final String username, final String credentialFingerprint) {
+			this.hostname = hostname;
+			this.port = port;
+			this.username = username;
+			this.credentialFingerprint = credentialFingerprint;
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key) other;
+			return (
+				port == key.port &&
+				Objects.equals(hostname, key.hostname) &&
+				Objects.equals(username, key.username) &&
+				Objects.equals(credentialFingerprint, key.credentialFingerprint)
+			);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(hostname, port, username, credentialFingerprint);
+		}
+
+		@Override
+		public String toString() {
+			return username + "@" + hostname + ":" + port;
+		}
+	}
+
+	/**
+	 * A client managed by the pool
+	 */
+	private static final class PooledClient {
+
+		private final Key key;
+		private final SshClient client;
+		private final SshMetricsListener metricsListener;
+		private final long createdAt;
+		private long lastUsedAt;
+
+		private PooledClient(final Key key, final SshClient client) {
+			this.key = key;
+			this.client = client;
+			this.metricsListener = client.getMetricsListener();
+			this.createdAt = System.currentTimeMillis();
+			this.lastUsedAt = createdAt;
+		}
+	}
+
+	/**
+	 * The connections to one host (hostname and port), borrowed or idle.
+	 * All accesses must be synchronized on the instance.
+	 */
+	private final class HostPool {
+
+		/**
+		 * Idle clients, most recently used first
+		 */
+		private final Map<Key, Deque<PooledClient>> idle = new HashMap<>();
+
+		/**
+		 * Number of clients (borrowed, idle or being connected) for this host
+		 */
+		private int total = 0;
+
+		private PooledClient takeIdle(final Key key) {
+			final Deque<PooledClient> deque = idle.get(key);
+			if (deque == null) {
+				return null;
+			}
+			final PooledClient pooledClient = deque.poll();
+			if (deque.isEmpty()) {
+				idle.remove(key);
+			}
+			return pooledClient;
+		}
+
+		private PooledClient takeAnyIdle() {
+			final Iterator<Key> keys = idle.keySet().iterator();
+			return keys.hasNext() ? takeIdle(keys.next()) : null;
+		}
+
+		private int idleCount() {
+			int count = 0;
+			for (Deque<PooledClient> deque : idle.values()) {
+				count += deque.size();
+			}
+			return count;
+		}
+
+		private void removeExpired(final long now, final List<PooledClient> expired) {
+			final Iterator<Deque<PooledClient>> deques = idle.values().iterator();
+			while (deques.hasNext()) {
+				final Deque<PooledClient> deque = deques.next();
+				final Iterator<PooledClient> iterator = deque.iterator();
+				while (iterator.hasNext()) {
+					final PooledClient pooledClient = iterator.next();
+					if (now - pooledClient.lastUsedAt >= idleTimeout || now - pooledClient.createdAt >= maxLifetime) {
+						iterator.remove();
+						expired.add(pooledClient);
+						total--;
+						evictions.incrementAndGet();
+					}
+				}
+				if (deque.isEmpty()) {
+					deques.remove();
+				}
+			}
+			if (!expired.isEmpty()) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * A borrowed client, to be closed to give the client back to the pool
+	 */
+	public final class Lease implements AutoCloseable {
+
+		private final HostPool hostPool;
+		private final PooledClient pooledClient;
+		private boolean returned = false;
+
+		private Lease(final HostPool hostPool, final PooledClient pooledClient) {
+			this.hostPool = hostPool;
+			this.pooledClient = pooledClient;
+		}
+
+		/**
+		 * @return the connected and authenticated SSH client
+		 */
+		public SshClient getClient() {
+			if (returned) {
+				throw new IllegalStateException("The SSH client has already been given back to the pool");
+			}
+			return pooledClient.client;
+		}
+
+		/**
+		 * Closes the underlying connection instead of giving it back to the pool, typically
+		 * after a communication error.
+		 */
+		public synchronized void invalidate() {
+			if (!returned) {
+				returned = true;
+				evictions.incrementAndGet();
+				discard(hostPool, pooledClient);
+			}
+		}
+
+		/**
+		 * Gives the client back to the pool
+		 */
+		@Override
+		public synchronized void close() {
+			if (!returned) {
+				returned = true;
+				giveBack(hostPool, pooledClient);
+			}
+		}
+	}
+
+	/**
+	 * Statistics of the pool, to compare the cost of reused connections (hits) against
+	 * new connections (misses)
+	 */
+	public static final class Statistics {
+
+		private final long hits;
+		private final long misses;
+		private final long validationFailures;
+		private final long evictions;
+		private final long hitNanos;
+		private final long missNanos;
+		private final long maxBorrowNanos;
+		private final int idle;
+		private final int borrowed;
+
+		private Statistics(
+			final long hits,
+			final long misses,
+			final long validationFailures,
+			final long evictions,
+			final long hitNanos,
+			final long missNanos,
+			final long maxBorrowNanos,
+			final int idle,
+			final int borrowed
+		) {
+			this.hits = hits;
+			this.misses = misses;
+			this.validationFailures = validationFailures;
+			this.evictions = evictions;
+			this.hitNanos = hitNanos;
+			this.missNanos = missNanos;
+			this.maxBorrowNanos = maxBorrowNanos;
+			this.idle = idle;
+			this.borrowed = borrowed;
+		}
+
+		/**
+		 * @return number of borrows served with an existing connection
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return number of borrows that required a new connection
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return ratio of hits among all borrows (between 0 and 1)
+		 */
+		public double getHitRatio() {
+			final long borrows = hits + misses;
+			return borrows == 0 ? 0 : (double) hits / borrows;
+		}
+
+		/**
+		 * @return number of idle connections found dead when borrowed
+		 */
+		public long getValidationFailures() {
+			return validationFailures;
+		}
+
+		/**
+		 * @return number of connections closed because expired or invalidated
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return average time (in milliseconds) to borrow an existing connection
+		 */
+		public double getAverageHitMillis() {
+			return hits == 0 ? 0 : hitNanos / 1000000.0 / hits;
+		}
+
+		/**
+		 * @return average time (in milliseconds) to borrow a new connection (connect and authenticate)
+		 */
+		public double getAverageMissMillis() {
+			return misses == 0 ? 0 : missNanos / 1000000.0 / misses;
+		}
+
+		/**
+		 * @return longest time (in milliseconds) spent borrowing a connection
+		 */
+		public double getMaxBorrowMillis() {
+			return maxBorrowNanos / 1000000.0;
+		}
+
+		/**
+		 * @return number of idle connections in the pool
+		 */
+		public int getIdle() {
+			return idle;
+		}
+
+		/**
+		 * @return number of connections currently borrowed (or being opened)
+		 */
+		public int getBorrowed() {
+			return borrowed;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"hits=%d, misses=%d, hitRatio=%.2f, avgHit=%.3fms, avgMiss=%.3fms, maxBorrow=%.3fms, " +
+				"validationFailures=%d, evictions=%d, idle=%d, borrowed=%d",
+				hits,
+				misses,
+				getHitRatio(),
+				getAverageHitMillis(),
+				getAverageMissMillis(),
+				getMaxBorrowMillis(),
+				validationFailures,
+				evictions,
+				idle,
+				borrowed
+			);
+		}
+	}
+}
@@ -0,0 +1,402 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * In-memory {@link SshMetricsListener}, which keeps, for each operation, the number of operations,
+ * failures and timeouts, the bytes received and sent, and a histogram of the durations.
+ * <p>
+ * Recording an operation doesn't take any lock, so the same instance can be shared by all the clients
+ * of the application. The percentiles are known within 1.6%.
+ * <pre>
+ * final SshMetrics metrics = new SshMetrics();
+ * sshClient.setMetricsListener(metrics);
+ * // ...
+ * System.out.println(metrics.getStatistics(SshMetricsListener.Operation.EXECUTE_COMMAND));
+ * </pre>
+ * The metrics can also be exposed through JMX with {@link #registerMBeans(String)}.
+ */
+public final class SshMetrics implements SshMetricsListener {
+
+	/**
+	 * Domain of the MBeans registered by {@link #registerMBeans(String)}
+	 */
+	public static final String JMX_DOMAIN = "org.metricshub.ssh";
+
+	private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+	private final List<ObjectName> registeredNames = new ArrayList<>();
+
+	/**
+	 * Creates empty metrics
+	 */
+	public SshMetrics() {
+		for (Operation operation : Operation.values()) {
+			recorders.put(operation, new Recorder());
+		}
+	}
+
+	@Override
+	public void onOperation(
+		final String hostname,
+		final Operation operation,
+		final long durationNanos,
+		final long bytesIn,
+		final long bytesOut,
+		final Outcome outcome
+	) {
+		recorders.get(operation).record(durationNanos, bytesIn, bytesOut, outcome);
+	}
+
+	/**
+	 * @param operation The operation
+	 * @return a snapshot of the statistics of the specified operation
+	 */
+	public Statistics getStatistics(final Operation operation) {
+		return recorders.get(operation).getStatistics();
+	}
+
+	/**
+	 * Register one MBean per operation in the platform MBean server, named
+	 * <code>org.metricshub.ssh:type=SshMetrics,name=&lt;name&gt;,operation=&lt;operation&gt;</code>.
+	 *
+	 * @param name The name that distinguishes these metrics from the other ones registered in the JVM
+	 * @throws JMException when the MBeans cannot be registered (e.g. the name is already used)
+	 * @throws IllegalStateException when the MBeans are already registered
+	 */
+	public synchronized void registerMBeans(final String name) throws JMException {
+		if (!registeredNames.isEmpty()) {
+			throw new IllegalStateException("The MBeans of these metrics are already registered");
+		}
+
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (Map.Entry<Operation, Recorder> entry : recorders.entrySet()) {
+				final ObjectName objectName = new ObjectName(
+					JMX_DOMAIN +
+					":type=SshMetrics,name=" +
+					ObjectName.quote(name) +
+					",operation=" +
+					entry.getKey().name()
+				);
+				server.registerMBean(new StandardMBean(entry.getValue(), OperationMXBean.class, true), objectName);
+				registeredNames.add(objectName);
+			}
+		} catch (JMException | RuntimeException e) {
+			unregisterMBeans();
+			throw e;
+		}
+	}
+
+	/**
+	 * Unregister the MBeans registered by {@link #registerMBeans(String)}, if any
+	 */
+	public synchronized void unregisterMBeans() {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName objectName : registeredNames) {
+			try {
+				server.unregisterMBean(objectName);
+			} catch (JMException e) {
+				// Already unregistered by someone else
+			}
+		}
+		registeredNames.clear();
+	}
+
+	/**
+	 * The attributes of the MBean of an operation. The durations are in milliseconds.
+	 */
+	public interface OperationMXBean {
+		/**
+		 * @return number of operations
+		 */
+		long getCount();
+
+		/**
+		 * @return number of operations that failed
+		 */
+		long getFailures();
+
+		/**
+		 * @return number of operations that timed out
+		 */
+		long getTimeouts();
+
+		/**
+		 * @return number of bytes received
+		 */
+		long getBytesIn();
+
+		/**
+		 * @return number of bytes sent
+		 */
+		long getBytesOut();
+
+		/**
+		 * @return mean duration of the operations
+		 */
+		double getMeanMillis();
+
+		/**
+		 * @return median duration of the operations
+		 */
+		double getP50Millis();
+
+		/**
+		 * @return 90th percentile of the duration of the operations
+		 */
+		double getP90Millis();
+
+		/**
+		 * @return 99th percentile of the duration of the operations
+		 */
+		double getP99Millis();
+
+		/**
+		 * @return 99.9th percentile of the duration of the operations
+		 */
+		double getP999Millis();
+
+		/**
+		 * @return longest duration of the operations
+		 */
+		double getMaxMillis();
+	}
+
+	/**
+	 * Live metrics of an operation
+	 */
+	private static final class Recorder implements OperationMXBean {
+
+		private final LatencyHistogram histogram = new LatencyHistogram();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder timeouts = new LongAdder();
+		private final LongAdder bytesIn = new LongAdder();
+		private final LongAdder bytesOut = new LongAdder();
+
+		private void record(final long durationNanos, final long in, final long out, final Outcome outcome) {
+			histogram.record(durationNanos);
+			if (outcome == Outcome.FAILURE) {
+				failures.increment();
+			} else if (outcome == Outcome.TIMEOUT) {
+				timeouts.increment();
+			}
+			if (in != 0) {
+				bytesIn.add(in);
+			}
+			if (out != 0) {
+				bytesOut.add(out);
+			}
+		}
+
+		private Statistics getStatistics() {
+			return new Statistics(
+				histogram.getCounts(),
+				histogram.getTotal(),
+				histogram.getMax(),
+				failures.sum(),
+				timeouts.sum(),
+				bytesIn.sum(),
+				bytesOut.sum()
+			);
+		}
+
+		@Override
+		public long getCount() {
+			return getStatistics().getCount();
+		}
+
+		@Override
+		public long getFailures() {
+			return failures.sum();
+		}
+
+		@Override
+		public long getTimeouts() {
+			return timeouts.sum();
+		}
+
+		@Override
+		public long getBytesIn() {
+			return bytesIn.sum();
+		}
+
+		@Override
+		public long getBytesOut() {
+			return bytesOut.sum();
+		}
+
+		@Override
+		public double getMeanMillis() {
+			return getStatistics().getMeanNanos() / 1e6;
+		}
+
+		@Override
+		public double getP50Millis() {
+			return getStatistics().getPercentileNanos(50) / 1e6;
+		}
+
+		@Override
+		public double getP90Millis() {
+			return getStatistics().getPercentileNanos(90) / 1e6;
+		}
+
+		@Override
+		public double getP99Millis() {
+			return getStatistics().getPercentileNanos(99) / 1e6;
+		}
+
+		@Override
+		public double getP999Millis() {
+			return getStatistics().getPercentileNanos(99.9) / 1e6;
+		}
+
+		@Override
+		public double getMaxMillis() {
+			return histogram.getMax() / 1e6;
+		}
+	}
+
+	/**
+	 * Statistics of an operation
+	 */
+	public static final class Statistics {
+
+		private final long[] counts;
+		private final long count;
+		private final long totalNanos;
+		private final long maxNanos;
+		private final long failures;
+		private final long timeouts;
+		private final long bytesIn;
+		private final long bytesOut;
+
+		private Statistics(
+			final long[] counts,
+			final long totalNanos,
+			final long maxNanos,
+			final long failures,
+			final long timeouts,
+			final long bytesIn,
+			final long bytesOut
+		) {
+			this.counts = counts;
+			long sum = 0;
+			for (long bucketCount : counts) {
+				sum += bucketCount;
+			}
+			this.count = sum;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+			this.failures = failures;
+			this.timeouts = timeouts;
+			this.bytesIn = bytesIn;
+			this.bytesOut = bytesOut;
+		}
+
+		/**
+		 * @return number of operations, successful or not
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return number of operations that failed (including the rejected authentications)
+		 */
+		public long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return number of operations that timed out
+		 */
+		public long getTimeouts() {
+			return timeouts;
+		}
+
+		/**
+		 * @return number of bytes received
+		 */
+		public long getBytesIn() {
+			return bytesIn;
+		}
+
+		/**
+		 * @return number of bytes sent
+		 */
+		public long getBytesOut() {
+			return bytesOut;
+		}
+
+		/**
+		 * @return mean duration of the operations in nanoseconds
+		 */
+		public long getMeanNanos() {
+			return count == 0 ? 0 : totalNanos / count;
+		}
+
+		/**
+		 * @return longest duration of the operations in nanoseconds
+		 */
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		/**
+		 * Get a percentile of the duration of the operations (nearest rank), within 1.6%
+		 *
+		 * @param percentile The percentile, between 0 and 100
+		 * @return the duration in nanoseconds, or 0 if there was no operation
+		 */
+		public long getPercentileNanos(final double percentile) {
+			return LatencyHistogram.valueAtPercentile(counts, percentile, maxNanos);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"count=%d, failures=%d, timeouts=%d, bytesIn=%d, bytesOut=%d, mean=%.3fms, p50=%.3fms, " +
+				"p99=%.3fms, p999=%.3fms, max=%.3fms",
+				count,
+				failures,
+				timeouts,
+				bytesIn,
+				bytesOut,
+				getMeanNanos() / 1e6,
+				getPercentileNanos(50) / 1e6,
+				getPercentileNanos(99) / 1e6,
+				getPercentileNanos(99.9) / 1e6,
+				maxNanos / 1e6
+			);
+		}
+	}
+}
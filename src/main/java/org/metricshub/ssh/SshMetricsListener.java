@@ -0,0 +1,127 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+/**
+ * Receives the timing of the operations performed by {@link SshClient}: connection, authentication,
+ * opening of the session, commands, file reads, listings, copies and removals.
+ * <p>
+ * The listener is called by the thread that performed the operation, once the operation is over
+ * (successful or not), so it must be fast and thread-safe. Exceptions thrown by the listener are ignored.
+ * When no listener is set, the operations are not timed at all.
+ * <pre>
+ * final SshMetrics metrics = new SshMetrics();
+ * sshClient.setMetricsListener(metrics);
+ * </pre>
+ *
+ * @see SshMetrics
+ */
+@FunctionalInterface
+public interface SshMetricsListener {
+	/**
+	 * The operations reported to the listener
+	 */
+	enum Operation {
+		/**
+		 * {@link SshClient#connect(int, int)}: resolution of the hostname and TCP connection
+		 */
+		CONNECT_TCP,
+		/**
+		 * {@link SshClient#connect(int, int)}: key exchange, once the TCP connection is established
+		 * (not reported when the TCP connection fails)
+		 */
+		KEY_EXCHANGE,
+		/**
+		 * {@link SshClient#authenticate(String, char[])}, with the password or keyboard-interactive method
+		 */
+		AUTHENTICATE_PASSWORD,
+		/**
+		 * {@link SshClient#authenticate(String, java.io.File, char[])}, with a private key
+		 */
+		AUTHENTICATE_PUBLIC_KEY,
+		/**
+		 * {@link SshClient#authenticate(String)}, with no password
+		 */
+		AUTHENTICATE_NONE,
+		/**
+		 * {@link SshClient#openSession()}
+		 */
+		OPEN_SESSION,
+		/**
+		 * {@link SshClient#executeCommand(String, int)} and its variants, including the asynchronous ones
+		 */
+		EXECUTE_COMMAND,
+		/**
+		 * {@link SshClient#readFile(String, Long, Integer)} and its variants
+		 */
+		READ_FILE,
+		/**
+		 * {@link SshClient#listFiles(String, String, boolean)} and its variants
+		 */
+		LIST_FILES,
+		/**
+		 * {@link SshClient#scp(String, String, String, String)}
+		 */
+		SCP,
+		/**
+		 * {@link SshClient#removeFile(String[])} and {@link SshClient#removeFile(String)}
+		 */
+		REMOVE_FILE
+	}
+
+	/**
+	 * How the operations end
+	 */
+	enum Outcome {
+		/**
+		 * The operation completed
+		 */
+		SUCCESS,
+		/**
+		 * The operation failed, or the authentication was rejected
+		 */
+		FAILURE,
+		/**
+		 * The operation didn't complete in time (including the commands that timed out)
+		 */
+		TIMEOUT
+	}
+
+	/**
+	 * Called once each operation is over
+	 *
+	 * @param hostname The host on which the operation was performed
+	 * @param operation The operation
+	 * @param durationNanos How long the operation took, in nanoseconds
+	 * @param bytesIn The number of bytes received: output of the command, or content of the file read
+	 * (0 for the other operations)
+	 * @param bytesOut The number of bytes sent: the command, or the file copied (0 for the other operations)
+	 * @param outcome How the operation ended
+	 */
+	void onOperation(
+		String hostname,
+		Operation operation,
+		long durationNanos,
+		long bytesIn,
+		long bytesOut,
+		Outcome outcome
+	);
+}
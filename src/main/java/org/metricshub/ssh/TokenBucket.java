@@ -0,0 +1,71 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of an operation: tokens are added at a constant rate, up to a maximum burst,
+ * and each operation takes one token, waiting for it if needed.
+ */
+class TokenBucket {
+
+	private final long intervalNanos;
+	private final long burstNanos;
+
+	/**
+	 * When the next token is available
+	 */
+	private long nextTokenNanos;
+
+	/**
+	 * @param ratePerSecond Number of tokens added per second
+	 * @param burst Maximum number of tokens that can be taken at once, after a quiet period
+	 */
+	TokenBucket(final double ratePerSecond, final int burst) {
+		if (ratePerSecond <= 0) {
+			throw new IllegalArgumentException("ratePerSecond=" + ratePerSecond + " must not be negative or zero.");
+		}
+		Utils.checkArgumentNotZeroOrNegative(burst, "burst");
+		intervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+		burstNanos = (burst - 1) * intervalNanos;
+		nextTokenNanos = System.nanoTime() - burstNanos;
+	}
+
+	/**
+	 * Takes a token, waiting until one is available
+	 *
+	 * @throws InterruptedException when interrupted while waiting
+	 */
+	void acquire() throws InterruptedException {
+		final long tokenNanos;
+		synchronized (this) {
+			// The tokens that have not been used during a quiet period accumulate up to the burst
+			tokenNanos = Math.max(nextTokenNanos, System.nanoTime() - burstNanos);
+			nextTokenNanos = tokenNanos + intervalNanos;
+		}
+
+		long waitNanos;
+		while ((waitNanos = tokenNanos - System.nanoTime()) > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads, which are not available in Java 8.
+ * <p>
+ * This class is replaced by its Java 21 version in the multi-release JAR
+ * (see <code>src/main/java21</code>).
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {}
+
+	/**
+	 * @return a factory of virtual threads, or null when virtual threads are not supported
+	 */
+	static ThreadFactory newThreadFactory() {
+		return null;
+	}
+
+	/**
+	 * @return whether the current thread must not wait on a monitor (<code>Object.wait()</code>)
+	 * for a long time, because it would block the carrier thread of a virtual thread
+	 */
+	static boolean isPinnedByMonitorWait() {
+		return false;
+	}
+}
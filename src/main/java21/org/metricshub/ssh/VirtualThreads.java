@@ -0,0 +1,52 @@
+package org.metricshub.ssh;
+
+/*-
+ * ╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲
+ * SSH Java Client
+ * ჻჻჻჻჻჻
+ * Copyright 2023 Metricshub
+ * ჻჻჻჻჻჻
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱╲╱
+ */
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (Java 21 version of the class, in the multi-release JAR).
+ */
+final class VirtualThreads {
+
+	/**
+	 * Before Java 24, a virtual thread waiting on a monitor (<code>Object.wait()</code>) blocks its
+	 * carrier thread, and the scheduler compensates with at most 256 additional carriers
+	 */
+	private static final boolean MONITOR_WAIT_PINS = Runtime.version().feature() < 24;
+
+	private VirtualThreads() {}
+
+	/**
+	 * @return a factory of virtual threads
+	 */
+	static ThreadFactory newThreadFactory() {
+		return Thread.ofVirtual().factory();
+	}
+
+	/**
+	 * @return whether the current thread must not wait on a monitor (<code>Object.wait()</code>)
+	 * for a long time, because it would block the carrier thread of a virtual thread
+	 */
+	static boolean isPinnedByMonitorWait() {
+		return MONITOR_WAIT_PINS && Thread.currentThread().isVirtual();
+	}
+}
@@ -0,0 +1,91 @@
+package org.metricshub.ssh;
+
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Session;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class BlockingThreadsTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testThreadFactory() throws Exception {
+		final ThreadFactory defaultFactory = BlockingThreads.getThreadFactory();
+		if (!BlockingThreads.isVirtualThreadsAvailable()) {
+			Assertions.assertSame(BlockingThreads.PLATFORM, defaultFactory);
+		}
+
+		final Thread thread = BlockingThreads.newThread("test", () -> {});
+		Assertions.assertEquals("test", thread.getName());
+		Assertions.assertTrue(thread.isDaemon());
+
+		final ExecutorService executor = BlockingThreads.newFixedThreadPool("pool", 2);
+		try {
+			final Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+			Assertions.assertEquals("pool-1", name.get());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		try {
+			BlockingThreads.setThreadFactory(runnable -> new Thread(runnable, "custom"));
+			Assertions.assertFalse(BlockingThreads.newThread("custom", () -> {}).isDaemon());
+			Assertions.assertThrows(NullPointerException.class, () -> BlockingThreads.setThreadFactory(null));
+		} finally {
+			BlockingThreads.setThreadFactory(defaultFactory);
+		}
+	}
+
+	@Test
+	void testPollCondition() throws Exception {
+		try (
+			SshClient sshClient = sshServer.connect();
+			SshClient.CommandChannel channel = sshClient.openCommandChannel(0)
+		) {
+			final Session session = channel.getSession();
+			session.execCommand("sh -c \"sleep 0.5; echo ok; sleep 0.2; exit 3\"");
+
+			// Nothing before 500 ms
+			final int mask = ChannelCondition.STDOUT_DATA | ChannelCondition.EOF | ChannelCondition.CLOSED;
+			int condition = BlockingThreads.pollCondition(session, mask, 200);
+			Assertions.assertTrue(SshClient.hasTimeoutSession(condition));
+
+			condition = BlockingThreads.pollCondition(session, mask, 5000);
+			Assertions.assertTrue(SshClient.hasStdoutData(condition));
+			Assertions.assertEquals(3, session.getStdout().read(new byte[10]));
+
+			// The exit status triggers the check of the end of file, well before the check period
+			final long start = System.nanoTime();
+			Thread.currentThread().interrupt();
+			condition = BlockingThreads.pollCondition(session, ChannelCondition.EOF | ChannelCondition.CLOSED, 5000);
+			Assertions.assertTrue(Thread.interrupted());
+			Assertions.assertTrue(SshClient.hasEndOfFileSession(condition) || SshClient.hasSessionClosed(condition));
+			Assertions.assertTrue(System.nanoTime() - start < BlockingThreads.POLL_CHECK_PERIOD);
+			Assertions.assertEquals(3, session.getExitStatus());
+		}
+	}
+}
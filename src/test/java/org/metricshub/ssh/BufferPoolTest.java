@@ -0,0 +1,130 @@
+package org.metricshub.ssh;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+class BufferPoolTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	@Test
+	void testAcquireRelease() {
+		// Classes of 16 and 32 bytes, 2 buffers of 16 bytes at most
+		final BufferPool pool = new BufferPool(16, 32, 32);
+
+		final byte[] first = pool.acquire();
+		final byte[] second = pool.acquire();
+		final byte[] third = pool.acquire();
+		Assertions.assertEquals(16, first.length);
+		Assertions.assertEquals(3, pool.getStatistics().getMisses());
+
+		// Only 32 bytes are kept
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+		BufferPool.Statistics statistics = pool.getStatistics();
+		Assertions.assertEquals(1, statistics.getDiscarded());
+		Assertions.assertEquals(32, statistics.getRetainedBytes());
+
+		// Reused
+		final byte[] reused = pool.acquire(10);
+		Assertions.assertTrue(reused == first || reused == second);
+		Assertions.assertEquals(1, pool.getStatistics().getHits());
+
+		Assertions.assertNotNull(pool.acquire());
+		Assertions.assertEquals(0, pool.getStatistics().getRetainedBytes());
+
+		// Size classes
+		final byte[] medium = pool.acquire(17);
+		Assertions.assertEquals(32, medium.length);
+		pool.release(medium);
+		Assertions.assertSame(medium, pool.acquire(32));
+
+		// Larger buffers are allocated with the exact size, and not kept
+		final byte[] large = pool.acquire(100);
+		Assertions.assertEquals(100, large.length);
+		pool.release(large);
+		pool.release(new byte[8]);
+		pool.release(null);
+		statistics = pool.getStatistics();
+		Assertions.assertEquals(5, statistics.getMisses());
+		Assertions.assertEquals(3, statistics.getHits());
+		Assertions.assertEquals(0, statistics.getRetainedBytes());
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new BufferPool(24, 32, 32));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new BufferPool(32, 16, 32));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new BufferPool(16, 32, 0));
+	}
+
+	@Test
+	void testConcurrentAcquireRelease() throws Exception {
+		final BufferPool pool = new BufferPool(16, 64, 16 * 16);
+		final Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int size = 16 << (t % 3);
+			threads[t] =
+				new Thread(() -> {
+					for (int i = 0; i < 10000; i++) {
+						final byte[] buffer = pool.acquire(size);
+						buffer[0] = 1;
+						pool.release(buffer);
+					}
+				});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		final BufferPool.Statistics statistics = pool.getStatistics();
+		Assertions.assertEquals(80000, statistics.getHits() + statistics.getMisses());
+		Assertions.assertTrue(statistics.getRetainedBytes() <= 16 * 16);
+		Assertions.assertTrue(statistics.getMisses() < 1000, statistics.toString());
+	}
+
+	@Test
+	@DisabledOnOs(OS.WINDOWS)
+	void testSteadyState() throws Exception {
+		final byte[] content = new byte[512 * 1024];
+		new Random(1).nextBytes(content);
+		Files.write(rootDirectory.resolve("file.bin"), content);
+
+		try (
+			EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory);
+			SshClient sshClient = sshServer.connect()
+		) {
+			// Warm up
+			sshClient.readFile("/file.bin", 0, -1, new NullOutputStream());
+			sshClient.executeCommand("head -c 100000 /dev/zero", 10000);
+
+			final long misses = BufferPool.getShared().getStatistics().getMisses();
+			final long hits = BufferPool.getShared().getStatistics().getHits();
+			for (int i = 0; i < 5; i++) {
+				Assertions.assertEquals(content.length, sshClient.readFile("/file.bin", 0, -1, new NullOutputStream()));
+				Assertions.assertEquals(100000, sshClient.executeCommand("head -c 100000 /dev/zero", 10000).totalBytes);
+			}
+
+			// The chunks of the file and of the output of the command reuse the same buffers
+			final BufferPool.Statistics statistics = BufferPool.getShared().getStatistics();
+			Assertions.assertTrue(statistics.getHits() - hits > 5 * 16, statistics.toString());
+			Assertions.assertTrue(statistics.getMisses() - misses < 5, statistics.toString());
+		}
+	}
+
+	private static class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(final int b) {}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {}
+	}
+}
@@ -0,0 +1,172 @@
+package org.metricshub.ssh;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+class CaptureOutputStreamTest {
+
+	/**
+	 * Write the bytes in random chunks
+	 */
+	private static CaptureOutputStream capture(final CapturePolicy policy, final byte[] bytes, final Random random) {
+		final CaptureOutputStream output = new CaptureOutputStream(policy);
+		int offset = 0;
+		while (offset < bytes.length) {
+			final int length = Math.min(bytes.length - offset, random.nextInt(3) == 0 ? 1 : random.nextInt(5000));
+			if (length == 1) {
+				output.write(bytes[offset]);
+			} else {
+				output.write(bytes, offset, length);
+			}
+			offset += length;
+		}
+		return output;
+	}
+
+	@Test
+	void testPolicies() {
+		final Random random = new Random(42);
+		for (int size : new int[] { 0, 1, 99, 100, 101, 3000, 50000 }) {
+			final byte[] bytes = new byte[size];
+			random.nextBytes(bytes);
+
+			for (int i = 0; i < 5; i++) {
+				CaptureOutputStream output = capture(CapturePolicy.head(100), bytes, random);
+				Assertions.assertArrayEquals(Arrays.copyOf(bytes, Math.min(size, 100)), output.toByteArray());
+				Assertions.assertEquals(size > 100, output.isTruncated());
+				Assertions.assertEquals(size, output.getTotalBytes());
+
+				output = capture(CapturePolicy.tail(100), bytes, random);
+				Assertions.assertArrayEquals(Arrays.copyOfRange(bytes, Math.max(0, size - 100), size), output.toByteArray());
+				Assertions.assertEquals(size > 100, output.isTruncated());
+
+				output = capture(CapturePolicy.headAndTail(101), bytes, random);
+				final byte[] expected = size <= 101
+					? bytes
+					: concat(Arrays.copyOf(bytes, 50), Arrays.copyOfRange(bytes, size - 51, size));
+				Assertions.assertArrayEquals(expected, output.toByteArray());
+				Assertions.assertEquals(size > 101, output.isTruncated());
+
+				output = capture(CapturePolicy.UNLIMITED, bytes, random);
+				Assertions.assertArrayEquals(bytes, output.toByteArray());
+				Assertions.assertFalse(output.isTruncated());
+			}
+		}
+	}
+
+	private static byte[] concat(final byte[] first, final byte[] second) {
+		final byte[] result = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	@Test
+	void testInvalidPolicy() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> CapturePolicy.tail(0));
+		Assertions.assertThrows(NullPointerException.class, () -> new CapturePolicy(10, null));
+	}
+
+	@Test
+	void testCommandCapture() throws Exception {
+		final CommandCapture capture = new CommandCapture(CapturePolicy.UNLIMITED);
+		final OutputStream stdout = capture.getStdoutSink();
+		final OutputStream stderr = capture.getStderrSink();
+		stdout.write("out1\n".getBytes(StandardCharsets.UTF_8));
+		stdout.write("out2\n".getBytes(StandardCharsets.UTF_8));
+		stderr.write("err1\n".getBytes(StandardCharsets.UTF_8));
+		stdout.write("out3\n".getBytes(StandardCharsets.UTF_8));
+
+		final SshClient.CommandResult result = new SshClient.CommandResult();
+		capture.fill(result, StandardCharsets.UTF_8, true);
+		Assertions.assertEquals("out1\nout2\nerr1\nout3\n", result.result);
+		Assertions.assertEquals("out1\nout2\nout3\n", result.getStdout());
+		Assertions.assertEquals("err1\n", result.getStderr());
+		Assertions.assertEquals(5, result.getStderrBytes().length);
+		Assertions.assertEquals(20, result.totalBytes);
+		Assertions.assertFalse(result.truncated);
+
+		// Truncated: stderr follows stdout
+		final CommandCapture truncated = new CommandCapture(CapturePolicy.tail(5));
+		truncated.getStdoutSink().write("out1\n".getBytes(StandardCharsets.UTF_8));
+		truncated.getStderrSink().write("err1\n".getBytes(StandardCharsets.UTF_8));
+		truncated.getStdoutSink().write("out2\n".getBytes(StandardCharsets.UTF_8));
+		truncated.fill(result, StandardCharsets.UTF_8, true);
+		Assertions.assertEquals("out2\nerr1\n", result.result);
+		Assertions.assertTrue(result.truncated);
+		Assertions.assertEquals(15, result.totalBytes);
+
+		// A character split by a run of stderr is decoded with the run that completes it
+		final byte[] euro = "€!".getBytes(StandardCharsets.UTF_8);
+		final CommandCapture split = new CommandCapture(CapturePolicy.UNLIMITED);
+		split.getStdoutSink().write(euro, 0, 1);
+		split.getStderrSink().write('x');
+		split.getStdoutSink().write(euro, 1, euro.length - 1);
+		split.fill(result, StandardCharsets.UTF_8, true);
+		Assertions.assertEquals("x€!", result.result);
+		Assertions.assertEquals("€!", result.getStdout());
+	}
+
+	@Test
+	@DisabledOnOs(OS.WINDOWS)
+	void testCapturePolicyOfCommands(@TempDir final Path rootDirectory) throws Exception {
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 1; i <= 100000; i++) {
+			expected.append(i).append('\n');
+		}
+
+		try (
+			EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory);
+			SshClient sshClient = sshServer.connect()
+		) {
+			SshClient.CommandResult result = sshClient.executeCommand("seq 1 100000", 10000, CapturePolicy.tail(13));
+			Assertions.assertEquals("99999\n100000\n", result.result);
+			Assertions.assertTrue(result.truncated);
+			Assertions.assertEquals(expected.length(), result.totalBytes);
+
+			result = sshClient.executeCommand("seq 1 100000", 10000, CapturePolicy.headAndTail(8));
+			Assertions.assertEquals("1\n2\n000\n", result.result);
+
+			// Default policy of the client, used by the asynchronous executions as well
+			sshClient.setCapturePolicy(CapturePolicy.head(4));
+			result = sshClient.executeCommandAsync("seq 1 100000", 10000).get();
+			Assertions.assertEquals("1\n2\n", result.result);
+			Assertions.assertTrue(result.truncated);
+			Assertions.assertEquals(expected.length(), result.totalBytes);
+
+			sshClient.setCapturePolicy(CapturePolicy.UNLIMITED);
+			result = sshClient.executeCommand("seq 1 100000", 10000);
+			Assertions.assertEquals(expected.toString(), result.result);
+			Assertions.assertFalse(result.truncated);
+			Assertions.assertEquals(expected.length(), result.totalBytes);
+		}
+	}
+
+	@Test
+	@DisabledOnOs(OS.WINDOWS)
+	void testSeparateStreams(@TempDir final Path rootDirectory) throws Exception {
+		try (
+			EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory);
+			SshClient sshClient = sshServer.connect()
+		) {
+			final String command = "sh -c \"echo out1; echo err1 >&2; sleep 0.3; echo out2\"";
+			for (SshClient.CommandResult result : new SshClient.CommandResult[] {
+				sshClient.executeCommand(command, 10000),
+				sshClient.executeCommandAsync(command, 10000).get()
+			}) {
+				Assertions.assertEquals("out1\nout2\n", result.getStdout());
+				Assertions.assertEquals("err1\n", result.getStderr());
+				Assertions.assertArrayEquals("err1\n".getBytes(StandardCharsets.UTF_8), result.getStderrBytes());
+				Assertions.assertTrue(result.result.endsWith("out2\n"));
+				Assertions.assertEquals(15, result.result.length());
+			}
+		}
+	}
+}
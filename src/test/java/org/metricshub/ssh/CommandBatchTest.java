@@ -0,0 +1,75 @@
+package org.metricshub.ssh;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class CommandBatchTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testBatch() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			final long start = System.currentTimeMillis();
+			final List<SshClient.CommandResult> results = sshClient.executeCommands(
+				Arrays.asList("echo a", "echo err >&2; exit 2", "cd /; pwd", "sleep 5; echo never", "printf last"),
+				1000
+			);
+			Assertions.assertTrue(System.currentTimeMillis() - start < 4000, "The timed out command has been killed");
+			Assertions.assertEquals(5, results.size());
+
+			Assertions.assertEquals("a\n", results.get(0).result);
+			Assertions.assertEquals(0, results.get(0).exitStatus);
+
+			Assertions.assertEquals("", results.get(1).getStdout());
+			Assertions.assertEquals("err\n", results.get(1).getStderr());
+			Assertions.assertEquals(2, results.get(1).exitStatus);
+
+			Assertions.assertEquals("/\n", results.get(2).result);
+
+			Assertions.assertFalse(results.get(3).success);
+			Assertions.assertEquals("", results.get(3).getStdout());
+			Assertions.assertTrue(results.get(3).executionTime >= 0.9f);
+
+			Assertions.assertTrue(results.get(4).success);
+			Assertions.assertEquals("last", results.get(4).result);
+
+			// The processes of a timed out pipeline are killed with it, and don't write into the next results
+			final List<SshClient.CommandResult> pipeline = sshClient.executeCommands(
+				Arrays.asList("for i in 1 2 3 4 5 6 7 8 9; do echo tick$i; sleep 0.5; done | cat", "echo next; sleep 1"),
+				3000
+			);
+			Assertions.assertFalse(pipeline.get(0).success);
+			Assertions.assertTrue(pipeline.get(0).getStdout().startsWith("tick1\n"));
+			Assertions.assertFalse(pipeline.get(0).getStdout().contains("tick9"));
+			Assertions.assertEquals("next\n", pipeline.get(1).result);
+
+			// Without timeout
+			final List<SshClient.CommandResult> noTimeout = sshClient.executeCommands(Arrays.asList("true", "false"), 0);
+			Assertions.assertEquals(0, noTimeout.get(0).exitStatus);
+			Assertions.assertEquals(1, noTimeout.get(1).exitStatus);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package org.metricshub.ssh;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class CommandChannelTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testConcurrentCommands() throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(12);
+		try (SshClient sshClient = sshServer.connect()) {
+			sshClient.setMaxConcurrentChannels(3);
+			sshServer.getAndResetMaxOpenChannels();
+
+			final List<Future<SshClient.CommandResult>> futures = new ArrayList<>();
+			for (int i = 0; i < 12; i++) {
+				final String command = "sh -c \"sleep 0.2; echo command " + i + "; exit " + i + "\"";
+				futures.add(executor.submit(() -> sshClient.executeCommand(command, 30000)));
+			}
+
+			// Each thread gets its own output and exit status
+			for (int i = 0; i < 12; i++) {
+				final SshClient.CommandResult result = futures.get(i).get();
+				Assertions.assertTrue(result.success);
+				Assertions.assertEquals("command " + i + "\n", result.result);
+				Assertions.assertEquals(i, result.exitStatus);
+			}
+
+			// Never more than 3 channels at the same time, all of them closed afterwards
+			final int maxOpenChannels = sshServer.getAndResetMaxOpenChannels();
+			Assertions.assertTrue(maxOpenChannels > 1 && maxOpenChannels <= 3, "Open channels: " + maxOpenChannels);
+			Assertions.assertEquals(0, sshServer.getAndResetMaxOpenChannels());
+
+			// The connection is still usable
+			Assertions.assertEquals("ok\n", sshClient.executeCommand("echo ok", 10000).result);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void testTimeoutWaitingForChannel() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			sshClient.setMaxConcurrentChannels(1);
+			final Thread longCommand = new Thread(() -> {
+				try {
+					sshClient.executeCommand("sleep 2", 10000);
+				} catch (Exception e) {
+					// Ignored
+				}
+			});
+			longCommand.start();
+			Thread.sleep(300);
+
+			// No channel available within the timeout
+			final SshClient.CommandResult result = sshClient.executeCommand("echo late", 500);
+			Assertions.assertFalse(result.success);
+			Assertions.assertTrue(result.result.startsWith("Timeout"));
+
+			longCommand.join();
+			Assertions.assertEquals("late\n", sshClient.executeCommand("echo late", 10000).result);
+		}
+	}
+
+	@Test
+	void testInvalidMaxConcurrentChannels() {
+		final SshClient sshClient = new SshClient("localhost");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> sshClient.setMaxConcurrentChannels(0));
+	}
+}
@@ -0,0 +1,177 @@
+package org.metricshub.ssh;
+
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Session;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class CommandExecutionTest {
+
+	@Test
+	void testManyRunningCommands() throws Exception {
+		// Sessions that never end: each check of the end of file blocks for 1 millisecond
+		// (stub-only mocks, as the invocations are too many to be recorded)
+		final AtomicInteger eofChecks = new AtomicInteger();
+		final Set<String> startThreads = ConcurrentHashMap.newKeySet();
+		final AtomicInteger started = new AtomicInteger();
+		final Session runningSession = Mockito.mock(Session.class, Mockito.withSettings().stubOnly());
+		Mockito.doReturn(null).when(runningSession).getExitStatus();
+		Mockito.doReturn(null).when(runningSession).getExitSignal();
+		Mockito
+			.doAnswer(invocation -> {
+				startThreads.add(Thread.currentThread().getName());
+				started.incrementAndGet();
+				return null;
+			})
+			.when(runningSession)
+			.execCommand(ArgumentMatchers.anyString());
+		Mockito
+			.doAnswer(invocation -> {
+				eofChecks.incrementAndGet();
+				Thread.sleep(1);
+				return ChannelCondition.TIMEOUT;
+			})
+			.when(runningSession)
+			.waitForCondition(ArgumentMatchers.anyInt(), ArgumentMatchers.anyLong());
+		final SshClient runningClient = mockClient(runningSession);
+
+		try (CommandScheduler scheduler = new CommandScheduler(2, 1000L)) {
+			for (int i = 0; i < 3000; i++) {
+				scheduler.submit(new CommandExecution(runningClient, "sleep 3600", 0));
+			}
+
+			// The commands are started outside of the polling threads
+			final long deadline = System.currentTimeMillis() + 10000;
+			while (started.get() < 3000 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Assertions.assertEquals(3000, started.get());
+			Assertions.assertTrue(
+				startThreads.stream().allMatch(name -> name.contains("-start-")),
+				"Started by the polling threads: " + startThreads
+			);
+
+			// The blocking checks of the end of file happen, within the budget of the scheduler
+			// (3 seconds span 4 one-second windows at most)
+			eofChecks.set(0);
+			Thread.sleep(3000);
+			final int checks = eofChecks.get();
+			Assertions.assertTrue(checks > 0, "No check of the end of file");
+			Assertions.assertTrue(checks <= 4 * 2 * CommandScheduler.EOF_CHECKS_PER_THREAD, "Too many checks: " + checks);
+
+			// A command that completes is still picked up
+			final CommandExecution completed = new CommandExecution(mockClient(completedSession()), "true", 0);
+			Assertions.assertEquals(0, scheduler.submit(completed).get(10, TimeUnit.SECONDS).exitStatus);
+			Assertions.assertEquals(3000, scheduler.getPendingCommands());
+		}
+	}
+
+	@Test
+	void testStartingCommand() throws Exception {
+		// A session that takes longer to open than the timeout of the command
+		final CountDownLatch opening = new CountDownLatch(1);
+		final CountDownLatch closed = new CountDownLatch(1);
+		final AtomicBoolean executed = new AtomicBoolean();
+		final Session slowSession = Mockito.mock(Session.class, Mockito.withSettings().stubOnly());
+		Mockito
+			.doAnswer(invocation -> {
+				executed.set(true);
+				return null;
+			})
+			.when(slowSession)
+			.execCommand(ArgumentMatchers.anyString());
+		final SshClient slowClient = mockClient(slowSession);
+		final SshClient.CommandChannel slowChannel = slowClient.openCommandChannel(new Semaphore(0));
+		Mockito
+			.doAnswer(invocation -> {
+				closed.countDown();
+				return null;
+			})
+			.when(slowChannel)
+			.close();
+		Mockito
+			.doAnswer(invocation -> {
+				opening.await();
+				return slowChannel;
+			})
+			.when(slowClient)
+			.openCommandChannel(ArgumentMatchers.any(Semaphore.class));
+
+		// A session that cannot be opened
+		final SshClient failingClient = mockClient(completedSession());
+		Mockito
+			.doThrow(new IOException("No session"))
+			.when(failingClient)
+			.openCommandChannel(ArgumentMatchers.any(Semaphore.class));
+
+		try (CommandScheduler scheduler = new CommandScheduler(1, 100L)) {
+			final CompletableFuture<SshClient.CommandResult> slow = scheduler.submit(
+				new CommandExecution(slowClient, "sleep 1", 200)
+			);
+
+			// The only polling thread keeps driving the other commands meanwhile
+			final CommandExecution completed = new CommandExecution(mockClient(completedSession()), "true", 0);
+			Assertions.assertEquals(0, scheduler.submit(completed).get(5, TimeUnit.SECONDS).exitStatus);
+			final ExecutionException e = Assertions.assertThrows(
+				ExecutionException.class,
+				() -> scheduler.submit(new CommandExecution(failingClient, "true", 0)).get(5, TimeUnit.SECONDS)
+			);
+			Assertions.assertEquals("No session", e.getCause().getMessage());
+
+			final SshClient.CommandResult result = slow.get(5, TimeUnit.SECONDS);
+			Assertions.assertFalse(result.success);
+			Assertions.assertTrue(result.result.startsWith("Timeout"), result.result);
+
+			// The session opened too late is closed, and the command is not started
+			opening.countDown();
+			Assertions.assertTrue(closed.await(5, TimeUnit.SECONDS));
+			Assertions.assertFalse(executed.get());
+		}
+	}
+
+	/**
+	 * @return a session of a command that completes right away
+	 */
+	private static Session completedSession() {
+		final Session session = Mockito.mock(Session.class, Mockito.withSettings().stubOnly());
+		Mockito.doReturn(0).when(session).getExitStatus();
+		Mockito
+			.doReturn(ChannelCondition.EOF)
+			.when(session)
+			.waitForCondition(ArgumentMatchers.anyInt(), ArgumentMatchers.anyLong());
+		return session;
+	}
+
+	/**
+	 * @return a client whose command channels have the specified session, without output
+	 */
+	private static SshClient mockClient(final Session session) throws IOException {
+		Mockito.doReturn(new ByteArrayInputStream(new byte[0])).when(session).getStdout();
+		Mockito.doReturn(new ByteArrayInputStream(new byte[0])).when(session).getStderr();
+		final SshClient.CommandChannel channel = Mockito.mock(
+			SshClient.CommandChannel.class,
+			Mockito.withSettings().stubOnly()
+		);
+		Mockito.doReturn(session).when(channel).getSession();
+		final SshClient sshClient = Mockito.mock(SshClient.class, Mockito.withSettings().stubOnly());
+		Mockito.doReturn(CapturePolicy.UNLIMITED).when(sshClient).getCapturePolicy();
+		Mockito.doReturn(StandardCharsets.UTF_8).when(sshClient).getCharset();
+		Mockito.doReturn(new Semaphore(0)).when(sshClient).tryAcquireCommandChannel();
+		Mockito.doReturn(channel).when(sshClient).openCommandChannel(ArgumentMatchers.any(Semaphore.class));
+		return sshClient;
+	}
+}
@@ -0,0 +1,110 @@
+package org.metricshub.ssh;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class CommandOutputListenerTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testStreamingOutput() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			// Lines are received while the command is still running
+			final List<String> lines = new ArrayList<>();
+			final List<Long> times = new ArrayList<>();
+			final SshClient.CommandResult result = sshClient.executeCommand(
+				"sh -c \"echo first; echo oops >&2; sleep 1; printf last\"",
+				10000,
+				CommandOutputListener.lines((stream, line) -> {
+					lines.add(stream + ":" + line);
+					times.add(System.currentTimeMillis());
+				})
+			);
+			final long end = System.currentTimeMillis();
+			Assertions.assertTrue(result.success);
+			Assertions.assertEquals(0, result.exitStatus);
+			Assertions.assertEquals("", result.result);
+			Assertions.assertEquals(3, lines.size());
+			Assertions.assertTrue(lines.containsAll(Arrays.asList("STDOUT:first", "STDERR:oops", "STDOUT:last")));
+			Assertions.assertTrue(end - times.get(0) >= 500, "First line received at the end");
+
+			// The listener stops an endless command
+			final int[] count = { 0 };
+			final IOException e = Assertions.assertThrows(
+				IOException.class,
+				() ->
+					sshClient.executeCommand(
+						"yes",
+						10000,
+						CommandOutputListener.lines((stream, line) -> {
+							if (++count[0] == 1000) {
+								throw new IOException("Enough");
+							}
+						})
+					)
+			);
+			Assertions.assertEquals("Enough", e.getMessage());
+			Assertions.assertEquals("ok\n", sshClient.executeCommand("echo ok", 10000).result);
+		}
+	}
+
+	@Test
+	void testStreamingOutputFailure() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			// The listener fails on stderr while the last line of stdout is incomplete
+			final List<String> lines = new ArrayList<>();
+			final CommandOutputListener lineListener = CommandOutputListener.lines((stream, line) -> {
+				if ("stop".equals(line)) {
+					throw new IOException("Stopped");
+				}
+				lines.add(stream + ":" + line);
+			});
+			final int[] ends = { 0 };
+			final CommandOutputListener listener = new CommandOutputListener() {
+				@Override
+				public void onOutput(final Stream stream, final String text) throws IOException {
+					lineListener.onOutput(stream, text);
+				}
+
+				@Override
+				public void onEnd() throws IOException {
+					ends[0]++;
+					lineListener.onEnd();
+				}
+			};
+
+			final IOException e = Assertions.assertThrows(
+				IOException.class,
+				() -> sshClient.executeCommand("sh -c \"printf partial; sleep 1; echo stop >&2; sleep 5\"", 10000, listener)
+			);
+			Assertions.assertEquals("Stopped", e.getMessage());
+			Assertions.assertEquals(1, ends[0]);
+			Assertions.assertEquals(Arrays.asList("STDOUT:partial"), lines);
+		}
+	}
+}
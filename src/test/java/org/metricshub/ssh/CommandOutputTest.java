@@ -0,0 +1,116 @@
+package org.metricshub.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommandOutputTest {
+
+	@TempDir
+	Path directory;
+
+	private static String text() {
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			text.append("ligne ").append(i).append(" température 温度\n");
+		}
+		return text.toString();
+	}
+
+	private static void write(final CommandOutput output, final byte[] bytes) throws Exception {
+		final OutputStream sink = output.getSink();
+		for (int offset = 0; offset < bytes.length; offset += 1000) {
+			sink.write(bytes, offset, Math.min(1000, bytes.length - offset));
+		}
+	}
+
+	private static long countFiles(final Path directory) throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+
+	@Test
+	void testMemoryAndSpill() throws Exception {
+		final String text = text();
+		final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+		for (int threshold : new int[] { 0, 4096, bytes.length }) {
+			try (CommandOutput output = new CommandOutput(threshold, directory)) {
+				write(output, bytes);
+				Assertions.assertEquals(bytes.length, output.size());
+				Assertions.assertEquals(threshold < bytes.length, output.isSpilled());
+				Assertions.assertEquals(threshold < bytes.length ? 1 : 0, countFiles(directory));
+
+				// Bytes
+				final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+				try (InputStream inputStream = output.getInputStream()) {
+					final byte[] buffer = new byte[777];
+					int bytesRead;
+					while ((bytesRead = inputStream.read(buffer)) >= 0) {
+						copy.write(buffer, 0, bytesRead);
+					}
+				}
+				Assertions.assertArrayEquals(bytes, copy.toByteArray());
+
+				// Characters
+				final CharSequence chars = output.asCharSequence();
+				Assertions.assertEquals(text.length(), chars.length());
+				Assertions.assertEquals(text, chars.toString());
+				Assertions.assertEquals(text.substring(12345, 12400), chars.subSequence(12345, 12400).toString());
+
+				// Lines
+				final Iterator<String> lines = output.lines().iterator();
+				Assertions.assertEquals("ligne 0 température 温度", lines.next());
+				Assertions.assertEquals(5000, output.lines().collect(Collectors.counting()));
+
+				// Read-only from now on
+				Assertions.assertThrows(IllegalStateException.class, () -> output.getSink().write(1));
+			}
+
+			// Temporary files deleted
+			Assertions.assertEquals(0, countFiles(directory));
+		}
+	}
+
+	@Test
+	void testClosed() throws Exception {
+		final CommandOutput output = new CommandOutput(0, directory);
+		write(output, new byte[] { 'a', 'b' });
+		output.close();
+		output.close();
+		Assertions.assertThrows(IllegalStateException.class, output::getInputStream);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new CommandOutput(-1, directory));
+	}
+
+	@Test
+	@DisabledOnOs(OS.WINDOWS)
+	void testSpilledCommandOutput(@TempDir final Path rootDirectory) throws Exception {
+		try (
+			EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory);
+			SshClient sshClient = sshServer.connect();
+			CommandOutput output = new CommandOutput(1000, directory)
+		) {
+			final SshClient.CommandResult result = sshClient.executeCommand("seq 1 100000", 10000, output);
+			Assertions.assertTrue(result.success);
+			Assertions.assertEquals("", result.result);
+			Assertions.assertSame(output, result.output);
+			Assertions.assertTrue(output.isSpilled());
+			Assertions.assertEquals(output.size(), result.totalBytes);
+			Assertions.assertEquals(100000, output.lines().count());
+			final CharSequence chars = output.asCharSequence();
+			Assertions.assertEquals("100000\n", chars.subSequence(chars.length() - 7, chars.length()).toString());
+		}
+	}
+}
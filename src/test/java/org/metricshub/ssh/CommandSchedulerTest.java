@@ -0,0 +1,93 @@
+package org.metricshub.ssh;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class CommandSchedulerTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testAsyncCommands() throws Exception {
+		try (SshClient sshClient = sshServer.connect(); CommandScheduler scheduler = new CommandScheduler(1, 50L)) {
+			sshClient.setMaxConcurrentChannels(5);
+
+			// 20 commands driven by a single thread, 5 at a time
+			final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				final String command = "sh -c \"sleep 0.1; echo async " + i + "; exit " + i + "\"";
+				futures.add(
+					sshClient
+						.executeCommandAsync(command, 30000, scheduler)
+						.thenApply(result -> result.result.equals("async " + result.exitStatus + "\n") ? result.exitStatus : -1)
+				);
+			}
+			for (int i = 0; i < 20; i++) {
+				Assertions.assertEquals(i, futures.get(i).get(30, TimeUnit.SECONDS));
+			}
+			Assertions.assertEquals(0, scheduler.getPendingCommands());
+
+			// Timeout
+			final SshClient.CommandResult result = sshClient.executeCommandAsync("sleep 5", 500, scheduler).get();
+			Assertions.assertFalse(result.success);
+			Assertions.assertEquals("Timeout (0 seconds)", result.result);
+
+			// Cancelling gives the session back
+			sshClient.setMaxConcurrentChannels(1);
+			final CompletableFuture<SshClient.CommandResult> cancelled = sshClient.executeCommandAsync(
+				"sleep 5",
+				0,
+				scheduler
+			);
+			Thread.sleep(200);
+			cancelled.cancel(true);
+			Assertions.assertEquals(
+				"after\n",
+				sshClient.executeCommandAsync("echo after", 10000, scheduler).get(10, TimeUnit.SECONDS).result
+			);
+		}
+	}
+
+	@Test
+	void testClosedScheduler() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			final CommandScheduler scheduler = new CommandScheduler();
+			final CompletableFuture<SshClient.CommandResult> pending = sshClient.executeCommandAsync("sleep 5", 0, scheduler);
+			scheduler.close();
+
+			final ExecutionException e = Assertions.assertThrows(ExecutionException.class, pending::get);
+			Assertions.assertTrue(e.getCause() instanceof IOException);
+			Assertions.assertThrows(IllegalStateException.class, () -> sshClient.executeCommandAsync("echo", 0, scheduler));
+			Assertions.assertThrows(IllegalStateException.class, () -> CommandScheduler.getShared().close());
+
+			// The shared scheduler
+			Assertions.assertEquals("shared\n", sshClient.executeCommandAsync("echo shared", 10000).get().result);
+		}
+	}
+}
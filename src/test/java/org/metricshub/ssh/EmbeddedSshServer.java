@@ -0,0 +1,109 @@
+package org.metricshub.ssh;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.sshd.common.channel.Channel;
+import org.apache.sshd.common.channel.ChannelListener;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.command.CommandFactory;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.shell.ProcessShellCommandFactory;
+import org.apache.sshd.server.shell.ProcessShellFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+/**
+ * In-process SSH server listening on localhost, with the SFTP subsystem rooted in the specified
+ * directory, and commands and shells executed by the local shell.
+ */
+class EmbeddedSshServer implements AutoCloseable {
+
+	static final String USERNAME = "user";
+	static final char[] PASSWORD = "password".toCharArray();
+
+	private final SshServer sshServer;
+
+	private final Set<Channel> openChannels = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger maxOpenChannels = new AtomicInteger();
+
+	EmbeddedSshServer(final Path rootDirectory) throws IOException {
+		sshServer = SshServer.setUpDefaultServer();
+		sshServer.setHost("localhost");
+		sshServer.setPort(0);
+		sshServer.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+		sshServer.setPasswordAuthenticator((username, password, session) ->
+			USERNAME.equals(username) && String.valueOf(PASSWORD).equals(password)
+		);
+		sshServer.setFileSystemFactory(new VirtualFileSystemFactory(rootDirectory));
+		sshServer.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+		sshServer.setCommandFactory(ProcessShellCommandFactory.INSTANCE);
+		sshServer.setShellFactory(new ProcessShellFactory("/bin/sh", "/bin/sh"));
+		sshServer.addChannelListener(
+			new ChannelListener() {
+				@Override
+				public void channelOpenSuccess(final Channel channel) {
+					openChannels.add(channel);
+					maxOpenChannels.accumulateAndGet(openChannels.size(), Math::max);
+				}
+
+				@Override
+				public void channelClosed(final Channel channel, final Throwable reason) {
+					openChannels.remove(channel);
+				}
+			}
+		);
+		sshServer.start();
+	}
+
+	int getPort() {
+		return sshServer.getPort();
+	}
+
+	/**
+	 * Replaces the execution of the commands by the local shell
+	 *
+	 * @param commandFactory Creates the commands run by the server
+	 */
+	void setCommandFactory(final CommandFactory commandFactory) {
+		sshServer.setCommandFactory(commandFactory);
+	}
+
+	/**
+	 * Replaces the check of the username and password
+	 *
+	 * @param passwordAuthenticator Checks the passwords of the clients
+	 */
+	void setPasswordAuthenticator(final PasswordAuthenticator passwordAuthenticator) {
+		sshServer.setPasswordAuthenticator(passwordAuthenticator);
+	}
+
+	/**
+	 * @return the highest number of channels that have been open at the same time, since the last call
+	 */
+	int getAndResetMaxOpenChannels() {
+		return maxOpenChannels.getAndSet(openChannels.size());
+	}
+
+	/**
+	 * @return a new client, connected and authenticated against this server
+	 */
+	SshClient connect() throws IOException {
+		final SshClient sshClient = new SshClient("localhost");
+		sshClient.connect(10000, getPort());
+		if (!sshClient.authenticate(USERNAME, PASSWORD)) {
+			sshClient.close();
+			throw new IOException("Authentication failed against the embedded SSH server");
+		}
+		return sshClient;
+	}
+
+	@Override
+	public void close() throws IOException {
+		sshServer.stop(true);
+	}
+}
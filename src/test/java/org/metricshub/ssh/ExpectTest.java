@@ -0,0 +1,173 @@
+package org.metricshub.ssh;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Queue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class ExpectTest {
+
+	@TempDir
+	Path rootDirectory;
+
+	/**
+	 * Creates an Expect on a client whose session returns the specified chunks, one per read,
+	 * then nothing. An empty chunk waits for longer than the timeout of the read, and a null chunk is
+	 * the end of the output.
+	 */
+	private static Expect expect(final String... chunks) throws Exception {
+		final Queue<String> queue = new LinkedList<>(Arrays.asList(chunks));
+		final SshClient sshClient = Mockito.mock(SshClient.class);
+		Mockito
+			.doAnswer(invocation -> {
+				if (queue.isEmpty()) {
+					Thread.sleep(Math.min(10, invocation.getArgument(1, Long.class)));
+					return 0;
+				}
+				final String chunk = queue.remove();
+				if (chunk == null) {
+					return -1;
+				}
+				if (chunk.isEmpty()) {
+					Thread.sleep(invocation.getArgument(1, Long.class) + 1);
+				}
+				invocation.getArgument(0, StringBuilder.class).append(chunk);
+				return chunk.length();
+			})
+			.when(sshClient)
+			.readTo(ArgumentMatchers.any(StringBuilder.class), ArgumentMatchers.anyLong());
+		return new Expect(sshClient);
+	}
+
+	@Test
+	void testAhoCorasick() {
+		final AhoCorasick automaton = new AhoCorasick("he", "she", "his", "hers");
+		final String text = "ushers";
+		int state = AhoCorasick.ROOT;
+		final int[] matches = new int[text.length()];
+		for (int i = 0; i < text.length(); i++) {
+			state = automaton.next(state, text.charAt(i));
+			matches[i] = automaton.match(state);
+		}
+		// "she" and "he" end at the same position: the first literal wins
+		Assertions.assertArrayEquals(new int[] { -1, -1, -1, 0, -1, 3 }, matches);
+		Assertions.assertEquals(4, automaton.length(3));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new AhoCorasick("a", ""));
+	}
+
+	@Test
+	void testMatch() throws Exception {
+		final ExpectPatterns patterns = new ExpectPatterns()
+			.withLiterals("$ ", "# ")
+			.withRegexes("[Pp]assword: *$", "^error (\\d+)");
+		Assertions.assertEquals(4, patterns.size());
+		Assertions.assertEquals("# ", patterns.get(1));
+
+		// Literal and regex split between chunks, text after the match kept for the next call
+		final Expect expect = expect("Last login\nhost", "$ rest", "\nPass", "word: ", "error 1 after $ ", "x", "", null);
+		Expect.Result result = expect.expect(patterns, 1000);
+		Assertions.assertEquals(Expect.Outcome.MATCH, result.getOutcome());
+		Assertions.assertEquals(0, result.getIndex());
+		Assertions.assertEquals("Last login\nhost", result.getBefore());
+		Assertions.assertEquals("$ ", result.getMatch());
+
+		// "$" matches at the end of the text received so far
+		result = expect.expect(patterns, 1000);
+		Assertions.assertEquals(2, result.getIndex());
+		Assertions.assertEquals("rest\n", result.getBefore());
+		Assertions.assertEquals("Password: ", result.getMatch());
+
+		// "^" only at the beginning of a line
+		result = expect.expect(patterns, 1000);
+		Assertions.assertEquals(0, result.getIndex());
+		Assertions.assertEquals("error 1 after ", result.getBefore());
+
+		// Nothing more: timeout (the text is kept), then end of the output
+		result = expect.expect(patterns, 50);
+		Assertions.assertEquals(Expect.Outcome.TIMEOUT, result.getOutcome());
+		Assertions.assertEquals("x", result.getBefore());
+		Assertions.assertNull(result.getMatch());
+		result = expect.expect(patterns, 1000);
+		Assertions.assertEquals(Expect.Outcome.CLOSED, result.getOutcome());
+		Assertions.assertEquals("x", result.getBefore());
+	}
+
+	@Test
+	void testEarliestMatch() throws Exception {
+		// The regex ends before the literal, in the same chunk, and in an earlier line
+		final ExpectPatterns patterns = new ExpectPatterns().withLiterals("long prompt>").withRegexes("ok$");
+		final Expect expect = expect("a ok\nb long prompt>c ok");
+		Expect.Result result = expect.expect(patterns, 1000);
+		Assertions.assertEquals(1, result.getIndex());
+		Assertions.assertEquals("a ", result.getBefore());
+		result = expect.expect(patterns, 1000);
+		Assertions.assertEquals(0, result.getIndex());
+		Assertions.assertEquals("\nb ", result.getBefore());
+		result = expect.expect(patterns, 1000);
+		Assertions.assertEquals("ok", result.getMatch());
+
+		// Other patterns on the text kept
+		final Expect other = expect("one two three");
+		Assertions.assertEquals("one ", other.expect(new ExpectPatterns().withLiterals("two"), 1000).getBefore());
+		Assertions.assertEquals(" ", other.expect(new ExpectPatterns().withRegexes("t\\w+"), 1000).getBefore());
+	}
+
+	@Test
+	void testIdle() throws Exception {
+		final Expect expect = expect("output ", "of the command\n");
+		final long start = System.nanoTime();
+		final Expect.Result result = expect.expect(new ExpectPatterns().withLiterals("$ "), 10000, 100);
+		Assertions.assertEquals(Expect.Outcome.IDLE, result.getOutcome());
+		Assertions.assertEquals("output of the command\n", result.getBefore());
+		Assertions.assertTrue(System.nanoTime() - start < 5_000_000_000L);
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> expect.expect(new ExpectPatterns(), 0));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> expect.expect(new ExpectPatterns(), 10, -1));
+	}
+
+	@Test
+	void testManyPrompts() throws Exception {
+		// 500 prompts, in 20,000 chunks
+		final String[] prompts = new String[500];
+		for (int i = 0; i < prompts.length; i++) {
+			prompts[i] = "prompt" + i + "> ";
+		}
+		final ExpectPatterns patterns = new ExpectPatterns().withLiterals(prompts).withRegexes("^never matched$");
+		final String[] chunks = new String[20000];
+		Arrays.fill(chunks, "data prompt1 prompt2>\n");
+		chunks[chunks.length - 2] = "prompt4";
+		chunks[chunks.length - 1] = "99> ";
+		final Expect.Result result = expect(chunks).expect(patterns, 30000);
+		Assertions.assertEquals(499, result.getIndex());
+		Assertions.assertEquals(22 * (chunks.length - 2), result.getBefore().length());
+	}
+
+	@Test
+	@DisabledOnOs(OS.WINDOWS)
+	void testShell() throws Exception {
+		try (
+			EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory);
+			SshClient sshClient = sshServer.connect()
+		) {
+			sshClient.openSession();
+			sshClient.openTerminal();
+			final Expect expect = new Expect(sshClient);
+			expect.send("printf 'Password: '; read secret; echo \"got $secret\"\n");
+			Assertions.assertTrue(expect.expect(new ExpectPatterns().withRegexes("Password: *$"), 10000).isMatch());
+			expect.send("pass\n");
+			Assertions.assertTrue(expect.expect(new ExpectPatterns().withLiterals("got pass\n"), 10000).isMatch());
+			expect.send("exit\n");
+			Assertions.assertEquals(
+				Expect.Outcome.CLOSED,
+				expect.expect(new ExpectPatterns().withLiterals("never"), 10000).getOutcome()
+			);
+		}
+	}
+}
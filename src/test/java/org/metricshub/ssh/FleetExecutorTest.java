@@ -0,0 +1,173 @@
+package org.metricshub.ssh;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.sshd.server.auth.AsyncAuthException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class FleetExecutorTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static final EmbeddedSshServer[] SERVERS = new EmbeddedSshServer[3];
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		for (int i = 0; i < SERVERS.length; i++) {
+			SERVERS[i] = new EmbeddedSshServer(rootDirectory);
+		}
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		for (EmbeddedSshServer server : SERVERS) {
+			server.close();
+		}
+	}
+
+	private static FleetExecutor.Target target(final EmbeddedSshServer server, final char[] password) {
+		return new FleetExecutor.Target("localhost", server.getPort(), EmbeddedSshServer.USERNAME, password, null);
+	}
+
+	@Test
+	void testExecute() throws Exception {
+		final List<FleetExecutor.Target> targets = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			targets.add(target(SERVERS[i % SERVERS.length], EmbeddedSshServer.PASSWORD));
+		}
+		targets.add(target(SERVERS[0], "wrong".toCharArray()));
+		for (EmbeddedSshServer server : SERVERS) {
+			server.getAndResetMaxOpenChannels();
+		}
+
+		final AtomicInteger received = new AtomicInteger();
+		final FleetExecutor.Summary summary;
+		try (FleetExecutor fleetExecutor = new FleetExecutor(4, 100, StandardCharsets.UTF_8)) {
+			summary =
+				fleetExecutor.execute(
+					targets,
+					"sh -c \"sleep 0.1; echo ok\"",
+					10000,
+					result -> {
+						received.incrementAndGet();
+						if (result.getTarget().getPort() == SERVERS[0].getPort() && !result.isSuccess()) {
+							Assertions.assertEquals(FleetExecutor.Step.AUTHENTICATE, result.getFailedStep());
+							Assertions.assertNotNull(result.getError());
+						} else {
+							Assertions.assertTrue(result.isSuccess(), result.toString());
+							Assertions.assertEquals("ok\n", result.getCommandResult().result);
+						}
+					}
+				);
+		}
+
+		Assertions.assertEquals(31, received.get());
+		Assertions.assertEquals(31, summary.getTotal());
+		Assertions.assertEquals(30, summary.getSucceeded());
+		Assertions.assertEquals(1, summary.getFailed());
+		Assertions.assertEquals(0, summary.getTimedOut());
+		Assertions.assertTrue(summary.getLatencyPercentile(50) >= 100);
+		Assertions.assertTrue(summary.getLatencyPercentile(50) <= summary.getLatencyPercentile(99));
+
+		// Never more than 4 hosts at the same time
+		int maxOpenChannels = 0;
+		for (EmbeddedSshServer server : SERVERS) {
+			maxOpenChannels = Math.max(maxOpenChannels, server.getAndResetMaxOpenChannels());
+		}
+		Assertions.assertTrue(maxOpenChannels <= 4, "Open channels: " + maxOpenChannels);
+	}
+
+	@Test
+	void testFailures() throws Exception {
+		final List<FleetExecutor.Target> targets = new ArrayList<>();
+		// Nothing listens on this port once the server is stopped
+		final EmbeddedSshServer stopped = new EmbeddedSshServer(rootDirectory);
+		stopped.close();
+		targets.add(target(stopped, EmbeddedSshServer.PASSWORD));
+		targets.add(target(SERVERS[1], EmbeddedSshServer.PASSWORD));
+
+		try (FleetExecutor fleetExecutor = new FleetExecutor()) {
+			final List<FleetExecutor.HostResult> results = new ArrayList<>();
+			final FleetExecutor.Summary summary = fleetExecutor.execute(targets, "sleep 5", 1000, results::add);
+			Assertions.assertEquals(2, results.size());
+			Assertions.assertEquals(1, summary.getFailed());
+			Assertions.assertEquals(1, summary.getTimedOut());
+			for (FleetExecutor.HostResult result : results) {
+				if (result.getTarget().getPort() == SERVERS[1].getPort()) {
+					Assertions.assertTrue(result.isTimedOut());
+					Assertions.assertNull(result.getFailedStep());
+				} else {
+					Assertions.assertEquals(FleetExecutor.Step.CONNECT, result.getFailedStep());
+				}
+			}
+		}
+	}
+
+	@Test
+	void testAuthenticationTimeout() throws Exception {
+		// A server that never answers the password authentication
+		try (EmbeddedSshServer stalled = new EmbeddedSshServer(rootDirectory)) {
+			stalled.setPasswordAuthenticator((username, password, session) -> {
+				throw new AsyncAuthException();
+			});
+			final List<FleetExecutor.Target> targets = new ArrayList<>();
+			targets.add(target(stalled, EmbeddedSshServer.PASSWORD));
+			targets.add(target(SERVERS[2], EmbeddedSshServer.PASSWORD));
+
+			try (FleetExecutor fleetExecutor = new FleetExecutor(1, 100, StandardCharsets.UTF_8)) {
+				final List<FleetExecutor.HostResult> results = new ArrayList<>();
+				final FleetExecutor.Summary summary = fleetExecutor.execute(targets, "echo ok", 2000, results::add);
+				Assertions.assertEquals(1, summary.getSucceeded());
+				Assertions.assertEquals(1, summary.getTimedOut());
+
+				// The stalled host is given up at its deadline, and the next host gets the worker
+				final FleetExecutor.HostResult result = results.get(0);
+				Assertions.assertEquals(stalled.getPort(), result.getTarget().getPort());
+				Assertions.assertTrue(result.isTimedOut());
+				Assertions.assertEquals(FleetExecutor.Step.AUTHENTICATE, result.getFailedStep());
+				Assertions.assertTrue(result.getLatency() >= 2000 && result.getLatency() < 5000, result.toString());
+				Assertions.assertTrue(results.get(1).isSuccess(), results.get(1).toString());
+			}
+		}
+	}
+
+	@Test
+	void testPercentiles() throws Exception {
+		try (FleetExecutor fleetExecutor = new FleetExecutor()) {
+			final FleetExecutor.Summary summary = fleetExecutor.execute(new ArrayList<>(), "true", 0, null);
+			Assertions.assertEquals(0, summary.getTotal());
+			Assertions.assertEquals(0, summary.getLatencyPercentile(99));
+		}
+	}
+
+	@Test
+	void testLatencyPercentiles() {
+		// Nearest rank: the smallest latency such that at least the percentile of the hosts are as fast
+		final long[] latencies = { 10, 20, 30, 40, 50, 60, 70, 80, 90, 100 };
+		final FleetExecutor.Summary summary = new FleetExecutor.Summary(10, 10, 0, 1000, latencies);
+		Assertions.assertEquals(10, summary.getLatencyPercentile(0));
+		Assertions.assertEquals(10, summary.getLatencyPercentile(10));
+		Assertions.assertEquals(20, summary.getLatencyPercentile(10.5));
+		Assertions.assertEquals(50, summary.getLatencyPercentile(50));
+		Assertions.assertEquals(90, summary.getLatencyPercentile(90));
+		Assertions.assertEquals(100, summary.getLatencyPercentile(90.1));
+		Assertions.assertEquals(100, summary.getLatencyPercentile(100));
+
+		// A single host
+		final FleetExecutor.Summary single = new FleetExecutor.Summary(1, 1, 0, 5, new long[] { 5 });
+		Assertions.assertEquals(5, single.getLatencyPercentile(0));
+		Assertions.assertEquals(5, single.getLatencyPercentile(50));
+		Assertions.assertEquals(5, single.getLatencyPercentile(100));
+	}
+}
@@ -0,0 +1,425 @@
+package org.metricshub.ssh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test of the client against the embedded SSH/SFTP server, on localhost, optionally
+ * behind a {@link ThrottlingProxy} that adds the latency and the bandwidth limit of a remote network.
+ * <p>
+ * Each client runs the operations of the workload, in a loop, on its own thread, and the
+ * throughput and the latency percentiles of each operation are reported:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Dclients=32 -Dlatency=20 -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ * 	org.metricshub.ssh.LoadHarness
+ * </pre>
+ * System properties:
+ * <ul>
+ * <li><code>clients</code> (16): number of clients running at the same time</li>
+ * <li><code>iterations</code> (50): number of times each client runs the workload</li>
+ * <li><code>workload</code> (connect,execute,readFile,listFiles): the operations of the workload</li>
+ * <li><code>latency</code> (0): milliseconds added in each direction (half of the round-trip time)</li>
+ * <li><code>bandwidth</code> (0): bytes per second in each direction of each connection (0 for no limit)</li>
+ * <li><code>fileSize</code> (1048576): size of the file read by readFile</li>
+ * <li><code>pool</code> (0): size of an {@link SshClientPool} shared by the clients to execute,
+ * read and list, or 0 for a connection per client</li>
+ * <li><code>batch</code> (1): number of commands executed in a single round trip with
+ * {@link SshClient#executeCommands(List, int)}</li>
+ * </ul>
+ */
+public class LoadHarness {
+
+	/**
+	 * The operations measured. The connect operation of the workload is measured as CONNECT and
+	 * AUTHENTICATE.
+	 */
+	enum Operation {
+		CONNECT,
+		AUTHENTICATE,
+		EXECUTE,
+		READ_FILE,
+		LIST_FILES
+	}
+
+	/**
+	 * Latencies of an operation
+	 */
+	static final class Statistics {
+
+		private long[] latencies = new long[1024];
+		private int count = 0;
+		private int errors = 0;
+		private String firstError = null;
+
+		synchronized void add(final long nanos) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, 2 * count);
+			}
+			latencies[count++] = nanos;
+		}
+
+		synchronized void addError(final Exception e) {
+			if (errors++ == 0) {
+				firstError = e.toString();
+			}
+		}
+
+		synchronized int getCount() {
+			return count;
+		}
+
+		synchronized int getErrors() {
+			return errors;
+		}
+
+		synchronized String getFirstError() {
+			return firstError;
+		}
+
+		/**
+		 * @param percentile The percentile, between 0 and 100
+		 * @return the latency (nearest rank) in milliseconds, or 0 if the operation never succeeded
+		 */
+		synchronized double getPercentile(final double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			final long[] sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+			final int rank = (int) Math.ceil(percentile / 100 * count);
+			return sorted[Math.min(Math.max(rank, 1), count) - 1] / 1e6;
+		}
+	}
+
+	private static final String COMMAND = "echo hello";
+	private static final String FILE = "/data.bin";
+	private static final String TREE = "/tree";
+	private static final int TREE_DIRECTORIES = 5;
+	private static final int TREE_FILES = 20;
+	private static final int TIMEOUT = 60000;
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(final int b) {}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {}
+	};
+
+	private final int clients;
+	private final int iterations;
+	private final List<String> workload;
+	private final long latency;
+	private final long bandwidth;
+	private final int fileSize;
+	private final int pool;
+	private final int batch;
+
+	private final Map<Operation, Statistics> statistics = new EnumMap<>(Operation.class);
+	private long elapsed;
+
+	/**
+	 * @param properties The settings (see the system properties above)
+	 */
+	LoadHarness(final Properties properties) {
+		clients = Integer.parseInt(properties.getProperty("clients", "16"));
+		iterations = Integer.parseInt(properties.getProperty("iterations", "50"));
+		workload = Arrays.asList(properties.getProperty("workload", "connect,execute,readFile,listFiles").split(","));
+		latency = Long.parseLong(properties.getProperty("latency", "0"));
+		bandwidth = Long.parseLong(properties.getProperty("bandwidth", "0"));
+		fileSize = Integer.parseInt(properties.getProperty("fileSize", "1048576"));
+		pool = Integer.parseInt(properties.getProperty("pool", "0"));
+		batch = Integer.parseInt(properties.getProperty("batch", "1"));
+		for (Operation operation : Operation.values()) {
+			statistics.put(operation, new Statistics());
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final LoadHarness loadHarness = new LoadHarness(System.getProperties());
+		loadHarness.run();
+		System.out.print(loadHarness.report());
+	}
+
+	/**
+	 * Runs the workload on all the clients, and waits until they are done
+	 */
+	void run() throws Exception {
+		final Path rootDirectory = Files.createTempDirectory("ssh-load");
+		try {
+			final byte[] data = new byte[fileSize];
+			Arrays.fill(data, (byte) 'x');
+			Files.write(rootDirectory.resolve(FILE.substring(1)), data);
+			for (int i = 0; i < TREE_DIRECTORIES; i++) {
+				final Path directory = Files.createDirectories(rootDirectory.resolve(TREE.substring(1) + "/d" + i));
+				for (int j = 0; j < TREE_FILES; j++) {
+					Files.write(directory.resolve("f" + j + ".log"), new byte[j]);
+				}
+			}
+
+			try (
+				EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory);
+				ThrottlingProxy proxy = latency > 0 || bandwidth > 0
+					? new ThrottlingProxy(sshServer.getPort(), latency, bandwidth)
+					: null;
+				SshClientPool sshClientPool = pool > 0 ? newPool(pool) : null
+			) {
+				final int port = proxy != null ? proxy.getPort() : sshServer.getPort();
+				final ExecutorService executor = BlockingThreads.newFixedThreadPool("LoadHarness", clients);
+				try {
+					final long start = System.nanoTime();
+					final List<Future<?>> futures = new ArrayList<>();
+					for (int i = 0; i < clients; i++) {
+						futures.add(
+							executor.submit(() -> {
+								runClient(port, sshClientPool);
+								return null;
+							})
+						);
+					}
+					for (Future<?> future : futures) {
+						future.get();
+					}
+					elapsed = System.nanoTime() - start;
+				} finally {
+					executor.shutdownNow();
+				}
+			}
+		} finally {
+			try (Stream<Path> paths = Files.walk(rootDirectory)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	private static SshClientPool newPool(final int size) {
+		return new SshClientPool(
+			size,
+			SshClientPool.DEFAULT_IDLE_TIMEOUT,
+			SshClientPool.DEFAULT_MAX_LIFETIME,
+			StandardCharsets.UTF_8
+		);
+	}
+
+	/**
+	 * Runs the iterations of the workload of a client
+	 */
+	private void runClient(final int port, final SshClientPool sshClientPool) throws IOException {
+		SshClient ownClient = null;
+		try {
+			for (int i = 0; i < iterations; i++) {
+				for (String name : workload) {
+					if ("connect".equals(name)) {
+						connect(port);
+						continue;
+					}
+
+					final Operation operation = operationOf(name);
+					final long start = System.nanoTime();
+					try {
+						if (sshClientPool != null) {
+							try (
+								SshClientPool.Lease lease = sshClientPool.borrow(
+									"localhost",
+									port,
+									EmbeddedSshServer.USERNAME,
+									EmbeddedSshServer.PASSWORD,
+									null,
+									TIMEOUT
+								)
+							) {
+								run(operation, lease.getClient());
+							}
+						} else {
+							if (ownClient == null) {
+								ownClient = newClient(port);
+							}
+							run(operation, ownClient);
+						}
+						statistics.get(operation).add(System.nanoTime() - start);
+					} catch (Exception e) {
+						statistics.get(operation).addError(e);
+					}
+				}
+			}
+		} finally {
+			if (ownClient != null) {
+				ownClient.close();
+			}
+		}
+	}
+
+	private static Operation operationOf(final String name) {
+		switch (name) {
+			case "execute":
+				return Operation.EXECUTE;
+			case "readFile":
+				return Operation.READ_FILE;
+			case "listFiles":
+				return Operation.LIST_FILES;
+			default:
+				throw new IllegalArgumentException("Unknown operation: " + name);
+		}
+	}
+
+	private static SshClient newClient(final int port) throws IOException {
+		final SshClient sshClient = new SshClient("localhost", StandardCharsets.UTF_8);
+		try {
+			sshClient.connect(TIMEOUT, port);
+			if (!sshClient.authenticate(EmbeddedSshServer.USERNAME, EmbeddedSshServer.PASSWORD)) {
+				throw new IOException("Authentication failed");
+			}
+			return sshClient;
+		} catch (IOException e) {
+			sshClient.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Connects and authenticates a new client, measured separately
+	 */
+	private void connect(final int port) {
+		try (SshClient sshClient = new SshClient("localhost", StandardCharsets.UTF_8)) {
+			long start = System.nanoTime();
+			try {
+				sshClient.connect(TIMEOUT, port);
+				statistics.get(Operation.CONNECT).add(System.nanoTime() - start);
+			} catch (IOException e) {
+				statistics.get(Operation.CONNECT).addError(e);
+				return;
+			}
+
+			start = System.nanoTime();
+			try {
+				if (!sshClient.authenticate(EmbeddedSshServer.USERNAME, EmbeddedSshServer.PASSWORD)) {
+					throw new IOException("Authentication failed");
+				}
+				statistics.get(Operation.AUTHENTICATE).add(System.nanoTime() - start);
+			} catch (IOException e) {
+				statistics.get(Operation.AUTHENTICATE).addError(e);
+			}
+		}
+	}
+
+	private void run(final Operation operation, final SshClient sshClient) throws IOException {
+		switch (operation) {
+			case EXECUTE:
+				if (batch > 1) {
+					for (SshClient.CommandResult result : sshClient.executeCommands(
+						Collections.nCopies(batch, COMMAND),
+						TIMEOUT
+					)) {
+						check(result);
+					}
+				} else {
+					check(sshClient.executeCommand(COMMAND, TIMEOUT));
+				}
+				break;
+			case READ_FILE:
+				final long size = sshClient.readFile(FILE, 0, fileSize, DISCARD);
+				if (size != fileSize) {
+					throw new IOException("Read " + size + " bytes instead of " + fileSize);
+				}
+				break;
+			case LIST_FILES:
+				final int lines = sshClient.listFiles(TREE, null, true).split("\n").length;
+				if (lines != TREE_DIRECTORIES * TREE_FILES) {
+					throw new IOException("Listed " + lines + " files instead of " + TREE_DIRECTORIES * TREE_FILES);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException(operation.name());
+		}
+	}
+
+	private static void check(final SshClient.CommandResult result) throws IOException {
+		if (!result.success || result.exitStatus != 0) {
+			throw new IOException("Command failed: " + result.result);
+		}
+	}
+
+	/**
+	 * @param operation An operation
+	 * @return the latencies of the operation
+	 */
+	Statistics getStatistics(final Operation operation) {
+		return statistics.get(operation);
+	}
+
+	/**
+	 * @return the throughput and the latency percentiles of each operation that has been run
+	 */
+	String report() {
+		final StringBuilder report = new StringBuilder();
+		final double seconds = elapsed / 1e9;
+		report.append(
+			String.format(
+				"%d clients x %d iterations of %s, latency=%d ms, bandwidth=%s, pool=%d, batch=%d: %.1f s%n",
+				clients,
+				iterations,
+				workload,
+				latency,
+				bandwidth > 0 ? bandwidth + " B/s" : "unlimited",
+				pool,
+				batch,
+				seconds
+			)
+		);
+		report.append(
+			String.format(
+				"%-14s %8s %7s %10s %10s %10s %10s %10s%n",
+				"operation",
+				"count",
+				"errors",
+				"ops/s",
+				"p50 ms",
+				"p99 ms",
+				"p999 ms",
+				"max ms"
+			)
+		);
+		for (Map.Entry<Operation, Statistics> entry : statistics.entrySet()) {
+			final Statistics operationStatistics = entry.getValue();
+			if (operationStatistics.getCount() == 0 && operationStatistics.getErrors() == 0) {
+				continue;
+			}
+			report.append(
+				String.format(
+					"%-14s %8d %7d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+					entry.getKey(),
+					operationStatistics.getCount(),
+					operationStatistics.getErrors(),
+					operationStatistics.getCount() / seconds,
+					operationStatistics.getPercentile(50),
+					operationStatistics.getPercentile(99),
+					operationStatistics.getPercentile(99.9),
+					operationStatistics.getPercentile(100)
+				)
+			);
+			if (operationStatistics.getFirstError() != null) {
+				report.append("  first error: ").append(operationStatistics.getFirstError()).append(System.lineSeparator());
+			}
+		}
+		return report.toString();
+	}
+}
@@ -0,0 +1,50 @@
+package org.metricshub.ssh;
+
+import java.util.Properties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+@DisabledOnOs(OS.WINDOWS)
+class LoadHarnessTest {
+
+	@Test
+	void testRun() throws Exception {
+		final Properties properties = new Properties();
+		properties.setProperty("clients", "3");
+		properties.setProperty("iterations", "2");
+		properties.setProperty("fileSize", "100000");
+		final LoadHarness loadHarness = new LoadHarness(properties);
+		loadHarness.run();
+		for (LoadHarness.Operation operation : LoadHarness.Operation.values()) {
+			final LoadHarness.Statistics statistics = loadHarness.getStatistics(operation);
+			Assertions.assertEquals(0, statistics.getErrors(), operation + ": " + statistics.getFirstError());
+			Assertions.assertEquals(6, statistics.getCount(), operation.name());
+			Assertions.assertTrue(statistics.getPercentile(50) <= statistics.getPercentile(99.9));
+		}
+		Assertions.assertTrue(loadHarness.report().contains("LIST_FILES"));
+	}
+
+	@Test
+	void testThrottling() throws Exception {
+		// Pooled connections through a network with 25 ms of latency in each direction
+		final Properties properties = new Properties();
+		properties.setProperty("clients", "4");
+		properties.setProperty("iterations", "2");
+		properties.setProperty("workload", "execute");
+		properties.setProperty("latency", "25");
+		properties.setProperty("bandwidth", "1000000");
+		properties.setProperty("pool", "2");
+		properties.setProperty("batch", "3");
+		final LoadHarness loadHarness = new LoadHarness(properties);
+		loadHarness.run();
+		final LoadHarness.Statistics statistics = loadHarness.getStatistics(LoadHarness.Operation.EXECUTE);
+		Assertions.assertEquals(0, statistics.getErrors(), statistics.getFirstError());
+		Assertions.assertEquals(8, statistics.getCount());
+		Assertions.assertEquals(0, loadHarness.getStatistics(LoadHarness.Operation.CONNECT).getCount());
+
+		// At least a round trip to open the channel, and another one for the command
+		Assertions.assertTrue(statistics.getPercentile(50) >= 100, loadHarness.report());
+	}
+}
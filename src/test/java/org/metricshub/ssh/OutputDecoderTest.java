@@ -0,0 +1,70 @@
+package org.metricshub.ssh;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class OutputDecoderTest {
+
+	private static final String TEXT = "Température: 25°C, 温度: 二十五, emoji: 😀\n";
+
+	/**
+	 * Decode the bytes in chunks of the specified size
+	 */
+	private static String decodeInChunks(final byte[] bytes, final Charset charset, final int chunkSize) {
+		final OutputDecoder decoder = new OutputDecoder(charset);
+		final StringBuilder result = new StringBuilder();
+		for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+			result.append(decoder.decode(bytes, offset, Math.min(chunkSize, bytes.length - offset)));
+		}
+		return result.append(decoder.flush()).toString();
+	}
+
+	@Test
+	void testSplitSequences() {
+		final Charset[] charsets = { StandardCharsets.UTF_8, Charset.forName("GBK"), Charset.forName("GB18030") };
+		for (Charset charset : charsets) {
+			final String text = charset.name().equals("GBK") ? TEXT.replace("😀", "?") : TEXT;
+			final byte[] bytes = text.getBytes(charset);
+			for (int chunkSize = 1; chunkSize <= 7; chunkSize++) {
+				Assertions.assertEquals(text, decodeInChunks(bytes, charset, chunkSize), charset + "/" + chunkSize);
+			}
+			Assertions.assertEquals(text, decodeInChunks(bytes, charset, bytes.length));
+		}
+	}
+
+	@Test
+	void testMalformed() {
+		// Incomplete sequence at the end of the stream, invalid byte in the middle
+		final byte[] bytes = { 'a', (byte) 0xE6, (byte) 0xB8 };
+		Assertions.assertEquals("a�", decodeInChunks(bytes, StandardCharsets.UTF_8, 1));
+		final byte[] invalid = { 'a', (byte) 0xFF, 'b' };
+		Assertions.assertEquals("a�b", decodeInChunks(invalid, StandardCharsets.UTF_8, 1));
+
+		// Large chunk
+		final byte[] large = new byte[100000];
+		Arrays.fill(large, (byte) 'x');
+		Assertions.assertEquals(100000, decodeInChunks(large, StandardCharsets.UTF_8, 65536).length());
+	}
+
+	@Test
+	void testLineSplitter() throws Exception {
+		final List<String> lines = new ArrayList<>();
+		final CommandOutputListener listener = CommandOutputListener.lines((stream, line) ->
+			lines.add(stream + ":" + line)
+		);
+		listener.onOutput(CommandOutputListener.Stream.STDOUT, "one\r\ntw");
+		listener.onOutput(CommandOutputListener.Stream.STDERR, "error");
+		listener.onOutput(CommandOutputListener.Stream.STDOUT, "o\n\nthree");
+		Assertions.assertEquals(Arrays.asList("STDOUT:one", "STDOUT:two", "STDOUT:"), lines);
+		listener.onEnd();
+		Assertions.assertEquals(
+			Arrays.asList("STDOUT:one", "STDOUT:two", "STDOUT:", "STDOUT:three", "STDERR:error"),
+			lines
+		);
+	}
+}
@@ -0,0 +1,84 @@
+package org.metricshub.ssh;
+
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RemoteFileFilterTest {
+
+	private static final String[] ROOT = new String[0];
+
+	private static SFTPv3FileAttributes attributes(final int permissions, final long size, final long mtime) {
+		final SFTPv3FileAttributes attributes = new SFTPv3FileAttributes();
+		attributes.permissions = permissions;
+		attributes.size = size;
+		attributes.mtime = mtime;
+		return attributes;
+	}
+
+	@Test
+	void testPathGlob() {
+		final PathGlob glob = new PathGlob("app-*/**/*.log");
+		Assertions.assertTrue(glob.matches(PathGlob.split("app-1/x.log")));
+		Assertions.assertTrue(glob.matches(PathGlob.split("app-1/a/b/x.log")));
+		Assertions.assertFalse(glob.matches(PathGlob.split("app-1/x.txt")));
+		Assertions.assertFalse(glob.matches(PathGlob.split("other/x.log")));
+		Assertions.assertTrue(glob.mayContainMatches(ROOT));
+		Assertions.assertTrue(glob.mayContainMatches(PathGlob.split("app-2")));
+		Assertions.assertTrue(glob.mayContainMatches(PathGlob.split("app-2/deep/deeper")));
+		Assertions.assertFalse(glob.mayContainMatches(PathGlob.split("other")));
+
+		final PathGlob exact = new PathGlob("/logs/?.log");
+		Assertions.assertTrue(exact.matches(PathGlob.split("logs/a.log")));
+		Assertions.assertFalse(exact.matches(PathGlob.split("logs/ab.log")));
+		Assertions.assertTrue(exact.mayContainMatches(PathGlob.split("logs")));
+		Assertions.assertFalse(exact.mayContainMatches(PathGlob.split("logs/sub")));
+
+		final PathGlob below = new PathGlob("logs/**");
+		Assertions.assertTrue(below.matches(PathGlob.split("logs/a/b.log")));
+		Assertions.assertFalse(below.matches(PathGlob.split("logs")));
+		Assertions.assertTrue(below.mayContainMatches(PathGlob.split("logs/a/b")));
+
+		// Regular expression characters are literal
+		Assertions.assertFalse(new PathGlob("a.b").matches(PathGlob.split("axb")));
+	}
+
+	@Test
+	void testAccepts() {
+		final RemoteFileFilter all = new RemoteFileFilter();
+		Assertions.assertTrue(all.accepts(ROOT, "file", attributes(0100644, 10, 1000)));
+		Assertions.assertTrue(all.accepts(ROOT, "socket", attributes(0140755, 0, 1000)));
+		Assertions.assertFalse(all.accepts(ROOT, "link", attributes(0120777, 10, 1000)));
+		Assertions.assertFalse(all.accepts(ROOT, "fifo", attributes(0010644, 0, 1000)));
+
+		final RemoteFileFilter filter = all
+			.withNamePattern("\\.LOG$")
+			.withMinMtime(1000)
+			.withMaxSize(100)
+			.withPermissions(0100)
+			.withTypes(RemoteFileFilter.FileType.REGULAR);
+		Assertions.assertTrue(filter.accepts(ROOT, "a.log", attributes(0100744, 100, 1000)));
+		Assertions.assertFalse(filter.accepts(ROOT, "a.txt", attributes(0100744, 100, 1000)));
+		Assertions.assertFalse(filter.accepts(ROOT, "a.log", attributes(0100744, 101, 1000)));
+		Assertions.assertFalse(filter.accepts(ROOT, "a.log", attributes(0100744, 100, 999)));
+		Assertions.assertFalse(filter.accepts(ROOT, "a.log", attributes(0100644, 100, 1000)));
+		Assertions.assertFalse(filter.accepts(ROOT, "a.log", attributes(0060744, 100, 1000)));
+
+		// The original filter is unchanged
+		Assertions.assertTrue(all.accepts(ROOT, "a.txt", attributes(0100644, 1000, 0)));
+	}
+
+	@Test
+	void testPruning() {
+		final RemoteFileFilter filter = new RemoteFileFilter().withDepth(2, 3).withPathGlobs("a/**", "b/*/*");
+		Assertions.assertFalse(filter.accepts(ROOT, "file", attributes(0100644, 1, 1)));
+		Assertions.assertTrue(filter.accepts(PathGlob.split("a"), "file", attributes(0100644, 1, 1)));
+		Assertions.assertFalse(filter.accepts(PathGlob.split("c"), "file", attributes(0100644, 1, 1)));
+
+		Assertions.assertTrue(filter.shouldWalk(PathGlob.split("a")));
+		Assertions.assertTrue(filter.shouldWalk(PathGlob.split("a/x")));
+		Assertions.assertFalse(filter.shouldWalk(PathGlob.split("a/x/y")));
+		Assertions.assertTrue(filter.shouldWalk(PathGlob.split("b/x")));
+		Assertions.assertFalse(filter.shouldWalk(PathGlob.split("c")));
+	}
+}
@@ -0,0 +1,186 @@
+package org.metricshub.ssh;
+
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class RemoteFileTailerTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	private static void append(final Path file, final String text) throws Exception {
+		Files.write(
+			file,
+			text.getBytes(StandardCharsets.UTF_8),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.APPEND
+		);
+	}
+
+	@Test
+	void testAppendTruncate() throws Exception {
+		final Path log = rootDirectory.resolve("app.log");
+		append(log, "line 1\n");
+
+		try (SshClient sshClient = sshServer.connect(); RemoteFileTailer tailer = new RemoteFileTailer(sshClient, false)) {
+			// First poll reads the whole file
+			RemoteFileTailer.TailResult result = tailer.poll("/app.log");
+			Assertions.assertEquals("line 1\n", result.getContent());
+			Assertions.assertEquals(7, result.getOffset());
+			Assertions.assertEquals(7, tailer.getOffset("/app.log"));
+
+			// Nothing new
+			result = tailer.poll("/app.log");
+			Assertions.assertEquals("", result.getContent());
+			Assertions.assertFalse(result.isRotated());
+			Assertions.assertFalse(result.isTruncated());
+
+			// Appended lines only
+			append(log, "line 2\nline 3\n");
+			result = tailer.poll("/app.log");
+			Assertions.assertEquals("line 2\nline 3\n", result.getContent());
+			Assertions.assertEquals(14, result.getBytesRead());
+			Assertions.assertEquals(21, result.getOffset());
+
+			// Truncated in place
+			Files.write(log, "new\n".getBytes(StandardCharsets.UTF_8));
+			result = tailer.poll("/app.log");
+			Assertions.assertTrue(result.isTruncated());
+			Assertions.assertEquals("new\n", result.getContent());
+
+			// Appended again
+			append(log, "more\n");
+			Assertions.assertEquals("more\n", tailer.poll("/app.log").getContent());
+
+			// Resume from a stored offset
+			tailer.forget("/app.log");
+			Assertions.assertEquals(-1, tailer.getOffset("/app.log"));
+			tailer.setOffset("/app.log", 5);
+			Assertions.assertEquals("ore\n", tailer.poll("/app.log").getContent());
+		}
+	}
+
+	@Test
+	void testFromEnd() throws Exception {
+		final Path log = rootDirectory.resolve("end.log");
+		append(log, "old content\n");
+
+		try (SshClient sshClient = sshServer.connect(); RemoteFileTailer tailer = new RemoteFileTailer(sshClient, true)) {
+			Assertions.assertEquals("", tailer.poll("/end.log").getContent());
+			append(log, "new content\n");
+			Assertions.assertEquals("new content\n", tailer.poll("/end.log").getContent());
+
+			// The file disappears: nothing new, the tailer keeps the open file
+			Files.delete(log);
+			final RemoteFileTailer.TailResult result = tailer.poll("/end.log");
+			Assertions.assertEquals(0, result.getBytesRead());
+			Assertions.assertFalse(result.isRotated());
+		}
+	}
+
+	@Test
+	void testRotation() throws Exception {
+		// The embedded server stats the path of a handle instead of the open file, so rotation
+		// is simulated with a mocked channel
+		final byte[] oldHandle = { 1 };
+		final byte[] newHandle = { 2 };
+		final SftpChannel channel = Mockito.mock(SftpChannel.class);
+		final SshClient sshClient = Mockito.mock(SshClient.class);
+		Mockito.doReturn(channel).when(sshClient).getSftpChannel();
+		Mockito.doReturn(4).when(sshClient).getSftpReadWindow();
+		Mockito.doReturn(StandardCharsets.UTF_8).when(sshClient).getCharset();
+
+		Mockito.doReturn(oldHandle, newHandle).when(channel).openFileRO("/app.log");
+		Mockito.doReturn(attributes(10L, 1000L)).when(channel).fstat(ArgumentMatchers.same(oldHandle));
+		Mockito.doReturn(attributes(4L, 1020L)).when(channel).fstat(ArgumentMatchers.same(newHandle));
+		stubRead(channel, oldHandle, 0, "0123456789");
+		stubRead(channel, oldHandle, 10, "abcde");
+		stubRead(channel, newHandle, 0, "new!");
+
+		// The path now designates a smaller and more recent file than the open one
+		Mockito.doReturn(1, 3).when(channel).sendFstat(ArgumentMatchers.same(oldHandle));
+		Mockito.doReturn(2).when(channel).sendStat("/app.log");
+		Mockito.doReturn(attributes(15L, 1010L)).when(channel).receiveAttributes(1);
+		Mockito.doReturn(attributes(4L, 1020L)).when(channel).receiveAttributes(2);
+		Mockito.doReturn(attributes(15L, 1010L)).when(channel).receiveAttributes(3);
+
+		try (RemoteFileTailer tailer = new RemoteFileTailer(sshClient, false)) {
+			Assertions.assertEquals("0123456789", tailer.poll("/app.log").getContent());
+
+			final RemoteFileTailer.TailResult result = tailer.poll("/app.log");
+			Assertions.assertTrue(result.isRotated());
+			Assertions.assertFalse(result.isTruncated());
+			Assertions.assertEquals("abcdenew!", result.getContent());
+			Assertions.assertEquals(9, result.getBytesRead());
+			Assertions.assertEquals(4, result.getOffset());
+			Mockito.verify(channel).closeFile(ArgumentMatchers.same(oldHandle));
+		}
+		Mockito.verify(channel).closeFile(ArgumentMatchers.same(newHandle));
+	}
+
+	/**
+	 * Make SftpChannel.read() feed the specified text to the consumer, when reading the specified handle
+	 * from the specified offset
+	 */
+	private static void stubRead(final SftpChannel channel, final byte[] handle, final long offset, final String text)
+		throws Exception {
+		final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		Mockito
+			.doAnswer(invocation -> {
+				invocation.<SftpChannel.ChunkConsumer>getArgument(4).accept(bytes, 0, bytes.length);
+				return (long) bytes.length;
+			})
+			.when(channel)
+			.read(
+				ArgumentMatchers.same(handle),
+				ArgumentMatchers.eq(offset),
+				ArgumentMatchers.eq(-1L),
+				ArgumentMatchers.anyInt(),
+				ArgumentMatchers.any()
+			);
+	}
+
+	@Test
+	void testIsSameFile() {
+		final SFTPv3FileAttributes before = attributes(100L, 1000L);
+		final SFTPv3FileAttributes after = attributes(200L, 1010L);
+		Assertions.assertTrue(RemoteFileTailer.isSameFile(before, attributes(150L, 1005L), after));
+		Assertions.assertFalse(RemoteFileTailer.isSameFile(before, attributes(50L, 1005L), after));
+		Assertions.assertFalse(RemoteFileTailer.isSameFile(before, attributes(150L, 1020L), after));
+		final SFTPv3FileAttributes otherOwner = attributes(150L, 1005L);
+		otherOwner.uid = 1;
+		Assertions.assertFalse(RemoteFileTailer.isSameFile(before, otherOwner, after));
+	}
+
+	private static SFTPv3FileAttributes attributes(final Long size, final Long mtime) {
+		final SFTPv3FileAttributes attributes = new SFTPv3FileAttributes();
+		attributes.size = size;
+		attributes.mtime = mtime;
+		attributes.uid = 0;
+		attributes.gid = 0;
+		attributes.permissions = 0100644;
+		return attributes;
+	}
+}
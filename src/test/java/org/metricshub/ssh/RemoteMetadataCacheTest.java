@@ -0,0 +1,133 @@
+package org.metricshub.ssh;
+
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class RemoteMetadataCacheTest {
+
+	private static final String SCOPE = "host:22";
+
+	@TempDir
+	Path rootDirectory;
+
+	private static RemoteFileAttributes attributes(final String path) {
+		return new RemoteFileAttributes(path, new SFTPv3FileAttributes(), path, null);
+	}
+
+	@Test
+	void testTtlAndEviction() {
+		final AtomicLong now = new AtomicLong(1000);
+		final RemoteMetadataCache cache = Mockito.spy(
+			new RemoteMetadataCache(2, (path, listing) -> path.startsWith("/short") ? 10 : 100)
+		);
+		Mockito.doAnswer(invocation -> now.get()).when(cache).now();
+
+		cache.putAttributes(SCOPE, attributes("/short"), false);
+		cache.putAttributes(SCOPE, attributes("/long"), true);
+		Assertions.assertNotNull(cache.getAttributes(SCOPE, "/short", false));
+		Assertions.assertNull(cache.getAttributes(SCOPE, "/short", true));
+		Assertions.assertNull(cache.getAttributes("other:22", "/short", false));
+
+		// Canonical path resolved: good for both
+		Assertions.assertNotNull(cache.getAttributes(SCOPE, "/long", false));
+		Assertions.assertNotNull(cache.getAttributes(SCOPE, "/long/", true));
+
+		// Each entry has its own TTL
+		now.addAndGet(50);
+		Assertions.assertNull(cache.getAttributes(SCOPE, "/short", false));
+		Assertions.assertNotNull(cache.getAttributes(SCOPE, "/long", true));
+
+		// Errors are not cached
+		cache.putAttributes(SCOPE, new RemoteFileAttributes("/error", null, null, new SftpException("No", 2)), false);
+		Assertions.assertNull(cache.getAttributes(SCOPE, "/error", false));
+
+		// Least recently used entries are evicted
+		cache.putAttributes(SCOPE, attributes("/a"), false);
+		cache.putAttributes(SCOPE, attributes("/b"), false);
+		Assertions.assertNull(cache.getAttributes(SCOPE, "/long", true));
+
+		final RemoteMetadataCache.Statistics statistics = cache.getStatistics();
+		Assertions.assertEquals(4, statistics.getHits());
+		Assertions.assertEquals(5, statistics.getMisses());
+		Assertions.assertEquals(1, statistics.getExpirations());
+		Assertions.assertEquals(1, statistics.getEvictions());
+		Assertions.assertEquals(2, statistics.getSize());
+	}
+
+	@Test
+	void testInvalidation() {
+		final RemoteMetadataCache cache = new RemoteMetadataCache();
+		final RemoteFileFilter filter = new RemoteFileFilter();
+		cache.putAttributes(SCOPE, attributes("/dir/file"), false);
+		cache.putAttributes(SCOPE, attributes("/dir"), false);
+		cache.putAttributes(SCOPE, attributes("/other"), false);
+		cache.putListing(SCOPE, "/dir/", filter, Collections.emptyList());
+		cache.putListing(SCOPE, "/", filter, Collections.emptyList());
+		cache.putListing(SCOPE, "/dir2", filter, Collections.emptyList());
+
+		// Listings are cached per filter
+		Assertions.assertNotNull(cache.getListing(SCOPE, "/dir", filter));
+		Assertions.assertNull(cache.getListing(SCOPE, "/dir", new RemoteFileFilter()));
+
+		cache.invalidate("/dir/file");
+		Assertions.assertNull(cache.getAttributes(SCOPE, "/dir/file", false));
+		Assertions.assertNull(cache.getAttributes(SCOPE, "/dir", false));
+		Assertions.assertNull(cache.getListing(SCOPE, "/dir", filter));
+		Assertions.assertNull(cache.getListing(SCOPE, "/", filter));
+		Assertions.assertNotNull(cache.getAttributes(SCOPE, "/other", false));
+		Assertions.assertNotNull(cache.getListing(SCOPE, "/dir2", filter));
+		Assertions.assertEquals(4, cache.getStatistics().getInvalidations());
+
+		cache.invalidateAll();
+		Assertions.assertEquals(0, cache.getStatistics().getSize());
+	}
+
+	@Test
+	void testSshClient() throws Exception {
+		Files.createDirectories(rootDirectory.resolve("logs"));
+		Files.write(rootDirectory.resolve("logs/a.log"), new byte[3]);
+
+		try (
+			EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory);
+			SshClient sshClient = sshServer.connect()
+		) {
+			final RemoteMetadataCache cache = new RemoteMetadataCache();
+			sshClient.setMetadataCache(cache);
+
+			final String listing = sshClient.listFiles("/logs", null, true);
+			Assertions.assertTrue(listing.startsWith("/logs/a.log;"));
+			final String attributes = sshClient.readFileAttributes("/logs/a.log");
+
+			// Changes on the remote host are not seen until the entries expire, or are invalidated
+			Files.write(rootDirectory.resolve("logs/b.log"), new byte[3]);
+			Files.write(rootDirectory.resolve("logs/a.log"), new byte[5]);
+			Assertions.assertEquals(listing, sshClient.listFiles("/logs", null, true));
+			Assertions.assertEquals(attributes, sshClient.readFileAttributes("/logs/a.log"));
+			final List<RemoteFileAttributes> bulk = sshClient.readFileAttributes(
+				Arrays.asList("/logs/a.log", "/logs/b.log"),
+				false
+			);
+			Assertions.assertEquals(3L, bulk.get(0).getAttributes().size);
+			Assertions.assertEquals(3L, bulk.get(1).getAttributes().size);
+			Assertions.assertEquals(3, cache.getStatistics().getHits());
+
+			// Removing a file invalidates its attributes and the listings of its directories
+			sshClient.removeFile("/logs/b.log");
+			Assertions.assertNull(cache.getAttributes("localhost:" + sshServer.getPort(), "/logs/b.log", false));
+			Assertions.assertEquals(attributes, sshClient.readFileAttributes("/logs/a.log"));
+			final String newListing = sshClient.listFiles("/logs", null, true);
+			Assertions.assertTrue(newListing.startsWith("/logs/a.log;"));
+			Assertions.assertTrue(newListing.endsWith(";5\n"));
+			Assertions.assertEquals(4, cache.getStatistics().getHits());
+		}
+	}
+}
@@ -2,10 +2,13 @@ package org.metricshub.ssh;
 
 import com.trilead.ssh2.ChannelCondition;
 import com.trilead.ssh2.Connection;
+import com.trilead.ssh2.SFTPv3FileAttributes;
 import com.trilead.ssh2.Session;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -524,5 +527,68 @@ class SSHClientTest {
 
 			Assertions.assertEquals(Optional.of("Hello WorldError"), sshClient.read(0, 5));
 		}
+
+		// case multi-byte characters split by the size: each one is returned by the read that completes it
+		try (
+			final SshClient sshClient = Mockito.spy(new SshClient(HOSTNAME, StandardCharsets.UTF_8));
+			final ByteArrayInputStream stdout = new ByteArrayInputStream("温度".getBytes(StandardCharsets.UTF_8));
+			final ByteArrayInputStream stderr = new ByteArrayInputStream("".getBytes())
+		) {
+			Mockito.doReturn(sshConnection).when(sshClient).getSshConnection();
+			Mockito.doReturn(true).when(sshConnection).isAuthenticationComplete();
+
+			Mockito.doReturn(sshSession).when(sshClient).getSshSession();
+			Mockito.doReturn(stdout).when(sshSession).getStdout();
+			Mockito.doReturn(stderr).when(sshSession).getStderr();
+			Mockito.doReturn(ChannelCondition.STDOUT_DATA).when(sshClient).waitForNewData(5000L);
+
+			Assertions.assertEquals(Optional.of(""), sshClient.read(2, 5));
+			Assertions.assertEquals(Optional.of("温"), sshClient.read(2, 5));
+			Assertions.assertEquals(Optional.of("度"), sshClient.read(2, 5));
+		}
+	}
+
+	@Test
+	void testSftpChannelReuse() throws Exception {
+		final Connection sshConnection = Mockito.mock(Connection.class);
+		final SftpChannel firstSftpChannel = Mockito.mock(SftpChannel.class);
+		final SftpChannel secondSftpChannel = Mockito.mock(SftpChannel.class);
+
+		final SFTPv3FileAttributes attributes = new SFTPv3FileAttributes();
+		attributes.size = 11L;
+		attributes.uid = 0;
+		attributes.gid = 0;
+		attributes.permissions = 0100644;
+		attributes.atime = 1L;
+		attributes.mtime = 2L;
+
+		try (final SshClient sshClient = Mockito.spy(new SshClient(HOSTNAME))) {
+			Mockito.doReturn(sshConnection).when(sshClient).getSshConnection();
+			Mockito.doReturn(true).when(sshConnection).isAuthenticationComplete();
+			Mockito.doReturn(firstSftpChannel, secondSftpChannel).when(sshClient).createSftpChannel();
+
+			// The same SFTP channel is used for consecutive operations
+			Mockito.doReturn(1).when(firstSftpChannel).sendStat("/file");
+			Mockito.doReturn(2).when(firstSftpChannel).sendRealPath("/file");
+			Mockito.doReturn(attributes).when(firstSftpChannel).receiveAttributes(1);
+			Mockito.doReturn("/file").when(firstSftpChannel).receiveCanonicalPath(2);
+			Assertions.assertEquals("2\t1\t-\t644\t11\t-\tFILE\t0\t0\t/file", sshClient.readFileAttributes("/file"));
+			sshClient.removeFile("/file");
+			Mockito.verify(sshClient, Mockito.times(1)).createSftpChannel();
+			Mockito.verify(firstSftpChannel).rm("/file");
+
+			// A broken channel is replaced and the operation is retried
+			Mockito.doThrow(new IOException("Channel closed")).when(firstSftpChannel).sendStat("/file");
+			Mockito.doReturn(1).when(secondSftpChannel).sendStat("/file");
+			Mockito.doReturn(2).when(secondSftpChannel).sendRealPath("/file");
+			Mockito.doReturn(attributes).when(secondSftpChannel).receiveAttributes(1);
+			Mockito.doReturn("/file").when(secondSftpChannel).receiveCanonicalPath(2);
+			Assertions.assertEquals("2\t1\t-\t644\t11\t-\tFILE\t0\t0\t/file", sshClient.readFileAttributes("/file"));
+			Mockito.verify(firstSftpChannel).close();
+			Mockito.verify(sshClient, Mockito.times(2)).createSftpChannel();
+		}
+
+		// The SFTP channel is closed with the client
+		Mockito.verify(secondSftpChannel).close();
 	}
 }
@@ -0,0 +1,259 @@
+package org.metricshub.ssh;
+
+import com.trilead.ssh2.SFTPv3DirectoryEntry;
+import com.trilead.ssh2.SFTPv3FileAttributes;
+import com.trilead.ssh2.sftp.ErrorCodes;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SftpChannelTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+	private static byte[] content;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		content = new byte[1024 * 1024 + 123];
+		new Random(42).nextBytes(content);
+		Files.write(rootDirectory.resolve("large.bin"), content);
+		Files.write(rootDirectory.resolve("small.txt"), "Hello World".getBytes(StandardCharsets.UTF_8));
+		Files.createDirectories(rootDirectory.resolve("dir/sub"));
+		Files.write(rootDirectory.resolve("dir/a.txt"), new byte[10]);
+
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testPipelinedRead() throws Exception {
+		try (
+			SshClient sshClient = sshServer.connect();
+			SftpChannel sftpChannel = new SftpChannel(sshClient.getSshConnection(), StandardCharsets.UTF_8)
+		) {
+			Assertions.assertTrue(sftpChannel.getChunkSize() >= SftpChannel.DEFAULT_CHUNK_SIZE);
+			final byte[] handle = sftpChannel.openFileRO("/large.bin");
+
+			// Whole file, with various windows
+			for (int window : new int[] { 1, 4, 64 }) {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Assertions.assertEquals(content.length, sftpChannel.read(handle, 0, -1, window, out::write));
+				Assertions.assertArrayEquals(content, out.toByteArray());
+			}
+
+			// Part of the file, not aligned on chunks
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Assertions.assertEquals(100000, sftpChannel.read(handle, 777, 100000, 8, out::write));
+			final byte[] expected = new byte[100000];
+			System.arraycopy(content, 777, expected, 0, expected.length);
+			Assertions.assertArrayEquals(expected, out.toByteArray());
+
+			// Beyond the end of the file
+			Assertions.assertEquals(123, sftpChannel.read(handle, 1024 * 1024, 1000000, 8, (b, o, l) -> {}));
+			Assertions.assertEquals(0, sftpChannel.read(handle, content.length + 10, 1000, 8, (b, o, l) -> {}));
+
+			// Single read
+			final byte[] buffer = new byte[16];
+			Assertions.assertEquals(16, sftpChannel.read(handle, 0, buffer, 0, 16));
+			Assertions.assertEquals(-1, sftpChannel.read(handle, content.length, buffer, 0, 16));
+
+			sftpChannel.closeFile(handle);
+
+			// The channel is still usable after all these requests
+			Assertions.assertEquals(11L, sftpChannel.stat("/small.txt").size);
+		}
+	}
+
+	@Test
+	void testAttributesAndListing() throws Exception {
+		try (
+			SshClient sshClient = sshServer.connect();
+			SftpChannel sftpChannel = new SftpChannel(sshClient.getSshConnection(), StandardCharsets.UTF_8)
+		) {
+			final SFTPv3FileAttributes attributes = sftpChannel.stat("/small.txt");
+			Assertions.assertTrue(attributes.isRegularFile());
+			Assertions.assertEquals(11L, attributes.size);
+			Assertions.assertNotNull(attributes.mtime);
+
+			Assertions.assertTrue(sftpChannel.lstat("/dir").isDirectory());
+			Assertions.assertEquals("/dir/sub", sftpChannel.canonicalPath("/dir/./sub/../sub"));
+
+			final List<String> names = sftpChannel
+				.ls("/dir")
+				.stream()
+				.map((SFTPv3DirectoryEntry entry) -> entry.filename)
+				.sorted()
+				.collect(Collectors.toList());
+			Assertions.assertTrue(names.contains("a.txt"));
+			Assertions.assertTrue(names.contains("sub"));
+
+			final SftpException e = Assertions.assertThrows(SftpException.class, () -> sftpChannel.stat("/missing"));
+			Assertions.assertEquals(ErrorCodes.SSH_FX_NO_SUCH_FILE, e.getServerErrorCode());
+
+			Files.write(rootDirectory.resolve("remove.me"), new byte[1]);
+			sftpChannel.rm("/remove.me");
+			Assertions.assertFalse(Files.exists(rootDirectory.resolve("remove.me")));
+		}
+	}
+
+	@Test
+	void testErrorStatus() throws Exception {
+		try (
+			SshClient sshClient = sshServer.connect();
+			SftpChannel sftpChannel = new SftpChannel(sshClient.getSshConnection(), StandardCharsets.UTF_8)
+		) {
+			// Failed REMOVE
+			SftpException e = Assertions.assertThrows(SftpException.class, () -> sftpChannel.rm("/missing"));
+			Assertions.assertEquals(ErrorCodes.SSH_FX_NO_SUCH_FILE, e.getServerErrorCode());
+
+			// READ, READDIR and CLOSE of handles that are no longer valid
+			final byte[] fileHandle = sftpChannel.openFileRO("/small.txt");
+			sftpChannel.closeFile(fileHandle);
+			final byte[] buffer = new byte[16];
+			e = Assertions.assertThrows(SftpException.class, () -> sftpChannel.read(fileHandle, 0, buffer, 0, 16));
+			Assertions.assertNotEquals(ErrorCodes.SSH_FX_EOF, e.getServerErrorCode());
+			e = Assertions.assertThrows(SftpException.class, () -> sftpChannel.read(fileHandle, 0, -1, 4, (b, o, l) -> {}));
+			Assertions.assertNotEquals(ErrorCodes.SSH_FX_EOF, e.getServerErrorCode());
+			e = Assertions.assertThrows(SftpException.class, () -> sftpChannel.closeFile(fileHandle));
+			Assertions.assertNotEquals(ErrorCodes.SSH_FX_OK, e.getServerErrorCode());
+
+			final byte[] directoryHandle = sftpChannel.receiveHandle(sftpChannel.sendOpenDir("/dir"));
+			sftpChannel.closeFile(directoryHandle);
+			e =
+				Assertions.assertThrows(
+					SftpException.class,
+					() -> sftpChannel.receiveDirectoryEntries(sftpChannel.sendReadDir(directoryHandle))
+				);
+			Assertions.assertNotEquals(ErrorCodes.SSH_FX_EOF, e.getServerErrorCode());
+
+			// The errors don't break the channel
+			Assertions.assertEquals(11L, sftpChannel.stat("/small.txt").size);
+		}
+	}
+
+	/**
+	 * @return the "uid\tgid\t" part of the readFileAttributes() result for the files of the test
+	 */
+	private static String ownerIds() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			final String[] fields = sshClient.readFileAttributes("/large.bin").split("\t");
+			return fields[7] + "\t" + fields[8] + "\t";
+		}
+	}
+
+	@Test
+	void testReadFile() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			sshClient.setSftpReadWindow(3);
+			Assertions.assertEquals("Hello World", sshClient.readFile("/small.txt", null, null));
+			Assertions.assertEquals("World", sshClient.readFile("/small.txt", 6L, null));
+			Assertions.assertEquals("llo", sshClient.readFile("/small.txt", 2L, 3));
+			Assertions.assertEquals("/dir/a.txt", sshClient.listFiles("/dir", "\\.TXT$", true).split(";")[0]);
+			final String fileAttributes = sshClient.readFileAttributes("/small.txt");
+			Assertions.assertTrue(fileAttributes.endsWith("\t11\t-\tFILE\t" + ownerIds() + "/small.txt"));
+		}
+	}
+
+	@Test
+	void testReadFileAttributesBulk() throws Exception {
+		final List<String> paths = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			paths.add(i % 2 == 0 ? "/dir/../small.txt" : "/missing" + i);
+		}
+		paths.add("/dir");
+
+		try (SshClient sshClient = sshServer.connect()) {
+			final List<RemoteFileAttributes> result = sshClient.readFileAttributes(paths, true);
+			Assertions.assertEquals(paths.size(), result.size());
+			for (int i = 0; i < 200; i++) {
+				final RemoteFileAttributes entry = result.get(i);
+				Assertions.assertEquals(paths.get(i), entry.getPath());
+				if (i % 2 == 0) {
+					Assertions.assertTrue(entry.isSuccess());
+					Assertions.assertEquals(11L, entry.getAttributes().size);
+					Assertions.assertEquals("/small.txt", entry.getCanonicalPath());
+				} else {
+					Assertions.assertFalse(entry.isSuccess());
+					Assertions.assertNull(entry.getAttributes());
+					Assertions.assertEquals(
+						ErrorCodes.SSH_FX_NO_SUCH_FILE,
+						((SftpException) entry.getError()).getServerErrorCode()
+					);
+				}
+			}
+			Assertions.assertTrue(result.get(200).getAttributes().isDirectory());
+
+			// Without canonical paths
+			final RemoteFileAttributes entry = sshClient.readFileAttributes(paths.subList(0, 1), false).get(0);
+			Assertions.assertTrue(entry.isSuccess());
+			Assertions.assertNull(entry.getCanonicalPath());
+
+			// The channel is still usable
+			Assertions.assertEquals("Hello World", sshClient.readFile("/small.txt", null, null));
+		}
+	}
+
+	@Test
+	void testReadFileStreaming() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			// OutputStream
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Assertions.assertEquals(content.length, sshClient.readFile("/large.bin", 0, -1, out));
+			Assertions.assertArrayEquals(content, out.toByteArray());
+
+			// WritableByteChannel
+			final ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+			Assertions.assertEquals(5, sshClient.readFile("/small.txt", 6, 100, Channels.newChannel(channelOut)));
+			Assertions.assertEquals("World", channelOut.toString());
+
+			// Local file
+			final Path localFile = rootDirectory.resolve("copy.bin");
+			Assertions.assertEquals(content.length, sshClient.readFile("/large.bin", 0, -1, localFile));
+			Assertions.assertArrayEquals(content, Files.readAllBytes(localFile));
+
+			// A failed transfer leaves the local file untouched, and no temporary file behind
+			Assertions.assertThrows(SftpException.class, () -> sshClient.readFile("/missing", 0, -1, localFile));
+			Assertions.assertArrayEquals(content, Files.readAllBytes(localFile));
+			try (Stream<Path> files = Files.list(rootDirectory)) {
+				Assertions.assertEquals(0, files.filter(file -> file.toString().endsWith(".part")).count());
+			}
+
+			// InputStream
+			try (InputStream in = sshClient.openFileInputStream("/large.bin", 10)) {
+				Assertions.assertEquals(content[10] & 0xff, in.read());
+				Assertions.assertEquals(100000, in.skip(100000));
+				final ByteArrayOutputStream rest = new ByteArrayOutputStream();
+				final byte[] buffer = new byte[10000];
+				int count;
+				while ((count = in.read(buffer)) >= 0) {
+					rest.write(buffer, 0, count);
+				}
+				Assertions.assertEquals(content.length - 100011, rest.size());
+				Assertions.assertEquals(content[100011], rest.toByteArray()[0]);
+				Assertions.assertEquals(content[content.length - 1], rest.toByteArray()[rest.size() - 1]);
+			}
+
+			Assertions.assertThrows(SftpException.class, () -> sshClient.openFileInputStream("/missing", 0));
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package org.metricshub.ssh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class SftpDirectoryWalkerTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	/**
+	 * Paths of the .log files expected when listing /tree recursively
+	 */
+	private static final Set<String> EXPECTED = new HashSet<>();
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		// 10 directories with 3 subdirectories each, with a few files
+		for (int i = 0; i < 10; i++) {
+			for (int j = 0; j < 3; j++) {
+				final Path directory = Files.createDirectories(rootDirectory.resolve("tree/d" + i + "/s" + j));
+				for (int k = 0; k < 5; k++) {
+					Files.write(directory.resolve("f" + k + ".log"), new byte[k]);
+					EXPECTED.add("/tree/d" + i + "/s" + j + "/f" + k + ".log");
+				}
+				Files.write(directory.resolve("ignored.txt"), new byte[1]);
+			}
+		}
+
+		// A chain of 20 nested directories: only the first 15 levels are listed
+		Path directory = rootDirectory.resolve("tree");
+		final StringBuilder path = new StringBuilder("/tree");
+		for (int level = 2; level <= 20; level++) {
+			directory = Files.createDirectories(directory.resolve("n"));
+			path.append("/n");
+			Files.write(directory.resolve("deep.log"), new byte[1]);
+			if (level <= SftpDirectoryWalker.MAX_DEPTH) {
+				EXPECTED.add(path + "/deep.log");
+			}
+		}
+
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testListFiles() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			for (int window : new int[] { 1, 3, 32 }) {
+				sshClient.setSftpListWindow(window);
+				final Set<String> found = new HashSet<>();
+				sshClient.listFiles(
+					"/tree/",
+					"\\.log$",
+					true,
+					(path, attributes) -> {
+						Assertions.assertTrue(attributes.isRegularFile());
+						Assertions.assertTrue(found.add(path), "Visited twice: " + path);
+					}
+				);
+				Assertions.assertEquals(EXPECTED, found);
+			}
+
+			// String result, not recursive
+			Assertions.assertEquals("/tree/d0/s0/f2.log;", sshClient.listFiles("/tree/d0/s0", "f2", false).substring(0, 19));
+			Assertions.assertEquals("", sshClient.listFiles("/tree", null, false));
+			final Set<String> lines = Arrays
+				.stream(sshClient.listFiles("/tree/d1/s1", null, true).split("\n"))
+				.map(line -> line.substring(0, line.indexOf(';')))
+				.collect(Collectors.toSet());
+			Assertions.assertEquals(6, lines.size());
+			Assertions.assertTrue(lines.contains("/tree/d1/s1/ignored.txt"));
+		}
+	}
+
+	@Test
+	void testListFilesOrder() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			// The string result is in depth-first order, whatever the order of the responses
+			sshClient.setSftpListWindow(32);
+			final List<String> expected = new ArrayList<>();
+			for (int j = 0; j < 3; j++) {
+				for (int k = 0; k < 5; k++) {
+					expected.add("/tree/d0/s" + j + "/f" + k + ".log");
+				}
+				expected.add("/tree/d0/s" + j + "/ignored.txt");
+			}
+			final List<String> paths = Arrays
+				.stream(sshClient.listFiles("/tree/d0", null, true).split("\n"))
+				.map(line -> line.substring(0, line.indexOf(';')))
+				.collect(Collectors.toList());
+			Assertions.assertEquals(expected, paths);
+		}
+
+		Assertions.assertTrue(SshClient.compareDepthFirst("/a/b/c", "/a/b-c") < 0);
+		Assertions.assertTrue(SshClient.compareDepthFirst("/a/b", "/a/b/c") < 0);
+		Assertions.assertTrue(SshClient.compareDepthFirst("/a/c", "/a/b/c") > 0);
+		Assertions.assertEquals(0, SshClient.compareDepthFirst("/a/b", "/a/b"));
+	}
+
+	@Test
+	void testFilter() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			final SftpChannel channel = Mockito.spy(new SftpChannel(sshClient.getSshConnection(), null));
+			final RemoteFileFilter filter = new RemoteFileFilter().withPathGlobs("d1/*/f?.log").withMinSize(3);
+			final Set<String> found = new HashSet<>();
+			new SftpDirectoryWalker(channel, filter, 4)
+				.walk("/tree", channel.receiveHandle(channel.sendOpenDir("/tree")), (path, attributes) -> found.add(path));
+			Assertions.assertEquals(
+				new HashSet<>(
+					Arrays.asList(
+						"/tree/d1/s0/f3.log",
+						"/tree/d1/s0/f4.log",
+						"/tree/d1/s1/f3.log",
+						"/tree/d1/s1/f4.log",
+						"/tree/d1/s2/f3.log",
+						"/tree/d1/s2/f4.log"
+					)
+				),
+				found
+			);
+
+			// Only /tree, /tree/d1 and its 3 subdirectories have been read
+			Mockito.verify(channel, Mockito.times(5)).sendOpenDir(ArgumentMatchers.anyString());
+			channel.close();
+		}
+	}
+
+	@Test
+	void testFailures() throws Exception {
+		try (SshClient sshClient = sshServer.connect()) {
+			Assertions.assertThrows(SftpException.class, () -> sshClient.listFiles("/missing", null, true));
+
+			// Stopping the walk from the visitor leaves the channel usable
+			final AtomicInteger count = new AtomicInteger();
+			final IOException e = Assertions.assertThrows(
+				IOException.class,
+				() ->
+					sshClient.listFiles(
+						"/tree",
+						null,
+						true,
+						(path, attributes) -> {
+							if (count.incrementAndGet() == 10) {
+								throw new IOException("Stop");
+							}
+						}
+					)
+			);
+			Assertions.assertEquals("Stop", e.getMessage());
+			Assertions.assertEquals(EXPECTED.size(), sshClient.listFiles("/tree", "\\.log$", true).split("\n").length);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package org.metricshub.ssh;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+@DisabledOnOs(OS.WINDOWS)
+class ShellCommandRunnerTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testRun() throws Exception {
+		try (SshClient sshClient = sshServer.connect(); ShellCommandRunner runner = new ShellCommandRunner(sshClient)) {
+			SshClient.CommandResult result = runner.run("echo hello; echo oops >&2", 10000);
+			Assertions.assertTrue(result.success);
+			Assertions.assertEquals(0, result.exitStatus);
+			Assertions.assertEquals("hello\n", result.getStdout());
+			Assertions.assertEquals("oops\n", result.getStderr());
+			Assertions.assertEquals("hello\noops\n", result.result);
+
+			// Same shell: the state is kept
+			Assertions.assertEquals(0, runner.run("FOO=bar; cd /tmp", 10000).exitStatus);
+			result = runner.run("echo $FOO; pwd; false", 10000);
+			Assertions.assertEquals("bar\n/tmp\n", result.result);
+			Assertions.assertEquals(1, result.exitStatus);
+
+			// Output without final new line, multi-line command, stdin not consumed
+			result = runner.run("printf abc\nprintf def; cat", 10000);
+			Assertions.assertEquals("abcdef", result.result);
+
+			// Many small commands
+			for (int i = 0; i < 100; i++) {
+				Assertions.assertEquals(i + "\n", runner.run("echo " + i, 10000).result);
+			}
+		}
+	}
+
+	@Test
+	void testRestart() throws Exception {
+		try (
+			SshClient sshClient = sshServer.connect();
+			ShellCommandRunner runner = new ShellCommandRunner(sshClient, "/bin/sh")
+		) {
+			Assertions.assertEquals("1\n", runner.run("A=1; echo $A", 10000).result);
+
+			// The command exits the shell
+			SshClient.CommandResult result = runner.run("echo bye; exit 3", 10000);
+			Assertions.assertEquals("bye\n", result.getStdout());
+			Assertions.assertEquals(3, result.exitStatus);
+
+			// New shell
+			Assertions.assertEquals("\n", runner.run("echo $A", 10000).result);
+
+			// Timeout
+			result = runner.run("sleep 5", 500);
+			Assertions.assertFalse(result.success);
+			Assertions.assertEquals("ok\n", runner.run("echo ok", 10000).result);
+		}
+	}
+
+	@Test
+	void testLargeOutput() throws Exception {
+		try (SshClient sshClient = sshServer.connect(); ShellCommandRunner runner = new ShellCommandRunner(sshClient)) {
+			// Received in many chunks, each scanned once for the end marker
+			final SshClient.CommandResult result = runner.run("yes 0123456789 | head -c 8000000", 30000);
+			Assertions.assertEquals(0, result.exitStatus);
+			Assertions.assertEquals(8000000, result.getStdout().length());
+			Assertions.assertTrue(result.getStdout().startsWith("0123456789\n0123456789\n"));
+			Assertions.assertEquals("ok\n", runner.run("echo ok", 10000).result);
+		}
+	}
+
+	@Test
+	void testMarkerSplitAcrossChunks() {
+		final MarkerBuffer buffer = new MarkerBuffer();
+		final byte[] marker = "\nEND".getBytes(StandardCharsets.US_ASCII);
+		int search = 0;
+
+		buffer.write('a');
+		buffer.write('b');
+		buffer.write('\n');
+		buffer.write('E');
+		Assertions.assertEquals(-1, buffer.indexOf(marker, search));
+		search = buffer.resumePosition(marker, search);
+		Assertions.assertEquals(1, search);
+
+		buffer.write('N');
+		Assertions.assertEquals(-1, buffer.indexOf(marker, search));
+		search = buffer.resumePosition(marker, search);
+		Assertions.assertEquals(2, search);
+
+		buffer.write('D');
+		Assertions.assertEquals(2, buffer.indexOf(marker, search));
+	}
+
+	@Test
+	void testScript() {
+		Assertions.assertEquals(
+			"echo M:B; echo M:B >&2\n{ ls\n} </dev/null\n" +
+			"__ssh_status=$?; echo \"\"; echo \"M:E:$__ssh_status\"; echo \"\" >&2; echo M:E >&2\n",
+			ShellCommandRunner.script("ls", "M")
+		);
+	}
+}
@@ -0,0 +1,178 @@
+package org.metricshub.ssh;
+
+import com.trilead.ssh2.Connection;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+class SshClientPoolTest {
+
+	private static final String HOSTNAME = "host";
+	private static final String USERNAME = "user";
+	private static final char[] PASSWORD = "pass".toCharArray();
+
+	/**
+	 * Creates a pool that hands out mocked SSH clients, which are recorded in the specified list
+	 */
+	private static SshClientPool mockedPool(final int maxPerHost, final long idleTimeout, final List<SshClient> created) {
+		final SshClientPool pool = Mockito.spy(new SshClientPool(maxPerHost, idleTimeout, 60000L, StandardCharsets.UTF_8));
+		Mockito
+			.doAnswer(invocation -> {
+				final SshClient client = Mockito.mock(SshClient.class);
+				Mockito.doReturn(true).when(client).authenticate(Mockito.eq(USERNAME), Mockito.any(char[].class));
+				Mockito.doReturn(Mockito.mock(Connection.class)).when(client).getSshConnection();
+				created.add(client);
+				return client;
+			})
+			.when(pool)
+			.createClient(Mockito.anyString());
+		return pool;
+	}
+
+	@Test
+	void testBorrowReusesConnection() throws Exception {
+		final List<SshClient> created = new ArrayList<>();
+		try (SshClientPool pool = mockedPool(2, 60000L, created)) {
+			final SshClient first;
+			try (SshClientPool.Lease lease = pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 1000)) {
+				first = lease.getClient();
+				Mockito.verify(first).connect(1000, 22);
+			}
+
+			Mockito.verify(first).resetForReuse(null);
+
+			try (SshClientPool.Lease lease = pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 1000)) {
+				Assertions.assertSame(first, lease.getClient());
+			}
+
+			// Other credentials: new connection
+			try (SshClientPool.Lease lease = pool.borrow(HOSTNAME, 22, USERNAME, "other".toCharArray(), null, 1000)) {
+				Assertions.assertNotSame(first, lease.getClient());
+			}
+
+			final SshClientPool.Statistics statistics = pool.getStatistics();
+			Assertions.assertEquals(1, statistics.getHits());
+			Assertions.assertEquals(2, statistics.getMisses());
+			Assertions.assertEquals(2, statistics.getIdle());
+			Assertions.assertEquals(0, statistics.getBorrowed());
+			Assertions.assertEquals(2, created.size());
+		}
+		Mockito.verify(created.get(0)).close();
+		Mockito.verify(created.get(1)).close();
+	}
+
+	@Test
+	void testBorrowMaxPerHost() throws Exception {
+		final List<SshClient> created = new ArrayList<>();
+		try (SshClientPool pool = mockedPool(1, 60000L, created)) {
+			try (SshClientPool.Lease lease = pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 1000)) {
+				Assertions.assertThrows(IOException.class, () -> pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 50));
+
+				// Other port, other host
+				pool.borrow(HOSTNAME, 2222, USERNAME, PASSWORD, null, 50).close();
+			}
+
+			// The idle connection of another user is closed to make room
+			pool.borrow(HOSTNAME, 22, USERNAME, "other".toCharArray(), null, 50).close();
+			Mockito.verify(created.get(0)).close();
+		}
+	}
+
+	@Test
+	void testInvalidateAndValidation() throws Exception {
+		final List<SshClient> created = new ArrayList<>();
+		try (SshClientPool pool = mockedPool(2, 60000L, created)) {
+			final SshClientPool.Lease lease = pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 1000);
+			lease.invalidate();
+			Mockito.verify(created.get(0)).close();
+			Assertions.assertThrows(IllegalStateException.class, () -> lease.getClient());
+
+			// A dead idle connection is replaced with a new one
+			pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 1000).close();
+			final Connection deadConnection = created.get(1).getSshConnection();
+			Mockito.doThrow(new IOException("dead")).when(deadConnection).ping();
+			try (SshClientPool.Lease newLease = pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 1000)) {
+				Assertions.assertSame(created.get(2), newLease.getClient());
+			}
+			Assertions.assertEquals(1, pool.getStatistics().getValidationFailures());
+		}
+	}
+
+	@Test
+	void testGiveBackResetsClient(@TempDir final Path rootDirectory) throws Exception {
+		try (
+			EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory);
+			SshClientPool pool = new SshClientPool(1, 60000L, 60000L, StandardCharsets.UTF_8)
+		) {
+			final int port = sshServer.getPort();
+			final String username = EmbeddedSshServer.USERNAME;
+			final char[] password = EmbeddedSshServer.PASSWORD;
+			final SshClient client;
+			try (SshClientPool.Lease lease = pool.borrow("localhost", port, username, password, null, 10000)) {
+				client = lease.getClient();
+				client.openSession();
+				client.openTerminal();
+				client.setCapturePolicy(CapturePolicy.head(10));
+				client.setMetadataCache(new RemoteMetadataCache());
+				Assertions.assertEquals(1, sshServer.getAndResetMaxOpenChannels());
+			}
+
+			// The session of the previous borrower is closed, and its settings are gone
+			try (SshClientPool.Lease lease = pool.borrow("localhost", port, username, password, null, 10000)) {
+				Assertions.assertSame(client, lease.getClient());
+				Assertions.assertNull(client.getSshSession());
+				Assertions.assertSame(CapturePolicy.UNLIMITED, client.getCapturePolicy());
+				Assertions.assertNull(client.getMetadataCache());
+
+				client.openSession();
+				Assertions.assertEquals("ok\n", client.executeCommand("echo ok").result);
+			}
+
+			// No channel is left open on the idle connection
+			Thread.sleep(200);
+			sshServer.getAndResetMaxOpenChannels();
+			Assertions.assertEquals(0, sshServer.getAndResetMaxOpenChannels());
+		}
+	}
+
+	@Test
+	void testEvictExpired() throws Exception {
+		final List<SshClient> created = new ArrayList<>();
+		try (SshClientPool pool = mockedPool(2, 1L, created)) {
+			pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 1000).close();
+			Thread.sleep(5);
+			pool.evictExpired();
+
+			Mockito.verify(created.get(0)).close();
+			Assertions.assertEquals(0, pool.getStatistics().getIdle());
+			Assertions.assertEquals(1, pool.getStatistics().getEvictions());
+		}
+	}
+
+	@Test
+	void testAuthenticationFailure() throws Exception {
+		final List<SshClient> created = new ArrayList<>();
+		try (SshClientPool pool = mockedPool(1, 60000L, created)) {
+			Assertions.assertThrows(IOException.class, () -> pool.borrow(HOSTNAME, 22, "nobody", PASSWORD, null, 1000));
+			Mockito.verify(created.get(0)).close();
+
+			// The slot has been released
+			pool.borrow(HOSTNAME, 22, USERNAME, PASSWORD, null, 50).close();
+		}
+	}
+
+	@Test
+	void testFingerprint() {
+		Assertions.assertEquals(SshClientPool.fingerprint(PASSWORD, null), SshClientPool.fingerprint(PASSWORD, null));
+		Assertions.assertNotEquals(
+			SshClientPool.fingerprint(PASSWORD, null),
+			SshClientPool.fingerprint("other".toCharArray(), null)
+		);
+	}
+}
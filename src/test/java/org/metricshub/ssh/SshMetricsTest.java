@@ -0,0 +1,202 @@
+package org.metricshub.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.metricshub.ssh.SshMetricsListener.Operation;
+import org.metricshub.ssh.SshMetricsListener.Outcome;
+
+class SshMetricsTest {
+
+	@TempDir
+	static Path rootDirectory;
+
+	private static EmbeddedSshServer sshServer;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		sshServer = new EmbeddedSshServer(rootDirectory);
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		sshServer.close();
+	}
+
+	@Test
+	void testHistogramBuckets() {
+		Assertions.assertEquals(2560, LatencyHistogram.BUCKETS);
+		for (long value = 0; value < 1 << 20; value++) {
+			final int index = LatencyHistogram.indexOf(value);
+			Assertions.assertTrue(value <= LatencyHistogram.highestValueOf(index));
+			Assertions.assertTrue(index == 0 || value > LatencyHistogram.highestValueOf(index - 1));
+		}
+		Assertions.assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.BUCKETS - 1));
+	}
+
+	@Test
+	void testPercentiles() {
+		final SshMetrics metrics = new SshMetrics();
+		for (long i = 1; i <= 100000; i++) {
+			metrics.onOperation("host", Operation.CONNECT_TCP, i * 1000, 0, 0, Outcome.SUCCESS);
+		}
+		metrics.onOperation("host", Operation.CONNECT_TCP, -1, 0, 0, Outcome.FAILURE);
+		metrics.onOperation("host", Operation.CONNECT_TCP, 10, 0, 0, Outcome.TIMEOUT);
+
+		final SshMetrics.Statistics statistics = metrics.getStatistics(Operation.CONNECT_TCP);
+		Assertions.assertEquals(100002, statistics.getCount());
+		Assertions.assertEquals(1, statistics.getFailures());
+		Assertions.assertEquals(1, statistics.getTimeouts());
+		Assertions.assertEquals(100000000L, statistics.getMaxNanos());
+		Assertions.assertEquals(100000000L, statistics.getPercentileNanos(100));
+		Assertions.assertEquals(0, statistics.getPercentileNanos(0));
+		Assertions.assertEquals(50000000.0, statistics.getPercentileNanos(50), 50000000.0 / 64);
+		Assertions.assertEquals(99000000.0, statistics.getPercentileNanos(99), 99000000.0 / 64);
+		Assertions.assertEquals(50000L * 1000, statistics.getMeanNanos(), 1000);
+
+		// Nothing recorded
+		final SshMetrics.Statistics empty = metrics.getStatistics(Operation.SCP);
+		Assertions.assertEquals(0, empty.getCount());
+		Assertions.assertEquals(0, empty.getPercentileNanos(99));
+		Assertions.assertEquals(0, empty.getMeanNanos());
+	}
+
+	@Test
+	void testConcurrentRecording() throws Exception {
+		final SshMetrics metrics = new SshMetrics();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int thread = 0; thread < 4; thread++) {
+				final long base = thread;
+				futures.add(
+					executor.submit(() -> {
+						for (int i = 0; i < 100000; i++) {
+							metrics.onOperation("host", Operation.READ_FILE, base * 1000 + i, 2, 1, Outcome.SUCCESS);
+						}
+					})
+				);
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		final SshMetrics.Statistics statistics = metrics.getStatistics(Operation.READ_FILE);
+		Assertions.assertEquals(400000, statistics.getCount());
+		Assertions.assertEquals(800000, statistics.getBytesIn());
+		Assertions.assertEquals(400000, statistics.getBytesOut());
+		Assertions.assertEquals(3000 + 99999, statistics.getMaxNanos());
+	}
+
+	@Test
+	void testClientOperations() throws Exception {
+		Files.write(rootDirectory.resolve("file.txt"), "0123456789".getBytes(StandardCharsets.UTF_8));
+
+		final SshMetrics metrics = new SshMetrics();
+		try (SshClient sshClient = new SshClient("localhost", StandardCharsets.UTF_8)) {
+			sshClient.setMetricsListener(metrics);
+			Assertions.assertSame(metrics, sshClient.getMetricsListener());
+
+			sshClient.connect(10000, sshServer.getPort());
+			Assertions.assertFalse(sshClient.authenticate(EmbeddedSshServer.USERNAME, "wrong".toCharArray()));
+			Assertions.assertTrue(sshClient.authenticate(EmbeddedSshServer.USERNAME, EmbeddedSshServer.PASSWORD));
+
+			final SshClient.CommandResult commandResult = sshClient.executeCommand("echo hello", 10000);
+			Assertions.assertEquals(6, commandResult.totalBytes);
+			Assertions.assertEquals(6, sshClient.executeCommandAsync("echo hello", 10000).get().totalBytes);
+			Assertions.assertEquals("0123456789", sshClient.readFile("/file.txt", null, null));
+			Assertions.assertEquals(4, sshClient.readFile("/file.txt", 2, 4, new ByteArrayOutputStream()));
+			Assertions.assertThrows(SftpException.class, () -> sshClient.readFile("/missing.txt", null, null));
+			Assertions.assertTrue(sshClient.listFiles("/", null, false).contains("file.txt"));
+			sshClient.removeFile("/file.txt");
+			sshClient.openSession();
+		}
+
+		Assertions.assertEquals(1, metrics.getStatistics(Operation.CONNECT_TCP).getCount());
+		Assertions.assertEquals(1, metrics.getStatistics(Operation.KEY_EXCHANGE).getCount());
+		Assertions.assertTrue(metrics.getStatistics(Operation.KEY_EXCHANGE).getMaxNanos() > 0);
+
+		// Nothing listens on the port: the TCP connection fails, and there is no key exchange
+		final EmbeddedSshServer stopped = new EmbeddedSshServer(rootDirectory);
+		stopped.close();
+		try (SshClient sshClient = new SshClient("localhost", StandardCharsets.UTF_8)) {
+			sshClient.setMetricsListener(metrics);
+			Assertions.assertThrows(IOException.class, () -> sshClient.connect(10000, stopped.getPort()));
+		}
+		Assertions.assertEquals(1, metrics.getStatistics(Operation.CONNECT_TCP).getFailures());
+		Assertions.assertEquals(1, metrics.getStatistics(Operation.KEY_EXCHANGE).getCount());
+
+		final SshMetrics.Statistics authentication = metrics.getStatistics(Operation.AUTHENTICATE_PASSWORD);
+		Assertions.assertEquals(2, authentication.getCount());
+		Assertions.assertEquals(1, authentication.getFailures());
+		Assertions.assertTrue(authentication.getMaxNanos() > 0);
+
+		final SshMetrics.Statistics commands = metrics.getStatistics(Operation.EXECUTE_COMMAND);
+		Assertions.assertEquals(2, commands.getCount());
+		Assertions.assertEquals(12, commands.getBytesIn());
+		Assertions.assertEquals(20, commands.getBytesOut());
+		Assertions.assertEquals(0, commands.getFailures() + commands.getTimeouts());
+
+		final SshMetrics.Statistics reads = metrics.getStatistics(Operation.READ_FILE);
+		Assertions.assertEquals(3, reads.getCount());
+		Assertions.assertEquals(1, reads.getFailures());
+		Assertions.assertEquals(14, reads.getBytesIn());
+
+		Assertions.assertEquals(1, metrics.getStatistics(Operation.LIST_FILES).getCount());
+		Assertions.assertEquals(1, metrics.getStatistics(Operation.REMOVE_FILE).getCount());
+		Assertions.assertEquals(1, metrics.getStatistics(Operation.OPEN_SESSION).getCount());
+		Assertions.assertEquals(0, metrics.getStatistics(Operation.AUTHENTICATE_NONE).getCount());
+	}
+
+	@Test
+	void testFailingListener() throws Exception {
+		try (SshClient sshClient = new SshClient("localhost")) {
+			sshClient.setMetricsListener((hostname, operation, durationNanos, bytesIn, bytesOut, outcome) -> {
+				throw new IllegalStateException("Broken listener");
+			});
+			sshClient.connect(10000, sshServer.getPort());
+			Assertions.assertTrue(sshClient.authenticate(EmbeddedSshServer.USERNAME, EmbeddedSshServer.PASSWORD));
+		}
+	}
+
+	@Test
+	void testMBeans() throws Exception {
+		final SshMetrics metrics = new SshMetrics();
+		metrics.onOperation("host", Operation.EXECUTE_COMMAND, 2000000, 10, 5, Outcome.TIMEOUT);
+
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName objectName = new ObjectName(
+			"org.metricshub.ssh:type=SshMetrics,name=\"test\",operation=EXECUTE_COMMAND"
+		);
+		metrics.registerMBeans("test");
+		try {
+			Assertions.assertThrows(IllegalStateException.class, () -> metrics.registerMBeans("test"));
+			Assertions.assertEquals(1L, server.getAttribute(objectName, "Count"));
+			Assertions.assertEquals(1L, server.getAttribute(objectName, "Timeouts"));
+			Assertions.assertEquals(10L, server.getAttribute(objectName, "BytesIn"));
+			Assertions.assertEquals(2.0, (Double) server.getAttribute(objectName, "MaxMillis"), 0.001);
+			Assertions.assertEquals(2.0, (Double) server.getAttribute(objectName, "P99Millis"), 2.0 / 64);
+		} finally {
+			metrics.unregisterMBeans();
+		}
+		Assertions.assertFalse(server.isRegistered(objectName));
+	}
+}
@@ -0,0 +1,176 @@
+package org.metricshub.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TCP proxy on localhost, in front of a local server, that delays the data sent in each direction
+ * and limits the bandwidth of each direction of each connection, like a remote network would.
+ * <p>
+ * Each connection uses 4 threads: a reader and a writer for each direction. The reader timestamps
+ * what it receives, and the writer forwards it once the latency has elapsed, no faster than the
+ * bandwidth allows.
+ */
+class ThrottlingProxy implements AutoCloseable {
+
+	/**
+	 * Chunk marking the end of the stream
+	 */
+	private static final Chunk END = new Chunk(0, new byte[0]);
+
+	private final int targetPort;
+	private final long latencyNanos;
+	private final long bandwidth;
+	private final int chunkSize;
+	private final ServerSocket serverSocket;
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Starts a proxy to the specified port of localhost
+	 *
+	 * @param targetPort The port of the server
+	 * @param latencyMillis Delay added to the data sent in each direction, in milliseconds (half
+	 *                      of the round-trip time)
+	 * @param bandwidth Bytes per second in each direction of each connection (0 for no limit)
+	 * @throws IOException when the proxy cannot listen
+	 */
+	ThrottlingProxy(final int targetPort, final long latencyMillis, final long bandwidth) throws IOException {
+		this.targetPort = targetPort;
+		this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+		this.bandwidth = bandwidth;
+
+		// Small chunks at low bandwidth, so that the data flows smoothly
+		chunkSize = bandwidth > 0 ? (int) Math.max(512, Math.min(16384, bandwidth / 50)) : 16384;
+
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		BlockingThreads.PLATFORM.newThread(this::accept).start();
+	}
+
+	/**
+	 * @return the port to connect to
+	 */
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket client = serverSocket.accept();
+				final Socket server = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+				client.setTcpNoDelay(true);
+				server.setTcpNoDelay(true);
+				sockets.add(client);
+				sockets.add(server);
+
+				// Close both sockets once both directions are done
+				final AtomicInteger directions = new AtomicInteger(2);
+				final Runnable onEnd = () -> {
+					if (directions.decrementAndGet() == 0) {
+						close(client);
+						close(server);
+					}
+				};
+				forward(client, server, onEnd);
+				forward(server, client, onEnd);
+			} catch (IOException e) {
+				// Closed
+			}
+		}
+	}
+
+	/**
+	 * Starts forwarding what is received from the specified socket to the other one
+	 */
+	private void forward(final Socket from, final Socket to, final Runnable onEnd) throws IOException {
+		final InputStream in = from.getInputStream();
+		final OutputStream out = to.getOutputStream();
+		final BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+
+		BlockingThreads.PLATFORM
+			.newThread(() -> {
+				final byte[] buffer = new byte[chunkSize];
+				try {
+					int count;
+					while ((count = in.read(buffer)) > 0) {
+						queue.add(new Chunk(System.nanoTime() + latencyNanos, Arrays.copyOf(buffer, count)));
+					}
+				} catch (IOException e) {
+					// Closed
+				}
+				queue.add(END);
+			})
+			.start();
+
+		BlockingThreads.PLATFORM
+			.newThread(() -> {
+				long nextFree = 0;
+				try {
+					Chunk chunk;
+					while ((chunk = queue.take()) != END) {
+						final long sendTime = Math.max(chunk.due, nextFree);
+						sleepUntil(sendTime);
+						out.write(chunk.bytes);
+						out.flush();
+						if (bandwidth > 0) {
+							nextFree = sendTime + TimeUnit.SECONDS.toNanos(chunk.bytes.length) / bandwidth;
+						}
+					}
+					to.shutdownOutput();
+				} catch (IOException e) {
+					close(from);
+					close(to);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					onEnd.run();
+				}
+			})
+			.start();
+	}
+
+	private static void sleepUntil(final long time) {
+		long delay;
+		while ((delay = time - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(delay);
+		}
+	}
+
+	private void close(final Socket socket) {
+		sockets.remove(socket);
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		sockets.forEach(this::close);
+	}
+
+	private static class Chunk {
+
+		private final long due;
+		private final byte[] bytes;
+
+		private Chunk(final long due, final byte[] bytes) {
+			this.due = due;
+			this.bytes = bytes;
+		}
+	}
+}
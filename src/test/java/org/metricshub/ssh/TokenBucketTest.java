@@ -0,0 +1,36 @@
+package org.metricshub.ssh;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+	@Test
+	void testRate() throws Exception {
+		// 50 per second, no burst: 26 tokens take at least 0.5 second
+		final TokenBucket tokenBucket = new TokenBucket(50, 1);
+		final long start = System.nanoTime();
+		for (int i = 0; i < 26; i++) {
+			tokenBucket.acquire();
+		}
+		Assertions.assertTrue(System.nanoTime() - start >= 480000000L);
+	}
+
+	@Test
+	void testBurst() throws Exception {
+		// Burst of 10 after a quiet period
+		final TokenBucket burst = new TokenBucket(5, 10);
+		Thread.sleep(100);
+		final long start = System.nanoTime();
+		for (int i = 0; i < 10; i++) {
+			burst.acquire();
+		}
+		Assertions.assertTrue(System.nanoTime() - start < 150000000L);
+	}
+
+	@Test
+	void testInvalidArguments() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+	}
+}
@@ -0,0 +1,170 @@
+package org.metricshub.ssh;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+
+/**
+ * Runs thousands of commands at the same time, each on its own thread created by {@link BlockingThreads},
+ * with platform threads and then with virtual threads, and compares the number of platform threads
+ * and the throughput.
+ * <p>
+ * The commands are run by an embedded SSH server, which answers after a delay without starting
+ * any process. Virtual threads are only available from the multi-release JAR built with JDK 21:
+ * <pre>
+ * mvn package dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Dsessions=10000 -cp target/ssh-java-VERSION.jar:target/test-classes:$(cat target/cp.txt) \
+ * 	org.metricshub.ssh.VirtualThreadBenchmark
+ * </pre>
+ * System properties: <code>sessions</code> (10000), <code>connections</code> (50) and
+ * <code>commandMillis</code> (1000).
+ */
+public class VirtualThreadBenchmark {
+
+	public static void main(final String[] args) throws Exception {
+		final int sessions = Integer.getInteger("sessions", 10000);
+		final int connections = Integer.getInteger("connections", 50);
+		final long commandMillis = Long.getLong("commandMillis", 1000L);
+
+		final ThreadFactory defaultFactory = BlockingThreads.getThreadFactory();
+		final Path rootDirectory = Files.createTempDirectory("ssh-benchmark");
+		final ScheduledExecutorService serverTimer = Executors.newSingleThreadScheduledExecutor();
+		try (EmbeddedSshServer sshServer = new EmbeddedSshServer(rootDirectory)) {
+			sshServer.setCommandFactory((channel, command) -> new DelayedCommand(serverTimer, commandMillis));
+
+			run("platform", BlockingThreads.PLATFORM, sshServer, sessions, connections);
+			if (BlockingThreads.isVirtualThreadsAvailable()) {
+				run("virtual", defaultFactory, sshServer, sessions, connections);
+			} else {
+				System.out.println("virtual: not available (run from the multi-release JAR, with Java 21 or later)");
+			}
+		} finally {
+			serverTimer.shutdownNow();
+			Files.delete(rootDirectory);
+		}
+	}
+
+	private static void run(
+		final String mode,
+		final ThreadFactory threadFactory,
+		final EmbeddedSshServer sshServer,
+		final int sessions,
+		final int connections
+	) throws Exception {
+		final SshClient[] clients = new SshClient[connections];
+		for (int i = 0; i < connections; i++) {
+			clients[i] = sshServer.connect();
+			clients[i].setMaxConcurrentChannels((sessions + connections - 1) / connections);
+		}
+
+		BlockingThreads.setThreadFactory(threadFactory);
+		final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		final int baseThreads = threadMXBean.getThreadCount();
+		threadMXBean.resetPeakThreadCount();
+
+		final CountDownLatch done = new CountDownLatch(sessions);
+		final AtomicInteger failures = new AtomicInteger();
+		final long start = System.nanoTime();
+		for (int i = 0; i < sessions; i++) {
+			final SshClient sshClient = clients[i % connections];
+			BlockingThreads
+				.newThread(
+					"session-" + i,
+					() -> {
+						try {
+							if (!sshClient.executeCommand("delay", 120000).success) {
+								failures.incrementAndGet();
+							}
+						} catch (Exception e) {
+							failures.incrementAndGet();
+						} finally {
+							done.countDown();
+						}
+					}
+				)
+				.start();
+		}
+		done.await();
+		final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		System.out.format(
+			"%s: %d sessions in %d ms (%.0f sessions/s), %d failed, peak platform threads: +%d%n",
+			mode,
+			sessions,
+			elapsed,
+			sessions * 1000.0 / elapsed,
+			failures.get(),
+			threadMXBean.getPeakThreadCount() - baseThreads
+		);
+
+		for (SshClient sshClient : clients) {
+			sshClient.close();
+		}
+	}
+
+	/**
+	 * Command that prints one line after a delay, without starting a process nor holding a thread
+	 */
+	private static class DelayedCommand implements Command {
+
+		private final ScheduledExecutorService timer;
+		private final long delay;
+		private OutputStream out;
+		private ExitCallback exitCallback;
+
+		DelayedCommand(final ScheduledExecutorService timer, final long delay) {
+			this.timer = timer;
+			this.delay = delay;
+		}
+
+		@Override
+		public void start(final ChannelSession channel, final Environment env) {
+			timer.schedule(
+				() -> {
+					try {
+						out.write("done\n".getBytes(StandardCharsets.UTF_8));
+						out.flush();
+						exitCallback.onExit(0);
+					} catch (Exception e) {
+						exitCallback.onExit(1, e.getMessage());
+					}
+				},
+				delay,
+				TimeUnit.MILLISECONDS
+			);
+		}
+
+		@Override
+		public void destroy(final ChannelSession channel) {}
+
+		@Override
+		public void setInputStream(final InputStream in) {}
+
+		@Override
+		public void setOutputStream(final OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void setErrorStream(final OutputStream err) {}
+
+		@Override
+		public void setExitCallback(final ExitCallback exitCallback) {
+			this.exitCallback = exitCallback;
+		}
+	}
+}